@@ -0,0 +1,134 @@
+package pathfinding;
+
+import java.util.Random;
+
+/**
+ * Generates the maps searched by the benchmarks. Every map is generated from
+ * a fixed seed, so each run of a benchmark searches the same cells.
+ */
+final class BenchmarkMaps {
+    // the width and height of each room in a ROOMS map, including its walls
+    private static final int ROOM_SIZE = 16;
+
+    /**
+     * The kinds of map.
+     */
+    public enum Style {
+        /** No obstacles. */
+        OPEN,
+        /** Cells blocked at random, with the given density. */
+        RANDOM,
+        /** A perfect maze of corridors one cell wide. */
+        MAZE,
+        /** Square rooms, joined by doorways in their walls. */
+        ROOMS
+    }
+
+    private BenchmarkMaps() {
+    }
+
+    /**
+     * @param style   the kind of map
+     * @param size    the width and height of the map, in cells
+     * @param density the fraction of cells blocked, for RANDOM maps
+     * @param seed    the seed for the random choices made
+     * @return the map, with cells 10 "real world" units apart
+     */
+    public static GridGraph create( Style style, int size, double density, long seed ) {
+        GridGraph grid = new GridGraph( size, size, 0, 0, 10, 10 );
+        Random random = new Random( seed );
+        switch( style ) {
+            case OPEN:
+                break;
+            case RANDOM:
+                for( int index = 0; index < size * size; index++ ) {
+                    grid.setTraversable( index, random.nextDouble() >= density );
+                }
+                break;
+            case MAZE:
+                maze( grid, random );
+                break;
+            case ROOMS:
+                rooms( grid, random );
+                break;
+            default:
+                throw new IllegalArgumentException( "Unknown map style: " + style );
+        }
+        return grid;
+    }
+
+    /// internal utilities ///
+
+    /**
+     * Carves a maze by a randomized depth-first search over the cells with
+     * even coordinates, opening the cell between each pair it moves between.
+     */
+    private static void maze( GridGraph grid, Random random ) {
+        int size = grid.getWidth();
+        for( int index = 0; index < size * size; index++ ) {
+            grid.setTraversable( index, false );
+        }
+
+        int cells = ( size + 1 ) / 2;
+        int[] stack = new int[ cells * cells ];
+        int top = 0;
+        stack[top++] = 0;
+        grid.setTraversable( 0, 0, true );
+        int[] choices = new int[ 4 ];
+        while( top > 0 ) {
+            int current = stack[top - 1];
+            int x = current % cells;
+            int y = current / cells;
+
+            int count = 0;
+            for( int direction = 0; direction < 4; direction++ ) {
+                int nextX = x + ( direction == 0 ? 1 : direction == 1 ? -1 : 0 );
+                int nextY = y + ( direction == 2 ? 1 : direction == 3 ? -1 : 0 );
+                if( nextX >= 0 && nextY >= 0 && nextX < cells && nextY < cells
+                    && !grid.isTraversable( nextX * 2, nextY * 2 ) ) {
+                    choices[count++] = nextY * cells + nextX;
+                }
+            }
+            if( count == 0 ) {
+                top--;
+                continue;
+            }
+
+            int next = choices[ random.nextInt( count ) ];
+            int nextX = next % cells;
+            int nextY = next / cells;
+            grid.setTraversable( x + nextX, y + nextY, true );
+            grid.setTraversable( nextX * 2, nextY * 2, true );
+            stack[top++] = next;
+        }
+    }
+
+    /**
+     * Divides the map into rooms, with a doorway two cells wide at a random
+     * position in each wall.
+     */
+    private static void rooms( GridGraph grid, Random random ) {
+        int size = grid.getWidth();
+        for( int line = ROOM_SIZE - 1; line < size; line += ROOM_SIZE ) {
+            for( int along = 0; along < size; along++ ) {
+                grid.setTraversable( line, along, false );
+                grid.setTraversable( along, line, false );
+            }
+        }
+
+        for( int line = ROOM_SIZE - 1; line < size; line += ROOM_SIZE ) {
+            for( int start = 0; start < size; start += ROOM_SIZE ) {
+                int length = Math.min( ROOM_SIZE - 1, size - start );
+                if( length < 2 ) {
+                    continue;
+                }
+                int door = start + random.nextInt( length - 1 );
+                grid.setTraversable( line, door, true );
+                grid.setTraversable( line, door + 1, true );
+                door = start + random.nextInt( length - 1 );
+                grid.setTraversable( door, line, true );
+                grid.setTraversable( door + 1, line, true );
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package pathfinding;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the Pathfinder's searches over maps of several sizes, styles and
+ * obstacle densities.
+ *
+ * Each invocation runs one search, cycling through a fixed set of queries
+ * whose origin and target are connected and at least a quarter of the map
+ * apart. Throughput and the distribution of search times (including its
+ * percentiles) are both reported; main() also adds the GC profiler, which
+ * reports the allocation rate per search.
+ *
+ * The density only applies to RANDOM maps. Searches run on a GridGraph, so
+ * building the map does not dominate the memory used at the largest sizes.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class SearchBenchmark {
+    private static final int QUERIES = 64;
+
+    @Param( { "64", "256", "1024", "4096" } )
+    public int size;
+
+    @Param( { "OPEN", "RANDOM", "MAZE", "ROOMS" } )
+    public BenchmarkMaps.Style style;
+
+    @Param( { "0.2" } )
+    public double density;
+
+    @Param( { "true", "false" } )
+    public boolean returnFast;
+
+    @Param( { "true", "false" } )
+    public boolean allowDiagonal;
+
+    private GridGraph grid;
+    private Vertex[] origins;
+    private Vertex[] targets;
+    private SearchContext context;
+    private int next;
+
+    /**
+     * Runs every benchmark, or those selected by the JMH command-line
+     * options given, with the GC profiler.
+     */
+    public static void main( String[] args ) throws Exception {
+        Options options = new OptionsBuilder()
+            .parent( new CommandLineOptions( args ) )
+            .addProfiler( GCProfiler.class )
+            .build();
+        new Runner( options ).run();
+    }
+
+    @Setup( Level.Trial )
+    public void setUp() {
+        grid = BenchmarkMaps.create( style, size, density, 1 );
+        context = new SearchContext( size * size );
+        origins = new Vertex[ QUERIES ];
+        targets = new Vertex[ QUERIES ];
+
+        Random random = new Random( 2 );
+        ConnectedComponents components = new ConnectedComponents( grid, allowDiagonal );
+        int found = 0;
+        for( int attempt = 0; found < QUERIES && attempt < QUERIES * 10000; attempt++ ) {
+            Vertex origin = new Vertex( random.nextInt( size ), random.nextInt( size ) );
+            Vertex target = new Vertex( random.nextInt( size ), random.nextInt( size ) );
+            int apart = Math.max( Math.abs( origin.x - target.x ), Math.abs( origin.y - target.y ) );
+            if( apart >= size / 4 && components.isConnected( origin, target ) ) {
+                origins[found] = origin;
+                targets[found] = target;
+                found++;
+            }
+        }
+        if( found < QUERIES ) {
+            throw new IllegalStateException( "Could not find enough connected queries in a " + style + " map" );
+        }
+    }
+
+    @Benchmark
+    public int[] bestFirst() {
+        int query = nextQuery();
+        return Pathfinder.bestFirst( grid, origins[query], targets[query], returnFast, allowDiagonal, context );
+    }
+
+    @Benchmark
+    public int[] dijkstra() {
+        int query = nextQuery();
+        return Pathfinder.dijkstra( grid, origins[query], targets[query], returnFast, allowDiagonal, context );
+    }
+
+    @Benchmark
+    public int[] astar() {
+        int query = nextQuery();
+        return Pathfinder.astar( grid, origins[query], targets[query], returnFast, allowDiagonal, Heuristic.EUCLIDEAN, context );
+    }
+
+    /// internal utilities ///
+
+    private int nextQuery() {
+        int query = next;
+        next = ( next + 1 ) % QUERIES;
+        return query;
+    }
+}
@@ -0,0 +1,44 @@
+package pathfinding;
+
+/**
+ * The search algorithms that can be chosen at run time, for example in a 
+ * PathQuery.
+ */
+public enum Algorithm {
+    /**
+     * See Pathfinder.bestFirst().
+     */
+    BEST_FIRST,
+
+    /**
+     * See Pathfinder.dijkstra().
+     */
+    DIJKSTRA,
+
+    /**
+     * See Pathfinder.astar(), using Heuristic.EUCLIDEAN.
+     */
+    ASTAR,
+
+    /**
+     * See Pathfinder.jps(). The search space must be evenly spaced.
+     */
+    JPS,
+
+    /**
+     * See Pathfinder.bidirectionalDijkstra().
+     */
+    BIDIRECTIONAL_DIJKSTRA,
+
+    /**
+     * See Pathfinder.bidirectionalAstar(), using Heuristic.EUCLIDEAN.
+     */
+    BIDIRECTIONAL_ASTAR,
+
+    /**
+     * See Pathfinder.anytimeAstar(), using Heuristic.EUCLIDEAN. A PathQuery
+     * has no deadline: if it returns fast, its path is the first found, with
+     * a bound of 2.5; otherwise its path is optimal.
+     */
+    ANYTIME_ASTAR
+}
@@ -0,0 +1,168 @@
+package pathfinding;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Running totals of the statistics of the searches run with one algorithm,
+ * kept by a SearchMetrics.
+ *
+ * Search times are counted in a histogram of power-of-two buckets, so
+ * percentiles are reported as the upper bound of the bucket they fall in.
+ * All methods are thread safe.
+ */
+public class AlgorithmMetrics implements AlgorithmMetricsMBean {
+    private static final int BUCKETS = 40;
+
+    private final Algorithm algorithm;
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong expanded = new AtomicLong();
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong decreasedKeys = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray( BUCKETS );
+
+    AlgorithmMetrics( Algorithm algorithm ) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Adds a search to the totals.
+     *
+     * @param stats the measurements of the search
+     */
+    void add( SearchStats stats ) {
+        searches.incrementAndGet();
+        if( !stats.isFound() ) {
+            failures.incrementAndGet();
+        }
+        expanded.addAndGet( stats.expanded );
+        generated.addAndGet( stats.generated );
+        decreasedKeys.addAndGet( stats.decreasedKeys );
+        nanos.addAndGet( stats.nanos );
+
+        long max = maxNanos.get();
+        while( stats.nanos > max && !maxNanos.compareAndSet( max, stats.nanos ) ) {
+            max = maxNanos.get();
+        }
+
+        long micros = stats.nanos / 1000;
+        int bucket = Math.min( BUCKETS - 1, 64 - Long.numberOfLeadingZeros( micros ) );
+        histogram.incrementAndGet( bucket );
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return algorithm.name();
+    }
+
+    @Override
+    public long getSearchCount() {
+        return searches.get();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failures.get();
+    }
+
+    @Override
+    public long getExpandedTotal() {
+        return expanded.get();
+    }
+
+    @Override
+    public long getGeneratedTotal() {
+        return generated.get();
+    }
+
+    @Override
+    public long getDecreasedKeyTotal() {
+        return decreasedKeys.get();
+    }
+
+    @Override
+    public double getMeanExpanded() {
+        long count = searches.get();
+        return count == 0 ? 0 : (double)expanded.get() / count;
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long count = searches.get();
+        return count == 0 ? 0 : nanos.get() / 1000.0 / count;
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return maxNanos.get() / 1000;
+    }
+
+    @Override
+    public long getMedianMicros() {
+        return percentile( 0.5 );
+    }
+
+    @Override
+    public long getPercentile90Micros() {
+        return percentile( 0.9 );
+    }
+
+    @Override
+    public long getPercentile99Micros() {
+        return percentile( 0.99 );
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        long[] counts = new long[ BUCKETS ];
+        for( int bucket = 0; bucket < BUCKETS; bucket++ ) {
+            counts[bucket] = histogram.get( bucket );
+        }
+        return counts;
+    }
+
+    @Override
+    public void reset() {
+        searches.set( 0 );
+        failures.set( 0 );
+        expanded.set( 0 );
+        generated.set( 0 );
+        decreasedKeys.set( 0 );
+        nanos.set( 0 );
+        maxNanos.set( 0 );
+        for( int bucket = 0; bucket < BUCKETS; bucket++ ) {
+            histogram.set( bucket, 0 );
+        }
+    }
+
+    /// internal utilities ///
+
+    /**
+     * @return the upper bound, in microseconds, of the histogram bucket
+     *         holding the given fraction of searches, or 0 if there have
+     *         been none
+     */
+    private long percentile( double fraction ) {
+        long[] counts = getLatencyHistogram();
+        long total = 0;
+        for( long count : counts ) {
+            total += count;
+        }
+        if( total == 0 ) {
+            return 0;
+        }
+
+        long rank = (long)Math.ceil( total * fraction );
+        long seen = 0;
+        for( int bucket = 0; bucket < BUCKETS; bucket++ ) {
+            seen += counts[bucket];
+            if( seen >= rank ) {
+                return 1L << bucket;
+            }
+        }
+        return 1L << ( BUCKETS - 1 );
+    }
+}
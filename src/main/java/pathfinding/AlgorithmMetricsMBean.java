@@ -0,0 +1,82 @@
+package pathfinding;
+
+/**
+ * The management interface of AlgorithmMetrics, through which the totals
+ * for one algorithm are exposed over JMX.
+ */
+public interface AlgorithmMetricsMBean {
+    /**
+     * @return the name of the algorithm
+     */
+    public String getAlgorithm();
+
+    /**
+     * @return the number of searches
+     */
+    public long getSearchCount();
+
+    /**
+     * @return the number of searches that found no path
+     */
+    public long getFailedCount();
+
+    /**
+     * @return the number of cells expanded by all searches
+     */
+    public long getExpandedTotal();
+
+    /**
+     * @return the number of cells generated by all searches
+     */
+    public long getGeneratedTotal();
+
+    /**
+     * @return the number of keys decreased by all searches
+     */
+    public long getDecreasedKeyTotal();
+
+    /**
+     * @return the mean number of cells expanded per search
+     */
+    public double getMeanExpanded();
+
+    /**
+     * @return the mean time per search, in microseconds
+     */
+    public double getMeanMicros();
+
+    /**
+     * @return the longest time taken by a search, in microseconds
+     */
+    public long getMaxMicros();
+
+    /**
+     * @return an upper bound on the median time per search, in microseconds
+     */
+    public long getMedianMicros();
+
+    /**
+     * @return an upper bound on the 90th percentile of the time per search,
+     *         in microseconds
+     */
+    public long getPercentile90Micros();
+
+    /**
+     * @return an upper bound on the 99th percentile of the time per search,
+     *         in microseconds
+     */
+    public long getPercentile99Micros();
+
+    /**
+     * @return the number of searches in each bucket of the latency
+     *         histogram; bucket 0 counts searches taking less than a
+     *         microsecond, and bucket b those taking less than 2^b
+     *         microseconds but at least 2^(b-1)
+     */
+    public long[] getLatencyHistogram();
+
+    /**
+     * Sets every total to zero.
+     */
+    public void reset();
+}
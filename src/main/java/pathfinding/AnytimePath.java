@@ -0,0 +1,83 @@
+package pathfinding;
+
+/**
+ * The result of an anytime search (see Pathfinder.anytimeAstar()): the best
+ * path found before the deadline, and how far from optimal it may be.
+ *
+ * The path's cost is at most getEpsilon() times the cost of the cheapest
+ * path, so an epsilon of 1 means the path is optimal. If the deadline passed
+ * before any path was found, there is no path and the epsilon is infinite.
+ *
+ * @param <T> the type of path: int[] for a GridGraph, or List&lt;Node&gt; for
+ *            a Node[][]
+ */
+public class AnytimePath<T> {
+    private final T path;
+    private final double cost;
+    private final double epsilon;
+    private final int iterations;
+    private final boolean complete;
+
+    AnytimePath( T path, double cost, double epsilon, int iterations, boolean complete ) {
+        this.path = path;
+        this.cost = cost;
+        this.epsilon = epsilon;
+        this.iterations = iterations;
+        this.complete = complete;
+    }
+
+    /**
+     * @return the best path found, or null if none was found (because there
+     *         is none, or because the deadline passed first)
+     */
+    public T getPath() {
+        return path;
+    }
+
+    /**
+     * @return the cost of the path, or -1 if there is no path
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    /**
+     * @return the suboptimality bound of the path: its cost is at most this
+     *         many times the cost of the cheapest path. 1 if the path is
+     *         optimal (or it is known that there is no path), and
+     *         Double.POSITIVE_INFINITY if the deadline passed before any path
+     *         was found.
+     */
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    /**
+     * @return the number of searches that ran to completion, each finding a
+     *         path at least as good as the last
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return true if the search finished before the deadline, so that the
+     *         path is optimal or there is no path; false if it was cut short
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return a copy of this result holding a different form of the path
+     */
+    <U> AnytimePath<U> withPath( U path ) {
+        return new AnytimePath<U>( path, cost, epsilon, iterations, complete );
+    }
+
+    @Override
+    public String toString() {
+        return "AnytimePath[cost " + cost + ", epsilon " + epsilon + ", " + iterations + " iterations"
+               + ( complete ? "" : ", timed out" ) + "]";
+    }
+}
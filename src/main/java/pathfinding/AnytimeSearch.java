@@ -0,0 +1,195 @@
+package pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Anytime Repairing A* (ARA*), used by Pathfinder.anytimeAstar().
+ *
+ * The first iteration is a weighted A*, keyed by cost plus epsilon times the
+ * heuristic, which finds a path quickly whose cost is at most epsilon times
+ * the cheapest. Each later iteration lowers epsilon and improves the path,
+ * reusing the costs already found: only the open cells, and the cells closed
+ * in an earlier iteration whose cost has since fallen, are searched again.
+ * Once epsilon reaches 1 the path is optimal.
+ *
+ * After each iteration, the path's actual bound is worked out from the
+ * cheapest cost plus heuristic left unexpanded, which is a lower bound on
+ * the cost of any path; this is often much tighter than epsilon, in which
+ * case later iterations start from it.
+ *
+ * The deadline is checked every DEADLINE_INTERVAL expansions. When it has
+ * passed, the path found by the last complete iteration is returned.
+ */
+final class AnytimeSearch {
+    /**
+     * A deadline that never passes.
+     */
+    static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private static final int DEADLINE_INTERVAL = 256;
+    private static final double EPSILON_STEP = 0.5;
+
+    private AnytimeSearch() {
+    }
+
+    /**
+     * Searches for a path between origin and target, which must differ. The
+     * context must have been reset before this is called.
+     *
+     * @param heuristic  must be consistent, or the reported bounds may not
+     *                   hold
+     * @param returnFast if true, return the first path found, whose bound
+     *                   is epsilon
+     * @param epsilon    the bound of the first iteration, at least 1
+     * @param deadline   the System.nanoTime() by which to return, or
+     *                   NO_DEADLINE
+     */
+    public static AnytimePath<int[]> search( SearchSpace space,
+                                             int origin, int target,
+                                             Heuristic heuristic,
+                                             boolean returnFast,
+                                             boolean allowDiagonal,
+                                             double epsilon,
+                                             long deadline,
+                                             SearchContext context ) {
+        IndexedHeap open = context.getOpen();
+
+        // the cells closed in this iteration, whose visited flags are
+        // cleared before the next
+        int[] closed = new int[ 64 ];
+        int closedCount = 0;
+
+        // the closed cells whose cost has fallen since they were closed,
+        // which are opened again in the next iteration
+        int[] inconsistent = new int[ 64 ];
+        int inconsistentCount = 0;
+
+        context.setCost( origin, 0 );
+        open.push( origin, epsilon * heuristic.estimate( space, origin, target ) );
+
+        int[] path = null;
+        double pathCost = -1;
+        double bound = Double.POSITIVE_INFINITY;
+        int iterations = 0;
+
+        int width = space.getWidth();
+        int height = space.getHeight();
+        int[] directions = Directions.get( allowDiagonal );
+        int[] offsets = context.getOffsets( width );
+        double[] stepCosts = space.getStepCosts();
+        int expansions = 0;
+
+        while( true ) {
+            while( !open.isEmpty() ) {
+                double targetCost = context.getCost( target );
+                if( targetCost != -1 && open.peekKey() >= targetCost ) {
+                    break;
+                }
+                if( ++expansions % DEADLINE_INTERVAL == 0 && isPast( deadline ) ) {
+                    return new AnytimePath<int[]>( path, pathCost, bound, iterations, false );
+                }
+
+                int current = open.poll();
+                context.setVisited( current, true );
+                if( closedCount == closed.length ) {
+                    closed = Arrays.copyOf( closed, closedCount * 2 );
+                }
+                closed[ closedCount++ ] = current;
+
+                double currentCost = context.getCost( current );
+                int x = current % width;
+                int y = current / width;
+                boolean interior = x > 0 && y > 0 && x < width - 1 && y < height - 1;
+                for( int direction : directions ) {
+                    if( !interior && !Directions.inBounds( x, y, direction, width, height ) ) {
+                        continue;
+                    }
+
+                    int adjacent = current + offsets[direction];
+                    if( !space.isTraversable( adjacent ) ) {
+                        continue;
+                    }
+
+                    double stepCost = stepCosts != null ? stepCosts[direction] : distance( space, current, adjacent );
+                    double newCost = currentCost + stepCost;
+                    double cost = context.getCost( adjacent );
+                    if( cost != -1 && cost <= newCost ) {
+                        continue;
+                    }
+
+                    context.setCost( adjacent, newCost );
+                    context.setPrevious( adjacent, current );
+                    if( !context.isVisited( adjacent ) ) {
+                        open.push( adjacent, newCost + epsilon * heuristic.estimate( space, adjacent, target ) );
+                    }
+                    else {
+                        if( inconsistentCount == inconsistent.length ) {
+                            inconsistent = Arrays.copyOf( inconsistent, inconsistentCount * 2 );
+                        }
+                        inconsistent[ inconsistentCount++ ] = adjacent;
+                    }
+                }
+            }
+            iterations++;
+
+            double targetCost = context.getCost( target );
+            if( targetCost == -1 ) {
+                // every reachable cell was expanded
+                return new AnytimePath<int[]>( null, -1, 1, iterations, true );
+            }
+            path = Pathfinder.walkBackwards( context, target );
+            pathCost = targetCost;
+
+            // no path can cost less than the cheapest cost plus heuristic of
+            // any cell left to search
+            double lowest = targetCost;
+            for( int i = 0; i < open.size(); i++ ) {
+                int index = open.getId( i );
+                lowest = Math.min( lowest, context.getCost( index ) + heuristic.estimate( space, index, target ) );
+            }
+            for( int i = 0; i < inconsistentCount; i++ ) {
+                int index = inconsistent[i];
+                lowest = Math.min( lowest, context.getCost( index ) + heuristic.estimate( space, index, target ) );
+            }
+            bound = Math.max( 1, Math.min( epsilon, lowest > 0 ? targetCost / lowest : epsilon ) );
+
+            if( bound == 1 || returnFast ) {
+                return new AnytimePath<int[]>( path, pathCost, bound, iterations, bound == 1 );
+            }
+            if( isPast( deadline ) ) {
+                return new AnytimePath<int[]>( path, pathCost, bound, iterations, false );
+            }
+
+            epsilon = Math.max( 1, Math.min( epsilon - EPSILON_STEP, bound ) );
+
+            // re-key the open cells for the new epsilon, and open the
+            // inconsistent ones again
+            int[] opened = new int[ open.size() ];
+            for( int i = 0; i < opened.length; i++ ) {
+                opened[i] = open.getId( i );
+            }
+            for( int index : opened ) {
+                open.update( index, context.getCost( index ) + epsilon * heuristic.estimate( space, index, target ) );
+            }
+            for( int i = 0; i < inconsistentCount; i++ ) {
+                int index = inconsistent[i];
+                open.push( index, context.getCost( index ) + epsilon * heuristic.estimate( space, index, target ) );
+            }
+            inconsistentCount = 0;
+
+            for( int i = 0; i < closedCount; i++ ) {
+                context.setVisited( closed[i], false );
+            }
+            closedCount = 0;
+        }
+    }
+
+    private static boolean isPast( long deadline ) {
+        return deadline != NO_DEADLINE && System.nanoTime() - deadline >= 0;
+    }
+
+    private static double distance( SearchSpace space, int one, int two ) {
+        return Vertex.distance( space.getLocationX( one ), space.getLocationY( one ),
+                                space.getLocationX( two ), space.getLocationY( two ) );
+    }
+}
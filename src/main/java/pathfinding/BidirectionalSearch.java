@@ -0,0 +1,164 @@
+package pathfinding;
+
+/**
+ * Bidirectional Dijkstra's and A*, used by Pathfinder.bidirectionalDijkstra()
+ * and Pathfinder.bidirectionalAstar().
+ *
+ * One search runs forward from the origin and another backward from the
+ * target, each expanding whichever has the cheaper next cell. Every time
+ * either search reaches a cell the other has already reached, the cost of
+ * the path through that cell is compared against the best path found so far.
+ * Once the cheapest cells left in both open sets could not lead to a cheaper
+ * path, the best path is optimal. On long queries, the two searches together
+ * expand roughly half the area a single search would.
+ *
+ * For A*, each side uses the average of the two heuristics (toward the target
+ * minus toward the origin, halved), so that both searches agree on the cost
+ * of any path and the same stopping rule applies. This requires a consistent
+ * heuristic, such as Heuristic.EUCLIDEAN or Heuristic.OCTILE.
+ */
+final class BidirectionalSearch {
+
+    private BidirectionalSearch() {
+    }
+
+    /**
+     * Searches for a path between origin and target. Both contexts must have
+     * been reset before this is called.
+     *
+     * @param heuristic the heuristic, or null for Dijkstra's algorithm
+     * @param forward   holds the working data of the search from origin
+     * @param backward  holds the working data of the search from target
+     *
+     * @return the path from origin to target, or null if there is none
+     */
+    public static int[] search( SearchSpace space,
+                                int origin, int target,
+                                Heuristic heuristic,
+                                boolean returnFast,
+                                boolean allowDiagonal,
+                                SearchContext forward,
+                                SearchContext backward ) {
+        int width = space.getWidth();
+        int height = space.getHeight();
+        int[] directions = Directions.get( allowDiagonal );
+        int[] offsets = forward.getOffsets( width );
+        double[] stepCosts = space.getStepCosts();
+        IndexedHeap forwardOpen = forward.getOpen();
+        IndexedHeap backwardOpen = backward.getOpen();
+
+        // neither search checks the cell it starts from, and the backward
+        // search would otherwise end paths on a blocked target
+        if( !space.isTraversable( origin ) || !space.isTraversable( target ) ) {
+            return null;
+        }
+
+        forward.setCost( origin, 0 );
+        forwardOpen.push( origin, potential( space, heuristic, origin, origin, target ) );
+        backward.setCost( target, 0 );
+        backwardOpen.push( target, -potential( space, heuristic, target, origin, target ) );
+
+        // the best path found so far crosses from meetFrom (reached by the
+        // forward search) to meetTo (reached by the backward search)
+        double best = Double.POSITIVE_INFINITY;
+        int meetFrom = -1;
+        int meetTo = -1;
+
+        while( !forwardOpen.isEmpty() && !backwardOpen.isEmpty() ) {
+            if( forwardOpen.peekKey() + backwardOpen.peekKey() >= best ) {
+                break;
+            }
+            if( returnFast && meetFrom != -1 ) {
+                break;
+            }
+
+            boolean isForward = forwardOpen.peekKey() <= backwardOpen.peekKey();
+            SearchContext context = isForward ? forward : backward;
+            SearchContext other = isForward ? backward : forward;
+            IndexedHeap open = isForward ? forwardOpen : backwardOpen;
+            double sign = isForward ? 1 : -1;
+
+            int current = open.poll();
+            context.setVisited( current, true );
+            double currentCost = context.getCost( current );
+
+            int x = current % width;
+            int y = current / width;
+            boolean interior = x > 0 && y > 0 && x < width - 1 && y < height - 1;
+            for( int direction : directions ) {
+                if( !interior && !Directions.inBounds( x, y, direction, width, height ) ) {
+                    continue;
+                }
+
+                int adjacent = current + offsets[direction];
+                if( !space.isTraversable( adjacent ) || context.isVisited( adjacent ) ) {
+                    continue;
+                }
+
+                double stepCost = stepCosts != null ? stepCosts[direction] : distance( space, current, adjacent );
+                double newCost = currentCost + stepCost;
+                double cost = context.getCost( adjacent );
+                if( cost == -1 || cost > newCost ) {
+                    context.setCost( adjacent, newCost );
+                    context.setPrevious( adjacent, current );
+                    open.push( adjacent, newCost + sign * potential( space, heuristic, adjacent, origin, target ) );
+                }
+
+                double otherCost = other.getCost( adjacent );
+                if( otherCost != -1 && newCost + otherCost < best ) {
+                    best = newCost + otherCost;
+                    meetFrom = isForward ? current : adjacent;
+                    meetTo = isForward ? adjacent : current;
+                }
+            }
+        }
+
+        if( meetFrom == -1 ) {
+            return null;
+        }
+
+        return splice( forward, backward, meetFrom, meetTo );
+    }
+
+    /**
+     * Joins the forward search's path to meetFrom with the backward search's
+     * path from meetTo.
+     */
+    private static int[] splice( SearchContext forward, SearchContext backward, int meetFrom, int meetTo ) {
+        int forwardLength = 0;
+        for( int index = meetFrom; index != -1; index = forward.getPrevious( index ) ) {
+            forwardLength++;
+        }
+        int backwardLength = 0;
+        for( int index = meetTo; index != -1; index = backward.getPrevious( index ) ) {
+            backwardLength++;
+        }
+
+        int[] path = new int[ forwardLength + backwardLength ];
+        int next = forwardLength;
+        for( int index = meetFrom; index != -1; index = forward.getPrevious( index ) ) {
+            path[--next] = index;
+        }
+        next = forwardLength;
+        for( int index = meetTo; index != -1; index = backward.getPrevious( index ) ) {
+            path[next++] = index;
+        }
+        return path;
+    }
+
+    /**
+     * @return the forward search's potential for a cell; the backward search
+     *         uses its negation
+     */
+    private static double potential( SearchSpace space, Heuristic heuristic, int index, int origin, int target ) {
+        if( heuristic == null ) {
+            return 0;
+        }
+        return ( heuristic.estimate( space, index, target ) - heuristic.estimate( space, index, origin ) ) / 2;
+    }
+
+    private static double distance( SearchSpace space, int one, int two ) {
+        return Vertex.distance( space.getLocationX( one ), space.getLocationY( one ),
+                                space.getLocationX( two ), space.getLocationY( two ) );
+    }
+}
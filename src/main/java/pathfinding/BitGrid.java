@@ -0,0 +1,392 @@
+package pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * The traversability of a rectangular grid of cells, stored as one bit per
+ * cell.
+ *
+ * Cells are packed into longs in the order of their indices (y * width + x),
+ * so a row of cells is a run of consecutive bits, and up to 64 cells of a
+ * row can be tested with a single mask. openRun(), isRowTraversable() and
+ * hasLineOfSight() work a word at a time in this way, rather than a cell at
+ * a time.
+ *
+ * Every GridGraph keeps its traversability in a BitGrid (see
+ * GridGraph.getBits()), which Pathfinder.jps() scans a word at a time. To
+ * search a Node[][] this way, copy its traversability with fromNodes(),
+ * search a GridGraph created from the result, and convert the path back with
+ * GridGraph.toNodes(). A BitGrid is not linked to the nodes it was copied
+ * from: when a node's traversability changes, call set() for its cell too,
+ * or use copyTo() to copy the bits back into the nodes.
+ *
+ * Because neighbouring cells share a long, set() must not be called by
+ * several threads at once; reading from any number of threads is safe while
+ * the grid is not being changed.
+ */
+public class BitGrid {
+    private final int width;
+    private final int height;
+
+    // bit (index & 63) of words[index >>> 6] is set if the cell is
+    // traversable
+    private final long[] words;
+
+    /**
+     * Creates a grid in which every cell is traversable.
+     *
+     * @param width  the width of the grid, in cells
+     * @param height the height of the grid, in cells
+     */
+    public BitGrid( int width, int height ) {
+        this( width, height, new long[ words( width, height ) ] );
+        Arrays.fill( words, -1L );
+    }
+
+    /**
+     * Creates a grid whose traversability is given by the bits of words,
+     * which the grid takes ownership of.
+     */
+    BitGrid( int width, int height, long[] words ) {
+        if( width <= 0 || height <= 0 ) {
+            throw new IllegalArgumentException( "Invalid size: " + width + "x" + height );
+        }
+        if( words.length != words( width, height ) ) {
+            throw new IllegalArgumentException( "Expected " + words( width, height ) + " words of traversability: " + words.length );
+        }
+        this.width = width;
+        this.height = height;
+        this.words = words;
+    }
+
+    /**
+     * Creates a grid with the same traversability as the given nodes, where
+     * the node at nodes[x][y] is the cell at (x,y).
+     *
+     * @param nodes the search space
+     * @return the traversability of the nodes
+     */
+    public static BitGrid fromNodes( Node[][] nodes ) {
+        int width = nodes.length;
+        int height = nodes[0].length;
+
+        BitGrid bits = new BitGrid( width, height, new long[ words( width, height ) ] );
+        for( int y = 0; y < height; y++ ) {
+            int index = y * width;
+            for( int x = 0; x < width; x++, index++ ) {
+                if( nodes[x][y].traversable ) {
+                    bits.words[ index >>> 6 ] |= 1L << index;
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Sets the traversability of each node to that of its cell.
+     *
+     * @param nodes the search space, which must be the same size as this grid
+     * @throws IllegalArgumentException if the nodes are a different size
+     */
+    public void copyTo( Node[][] nodes ) {
+        if( nodes.length != width || nodes[0].length != height ) {
+            throw new IllegalArgumentException( "Expected " + width + "x" + height + " nodes: " + nodes.length + "x" + nodes[0].length );
+        }
+        for( int x = 0; x < width; x++ ) {
+            for( int y = 0; y < height; y++ ) {
+                nodes[x][y].traversable = get( y * width + x );
+            }
+        }
+    }
+
+    /// cells ///
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean get( int x, int y ) {
+        return get( y * width + x );
+    }
+
+    /**
+     * @param index the index of a cell
+     * @return true if the cell is traversable
+     */
+    public boolean get( int index ) {
+        return ( words[ index >>> 6 ] & ( 1L << index ) ) != 0;
+    }
+
+    public void set( int x, int y, boolean traversable ) {
+        set( y * width + x, traversable );
+    }
+
+    public void set( int index, boolean traversable ) {
+        if( traversable ) {
+            words[ index >>> 6 ] |= 1L << index;
+        }
+        else {
+            words[ index >>> 6 ] &= ~( 1L << index );
+        }
+    }
+
+    /**
+     * @return the number of traversable cells
+     */
+    public int countTraversable() {
+        int count = 0;
+        for( long word : words ) {
+            count += Long.bitCount( word );
+        }
+        // bits past the last cell are not cells
+        int spare = words.length * 64 - width * height;
+        if( spare > 0 ) {
+            count -= Long.bitCount( words[ words.length - 1 ] >>> ( 64 - spare ) );
+        }
+        return count;
+    }
+
+    /**
+     * Copies a rectangle of cells, a word at a time, into a new grid.
+     *
+     * @param x      the x coordinate of the rectangle's left column
+     * @param y      the y coordinate of the rectangle's top row
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     * @return a grid whose cell (0,0) is the cell (x,y) of this grid
+     * @throws IllegalArgumentException if the rectangle is not within the
+     *                                  grid
+     */
+    public BitGrid getRegion( int x, int y, int width, int height ) {
+        if( x < 0 || y < 0 || width <= 0 || height <= 0 || x + width > this.width || y + height > this.height ) {
+            throw new IllegalArgumentException( "Region " + width + "x" + height + " at " + x + "," + y + " is not within the grid" );
+        }
+
+        BitGrid region = new BitGrid( width, height, new long[ words( width, height ) ] );
+        for( int row = 0; row < height; row++ ) {
+            for( int column = 0; column < width; column += 64 ) {
+                long cells = getRow( x + column, y + row );
+                int count = width - column;
+                if( count < 64 ) {
+                    cells &= ( 1L << count ) - 1;
+                }
+                region.or( row * width + column, cells );
+            }
+        }
+        return region;
+    }
+
+    /// runs ///
+
+    /**
+     * Counts the traversable cells in a row, starting at (x,y) and stepping
+     * in direction dx, up to the first that is not traversable or the edge
+     * of the grid.
+     *
+     * @param x  the x coordinate of the first cell
+     * @param y  the y coordinate of the row
+     * @param dx 1 to count to the right, or -1 to count to the left
+     * @return the number of traversable cells in the run, which is 0 if
+     *         (x,y) is not traversable or outside the grid
+     */
+    public int openRun( int x, int y, int dx ) {
+        if( dx != 1 && dx != -1 ) {
+            throw new IllegalArgumentException( "Expected a step of 1 or -1: " + dx );
+        }
+        int run = 0;
+        while( true ) {
+            long cells = getRow( x + run * dx, y, dx );
+            if( cells != -1L ) {
+                return run + Long.numberOfTrailingZeros( ~cells );
+            }
+            run += 64;
+        }
+    }
+
+    /**
+     * @param y     the y coordinate of the row
+     * @param fromX the x coordinate of one end of the range
+     * @param toX   the x coordinate of the other end of the range
+     * @return true if every cell from (fromX,y) to (toX,y) inclusive is
+     *         traversable; false if any is not, or lies outside the grid
+     */
+    public boolean isRowTraversable( int y, int fromX, int toX ) {
+        int left = Math.min( fromX, toX );
+        int right = Math.max( fromX, toX );
+        if( y < 0 || y >= height || left < 0 || right >= width ) {
+            return false;
+        }
+        return isRangeTraversable( y * width + left, y * width + right );
+    }
+
+    /**
+     * Tests whether a straight line between the centres of two cells passes
+     * only through traversable cells. The cells on the line are those a
+     * Bresenham line would visit; the result is the same whichever cell is
+     * given first.
+     *
+     * Shallow lines visit a run of cells in each row, so are tested a word at
+     * a time; steep lines, a cell at a time.
+     *
+     * @return true if every cell on the line, including both ends, is
+     *         traversable; false if any is not, or lies outside the grid
+     */
+    public boolean hasLineOfSight( int x0, int y0, int x1, int y1 ) {
+        if( x1 < x0 || ( x1 == x0 && y1 < y0 ) ) {
+            int swap = x0;
+            x0 = x1;
+            x1 = swap;
+            swap = y0;
+            y0 = y1;
+            y1 = swap;
+        }
+
+        int dx = x1 - x0;
+        int dy = Math.abs( y1 - y0 );
+        int sy = y1 < y0 ? -1 : 1;
+
+        if( dx >= dy ) {
+            if( dy == 0 ) {
+                return isRowTraversable( y0, x0, x1 );
+            }
+            // step i is in row y0 + sy * round( i * dy / dx ), rounding
+            // halves up, so row k holds the steps from
+            // ceil( ( 2k - 1 ) * dx / 2dy ) to the start of row k + 1
+            int from = 0;
+            for( int k = 0; k <= dy; k++ ) {
+                int to = k == dy ? dx : ceilDiv( ( 2L * k + 1 ) * dx, 2L * dy ) - 1;
+                if( !isRowTraversable( y0 + sy * k, x0 + from, x0 + to ) ) {
+                    return false;
+                }
+                from = to + 1;
+            }
+            return true;
+        }
+
+        // steep lines visit one cell per row, at x0 + round( k * dx / dy )
+        for( int k = 0; k <= dy; k++ ) {
+            int x = x0 + (int)( ( 2L * k * dx + dy ) / ( 2L * dy ) );
+            int y = y0 + sy * k;
+            if( x < 0 || x >= width || y < 0 || y >= height || !get( y * width + x ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the traversability of up to 64 cells of a row, starting at
+     * (x,y) and stepping in direction dx: bit i is set if the cell at
+     * (x + i * dx, y) is traversable. Cells outside the grid are not
+     * traversable.
+     *
+     * @param dx 1 or -1
+     */
+    long getRow( int x, int y, int dx ) {
+        if( dx > 0 ) {
+            return getRow( x, y );
+        }
+        return Long.reverse( getRow( x - 63, y ) );
+    }
+
+    /// internal utilities ///
+
+    /**
+     * @return the traversability of the cells (x,y) to (x + 63,y): bit i is
+     *         set if cell (x + i,y) is in the grid and traversable
+     */
+    private long getRow( int x, int y ) {
+        if( y < 0 || y >= height ) {
+            return 0;
+        }
+        if( x >= 0 && x <= width - 64 ) {
+            return getBits( y * width + x );
+        }
+        int left = Math.max( x, 0 );
+        int right = Math.min( x + 64, width );
+        if( left >= right ) {
+            return 0;
+        }
+
+        int count = right - left;
+        long cells = getBits( y * width + left );
+        if( count < 64 ) {
+            cells &= ( 1L << count ) - 1;
+        }
+        return cells << ( left - x );
+    }
+
+    /**
+     * @return the 64 bits starting at the given index, with any bits past
+     *         the end of the array clear
+     */
+    private long getBits( int index ) {
+        int word = index >>> 6;
+        int offset = index & 63;
+        long bits = words[word] >>> offset;
+        if( offset != 0 && word + 1 < words.length ) {
+            bits |= words[ word + 1 ] << ( 64 - offset );
+        }
+        return bits;
+    }
+
+    /**
+     * Sets the cells whose bits are set in cells, from the given index
+     * onwards.
+     */
+    private void or( int index, long cells ) {
+        int word = index >>> 6;
+        int offset = index & 63;
+        words[word] |= cells << offset;
+        if( offset != 0 && ( cells >>> ( 64 - offset ) ) != 0 ) {
+            words[ word + 1 ] |= cells >>> ( 64 - offset );
+        }
+    }
+
+    /**
+     * @return true if every cell from index from to index to inclusive is
+     *         traversable
+     */
+    private boolean isRangeTraversable( int from, int to ) {
+        int first = from >>> 6;
+        int last = to >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> ( 63 - ( to & 63 ) );
+        if( first == last ) {
+            long mask = firstMask & lastMask;
+            return ( words[first] & mask ) == mask;
+        }
+        if( ( words[first] & firstMask ) != firstMask ) {
+            return false;
+        }
+        for( int word = first + 1; word < last; word++ ) {
+            if( words[word] != -1L ) {
+                return false;
+            }
+        }
+        return ( words[last] & lastMask ) == lastMask;
+    }
+
+    private static int ceilDiv( long numerator, long denominator ) {
+        return (int)( ( numerator + denominator - 1 ) / denominator );
+    }
+
+    /**
+     * @return the packed traversability bits, which must not be modified
+     *         except through set()
+     */
+    long[] getWords() {
+        return words;
+    }
+
+    /**
+     * @return the number of longs needed to hold one bit per cell
+     */
+    static int words( int width, int height ) {
+        return (int)( ( (long)width * height + 63 ) >>> 6 );
+    }
+}
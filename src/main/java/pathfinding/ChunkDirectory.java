@@ -0,0 +1,79 @@
+package pathfinding;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A ChunkStore that keeps each chunk in its own map file (see MapFile), in a
+ * single directory. A chunk with no file has no traversable cells, so a
+ * world that is mostly untraversable needs few files.
+ */
+public class ChunkDirectory implements ChunkStore {
+    private final Path directory;
+
+    /**
+     * @param directory the directory holding the chunk files
+     */
+    public ChunkDirectory( Path directory ) {
+        this.directory = directory;
+    }
+
+    /**
+     * Splits a grid into chunks, and writes each chunk that has a
+     * traversable cell to a directory.
+     *
+     * @param grid      the grid, whose width and height must be multiples of
+     *                  chunkSize
+     * @param chunkSize the width and height of each chunk
+     * @param directory the directory to write to, which must exist
+     * @return a store reading the chunks written
+     * @throws IOException if a chunk could not be written
+     */
+    public static ChunkDirectory split( BitGrid grid, int chunkSize, Path directory ) throws IOException {
+        if( chunkSize <= 0 || grid.getWidth() % chunkSize != 0 || grid.getHeight() % chunkSize != 0 ) {
+            throw new IllegalArgumentException( "Grid of " + grid.getWidth() + "x" + grid.getHeight() + " cannot be split into chunks of " + chunkSize );
+        }
+
+        ChunkDirectory store = new ChunkDirectory( directory );
+        for( int chunkY = 0; chunkY < grid.getHeight() / chunkSize; chunkY++ ) {
+            for( int chunkX = 0; chunkX < grid.getWidth() / chunkSize; chunkX++ ) {
+                BitGrid chunk = grid.getRegion( chunkX * chunkSize, chunkY * chunkSize, chunkSize, chunkSize );
+                if( chunk.countTraversable() > 0 ) {
+                    store.write( chunkX, chunkY, chunk );
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Writes a chunk, replacing any file it already has.
+     *
+     * @param chunkX the x coordinate of the chunk, in chunks
+     * @param chunkY the y coordinate of the chunk, in chunks
+     * @param chunk  the traversability of the chunk's cells
+     * @throws IOException if the file could not be written
+     */
+    public void write( int chunkX, int chunkY, BitGrid chunk ) throws IOException {
+        MapFile.write( new GridGraph( chunk, 0, 0, 1, 1 ), getFile( chunkX, chunkY ) );
+    }
+
+    @Override
+    public BitGrid load( int chunkX, int chunkY ) throws IOException {
+        Path file = getFile( chunkX, chunkY );
+        if( !Files.exists( file ) ) {
+            return null;
+        }
+        return MapFile.read( file ).getBits();
+    }
+
+    /**
+     * @param chunkX the x coordinate of the chunk, in chunks
+     * @param chunkY the y coordinate of the chunk, in chunks
+     * @return the file holding the chunk, which may not exist
+     */
+    public Path getFile( int chunkX, int chunkY ) {
+        return directory.resolve( "chunk-" + chunkX + "-" + chunkY + ".map" );
+    }
+}
@@ -0,0 +1,23 @@
+package pathfinding;
+
+import java.io.IOException;
+
+/**
+ * The source of the chunks of a ChunkedGrid, each of which is loaded when a
+ * search first reaches it.
+ *
+ * A ChunkedGrid calls load() from the thread that is searching it, and only
+ * from one thread at a time.
+ */
+public interface ChunkStore {
+    /**
+     * Loads the traversability of a chunk.
+     *
+     * @param chunkX the x coordinate of the chunk, in chunks
+     * @param chunkY the y coordinate of the chunk, in chunks
+     * @return the chunk, whose width and height must be the chunk size of
+     *         the ChunkedGrid; or null if no cell in the chunk is traversable
+     * @throws IOException if the chunk could not be loaded
+     */
+    public BitGrid load( int chunkX, int chunkY ) throws IOException;
+}
@@ -0,0 +1,334 @@
+package pathfinding;
+
+import java.io.IOException;
+
+/**
+ * An evenly-spaced search space too large to hold in memory, divided into
+ * square chunks that are loaded from a ChunkStore as searches reach them.
+ *
+ * A chunk is loaded the first time one of its cells is looked at. A chunk
+ * whose cells are all traversable, or all untraversable, is remembered as
+ * such and takes no storage; other chunks take one bit per cell, and are
+ * evicted (least recently used first) whenever loading another would exceed
+ * the memory budget. An evicted chunk is loaded again if it is needed again.
+ * A search therefore only loads the chunks its frontier reaches, and a
+ * repeated search of the same area loads nothing.
+ *
+ * Pathfinder.bestFirst(), dijkstra() and astar() can search a ChunkedGrid,
+ * returning paths as arrays of cell indices (y * width + x), as for a
+ * GridGraph. Their working data is only allocated for the cells they reach,
+ * but cell indices are ints, so a ChunkedGrid holds at most
+ * Integer.MAX_VALUE cells (for example, 65536 x 32760 with chunks of 8).
+ *
+ * A ChunkedGrid is not thread safe: looking at a cell may load or evict a
+ * chunk, so it must only be searched by one thread at a time. It does not
+ * change its chunks; to change the world, change the ChunkStore and call
+ * invalidate() for each chunk changed.
+ */
+public class ChunkedGrid implements SearchSpace {
+    private static final byte UNLOADED = 0;
+    private static final byte OPEN = 1;
+    private static final byte BLOCKED = 2;
+    private static final byte MIXED = 3;
+
+    private final ChunkStore store;
+    private final int width;
+    private final int height;
+    private final int chunkSize;
+    private final int chunkShift;
+    private final int chunksX;
+    private final int startX;
+    private final int startY;
+    private final int stepX;
+    private final int stepY;
+    private final double[] stepCosts;
+    private final long memoryBudget;
+
+    // per chunk, in the order chunkY * chunksX + chunkX
+    private final byte[] states;
+    private final long[][] cells;
+    private final int[] lastUsed;
+
+    // the chunks whose cells are held, in no particular order
+    private final int[] resident;
+    private int residentCount;
+    private int clock;
+
+    private long loads;
+    private long evictions;
+
+    /**
+     * Creates a search space in which no chunk has been loaded.
+     *
+     * @param store        the source of the chunks
+     * @param width        the width of the search space, in cells; a
+     *                     multiple of chunkSize
+     * @param height       the height of the search space, in cells; a
+     *                     multiple of chunkSize
+     * @param chunkSize    the width and height of each chunk, in cells; a
+     *                     power of two of at least 8
+     * @param memoryBudget the greatest number of bytes of chunk data to hold
+     *                     at once; at least enough for one chunk
+     * @param startX       the "real-world" starting x coordinate
+     * @param startY       the "real-world" starting y coordinate
+     * @param stepX        the increment of each "real-world" x coordinate
+     *                     between cells.
+     * @param stepY        the increment of each "real-world" y coordinate
+     *                     between cells.
+     */
+    public ChunkedGrid( ChunkStore store,
+                        int width, int height, int chunkSize,
+                        long memoryBudget,
+                        int startX, int startY,
+                        int stepX, int stepY ) {
+        if( chunkSize < 8 || Integer.bitCount( chunkSize ) != 1 ) {
+            throw new IllegalArgumentException( "Chunk size must be a power of two of at least 8: " + chunkSize );
+        }
+        if( width <= 0 || height <= 0 || width % chunkSize != 0 || height % chunkSize != 0 ) {
+            throw new IllegalArgumentException( "Size " + width + "x" + height + " is not a multiple of the chunk size " + chunkSize );
+        }
+        if( (long)width * height > Integer.MAX_VALUE ) {
+            throw new IllegalArgumentException( "Size " + width + "x" + height + " has more than " + Integer.MAX_VALUE + " cells" );
+        }
+        if( memoryBudget < getChunkBytes( chunkSize ) ) {
+            throw new IllegalArgumentException( "Memory budget " + memoryBudget + " cannot hold a chunk of " + getChunkBytes( chunkSize ) + " bytes" );
+        }
+
+        this.store = store;
+        this.width = width;
+        this.height = height;
+        this.chunkSize = chunkSize;
+        this.chunkShift = Integer.numberOfTrailingZeros( chunkSize );
+        this.chunksX = width / chunkSize;
+        this.startX = startX;
+        this.startY = startY;
+        this.stepX = stepX;
+        this.stepY = stepY;
+        this.stepCosts = Directions.stepCosts( stepX, stepY );
+        this.memoryBudget = memoryBudget;
+
+        int chunks = chunksX * ( height / chunkSize );
+        states = new byte[ chunks ];
+        cells = new long[ chunks ][];
+        lastUsed = new int[ chunks ];
+        resident = new int[ (int)Math.min( chunks, memoryBudget / getChunkBytes( chunkSize ) ) ];
+    }
+
+    /**
+     * Discards what is known about a chunk, so that it is loaded again when
+     * next needed. Call this after changing the chunk in the store.
+     *
+     * @param chunkX the x coordinate of the chunk, in chunks
+     * @param chunkY the y coordinate of the chunk, in chunks
+     */
+    public void invalidate( int chunkX, int chunkY ) {
+        int chunk = chunkY * chunksX + chunkX;
+        if( states[chunk] == MIXED ) {
+            evict( chunk );
+        }
+        states[chunk] = UNLOADED;
+    }
+
+    /// coordinates ///
+
+    public int index( int x, int y ) {
+        return y * width + x;
+    }
+
+    public int index( Vertex searchSpaceLocation ) {
+        return index( searchSpaceLocation.x, searchSpaceLocation.y );
+    }
+
+    public int getX( int index ) {
+        return index % width;
+    }
+
+    public int getY( int index ) {
+        return index / width;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /// chunks ///
+
+    /**
+     * @return the number of times a chunk has been loaded from the store,
+     *         including chunks loaded again after being evicted
+     */
+    public long getLoadCount() {
+        return loads;
+    }
+
+    /**
+     * @return the number of times a chunk has been evicted to stay within
+     *         the memory budget
+     */
+    public long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return the number of chunks whose cells are currently held
+     */
+    public int getResidentChunkCount() {
+        return residentCount;
+    }
+
+    /**
+     * @return the number of chunks known to be entirely traversable or
+     *         entirely untraversable, which take no storage
+     */
+    public int getUniformChunkCount() {
+        int count = 0;
+        for( byte state : states ) {
+            if( state == OPEN || state == BLOCKED ) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of bytes of chunk data currently held
+     */
+    public long getMemoryUsed() {
+        return residentCount * getChunkBytes( chunkSize );
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /// SearchSpace ///
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public boolean isTraversable( int index ) {
+        int x = index % width;
+        int y = index / width;
+        int chunk = ( y >>> chunkShift ) * chunksX + ( x >>> chunkShift );
+        long[] words = cells[chunk];
+        if( words == null ) {
+            return isTraversable( chunk, x, y );
+        }
+        lastUsed[chunk] = clock;
+
+        int mask = chunkSize - 1;
+        int cell = ( ( y & mask ) << chunkShift ) | ( x & mask );
+        return ( words[ cell >>> 6 ] & ( 1L << cell ) ) != 0;
+    }
+
+    @Override
+    public int getLocationX( int index ) {
+        return startX + ( getX( index ) * stepX );
+    }
+
+    @Override
+    public int getLocationY( int index ) {
+        return startY + ( getY( index ) * stepY );
+    }
+
+    @Override
+    public double[] getStepCosts() {
+        return stepCosts;
+    }
+
+    /// internal utilities ///
+
+    /**
+     * Looks up a cell of a chunk whose cells are not held, loading the chunk
+     * if it has not been loaded. Kept apart from isTraversable( int ) so that
+     * the common case stays small enough to inline.
+     */
+    private boolean isTraversable( int chunk, int x, int y ) {
+        byte state = states[chunk];
+        if( state == UNLOADED ) {
+            long[] words = load( chunk );
+            if( words != null ) {
+                return isTraversable( y * width + x );
+            }
+            state = states[chunk];
+        }
+        return state == OPEN;
+    }
+
+    /**
+     * Loads a chunk from the store, evicting others if needed.
+     *
+     * @return the chunk's cells, or null if they are uniform
+     */
+    private long[] load( int chunk ) {
+        int chunkX = chunk % chunksX;
+        int chunkY = chunk / chunksX;
+        BitGrid bits;
+        try {
+            bits = store.load( chunkX, chunkY );
+        }
+        catch( IOException ex ) {
+            throw new IllegalStateException( "Could not load chunk " + chunkX + "," + chunkY, ex );
+        }
+        loads++;
+        clock++;
+
+        if( bits == null ) {
+            states[chunk] = BLOCKED;
+            return null;
+        }
+        if( bits.getWidth() != chunkSize || bits.getHeight() != chunkSize ) {
+            throw new IllegalStateException( "Chunk " + chunkX + "," + chunkY + " is " + bits.getWidth() + "x" + bits.getHeight()
+                                             + ", not " + chunkSize + "x" + chunkSize );
+        }
+
+        int traversable = bits.countTraversable();
+        if( traversable == 0 || traversable == chunkSize * chunkSize ) {
+            states[chunk] = traversable == 0 ? BLOCKED : OPEN;
+            return null;
+        }
+
+        if( residentCount == resident.length ) {
+            int oldest = 0;
+            for( int i = 1; i < residentCount; i++ ) {
+                if( lastUsed[ resident[i] ] - lastUsed[ resident[oldest] ] < 0 ) {
+                    oldest = i;
+                }
+            }
+            evict( resident[oldest] );
+            evictions++;
+        }
+
+        states[chunk] = MIXED;
+        cells[chunk] = bits.getWords();
+        lastUsed[chunk] = clock;
+        resident[ residentCount++ ] = chunk;
+        return cells[chunk];
+    }
+
+    private void evict( int chunk ) {
+        for( int i = 0; i < residentCount; i++ ) {
+            if( resident[i] == chunk ) {
+                resident[i] = resident[ --residentCount ];
+                break;
+            }
+        }
+        cells[chunk] = null;
+        states[chunk] = UNLOADED;
+    }
+
+    /**
+     * @return the number of bytes of cells held for a chunk
+     */
+    private static long getChunkBytes( int chunkSize ) {
+        return BitGrid.words( chunkSize, chunkSize ) * 8L;
+    }
+}
@@ -0,0 +1,419 @@
+package pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Labels the connected areas of a search space, so that whether any path
+ * exists between two cells can be answered in constant time, before
+ * searching.
+ *
+ * When no path exists, every search explores all the cells it can reach
+ * before returning null, which on a large map is the slowest query of all.
+ * Checking isConnected() first turns that into an immediate answer.
+ *
+ * Cells are connected if they are adjacent and both traversable; with
+ * diagonal movement, that includes diagonal neighbours, as in the
+ * Pathfinder's searches. The components must be built with the same
+ * allowDiagonal as the searches they are checked for.
+ *
+ * When the traversability of a cell changes, call update() for that cell.
+ * Opening a cell joins it to the components around it, which costs next to
+ * nothing. Closing a cell may split its component: this is decided by
+ * flood-filling outwards from each of its neighbours at once, which stops as
+ * soon as the fills have met or one of them has run out of cells, so the
+ * cost is in proportion to the smaller of the pieces rather than the map.
+ *
+ * The numbers returned by getComponent() identify components, but may change
+ * when the map is updated. A ConnectedComponents is not changed by queries,
+ * so it can be shared by any number of threads, but it must not be queried
+ * while being updated.
+ */
+public class ConnectedComponents {
+    private final SearchSpace space;
+    private final boolean allowDiagonal;
+    private final int width;
+    private final int height;
+    private final int[] directions;
+    private final int[] offsets = new int[ 8 ];
+
+    // each traversable cell holds an id, and ids are merged by union-find;
+    // untraversable cells hold -1
+    private final int[] labels;
+    private int[] parents = new int[ 16 ];
+    private int[] sizes = new int[ 16 ];
+    private int ids;
+    private int count;
+
+    // working data for the flood fills started by closing a cell
+    private final int[] visits;
+    private int stamp;
+    private final int[][] queues = new int[ 8 ][ 16 ];
+    private final int[] heads = new int[ 8 ];
+    private final int[] tails = new int[ 8 ];
+    private final int[] groups = new int[ 8 ];
+    private final int[] seeds = new int[ 8 ];
+
+    /**
+     * Labels the components of a Node[][].
+     *
+     * @param nodes         the search space
+     * @param allowDiagonal whether diagonal neighbours are connected
+     */
+    public ConnectedComponents( Node[][] nodes, boolean allowDiagonal ) {
+        this( NodeSearchSpace.of( nodes ), allowDiagonal );
+    }
+
+    /**
+     * Labels the components of a GridGraph.
+     *
+     * @param grid          the search space
+     * @param allowDiagonal whether diagonal neighbours are connected
+     */
+    public ConnectedComponents( GridGraph grid, boolean allowDiagonal ) {
+        this( (SearchSpace)grid, allowDiagonal );
+    }
+
+    private ConnectedComponents( SearchSpace space, boolean allowDiagonal ) {
+        this.space = space;
+        this.allowDiagonal = allowDiagonal;
+        this.width = space.getWidth();
+        this.height = space.getHeight();
+        this.directions = Directions.get( allowDiagonal );
+        Directions.fillOffsets( offsets, width );
+        this.labels = new int[ width * height ];
+        this.visits = new int[ width * height ];
+        build();
+    }
+
+    /**
+     * @return true if diagonal neighbours are connected
+     */
+    public boolean isDiagonalAllowed() {
+        return allowDiagonal;
+    }
+
+    /**
+     * @return the number of components
+     */
+    public int getComponentCount() {
+        return count;
+    }
+
+    /**
+     * @param index the index of a cell
+     * @return a number identifying the cell's component, or -1 if the cell
+     *         is not traversable
+     */
+    public int getComponent( int index ) {
+        int label = labels[index];
+        if( label == -1 ) {
+            return -1;
+        }
+        while( parents[label] != label ) {
+            label = parents[label];
+        }
+        return label;
+    }
+
+    /**
+     * @param one the index of a cell
+     * @param two the index of another cell
+     * @return true if a path exists between the two cells
+     */
+    public boolean isConnected( int one, int two ) {
+        int component = getComponent( one );
+        return component != -1 && component == getComponent( two );
+    }
+
+    /**
+     * @param one the search-space location of a cell
+     * @param two the search-space location of another cell
+     * @return true if a path exists between the two cells
+     */
+    public boolean isConnected( Vertex one, Vertex two ) {
+        return isConnected( one.y * width + one.x, two.y * width + two.x );
+    }
+
+    /**
+     * Updates the components after a change in the traversability of a
+     * cell. Call this after the change has been made.
+     *
+     * @param x the search-space x coordinate of the cell
+     * @param y the search-space y coordinate of the cell
+     */
+    public void update( int x, int y ) {
+        int cell = y * width + x;
+        boolean traversable = space.isTraversable( cell );
+        if( traversable == ( labels[cell] != -1 ) ) {
+            return;
+        }
+
+        if( traversable ) {
+            open( cell );
+        }
+        else {
+            close( cell );
+        }
+
+        // ids of split-off pieces are never reused, so start afresh once
+        // they outnumber the cells
+        if( ids > labels.length ) {
+            build();
+        }
+    }
+
+    /// internal utilities ///
+
+    /**
+     * Labels every cell from scratch, giving each component a single id.
+     */
+    private void build() {
+        ids = 0;
+        count = 0;
+        Arrays.fill( labels, -1 );
+        int[] queue = queues[0];
+        for( int start = 0; start < labels.length; start++ ) {
+            if( labels[start] != -1 || !space.isTraversable( start ) ) {
+                continue;
+            }
+
+            int id = newId();
+            count++;
+            labels[start] = id;
+            queue[0] = start;
+            int tail = 1;
+            for( int head = 0; head < tail; head++ ) {
+                int current = queue[head];
+                int x = current % width;
+                int y = current / width;
+                boolean interior = x > 0 && y > 0 && x < width - 1 && y < height - 1;
+                for( int direction : directions ) {
+                    if( !interior && !Directions.inBounds( x, y, direction, width, height ) ) {
+                        continue;
+                    }
+                    int adjacent = current + offsets[direction];
+                    if( labels[adjacent] == -1 && space.isTraversable( adjacent ) ) {
+                        labels[adjacent] = id;
+                        if( tail == queue.length ) {
+                            queue = Arrays.copyOf( queue, tail * 2 );
+                        }
+                        queue[tail++] = adjacent;
+                    }
+                }
+            }
+            sizes[id] = tail;
+        }
+        queues[0] = queue;
+    }
+
+    /**
+     * Joins a newly opened cell to the components of its neighbours, merging
+     * them if there are several.
+     */
+    private void open( int cell ) {
+        int x = cell % width;
+        int y = cell / width;
+        boolean interior = x > 0 && y > 0 && x < width - 1 && y < height - 1;
+        int root = -1;
+        for( int direction : directions ) {
+            if( !interior && !Directions.inBounds( x, y, direction, width, height ) ) {
+                continue;
+            }
+            int adjacent = cell + offsets[direction];
+            if( labels[adjacent] == -1 ) {
+                continue;
+            }
+            int other = find( labels[adjacent] );
+            if( root == -1 ) {
+                root = other;
+            }
+            else if( other != root ) {
+                root = union( root, other );
+                count--;
+            }
+        }
+
+        if( root == -1 ) {
+            root = newId();
+            count++;
+        }
+        labels[cell] = root;
+        sizes[root]++;
+    }
+
+    /**
+     * Removes a newly closed cell from its component, and gives new ids to
+     * any pieces of the component that it separated from the rest.
+     */
+    private void close( int cell ) {
+        labels[cell] = -1;
+        int x = cell % width;
+        int y = cell / width;
+        boolean interior = x > 0 && y > 0 && x < width - 1 && y < height - 1;
+        int seedCount = 0;
+        for( int direction : directions ) {
+            if( !interior && !Directions.inBounds( x, y, direction, width, height ) ) {
+                continue;
+            }
+            int adjacent = cell + offsets[direction];
+            if( labels[adjacent] != -1 ) {
+                seeds[seedCount++] = adjacent;
+            }
+        }
+
+        if( seedCount == 0 ) {
+            count--;
+            return;
+        }
+        if( seedCount == 1 ) {
+            return;
+        }
+
+        if( stamp > Integer.MAX_VALUE - 16 ) {
+            Arrays.fill( visits, 0 );
+            stamp = 0;
+        }
+        stamp += 8;
+        for( int seed = 0; seed < seedCount; seed++ ) {
+            groups[seed] = seed;
+            queues[seed][0] = seeds[seed];
+            heads[seed] = 0;
+            tails[seed] = 1;
+            visits[ seeds[seed] ] = stamp + seed;
+        }
+
+        // fill outwards from every neighbour in turn, one cell at a time;
+        // fills that meet belong to the same piece
+        int pieces = seedCount;
+        while( pieces > 1 ) {
+            for( int seed = 0; seed < seedCount && pieces > 1; seed++ ) {
+                if( heads[seed] == tails[seed] ) {
+                    continue;
+                }
+                int current = queues[seed][ heads[seed]++ ];
+                int currentX = current % width;
+                int currentY = current / width;
+                boolean currentInterior = currentX > 0 && currentY > 0 && currentX < width - 1 && currentY < height - 1;
+                for( int direction : directions ) {
+                    if( !currentInterior && !Directions.inBounds( currentX, currentY, direction, width, height ) ) {
+                        continue;
+                    }
+                    int adjacent = current + offsets[direction];
+                    if( labels[adjacent] == -1 ) {
+                        continue;
+                    }
+                    int visitor = visits[adjacent] - stamp;
+                    if( visitor >= 0 && visitor < seedCount ) {
+                        int one = group( seed );
+                        int two = group( visitor );
+                        if( one != two ) {
+                            groups[two] = one;
+                            pieces--;
+                        }
+                        continue;
+                    }
+                    visits[adjacent] = stamp + seed;
+                    if( tails[seed] == queues[seed].length ) {
+                        queues[seed] = Arrays.copyOf( queues[seed], tails[seed] * 2 );
+                    }
+                    queues[seed][ tails[seed]++ ] = adjacent;
+                }
+            }
+
+            // a piece whose fills have all run out is cut off from the rest
+            for( int seed = 0; seed < seedCount && pieces > 1; seed++ ) {
+                if( groups[seed] == seed && !isFilling( seed, seedCount ) ) {
+                    relabel( seed, seedCount );
+                    pieces--;
+                    count++;
+                }
+            }
+        }
+    }
+
+    private int group( int seed ) {
+        while( groups[seed] != seed ) {
+            seed = groups[seed];
+        }
+        return seed;
+    }
+
+    /**
+     * @return true if any fill in the piece led by the given seed still has
+     *         cells to visit
+     */
+    private boolean isFilling( int leader, int seedCount ) {
+        for( int seed = 0; seed < seedCount; seed++ ) {
+            if( groups[seed] != -1 && group( seed ) == leader && heads[seed] < tails[seed] ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gives every cell visited by the fills in the piece led by the given
+     * seed a new id, and retires the piece's seeds.
+     */
+    private void relabel( int leader, int seedCount ) {
+        int id = newId();
+        int size = 0;
+        int members = 0;
+        for( int seed = 0; seed < seedCount; seed++ ) {
+            if( groups[seed] == -1 || group( seed ) != leader ) {
+                continue;
+            }
+            members |= 1 << seed;
+            for( int i = 0; i < tails[seed]; i++ ) {
+                labels[ queues[seed][i] ] = id;
+            }
+            size += tails[seed];
+        }
+        sizes[id] = size;
+        for( int seed = 0; seed < seedCount; seed++ ) {
+            if( ( members & ( 1 << seed ) ) != 0 ) {
+                groups[seed] = -1;
+            }
+        }
+    }
+
+    private int newId() {
+        if( ids == parents.length ) {
+            parents = Arrays.copyOf( parents, ids * 2 );
+            sizes = Arrays.copyOf( sizes, ids * 2 );
+        }
+        parents[ids] = ids;
+        sizes[ids] = 0;
+        return ids++;
+    }
+
+    /**
+     * @return the root of the id's tree, compressing the path to it
+     */
+    private int find( int id ) {
+        int root = id;
+        while( parents[root] != root ) {
+            root = parents[root];
+        }
+        while( parents[id] != root ) {
+            int next = parents[id];
+            parents[id] = root;
+            id = next;
+        }
+        return root;
+    }
+
+    /**
+     * @return the root of the merged tree
+     */
+    private int union( int one, int two ) {
+        if( sizes[one] < sizes[two] ) {
+            int swap = one;
+            one = two;
+            two = swap;
+        }
+        parents[two] = one;
+        sizes[one] += sizes[two];
+        return one;
+    }
+}
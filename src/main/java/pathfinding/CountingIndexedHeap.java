@@ -0,0 +1,113 @@
+package pathfinding;
+
+/**
+ * An IndexedHeap that counts its operations, from which the statistics of a
+ * search are built (see Pathfinder.record()).
+ *
+ * A SearchContext only hands out a counting heap to searches whose
+ * statistics are being recorded, so that the open set of every other search
+ * does no counting at all.
+ */
+class CountingIndexedHeap extends IndexedHeap {
+    // counts of operations since the heap was created or last cleared
+    private int inserts;
+    private int decreases;
+    private int polls;
+    private int peak;
+
+    // the open set of the other half of a bidirectional search, whose size
+    // counts towards the peak
+    private CountingIndexedHeap partner;
+
+    CountingIndexedHeap( int capacity ) {
+        super( capacity );
+    }
+
+    @Override
+    public boolean push( int id, double key ) {
+        boolean inserting = getPosition( id ) == 0;
+        if( !super.push( id, key ) ) {
+            return false;
+        }
+        if( inserting ) {
+            inserts++;
+            int total = partner == null ? size() : size() + partner.size();
+            if( total > peak ) {
+                peak = total;
+            }
+        }
+        else {
+            decreases++;
+        }
+        return true;
+    }
+
+    @Override
+    public void update( int id, double key ) {
+        if( key < getKey( id ) ) {
+            decreases++;
+        }
+        super.update( id, key );
+    }
+
+    @Override
+    public int poll() {
+        polls++;
+        return super.poll();
+    }
+
+    /**
+     * Removes all ids from the heap, resets its operation counts and
+     * forgets its partner.
+     */
+    @Override
+    public void clear() {
+        super.clear();
+        inserts = 0;
+        decreases = 0;
+        polls = 0;
+        peak = 0;
+        partner = null;
+    }
+
+    /**
+     * Makes this heap and another the two halves of a bidirectional search,
+     * so that each counts the size of both towards its peak.
+     */
+    void pair( CountingIndexedHeap other ) {
+        partner = other;
+        other.partner = this;
+    }
+
+    /**
+     * @return the number of ids added to the heap since it was created or
+     *         last cleared
+     */
+    int getInserts() {
+        return inserts;
+    }
+
+    /**
+     * @return the number of times the key of an id in the heap was lowered
+     *         since it was created or last cleared
+     */
+    int getDecreases() {
+        return decreases;
+    }
+
+    /**
+     * @return the number of ids removed by poll() since the heap was created
+     *         or last cleared
+     */
+    int getPolls() {
+        return polls;
+    }
+
+    /**
+     * @return the greatest number of ids held at once (together with the
+     *         partner, if paired) since the heap was created or last cleared
+     */
+    int getPeakSize() {
+        return peak;
+    }
+}
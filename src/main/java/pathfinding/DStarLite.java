@@ -0,0 +1,531 @@
+package pathfinding;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A path planner for one agent, which repairs its path when the map changes
+ * rather than searching again from scratch ("D* Lite").
+ *
+ * The planner searches backwards, from the target towards the agent, and
+ * keeps its search tree between calls. When the traversability of some cells
+ * changes, call update() for each of them; when the agent moves, call
+ * moveTo(). The next call to getPath() only re-expands the cells whose cost
+ * to the target was affected by the changes, so replanning costs in
+ * proportion to the affected region rather than the size of the map.
+ *
+ * Paths are lowest-cost paths, the same as those returned by
+ * Pathfinder.dijkstra() (although where several paths have the same cost, a
+ * different one may be chosen).
+ *
+ * A planner holds two doubles and an int for every cell of the search space.
+ * It is not thread safe, and the map must not be changed while getPath() is
+ * running.
+ */
+public class DStarLite {
+    /**
+     * The relative difference within which two costs are taken to be equal.
+     * Costs that are equal can differ in their last bits when their steps
+     * were summed in different orders.
+     */
+    private static final double TOLERANCE = 1e-9;
+
+    private final SearchSpace space;
+    private final boolean allowDiagonal;
+    private final Heuristic heuristic;
+    private final int width;
+    private final int height;
+    private final int target;
+    private final int[] directions;
+    private final int[] offsets = new int[ 8 ];
+    private final double[] stepCosts;
+
+    // g is the cost to the target as of the last expansion of each cell, rhs
+    // the cost given by the g of its neighbours; they differ for cells that
+    // need expanding, which are the ones in the queue
+    private final double[] g;
+    private final double[] rhs;
+    private final Queue queue;
+
+    private int origin;
+    private int last;
+    private double keyModifier;
+    private int expansions;
+
+    /**
+     * Creates a planner for a Node[][].
+     *
+     * @param nodes         the search space
+     * @param origin        the search-space location of the agent
+     * @param target        the search-space location of the target
+     * @param allowDiagonal whether the agent may move diagonally
+     */
+    public DStarLite( Node[][] nodes, Vertex origin, Vertex target, boolean allowDiagonal ) {
+        this( NodeSearchSpace.of( nodes ), origin, target, allowDiagonal );
+    }
+
+    /**
+     * Creates a planner for a GridGraph.
+     *
+     * @param grid          the search space
+     * @param origin        the search-space location of the agent
+     * @param target        the search-space location of the target
+     * @param allowDiagonal whether the agent may move diagonally
+     */
+    public DStarLite( GridGraph grid, Vertex origin, Vertex target, boolean allowDiagonal ) {
+        this( (SearchSpace)grid, origin, target, allowDiagonal );
+    }
+
+    private DStarLite( SearchSpace space, Vertex origin, Vertex target, boolean allowDiagonal ) {
+        this.space = space;
+        this.allowDiagonal = allowDiagonal;
+        this.width = space.getWidth();
+        this.height = space.getHeight();
+        this.directions = Directions.get( allowDiagonal );
+        this.stepCosts = space.getStepCosts();
+        if( stepCosts == null ) {
+            this.heuristic = Heuristic.EUCLIDEAN;
+        }
+        else {
+            this.heuristic = allowDiagonal ? Heuristic.OCTILE : Heuristic.MANHATTAN;
+        }
+        Directions.fillOffsets( offsets, width );
+
+        int size = width * height;
+        this.g = new double[ size ];
+        this.rhs = new double[ size ];
+        Arrays.fill( g, Double.POSITIVE_INFINITY );
+        Arrays.fill( rhs, Double.POSITIVE_INFINITY );
+        this.queue = new Queue( size );
+
+        this.origin = index( origin );
+        this.last = this.origin;
+        this.target = index( target );
+        updateTarget();
+    }
+
+    /**
+     * @return the index of the agent's cell
+     */
+    public int getOrigin() {
+        return origin;
+    }
+
+    /**
+     * @return the index of the target's cell
+     */
+    public int getTarget() {
+        return target;
+    }
+
+    /**
+     * @return true if the agent may move diagonally
+     */
+    public boolean isDiagonalAllowed() {
+        return allowDiagonal;
+    }
+
+    /**
+     * Tells the planner that the agent has moved. The agent does not need to
+     * have followed the last path returned.
+     *
+     * @param origin the search-space location of the agent
+     */
+    public void moveTo( Vertex origin ) {
+        int cell = index( origin );
+        if( cell == this.origin ) {
+            return;
+        }
+        this.origin = cell;
+        // rather than re-keying the queue, raise the keys of later entries
+        keyModifier += heuristic.estimate( space, last, cell );
+        last = cell;
+    }
+
+    /**
+     * Tells the planner that the traversability of a cell has changed. Call
+     * this after the change has been made. The path is repaired the next time
+     * getPath() is called.
+     *
+     * @param x the search-space x coordinate of the cell
+     * @param y the search-space y coordinate of the cell
+     */
+    public void update( int x, int y ) {
+        int cell = y * width + x;
+        if( cell == target ) {
+            updateTarget();
+        }
+        else {
+            rhs[cell] = lookahead( cell );
+            updateVertex( cell );
+        }
+
+        boolean interior = x > 0 && y > 0 && x < width - 1 && y < height - 1;
+        for( int direction : directions ) {
+            if( !interior && !Directions.inBounds( x, y, direction, width, height ) ) {
+                continue;
+            }
+            int adjacent = cell + offsets[direction];
+            if( adjacent != target ) {
+                rhs[adjacent] = lookahead( adjacent );
+                updateVertex( adjacent );
+            }
+        }
+    }
+
+    /**
+     * Finds a lowest-cost path from the agent to the target, repairing the
+     * search tree first if the map has changed or the agent has moved.
+     *
+     * @return the indices of the cells on the path, from the agent to the
+     *         target (in that order), or null if no path exists
+     */
+    public int[] getPath() {
+        replan();
+        if( g[origin] == Double.POSITIVE_INFINITY ) {
+            return null;
+        }
+
+        int[] path = new int[ 16 ];
+        int length = 0;
+        int current = origin;
+        path[length++] = current;
+        while( current != target ) {
+            int next = -1;
+            double best = Double.POSITIVE_INFINITY;
+            int x = current % width;
+            int y = current / width;
+            boolean interior = x > 0 && y > 0 && x < width - 1 && y < height - 1;
+            for( int direction : directions ) {
+                if( !interior && !Directions.inBounds( x, y, direction, width, height ) ) {
+                    continue;
+                }
+                int adjacent = current + offsets[direction];
+                if( !space.isTraversable( adjacent ) ) {
+                    continue;
+                }
+                double cost = stepCost( direction, current, adjacent ) + g[adjacent];
+                if( cost < best ) {
+                    best = cost;
+                    next = adjacent;
+                }
+            }
+            if( next == -1 || length > g.length ) {
+                throw new IllegalStateException( "The planner's search tree is inconsistent; was the map changed without calling update()?" );
+            }
+
+            if( length == path.length ) {
+                path = Arrays.copyOf( path, length * 2 );
+            }
+            path[length++] = next;
+            current = next;
+        }
+        return Arrays.copyOf( path, length );
+    }
+
+    /**
+     * Finds a lowest-cost path from the agent to the target. The planner must
+     * have been created for a Node[][].
+     *
+     * @return the path, or null if no path exists
+     */
+    public List<Node> getNodes() {
+        if( !( space instanceof NodeSearchSpace ) ) {
+            throw new UnsupportedOperationException( "This planner was not created for a Node[][]" );
+        }
+        return ( (NodeSearchSpace)space ).toNodes( getPath() );
+    }
+
+    /**
+     * @return the cost of the lowest-cost path from the agent to the target,
+     *         or -1 if no path exists
+     */
+    public double getCost() {
+        replan();
+        return g[origin] == Double.POSITIVE_INFINITY ? -1 : g[origin];
+    }
+
+    /**
+     * @return the number of cells expanded by the most recent call to
+     *         getPath() or getCost()
+     */
+    public int getExpansions() {
+        return expansions;
+    }
+
+    /// internal utilities ///
+
+    /**
+     * Expands cells until the agent's cell is consistent and no cell in the
+     * queue could lower its cost.
+     */
+    private void replan() {
+        expansions = 0;
+        if( !space.isTraversable( origin ) ) {
+            return;
+        }
+
+        while( !queue.isEmpty() ) {
+            double originCost = Math.min( g[origin], rhs[origin] );
+            double originKey = originCost + keyModifier;
+            if( rhs[origin] == g[origin] && queue.peekKey() > originKey + slack( originKey ) ) {
+                break;
+            }
+
+            int current = queue.peek();
+            double cost = Math.min( g[current], rhs[current] );
+            double key = cost + heuristic.estimate( space, current, origin ) + keyModifier;
+            if( queue.peekIsLess( key, cost ) ) {
+                // keyed before the agent last moved
+                queue.update( current, key, cost );
+                continue;
+            }
+
+            expansions++;
+            int x = current % width;
+            int y = current / width;
+            boolean interior = x > 0 && y > 0 && x < width - 1 && y < height - 1;
+
+            if( g[current] > rhs[current] ) {
+                g[current] = rhs[current];
+                queue.remove( current );
+                if( !space.isTraversable( current ) ) {
+                    continue;
+                }
+                for( int direction : directions ) {
+                    if( !interior && !Directions.inBounds( x, y, direction, width, height ) ) {
+                        continue;
+                    }
+                    int adjacent = current + offsets[direction];
+                    if( adjacent == target || !space.isTraversable( adjacent ) ) {
+                        continue;
+                    }
+                    double newCost = g[current] + stepCost( direction, adjacent, current );
+                    if( newCost < rhs[adjacent] ) {
+                        rhs[adjacent] = newCost;
+                        updateVertex( adjacent );
+                    }
+                }
+            }
+            else {
+                double old = g[current];
+                g[current] = Double.POSITIVE_INFINITY;
+                if( current != target ) {
+                    rhs[current] = lookahead( current );
+                }
+                updateVertex( current );
+                for( int direction : directions ) {
+                    if( !interior && !Directions.inBounds( x, y, direction, width, height ) ) {
+                        continue;
+                    }
+                    int adjacent = current + offsets[direction];
+                    // the neighbour's cost may have come through this cell
+                    if( adjacent != target && rhs[adjacent] <= old + stepCost( direction, adjacent, current ) + slack( old ) ) {
+                        rhs[adjacent] = lookahead( adjacent );
+                        updateVertex( adjacent );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a cell to the queue, re-keys it or removes it from the queue,
+     * depending on whether it is consistent.
+     */
+    private void updateVertex( int cell ) {
+        if( g[cell] == rhs[cell] ) {
+            queue.remove( cell );
+            return;
+        }
+        double cost = Math.min( g[cell], rhs[cell] );
+        double key = cost + heuristic.estimate( space, cell, origin ) + keyModifier;
+        if( queue.contains( cell ) ) {
+            queue.update( cell, key, cost );
+        }
+        else {
+            queue.push( cell, key, cost );
+        }
+    }
+
+    private void updateTarget() {
+        rhs[target] = space.isTraversable( target ) ? 0 : Double.POSITIVE_INFINITY;
+        updateVertex( target );
+    }
+
+    /**
+     * @return the cost to the target of the cheapest path through any
+     *         neighbour of the cell, given the neighbours' current g
+     */
+    private double lookahead( int cell ) {
+        if( !space.isTraversable( cell ) ) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double best = Double.POSITIVE_INFINITY;
+        int x = cell % width;
+        int y = cell / width;
+        boolean interior = x > 0 && y > 0 && x < width - 1 && y < height - 1;
+        for( int direction : directions ) {
+            if( !interior && !Directions.inBounds( x, y, direction, width, height ) ) {
+                continue;
+            }
+            int adjacent = cell + offsets[direction];
+            if( !space.isTraversable( adjacent ) || g[adjacent] == Double.POSITIVE_INFINITY ) {
+                continue;
+            }
+            best = Math.min( best, stepCost( direction, cell, adjacent ) + g[adjacent] );
+        }
+        return best;
+    }
+
+    /**
+     * @return the amount by which a cost may differ from another and still be
+     *         taken to be equal to it
+     */
+    private static double slack( double cost ) {
+        return TOLERANCE * Math.max( 1, cost );
+    }
+
+    private double stepCost( int direction, int from, int to ) {
+        if( stepCosts != null ) {
+            return stepCosts[direction];
+        }
+        return Vertex.distance( space.getLocationX( from ), space.getLocationY( from ),
+                                space.getLocationX( to ), space.getLocationY( to ) );
+    }
+
+    private int index( Vertex location ) {
+        if( location.x < 0 || location.y < 0 || location.x >= width || location.y >= height ) {
+            throw new IllegalArgumentException( "Location is outside the search space: " + location );
+        }
+        return location.y * width + location.x;
+    }
+
+    /**
+     * A priority queue of cells, ordered by a pair of keys: first by the
+     * estimated cost of a path from the agent through the cell, then by the
+     * cell's cost to the target.
+     */
+    private static class Queue {
+        private final int[] positions;
+        private int[] ids = new int[ 16 ];
+        private double[] keys = new double[ 16 ];
+        private double[] costs = new double[ 16 ];
+        private int size;
+
+        Queue( int capacity ) {
+            positions = new int[ capacity ];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        boolean contains( int id ) {
+            return positions[id] != 0;
+        }
+
+        int peek() {
+            return ids[0];
+        }
+
+        double peekKey() {
+            return keys[0];
+        }
+
+        /**
+         * @return true if the top of the queue is ordered before the given
+         *         keys
+         */
+        boolean peekIsLess( double key, double cost ) {
+            return keys[0] < key || ( keys[0] == key && costs[0] < cost );
+        }
+
+        void push( int id, double key, double cost ) {
+            if( size == ids.length ) {
+                ids = Arrays.copyOf( ids, size * 2 );
+                keys = Arrays.copyOf( keys, size * 2 );
+                costs = Arrays.copyOf( costs, size * 2 );
+            }
+            ids[size] = id;
+            keys[size] = key;
+            costs[size] = cost;
+            positions[id] = size + 1;
+            size++;
+            siftUp( size - 1 );
+        }
+
+        void update( int id, double key, double cost ) {
+            int position = positions[id] - 1;
+            keys[position] = key;
+            costs[position] = cost;
+            siftDown( siftUp( position ) );
+        }
+
+        void remove( int id ) {
+            int position = positions[id] - 1;
+            if( position < 0 ) {
+                return;
+            }
+            positions[id] = 0;
+            size--;
+            if( position != size ) {
+                move( size, position );
+                siftDown( siftUp( position ) );
+            }
+        }
+
+        private int siftUp( int position ) {
+            while( position > 0 ) {
+                int parent = ( position - 1 ) >>> 1;
+                if( !less( position, parent ) ) {
+                    break;
+                }
+                swap( position, parent );
+                position = parent;
+            }
+            return position;
+        }
+
+        private void siftDown( int position ) {
+            while( true ) {
+                int child = ( position << 1 ) + 1;
+                if( child >= size ) {
+                    return;
+                }
+                if( child + 1 < size && less( child + 1, child ) ) {
+                    child++;
+                }
+                if( !less( child, position ) ) {
+                    return;
+                }
+                swap( position, child );
+                position = child;
+            }
+        }
+
+        private boolean less( int one, int two ) {
+            return keys[one] < keys[two] || ( keys[one] == keys[two] && costs[one] < costs[two] );
+        }
+
+        private void swap( int one, int two ) {
+            int id = ids[one];
+            double key = keys[one];
+            double cost = costs[one];
+            move( two, one );
+            ids[two] = id;
+            keys[two] = key;
+            costs[two] = cost;
+            positions[id] = two + 1;
+        }
+
+        private void move( int from, int to ) {
+            int id = ids[from];
+            ids[to] = id;
+            keys[to] = keys[from];
+            costs[to] = costs[from];
+            positions[id] = to + 1;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package pathfinding;
+
+/**
+ * The eight directions in which a cell may be left, used by the Pathfinder's
+ * algorithms to visit adjacent cells without allocating.
+ *
+ * Directions are numbered 0 to 7, in the same order in which
+ * Pathfinder.getAdjacentNodes() returns nodes. X[d] and Y[d] are the
+ * search-space offsets of direction d.
+ */
+final class Directions {
+    public static final int[] X = { 1, 1, 1, 0, 0, -1, -1, -1 };
+    public static final int[] Y = { 0, 1, -1, 1, -1, 0, 1, -1 };
+
+    /**
+     * All eight directions, for searches that allow diagonal movement.
+     */
+    public static final int[] ALL = { 0, 1, 2, 3, 4, 5, 6, 7 };
+
+    /**
+     * The four single-axis directions, for searches that do not allow
+     * diagonal movement.
+     */
+    public static final int[] STRAIGHT = { 0, 3, 4, 5 };
+
+    // direction of each (dx,dy), indexed by ( dx + 1 ) * 3 + ( dy + 1 )
+    private static final int[] BY_OFFSET = { 7, 5, 6, 4, -1, 3, 2, 0, 1 };
+
+    private Directions() {
+    }
+
+    /**
+     * @param dx the x offset, -1, 0 or 1
+     * @param dy the y offset, -1, 0 or 1
+     * @return the direction with the given offsets, or -1 if both are 0
+     */
+    public static int of( int dx, int dy ) {
+        return BY_OFFSET[ ( dx + 1 ) * 3 + ( dy + 1 ) ];
+    }
+
+    /**
+     * @param allowDiagonal whether diagonal movement is allowed
+     * @return the directions a search may move in
+     */
+    public static int[] get( boolean allowDiagonal ) {
+        return allowDiagonal ? ALL : STRAIGHT;
+    }
+
+    /**
+     * @param direction a direction
+     * @return true if the direction moves along both axes
+     */
+    public static boolean isDiagonal( int direction ) {
+        return X[direction] != 0 && Y[direction] != 0;
+    }
+
+    /**
+     * @return true if moving from (x,y) in the given direction stays within a
+     *         search space of the given size
+     */
+    public static boolean inBounds( int x, int y, int direction, int width, int height ) {
+        int adjacentX = x + X[direction];
+        int adjacentY = y + Y[direction];
+        return adjacentX >= 0 && adjacentX < width && adjacentY >= 0 && adjacentY < height;
+    }
+
+    /**
+     * Fills offsets with the index offset of each direction in a search space
+     * of the given width.
+     *
+     * @param offsets an array of at least eight elements
+     * @param width   the width of the search space
+     */
+    public static void fillOffsets( int[] offsets, int width ) {
+        for( int d = 0; d < X.length; d++ ) {
+            offsets[d] = Y[d] * width + X[d];
+        }
+    }
+
+    /**
+     * Calculates the cost of a single step in each direction on an
+     * evenly-spaced search space.
+     *
+     * @param stepX the "real-world" distance between adjacent columns
+     * @param stepY the "real-world" distance between adjacent rows
+     * @return the cost of a step in each direction
+     */
+    public static double[] stepCosts( int stepX, int stepY ) {
+        double[] costs = new double[ X.length ];
+        for( int d = 0; d < X.length; d++ ) {
+            costs[d] = Vertex.distance( 0, 0, X[d] * stepX, Y[d] * stepY );
+        }
+        return costs;
+    }
+}
@@ -0,0 +1,552 @@
+package pathfinding;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The cost of the cheapest path from every cell of a search space to the
+ * nearest of a set of targets, and the direction of the first step along
+ * it, for moving many agents to the same place.
+ *
+ * Rather than each agent searching for its own path, the field is built
+ * once, by searching outward from the targets; any number of agents can then
+ * read their next step (getNext()) in constant time, wherever they are. The
+ * field takes five bytes per cell: distances are held as floats, so they may
+ * differ from a search's costs in about the seventh significant digit.
+ *
+ * The field is built a tile of 64x64 cells at a time. Each tile runs
+ * Dijkstra's algorithm over its own cells, starting from the distances
+ * already known at its edges; whenever the distances at a tile's edge
+ * improve, the tiles around it are run again, until none change. Tiles run
+ * roughly in order of their distance from the targets, and given a
+ * ForkJoinPool, the tiles waiting to run at similar distances are run in
+ * parallel.
+ *
+ * When the traversability of a cell changes, call update() for that cell.
+ * Opening a cell only runs the tiles its shorter paths reach; closing a cell
+ * first discards the distances of the cells whose paths led through it, then
+ * fills them in again from the cells around them.
+ *
+ * A FlowField is not changed by queries, so it can be shared by any number
+ * of threads, but it must not be queried while being updated.
+ */
+public class FlowField {
+    private static final int TILE_SIZE = 64;
+    private static final float UNREACHABLE = Float.POSITIVE_INFINITY;
+
+    // the direction opposite each direction
+    private static final int[] REVERSE = new int[ 8 ];
+
+    static {
+        for( int d = 0; d < 8; d++ ) {
+            REVERSE[d] = Directions.of( -Directions.X[d], -Directions.Y[d] );
+        }
+    }
+
+    private final SearchSpace space;
+    private final boolean allowDiagonal;
+    private final ForkJoinPool pool;
+    private final int width;
+    private final int height;
+    private final int[] directions;
+    private final int[] offsets = new int[ 8 ];
+    private final double[] stepCosts;
+    private final int[] targets;
+
+    // per cell: the cost of the cheapest path to a target, and the direction
+    // of its first step (or -1 for targets and unreachable cells)
+    private final float[] distances;
+    private final byte[] next;
+
+    // per tile: whether it must run, whether it must start from all of its
+    // cells (rather than only those its edges improved), and whether its
+    // last run improved any cell on its edges
+    private final int tilesX;
+    private final int tilesY;
+    private final boolean[] dirty;
+    private final boolean[] full;
+    private final boolean[] edgeChanged;
+    private final int[] pending;
+
+    // per tile: the lowest distance offered to it by a neighbour's edge
+    // since it last ran, and the lowest distance its last run set on its
+    // own edge; tiles run in order of the former, a band at a time
+    private final float[] keys;
+    private final float[] edgeDistances;
+    private final double band;
+
+    private final ConcurrentLinkedQueue<IndexedHeap> heaps = new ConcurrentLinkedQueue();
+    private long tileRuns;
+
+    /**
+     * Builds the field toward a single target.
+     *
+     * @param grid          the search space
+     * @param target        the search-space location of the target
+     * @param allowDiagonal whether paths may contain diagonal movements
+     */
+    public FlowField( GridGraph grid, Vertex target, boolean allowDiagonal ) {
+        this( grid, new Vertex[]{ target }, allowDiagonal, null );
+    }
+
+    /**
+     * Builds the field toward the nearest of several targets, on the calling
+     * thread.
+     *
+     * @param grid          the search space
+     * @param targets       the search-space locations of the targets
+     * @param allowDiagonal whether paths may contain diagonal movements
+     */
+    public FlowField( GridGraph grid, Vertex[] targets, boolean allowDiagonal ) {
+        this( grid, targets, allowDiagonal, null );
+    }
+
+    /**
+     * Builds the field toward the nearest of several targets, running tiles
+     * in parallel on a pool. Updates use the same pool.
+     *
+     * @param grid          the search space
+     * @param targets       the search-space locations of the targets
+     * @param allowDiagonal whether paths may contain diagonal movements
+     * @param pool          runs the tiles, or null to run them on the
+     *                      calling thread
+     */
+    public FlowField( GridGraph grid, Vertex[] targets, boolean allowDiagonal, ForkJoinPool pool ) {
+        this( (SearchSpace)grid, targets, allowDiagonal, pool );
+    }
+
+    /**
+     * Builds the field of a Node[][] toward the nearest of several targets.
+     *
+     * @param nodes         the search space
+     * @param targets       the search-space locations of the targets
+     * @param allowDiagonal whether paths may contain diagonal movements
+     */
+    public FlowField( Node[][] nodes, Vertex[] targets, boolean allowDiagonal ) {
+        this( NodeSearchSpace.of( nodes ), targets, allowDiagonal, null );
+    }
+
+    private FlowField( SearchSpace space, Vertex[] targets, boolean allowDiagonal, ForkJoinPool pool ) {
+        this.space = space;
+        this.allowDiagonal = allowDiagonal;
+        this.pool = pool;
+        this.width = space.getWidth();
+        this.height = space.getHeight();
+        this.directions = Directions.get( allowDiagonal );
+        Directions.fillOffsets( offsets, width );
+        this.stepCosts = space.getStepCosts();
+
+        this.targets = new int[ targets.length ];
+        for( int i = 0; i < targets.length; i++ ) {
+            this.targets[i] = targets[i].y * width + targets[i].x;
+        }
+
+        distances = new float[ width * height ];
+        next = new byte[ width * height ];
+        Arrays.fill( distances, UNREACHABLE );
+        Arrays.fill( next, (byte)-1 );
+
+        tilesX = ( width + TILE_SIZE - 1 ) / TILE_SIZE;
+        tilesY = ( height + TILE_SIZE - 1 ) / TILE_SIZE;
+        dirty = new boolean[ tilesX * tilesY ];
+        full = new boolean[ tilesX * tilesY ];
+        edgeChanged = new boolean[ tilesX * tilesY ];
+        pending = new int[ tilesX * tilesY ];
+        keys = new float[ tilesX * tilesY ];
+        edgeDistances = new float[ tilesX * tilesY ];
+        Arrays.fill( keys, UNREACHABLE );
+        band = TILE_SIZE * minimumStep();
+
+        for( int target : this.targets ) {
+            if( space.isTraversable( target ) ) {
+                distances[target] = 0;
+                markTile( target );
+            }
+        }
+        integrate();
+    }
+
+    /// queries ///
+
+    /**
+     * @return true if paths may contain diagonal movements
+     */
+    public boolean isDiagonalAllowed() {
+        return allowDiagonal;
+    }
+
+    /**
+     * @param index the index of a cell
+     * @return the cost of the cheapest path from the cell to a target, or -1
+     *         if no target can be reached
+     */
+    public double getDistance( int index ) {
+        float distance = distances[index];
+        return distance == UNREACHABLE ? -1 : distance;
+    }
+
+    /**
+     * @param index the index of a cell
+     * @return the direction of the first step of the cheapest path from the
+     *         cell to a target (numbered as by Pathfinder.getAdjacentNodes()),
+     *         or -1 if the cell is a target or no target can be reached
+     */
+    public int getDirection( int index ) {
+        return next[index];
+    }
+
+    /**
+     * @param index the index of a cell
+     * @return the index of the next cell on the cheapest path from the cell
+     *         to a target, or -1 if the cell is a target or no target can be
+     *         reached
+     */
+    public int getNext( int index ) {
+        int direction = next[index];
+        return direction == -1 ? -1 : index + offsets[direction];
+    }
+
+    /**
+     * Follows the field from a cell to a target.
+     *
+     * @param origin the search-space location at which the path starts
+     * @return the indices of the cells on the cheapest path from origin to a
+     *         target (in that order), or null if no target can be reached
+     */
+    public int[] getPath( Vertex origin ) {
+        int start = origin.y * width + origin.x;
+        if( distances[start] == UNREACHABLE ) {
+            return null;
+        }
+
+        int length = 1;
+        for( int index = start; next[index] != -1; index += offsets[ next[index] ] ) {
+            length++;
+        }
+        int[] path = new int[ length ];
+        int index = start;
+        for( int i = 0; i < length; i++ ) {
+            path[i] = index;
+            if( next[index] != -1 ) {
+                index += offsets[ next[index] ];
+            }
+        }
+        return path;
+    }
+
+    /**
+     * @return the number of times a tile has been run, while building the
+     *         field and updating it
+     */
+    public long getTileRuns() {
+        return tileRuns;
+    }
+
+    /// updates ///
+
+    /**
+     * Updates the field after a change in the traversability of a cell.
+     * Call this after the change has been made.
+     *
+     * @param x the search-space x coordinate of the cell
+     * @param y the search-space y coordinate of the cell
+     */
+    public void update( int x, int y ) {
+        change( y * width + x );
+        integrate();
+    }
+
+    /**
+     * Updates the field after a change in the traversability of several
+     * cells, running the affected tiles once for all of them.
+     *
+     * @param cells the search-space locations of the cells
+     */
+    public void update( Vertex[] cells ) {
+        for( Vertex cell : cells ) {
+            change( cell.y * width + cell.x );
+        }
+        integrate();
+    }
+
+    /// internal utilities ///
+
+    /**
+     * Marks the tiles that must run after a change to a cell, discarding the
+     * distances that led through it if it was closed.
+     */
+    private void change( int cell ) {
+        if( space.isTraversable( cell ) ) {
+            if( isTarget( cell ) ) {
+                distances[cell] = 0;
+                next[cell] = -1;
+            }
+            markTile( cell );
+            return;
+        }
+        if( distances[cell] == UNREACHABLE ) {
+            return;
+        }
+
+        // every cell whose path leads through a closed cell loses its
+        // distance; the cells around them fill it in again
+        int[] queue = new int[ 64 ];
+        queue[0] = cell;
+        int tail = 1;
+        distances[cell] = UNREACHABLE;
+        next[cell] = -1;
+        markTile( cell );
+        for( int head = 0; head < tail; head++ ) {
+            int current = queue[head];
+            int x = current % width;
+            int y = current / width;
+            for( int direction : directions ) {
+                if( !Directions.inBounds( x, y, direction, width, height ) ) {
+                    continue;
+                }
+                int adjacent = current + offsets[direction];
+                if( next[adjacent] != REVERSE[direction] ) {
+                    continue;
+                }
+                distances[adjacent] = UNREACHABLE;
+                next[adjacent] = -1;
+                markTile( adjacent );
+                if( tail == queue.length ) {
+                    queue = Arrays.copyOf( queue, tail * 2 );
+                }
+                queue[tail++] = adjacent;
+            }
+        }
+    }
+
+    private boolean isTarget( int cell ) {
+        for( int target : targets ) {
+            if( target == cell ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks a cell's tile to be run from all of its cells.
+     */
+    private void markTile( int cell ) {
+        int tile = ( cell / width / TILE_SIZE ) * tilesX + ( cell % width / TILE_SIZE );
+        dirty[tile] = true;
+        full[tile] = true;
+        keys[tile] = 0;
+    }
+
+    /**
+     * Runs the marked tiles, and the tiles around any whose edges improve,
+     * until no distance changes.
+     *
+     * Each round runs the marked tiles offered the lowest distances (within
+     * a band the width of a tile), so that the search spreads outward from
+     * the targets roughly in order, as Dijkstra's algorithm would, rather
+     * than tiles being run again and again as better distances reach them.
+     */
+    private void integrate() {
+        while( true ) {
+            float lowest = UNREACHABLE;
+            boolean any = false;
+            for( int tile = 0; tile < dirty.length; tile++ ) {
+                if( dirty[tile] ) {
+                    any = true;
+                    lowest = Math.min( lowest, keys[tile] );
+                }
+            }
+            if( !any ) {
+                return;
+            }
+
+            int count = 0;
+            for( int tile = 0; tile < dirty.length; tile++ ) {
+                if( dirty[tile] && ( keys[tile] <= lowest + band || lowest == UNREACHABLE ) ) {
+                    dirty[tile] = false;
+                    keys[tile] = UNREACHABLE;
+                    pending[ count++ ] = tile;
+                }
+            }
+            tileRuns += count;
+
+            if( pool == null || count == 1 ) {
+                for( int i = 0; i < count; i++ ) {
+                    run( pending[i] );
+                }
+            }
+            else {
+                pool.invoke( new Tiles( 0, count ) );
+            }
+
+            for( int i = 0; i < count; i++ ) {
+                int tile = pending[i];
+                full[tile] = false;
+                if( edgeChanged[tile] ) {
+                    edgeChanged[tile] = false;
+                    markNeighbours( tile, edgeDistances[tile] );
+                }
+            }
+        }
+    }
+
+    private void markNeighbours( int tile, float distance ) {
+        int tileX = tile % tilesX;
+        int tileY = tile / tilesX;
+        for( int y = Math.max( tileY - 1, 0 ); y <= Math.min( tileY + 1, tilesY - 1 ); y++ ) {
+            for( int x = Math.max( tileX - 1, 0 ); x <= Math.min( tileX + 1, tilesX - 1 ); x++ ) {
+                if( x != tileX || y != tileY ) {
+                    dirty[ y * tilesX + x ] = true;
+                    keys[ y * tilesX + x ] = Math.min( keys[ y * tilesX + x ], distance );
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs Dijkstra's algorithm over the cells of one tile. Each cell on the
+     * tile's edge first takes the best distance offered by its neighbours in
+     * other tiles; the search then starts from those cells that improved (or
+     * every reachable cell, if the tile is marked as full).
+     *
+     * Tiles running at the same time only write their own cells. A tile may
+     * read a neighbour's edge while the neighbour is changing it, and see
+     * an older distance; but then the neighbour's edge has changed, so the
+     * tile will run again.
+     */
+    private void run( int tile ) {
+        IndexedHeap open = heaps.poll();
+        if( open == null ) {
+            open = new IndexedHeap( TILE_SIZE * TILE_SIZE );
+        }
+
+        int left = ( tile % tilesX ) * TILE_SIZE;
+        int top = ( tile / tilesX ) * TILE_SIZE;
+        int right = Math.min( left + TILE_SIZE, width ) - 1;
+        int bottom = Math.min( top + TILE_SIZE, height ) - 1;
+        boolean all = full[tile];
+        boolean edge = false;
+        float edgeDistance = UNREACHABLE;
+
+        for( int y = top; y <= bottom; y++ ) {
+            for( int x = left; x <= right; x++ ) {
+                int cell = y * width + x;
+                if( !space.isTraversable( cell ) ) {
+                    continue;
+                }
+
+                float distance = distances[cell];
+                boolean improved = false;
+                if( x == left || x == right || y == top || y == bottom ) {
+                    for( int direction : directions ) {
+                        int adjacentX = x + Directions.X[direction];
+                        int adjacentY = y + Directions.Y[direction];
+                        if( adjacentX < 0 || adjacentY < 0 || adjacentX >= width || adjacentY >= height
+                            || ( adjacentX >= left && adjacentX <= right && adjacentY >= top && adjacentY <= bottom ) ) {
+                            continue;
+                        }
+                        int adjacent = cell + offsets[direction];
+                        float offered = (float)( distances[adjacent] + step( direction, cell, adjacent ) );
+                        if( offered < distance ) {
+                            distance = offered;
+                            next[cell] = (byte)direction;
+                            improved = true;
+                        }
+                    }
+                    if( improved ) {
+                        distances[cell] = distance;
+                        edge = true;
+                        edgeDistance = Math.min( edgeDistance, distance );
+                    }
+                }
+                if( distance != UNREACHABLE && ( all || improved ) ) {
+                    open.push( ( y - top ) * TILE_SIZE + ( x - left ), distance );
+                }
+            }
+        }
+
+        while( !open.isEmpty() ) {
+            int local = open.poll();
+            int x = left + local % TILE_SIZE;
+            int y = top + local / TILE_SIZE;
+            int current = y * width + x;
+            float distance = distances[current];
+            for( int direction : directions ) {
+                int adjacentX = x + Directions.X[direction];
+                int adjacentY = y + Directions.Y[direction];
+                if( adjacentX < left || adjacentY < top || adjacentX > right || adjacentY > bottom ) {
+                    continue;
+                }
+                int adjacent = current + offsets[direction];
+                if( !space.isTraversable( adjacent ) ) {
+                    continue;
+                }
+                float offered = (float)( distance + step( direction, current, adjacent ) );
+                if( offered < distances[adjacent] ) {
+                    distances[adjacent] = offered;
+                    next[adjacent] = (byte)REVERSE[direction];
+                    open.push( ( adjacentY - top ) * TILE_SIZE + ( adjacentX - left ), offered );
+                    if( adjacentX == left || adjacentX == right || adjacentY == top || adjacentY == bottom ) {
+                        edge = true;
+                        edgeDistance = Math.min( edgeDistance, offered );
+                    }
+                }
+            }
+        }
+
+        edgeChanged[tile] = edge;
+        edgeDistances[tile] = edgeDistance;
+        heaps.offer( open );
+    }
+
+    /**
+     * @return the cost of the cheapest single step, or 1 if step costs vary
+     */
+    private double minimumStep() {
+        if( stepCosts == null ) {
+            return 1;
+        }
+        double minimum = Double.POSITIVE_INFINITY;
+        for( int direction : directions ) {
+            minimum = Math.min( minimum, stepCosts[direction] );
+        }
+        return minimum;
+    }
+
+    private double step( int direction, int one, int two ) {
+        if( stepCosts != null ) {
+            return stepCosts[direction];
+        }
+        return Vertex.distance( space.getLocationX( one ), space.getLocationY( one ),
+                                space.getLocationX( two ), space.getLocationY( two ) );
+    }
+
+    /**
+     * Runs a range of the pending tiles, splitting it in two while it holds
+     * more than one.
+     */
+    private final class Tiles extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        Tiles( int from, int to ) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if( to - from == 1 ) {
+                run( pending[from] );
+                return;
+            }
+            int middle = ( from + to ) >>> 1;
+            invokeAll( new Tiles( from, middle ), new Tiles( middle, to ) );
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package pathfinding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact, evenly-spaced search space.
+ *
+ * Where a Node[][] holds an object (and two Vertex objects) per cell, a
+ * GridGraph stores traversability as one bit per cell, in a BitGrid.
+ * "Real-world" locations are not stored at all; like Pathfinder.makeNodes(),
+ * the location of cell (x,y) is (startX + x * stepX, startY + y * stepY).
+ *
+ * Because neighbouring cells share a long, setTraversable() must not be
+ * called by several threads at once; searching from any number of threads
+ * is safe while the grid is not being changed.
+ *
+ * A GridGraph can be searched directly by the Pathfinder's algorithms, which
+ * return paths as arrays of cell indices. Use fromNodes() and toNodes() to
+ * convert to and from the Node[][] representation.
+ */
+public class GridGraph implements SearchSpace {
+    private final int width;
+    private final int height;
+    private final int startX;
+    private final int startY;
+    private final int stepX;
+    private final int stepY;
+
+    private final BitGrid bits;
+    // the words of bits, read directly by isTraversable()
+    private final long[] traversable;
+    private final double[] stepCosts;
+
+    /**
+     * Creates a search space in which every cell is traversable.
+     *
+     * @param width  the width of the search space, in cells
+     * @param height the height of the search space, in cells
+     * @param startX the "real-world" starting x coordinate
+     * @param startY the "real-world" starting y coordinate
+     * @param stepX  the increment of each "real-world" x coordinate between
+     *               cells.
+     * @param stepY  the increment of each "real-world" y coordinate between
+     *               cells.
+     */
+    public GridGraph( int width, int height,
+                      int startX, int startY,
+                      int stepX, int stepY ) {
+        this( new BitGrid( width, height ), startX, startY, stepX, stepY );
+    }
+
+    /**
+     * Creates a search space whose traversability is that of the given
+     * cells. The BitGrid is shared, not copied: changes made to it through
+     * either object are seen by both.
+     *
+     * @param bits   the traversability of each cell
+     * @param startX the "real-world" starting x coordinate
+     * @param startY the "real-world" starting y coordinate
+     * @param stepX  the increment of each "real-world" x coordinate between
+     *               cells.
+     * @param stepY  the increment of each "real-world" y coordinate between
+     *               cells.
+     */
+    public GridGraph( BitGrid bits,
+                      int startX, int startY,
+                      int stepX, int stepY ) {
+        this.width = bits.getWidth();
+        this.height = bits.getHeight();
+        this.startX = startX;
+        this.startY = startY;
+        this.stepX = stepX;
+        this.stepY = stepY;
+        this.bits = bits;
+        this.traversable = bits.getWords();
+        this.stepCosts = Directions.stepCosts( stepX, stepY );
+    }
+
+    /**
+     * Creates a search space whose traversability is given by the bits of
+     * traversable, which the grid takes ownership of.
+     */
+    GridGraph( int width, int height,
+               int startX, int startY,
+               int stepX, int stepY,
+               long[] traversable ) {
+        this( new BitGrid( width, height, traversable ), startX, startY, stepX, stepY );
+    }
+
+    /**
+     * Creates a GridGraph with the same locations and traversability as the
+     * given nodes. The nodes must be evenly spaced, as they are when created
+     * by Pathfinder.makeNodes().
+     *
+     * @param nodes the search space
+     * @return an equivalent GridGraph
+     * @throws IllegalArgumentException if the nodes are not evenly spaced
+     */
+    public static GridGraph fromNodes( Node[][] nodes ) {
+        int width = nodes.length;
+        int height = nodes[0].length;
+
+        Vertex start = nodes[0][0].location;
+        int stepX = width > 1 ? nodes[1][0].location.x - start.x : 1;
+        int stepY = height > 1 ? nodes[0][1].location.y - start.y : 1;
+
+        GridGraph grid = new GridGraph( BitGrid.fromNodes( nodes ), start.x, start.y, stepX, stepY );
+        for( int x = 0; x < width; x++ ) {
+            for( int y = 0; y < height; y++ ) {
+                Node node = nodes[x][y];
+                if( node.location.x != grid.getLocationX( x, y ) || node.location.y != grid.getLocationY( x, y ) ) {
+                    throw new IllegalArgumentException( "Node at " + x + "," + y + " is not evenly spaced: " + node.location );
+                }
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Creates a Node[][] with the same locations and traversability as this
+     * search space.
+     *
+     * @return an equivalent Node[][]
+     */
+    public Node[][] toNodes() {
+        Node[][] nodes = Pathfinder.makeNodes( width, height, startX, startY, stepX, stepY );
+        bits.copyTo( nodes );
+        return nodes;
+    }
+
+    /**
+     * Converts a path of cell indices, as returned by the Pathfinder's
+     * algorithms, into a list of nodes.
+     *
+     * @param nodes the equivalent Node[][], e.g. as returned by toNodes()
+     * @param path  the path, or null
+     * @return the path as a list of nodes, or null if path is null
+     */
+    public List<Node> toNodes( Node[][] nodes, int[] path ) {
+        if( path == null ) {
+            return null;
+        }
+
+        List<Node> result = new ArrayList( path.length );
+        for( int index : path ) {
+            result.add( nodes[ getX( index ) ][ getY( index ) ] );
+        }
+        return result;
+    }
+
+    /// coordinates ///
+
+    public int index( int x, int y ) {
+        return y * width + x;
+    }
+
+    public int index( Vertex searchSpaceLocation ) {
+        return index( searchSpaceLocation.x, searchSpaceLocation.y );
+    }
+
+    public int getX( int index ) {
+        return index % width;
+    }
+
+    public int getY( int index ) {
+        return index / width;
+    }
+
+    /**
+     * @param index the index of a cell
+     * @return the search-space location of the cell
+     */
+    public Vertex getSearchSpaceLocation( int index ) {
+        return new Vertex( getX( index ), getY( index ) );
+    }
+
+    /**
+     * @param index the index of a cell
+     * @return the "real-world" location of the cell
+     */
+    public Vertex getLocation( int index ) {
+        return new Vertex( getLocationX( index ), getLocationY( index ) );
+    }
+
+    public int getLocationX( int x, int y ) {
+        return startX + ( x * stepX );
+    }
+
+    public int getLocationY( int x, int y ) {
+        return startY + ( y * stepY );
+    }
+
+    public int getStartX() {
+        return startX;
+    }
+
+    public int getStartY() {
+        return startY;
+    }
+
+    public int getStepX() {
+        return stepX;
+    }
+
+    public int getStepY() {
+        return stepY;
+    }
+
+    /// traversability ///
+
+    public boolean isTraversable( int x, int y ) {
+        return isTraversable( index( x, y ) );
+    }
+
+    public void setTraversable( int x, int y, boolean traversable ) {
+        setTraversable( index( x, y ), traversable );
+    }
+
+    public void setTraversable( int index, boolean traversable ) {
+        bits.set( index, traversable );
+    }
+
+    /**
+     * @return the traversability of each cell, which is shared with this
+     *         search space
+     */
+    public BitGrid getBits() {
+        return bits;
+    }
+
+    /// SearchSpace ///
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public boolean isTraversable( int index ) {
+        return ( traversable[ index >>> 6 ] & ( 1L << index ) ) != 0;
+    }
+
+    @Override
+    public int getLocationX( int index ) {
+        return startX + ( getX( index ) * stepX );
+    }
+
+    @Override
+    public int getLocationY( int index ) {
+        return startY + ( getY( index ) * stepY );
+    }
+
+    @Override
+    public double[] getStepCosts() {
+        return stepCosts;
+    }
+}
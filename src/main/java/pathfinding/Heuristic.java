@@ -0,0 +1,76 @@
+package pathfinding;
+
+/**
+ * Estimates the cost of the cheapest path between a cell and the target, for
+ * use by A*.
+ *
+ * For A* to return a lowest-cost path, the estimate must be admissible: it may
+ * never be greater than the real cost of reaching the target. The estimates
+ * provided here measure "real-world" distances, the same units used for the
+ * cost of a path.
+ */
+public interface Heuristic {
+
+    /**
+     * Straight-line distance to the target. Admissible whether or not
+     * diagonal movement is allowed.
+     */
+    public static final Heuristic EUCLIDEAN = new Heuristic() {
+        @Override
+        public double estimate( SearchSpace space, int index, int target ) {
+            return Vertex.distance( space.getLocationX( index ), space.getLocationY( index ),
+                                    space.getLocationX( target ), space.getLocationY( target ) );
+        }
+    };
+
+    /**
+     * The cost of the cheapest path to the target on an unobstructed grid
+     * that allows diagonal movement. This is a tighter bound than
+     * EUCLIDEAN, but is only admissible for evenly-spaced search spaces, such
+     * as those created by Pathfinder.makeNodes() or a GridGraph.
+     */
+    public static final Heuristic OCTILE = new Heuristic() {
+        @Override
+        public double estimate( SearchSpace space, int index, int target ) {
+            int width = space.getWidth();
+            int cellsX = Math.abs( index % width - target % width );
+            int cellsY = Math.abs( index / width - target / width );
+            double worldX = Math.abs( space.getLocationX( index ) - space.getLocationX( target ) );
+            double worldY = Math.abs( space.getLocationY( index ) - space.getLocationY( target ) );
+
+            if( cellsX == 0 || cellsY == 0 ) {
+                return worldX + worldY;
+            }
+
+            double stepX = worldX / cellsX;
+            double stepY = worldY / cellsY;
+            int diagonal = Math.min( cellsX, cellsY );
+            return diagonal * Math.sqrt( stepX * stepX + stepY * stepY )
+                   + ( cellsX - diagonal ) * stepX
+                   + ( cellsY - diagonal ) * stepY;
+        }
+    };
+
+    /**
+     * The sum of the horizontal and vertical distances to the target. This is
+     * only admissible when diagonal movement is not allowed.
+     */
+    public static final Heuristic MANHATTAN = new Heuristic() {
+        @Override
+        public double estimate( SearchSpace space, int index, int target ) {
+            return Math.abs( space.getLocationX( index ) - space.getLocationX( target ) )
+                   + Math.abs( space.getLocationY( index ) - space.getLocationY( target ) );
+        }
+    };
+
+    /**
+     * Estimates the cost of the cheapest path between a cell and the target.
+     *
+     * @param space  the search space
+     * @param index  the index of the cell being evaluated
+     * @param target the index of the target of the search
+     *
+     * @return the estimated cost of reaching target from the cell
+     */
+    public double estimate( SearchSpace space, int index, int target );
+}
@@ -0,0 +1,603 @@
+package pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * An abstraction of a search space for hierarchical pathfinding ("HPA*"),
+ * used by Pathfinder.hpa().
+ *
+ * The search space is divided into square clusters. Wherever a path can cross
+ * from one cluster into the next, a few cells on either side of the border
+ * are chosen as entrances: the middle of each short opening and both ends of
+ * each long one. For every cluster, the cost of the cheapest path within the
+ * cluster between each pair of its entrances is precomputed.
+ *
+ * A query then searches only the entrances (plus the origin and target),
+ * which on a large map is a tiny fraction of its cells, and refines the
+ * resulting route into a full path by searching within one cluster at a time.
+ * Because paths are forced through entrances, they are usually a little more
+ * expensive than the lowest-cost path, but a path is always found if one
+ * exists.
+ *
+ * A HierarchicalMap is not changed by searches, so it can be shared by any
+ * number of threads, but it must not be searched while being updated. When
+ * the traversability of a cell changes, call update() for that cell; only
+ * the cluster containing it, and those that share an entrance with it, are
+ * rebuilt.
+ */
+public class HierarchicalMap {
+    // openings along a border at least this long get two entrances
+    private static final int LONG_OPENING = 6;
+
+    private final SearchSpace space;
+    private final int width;
+    private final int height;
+    private final int clusterSize;
+    private final boolean allowDiagonal;
+    private final int clustersX;
+    private final int clustersY;
+    private final int slots;
+    private final Heuristic heuristic;
+
+    // per cluster: the sorted indices of its entrance cells, and the cost
+    // between each pair of them (-1 if there is no path within the cluster)
+    private final int[][] entrances;
+    private final double[][] distances;
+
+    // used to build clusters, so searches never share them
+    private final SearchContext buildContext = new SearchContext();
+    private final int[] marks;
+    private int[] found = new int[ 16 ];
+    private int foundSize;
+
+    /**
+     * Builds the abstraction of a Node[][].
+     *
+     * @param nodes         the search space
+     * @param clusterSize   the width and height of each cluster, in cells
+     * @param allowDiagonal whether searches may move diagonally
+     */
+    public HierarchicalMap( Node[][] nodes, int clusterSize, boolean allowDiagonal ) {
+        this( NodeSearchSpace.of( nodes ), clusterSize, allowDiagonal );
+    }
+
+    /**
+     * Builds the abstraction of a GridGraph.
+     *
+     * @param grid          the search space
+     * @param clusterSize   the width and height of each cluster, in cells
+     * @param allowDiagonal whether searches may move diagonally
+     */
+    public HierarchicalMap( GridGraph grid, int clusterSize, boolean allowDiagonal ) {
+        this( (SearchSpace)grid, clusterSize, allowDiagonal );
+    }
+
+    private HierarchicalMap( SearchSpace space, int clusterSize, boolean allowDiagonal ) {
+        if( clusterSize < 2 ) {
+            throw new IllegalArgumentException( "Cluster size must be at least 2: " + clusterSize );
+        }
+
+        this.space = space;
+        this.width = space.getWidth();
+        this.height = space.getHeight();
+        this.clusterSize = clusterSize;
+        this.allowDiagonal = allowDiagonal;
+        this.clustersX = ( width + clusterSize - 1 ) / clusterSize;
+        this.clustersY = ( height + clusterSize - 1 ) / clusterSize;
+        this.slots = 4 * clusterSize;
+        this.marks = new int[ clusterSize * clusterSize ];
+        if( space.getStepCosts() == null ) {
+            this.heuristic = Heuristic.EUCLIDEAN;
+        }
+        else {
+            this.heuristic = allowDiagonal ? Heuristic.OCTILE : Heuristic.MANHATTAN;
+        }
+        this.entrances = new int[ clustersX * clustersY ][];
+        this.distances = new double[ clustersX * clustersY ][];
+
+        for( int cluster = 0; cluster < entrances.length; cluster++ ) {
+            build( cluster );
+        }
+    }
+
+    /**
+     * @return the search space this map was built for
+     */
+    public SearchSpace getSearchSpace() {
+        return space;
+    }
+
+    /**
+     * @return the width and height of each cluster, in cells
+     */
+    public int getClusterSize() {
+        return clusterSize;
+    }
+
+    /**
+     * @return true if searches of this map may move diagonally
+     */
+    public boolean isDiagonalAllowed() {
+        return allowDiagonal;
+    }
+
+    /**
+     * @return the number of entrances in all clusters
+     */
+    public int getEntranceCount() {
+        int count = 0;
+        for( int[] cells : entrances ) {
+            count += cells.length;
+        }
+        return count;
+    }
+
+    /**
+     * Rebuilds the clusters affected by a change in the traversability of a
+     * cell.
+     *
+     * @param x the search-space x coordinate of the cell
+     * @param y the search-space y coordinate of the cell
+     */
+    public void update( int x, int y ) {
+        int clusterX = x / clusterSize;
+        int clusterY = y / clusterSize;
+        int offsetX = x % clusterSize;
+        int offsetY = y % clusterSize;
+
+        // a cell on the edge of its cluster is part of the border shared
+        // with the cluster on the other side of that edge
+        int fromX = offsetX == 0 ? clusterX - 1 : clusterX;
+        int toX = offsetX == clusterSize - 1 ? clusterX + 1 : clusterX;
+        int fromY = offsetY == 0 ? clusterY - 1 : clusterY;
+        int toY = offsetY == clusterSize - 1 ? clusterY + 1 : clusterY;
+
+        for( int cy = Math.max( 0, fromY ); cy <= Math.min( clustersY - 1, toY ); cy++ ) {
+            for( int cx = Math.max( 0, fromX ); cx <= Math.min( clustersX - 1, toX ); cx++ ) {
+                if( cx != clusterX && cy != clusterY && !allowDiagonal ) {
+                    continue;
+                }
+                build( cy * clustersX + cx );
+            }
+        }
+    }
+
+    /**
+     * Searches for a path between two cells. Both contexts are reset as
+     * needed, and must not be the same context.
+     *
+     * @param abstractContext holds the working data of the search over
+     *                        entrances
+     * @param clusterContext  holds the working data of searches within a
+     *                        single cluster
+     *
+     * @return the path from origin to target, or null if there is none
+     */
+    int[] search( int origin, int target, SearchContext abstractContext, SearchContext clusterContext ) {
+        if( origin == target ) {
+            return new int[]{ origin };
+        }
+        if( !space.isTraversable( origin ) || !space.isTraversable( target ) ) {
+            // searchCluster() expands the origin and target of its search
+            // whether or not they are traversable
+            return null;
+        }
+
+        int originCluster = clusterOf( origin );
+        int targetCluster = clusterOf( target );
+
+        searchCluster( clusterContext, originCluster, origin, -1, 0 );
+        double[] fromOrigin = entranceCosts( clusterContext, originCluster );
+        double direct = originCluster == targetCluster ? clusterContext.getCost( toLocal( originCluster, target ) ) : -1;
+
+        searchCluster( clusterContext, targetCluster, target, -1, 0 );
+        double[] toTarget = entranceCosts( clusterContext, targetCluster );
+
+        int originId = entrances.length * slots;
+        int targetId = originId + 1;
+        abstractContext.reset( targetId + 1 );
+        IndexedHeap open = abstractContext.getOpen();
+        int[] directions = Directions.get( allowDiagonal );
+        double[] stepCosts = space.getStepCosts();
+
+        abstractContext.setCost( originId, 0 );
+        open.push( originId, heuristic.estimate( space, origin, target ) );
+
+        while( !open.isEmpty() ) {
+            int current = open.poll();
+            if( current == targetId ) {
+                break;
+            }
+            abstractContext.setVisited( current, true );
+            double currentCost = abstractContext.getCost( current );
+
+            if( current == originId ) {
+                int[] cells = entrances[originCluster];
+                for( int k = 0; k < cells.length; k++ ) {
+                    if( fromOrigin[k] != -1 ) {
+                        relax( abstractContext, current, originCluster * slots + k, currentCost + fromOrigin[k], cells[k], target );
+                    }
+                }
+                if( direct != -1 ) {
+                    relax( abstractContext, current, targetId, currentCost + direct, target, target );
+                }
+                continue;
+            }
+
+            int cluster = current / slots;
+            int k = current % slots;
+            int[] cells = entrances[cluster];
+            double[] costs = distances[cluster];
+            int cell = cells[k];
+
+            // other entrances of the same cluster
+            for( int j = 0; j < cells.length; j++ ) {
+                double cost = costs[ k * cells.length + j ];
+                if( j != k && cost != -1 ) {
+                    relax( abstractContext, current, cluster * slots + j, currentCost + cost, cells[j], target );
+                }
+            }
+
+            // entrances of neighbouring clusters, one step away
+            int x = cell % width;
+            int y = cell / width;
+            for( int direction : directions ) {
+                if( !Directions.inBounds( x, y, direction, width, height ) ) {
+                    continue;
+                }
+                int adjacentX = x + Directions.X[direction];
+                int adjacentY = y + Directions.Y[direction];
+                int neighbour = ( adjacentY / clusterSize ) * clustersX + adjacentX / clusterSize;
+                if( neighbour == cluster ) {
+                    continue;
+                }
+                int adjacent = adjacentY * width + adjacentX;
+                int j = Arrays.binarySearch( entrances[neighbour], adjacent );
+                if( j >= 0 ) {
+                    double stepCost = stepCosts != null ? stepCosts[direction] : distance( cell, adjacent );
+                    relax( abstractContext, current, neighbour * slots + j, currentCost + stepCost, adjacent, target );
+                }
+            }
+
+            if( cluster == targetCluster && toTarget[k] != -1 ) {
+                relax( abstractContext, current, targetId, currentCost + toTarget[k], target, target );
+            }
+        }
+
+        int[] route = Pathfinder.walkBackwards( abstractContext, targetId );
+        if( route == null ) {
+            return null;
+        }
+
+        return refine( clusterContext, route, origin, target, originId, targetId );
+    }
+
+    /// internal utilities ///
+
+    /**
+     * Finds the entrances of a cluster and the costs between them.
+     */
+    private void build( int cluster ) {
+        int clusterX = cluster % clustersX;
+        int clusterY = cluster / clustersX;
+        int x0 = clusterX * clusterSize;
+        int y0 = clusterY * clusterSize;
+        int x1 = Math.min( width, x0 + clusterSize ) - 1;
+        int y1 = Math.min( height, y0 + clusterSize ) - 1;
+
+        foundSize = 0;
+        if( clusterX > 0 ) {
+            findVertical( x0 - 1, y0, y1, false );
+        }
+        if( clusterX < clustersX - 1 ) {
+            findVertical( x1, y0, y1, true );
+        }
+        if( clusterY > 0 ) {
+            findHorizontal( y0 - 1, x0, x1, false );
+        }
+        if( clusterY < clustersY - 1 ) {
+            findHorizontal( y1, x0, x1, true );
+        }
+        if( allowDiagonal ) {
+            findCorner( x0, y0, -1, -1 );
+            findCorner( x1, y0, 1, -1 );
+            findCorner( x0, y1, -1, 1 );
+            findCorner( x1, y1, 1, 1 );
+        }
+
+        int[] cells = Arrays.copyOf( found, foundSize );
+        Arrays.sort( cells );
+        int unique = 0;
+        for( int i = 0; i < cells.length; i++ ) {
+            if( i == 0 || cells[i] != cells[i - 1] ) {
+                cells[unique++] = cells[i];
+            }
+        }
+        cells = Arrays.copyOf( cells, unique );
+
+        // costs are symmetric, so the search from each entrance only needs
+        // to reach the entrances after it
+        double[] costs = new double[ cells.length * cells.length ];
+        for( int k = 0; k < cells.length; k++ ) {
+            marks[ toLocal( cluster, cells[k] ) ] = 1;
+        }
+        for( int k = 0; k < cells.length; k++ ) {
+            marks[ toLocal( cluster, cells[k] ) ] = 0;
+            if( k < cells.length - 1 ) {
+                searchCluster( buildContext, cluster, cells[k], -1, cells.length - k - 1 );
+            }
+            for( int j = k + 1; j < cells.length; j++ ) {
+                double cost = buildContext.getCost( toLocal( cluster, cells[j] ) );
+                costs[ k * cells.length + j ] = cost;
+                costs[ j * cells.length + k ] = cost;
+            }
+        }
+
+        entrances[cluster] = cells;
+        distances[cluster] = costs;
+    }
+
+    /**
+     * Finds the crossings of the border between column borderX and the
+     * column to its right, over rows y0 to y1, and records the cells on one
+     * side of them.
+     *
+     * @param left true to record the cells in column borderX, false to
+     *             record those in the column to its right
+     */
+    private void findVertical( int borderX, int y0, int y1, boolean left ) {
+        int recordX = left ? borderX : borderX + 1;
+        int runStart = -1;
+        for( int y = y0; y <= y1 + 1; y++ ) {
+            boolean open = y <= y1 && crosses( borderX, y, borderX + 1, y );
+            if( open && runStart == -1 ) {
+                runStart = y;
+            }
+            else if( !open && runStart != -1 ) {
+                addOpening( recordX, runStart, recordX, y - 1 );
+                runStart = -1;
+            }
+
+            if( allowDiagonal && y <= y1 && !open ) {
+                // diagonal crossings only matter where there is no straight
+                // crossing next to them
+                for( int dy = -1; dy <= 1; dy += 2 ) {
+                    int otherY = y + dy;
+                    if( otherY >= y0 && otherY <= y1
+                        && !crosses( borderX, otherY, borderX + 1, otherY )
+                        && crosses( borderX, y, borderX + 1, otherY ) ) {
+                        add( left ? y * width + borderX : otherY * width + borderX + 1 );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the crossings of the border between row borderY and the row
+     * below it, over columns x0 to x1, and records the cells on one side of
+     * them.
+     *
+     * @param top true to record the cells in row borderY, false to record
+     *            those in the row below it
+     */
+    private void findHorizontal( int borderY, int x0, int x1, boolean top ) {
+        int recordY = top ? borderY : borderY + 1;
+        int runStart = -1;
+        for( int x = x0; x <= x1 + 1; x++ ) {
+            boolean open = x <= x1 && crosses( x, borderY, x, borderY + 1 );
+            if( open && runStart == -1 ) {
+                runStart = x;
+            }
+            else if( !open && runStart != -1 ) {
+                addOpening( runStart, recordY, x - 1, recordY );
+                runStart = -1;
+            }
+
+            if( allowDiagonal && x <= x1 && !open ) {
+                for( int dx = -1; dx <= 1; dx += 2 ) {
+                    int otherX = x + dx;
+                    if( otherX >= x0 && otherX <= x1
+                        && !crosses( otherX, borderY, otherX, borderY + 1 )
+                        && crosses( x, borderY, otherX, borderY + 1 ) ) {
+                        add( top ? borderY * width + x : ( borderY + 1 ) * width + otherX );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the corner cell (x,y) if a diagonal step leaves the cluster
+     * through it, in direction (dx,dy), into the diagonally adjacent cluster.
+     */
+    private void findCorner( int x, int y, int dx, int dy ) {
+        int otherX = x + dx;
+        int otherY = y + dy;
+        if( otherX < 0 || otherY < 0 || otherX >= width || otherY >= height ) {
+            return;
+        }
+        if( crosses( x, y, otherX, otherY ) ) {
+            add( y * width + x );
+        }
+    }
+
+    /**
+     * Records the entrances of an opening that runs from (x0,y0) to (x1,y1).
+     */
+    private void addOpening( int x0, int y0, int x1, int y1 ) {
+        int length = Math.max( x1 - x0, y1 - y0 ) + 1;
+        if( length < LONG_OPENING ) {
+            add( ( ( y0 + y1 ) / 2 ) * width + ( x0 + x1 ) / 2 );
+        }
+        else {
+            add( y0 * width + x0 );
+            add( y1 * width + x1 );
+        }
+    }
+
+    private void add( int cell ) {
+        if( foundSize == found.length ) {
+            found = Arrays.copyOf( found, found.length * 2 );
+        }
+        found[foundSize++] = cell;
+    }
+
+    private boolean crosses( int x, int y, int otherX, int otherY ) {
+        return space.isTraversable( y * width + x ) && space.isTraversable( otherY * width + otherX );
+    }
+
+    /**
+     * Runs Dijkstra's algorithm within a single cluster, or A* if there is a
+     * cell to stop at. The context holds the results, indexed by toLocal().
+     *
+     * @param source    the index of the cell to search from
+     * @param stop      the index of a cell at which to stop, or -1
+     * @param remaining if greater than 0, the search stops once this many
+     *                  cells set in marks have been expanded
+     */
+    private void searchCluster( SearchContext context, int cluster, int source, int stop, int remaining ) {
+        int x0 = ( cluster % clustersX ) * clusterSize;
+        int y0 = ( cluster / clustersX ) * clusterSize;
+        int clusterWidth = Math.min( width - x0, clusterSize );
+        int clusterHeight = Math.min( height - y0, clusterSize );
+        int[] directions = Directions.get( allowDiagonal );
+        double[] stepCosts = space.getStepCosts();
+
+        context.reset( clusterWidth * clusterHeight );
+        IndexedHeap open = context.getOpen();
+        int localSource = toLocal( cluster, source );
+        int localStop = stop == -1 ? -1 : toLocal( cluster, stop );
+        context.setCost( localSource, 0 );
+        open.push( localSource, 0 );
+
+        while( !open.isEmpty() ) {
+            int current = open.poll();
+            if( current == localStop ) {
+                break;
+            }
+            if( remaining > 0 && marks[current] != 0 && --remaining == 0 ) {
+                break;
+            }
+            context.setVisited( current, true );
+            double currentCost = context.getCost( current );
+            int x = current % clusterWidth;
+            int y = current / clusterWidth;
+
+            for( int direction : directions ) {
+                if( !Directions.inBounds( x, y, direction, clusterWidth, clusterHeight ) ) {
+                    continue;
+                }
+                int adjacentX = x + Directions.X[direction];
+                int adjacentY = y + Directions.Y[direction];
+                int adjacent = adjacentY * clusterWidth + adjacentX;
+                int cell = ( y0 + adjacentY ) * width + x0 + adjacentX;
+                if( !space.isTraversable( cell ) || context.isVisited( adjacent ) ) {
+                    continue;
+                }
+
+                double stepCost = stepCosts != null
+                                  ? stepCosts[direction]
+                                  : distance( ( y0 + y ) * width + x0 + x, cell );
+                double newCost = currentCost + stepCost;
+                double cost = context.getCost( adjacent );
+                if( cost == -1 || cost > newCost ) {
+                    context.setCost( adjacent, newCost );
+                    context.setPrevious( adjacent, current );
+                    open.push( adjacent, stop == -1 ? newCost : newCost + heuristic.estimate( space, cell, stop ) );
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the cost of reaching each of the cluster's entrances, from
+     *         the most recent searchCluster()
+     */
+    private double[] entranceCosts( SearchContext context, int cluster ) {
+        int[] cells = entrances[cluster];
+        double[] costs = new double[ cells.length ];
+        for( int k = 0; k < cells.length; k++ ) {
+            costs[k] = context.getCost( toLocal( cluster, cells[k] ) );
+        }
+        return costs;
+    }
+
+    /**
+     * Turns a route of entrance ids into a path of cells, by searching
+     * within a cluster between consecutive entrances of that cluster.
+     */
+    private int[] refine( SearchContext context, int[] route, int origin, int target, int originId, int targetId ) {
+        int[] path = new int[ 16 ];
+        int length = 0;
+        path[length++] = origin;
+
+        int previous = origin;
+        for( int i = 1; i < route.length; i++ ) {
+            int id = route[i];
+            int cell = id == targetId ? target : id == originId ? origin : entrances[ id / slots ][ id % slots ];
+            if( cell == previous ) {
+                continue;
+            }
+
+            int cluster = clusterOf( cell );
+            if( cluster != clusterOf( previous ) ) {
+                if( length == path.length ) {
+                    path = Arrays.copyOf( path, path.length * 2 );
+                }
+                path[length++] = cell;
+            }
+            else {
+                searchCluster( context, cluster, previous, cell, 0 );
+                int[] segment = Pathfinder.walkBackwards( context, toLocal( cluster, cell ) );
+                if( length + segment.length > path.length ) {
+                    path = Arrays.copyOf( path, Math.max( path.length * 2, length + segment.length ) );
+                }
+                for( int j = 1; j < segment.length; j++ ) {
+                    path[length++] = toGlobal( cluster, segment[j] );
+                }
+            }
+            previous = cell;
+        }
+
+        return Arrays.copyOf( path, length );
+    }
+
+    private int clusterOf( int cell ) {
+        return ( ( cell / width ) / clusterSize ) * clustersX + ( cell % width ) / clusterSize;
+    }
+
+    /**
+     * @return the index of a cell within its cluster
+     */
+    private int toLocal( int cluster, int cell ) {
+        int x0 = ( cluster % clustersX ) * clusterSize;
+        int y0 = ( cluster / clustersX ) * clusterSize;
+        int clusterWidth = Math.min( width - x0, clusterSize );
+        return ( cell / width - y0 ) * clusterWidth + cell % width - x0;
+    }
+
+    private int toGlobal( int cluster, int local ) {
+        int x0 = ( cluster % clustersX ) * clusterSize;
+        int y0 = ( cluster / clustersX ) * clusterSize;
+        int clusterWidth = Math.min( width - x0, clusterSize );
+        return ( y0 + local / clusterWidth ) * width + x0 + local % clusterWidth;
+    }
+
+    private void relax( SearchContext context, int from, int id, double newCost, int cell, int target ) {
+        if( context.isVisited( id ) ) {
+            return;
+        }
+        double cost = context.getCost( id );
+        if( cost == -1 || cost > newCost ) {
+            context.setCost( id, newCost );
+            context.setPrevious( id, from );
+            context.getOpen().push( id, newCost + heuristic.estimate( space, cell, target ) );
+        }
+    }
+
+    private double distance( int one, int two ) {
+        return Vertex.distance( space.getLocationX( one ), space.getLocationY( one ),
+                                space.getLocationX( two ), space.getLocationY( two ) );
+    }
+}
@@ -0,0 +1,260 @@
+package pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of integer ids, keyed by a double, that supports
+ * decrease-key in logarithmic time.
+ *
+ * Ids must be in the range [0, capacity), where capacity is the value passed
+ * to the constructor. In the Pathfinder's algorithms an id is the index of a
+ * node within the search space, and the key is the cost used to decide which
+ * node should be expanded next.
+ *
+ * The heap only allocates storage proportional to the number of ids it
+ * actually holds, plus a single id-to-position table. Clearing the heap
+ * touches only the ids it currently contains, so a heap can be cheaply
+ * reused between searches.
+ */
+public class IndexedHeap {
+    private static final int INITIAL_SIZE = 64;
+
+    private int[] ids;        // heap order -> id
+    private double[] keys;    // heap order -> key
+    private int[] positions;  // id -> heap position + 1 (0 == not in heap)
+    private int size;
+
+    /**
+     * Creates an empty heap that can hold ids in the range [0, capacity).
+     *
+     * @param capacity the number of distinct ids the heap can hold
+     */
+    public IndexedHeap( int capacity ) {
+        int initial = Math.max( 1, Math.min( capacity, INITIAL_SIZE ) );
+        ids = new int[ initial ];
+        keys = new double[ initial ];
+        positions = new int[ capacity ];
+    }
+
+    /**
+     * @return the number of distinct ids this heap can hold
+     */
+    public int capacity() {
+        return positions.length;
+    }
+
+    /**
+     * @return the number of ids currently in the heap
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param id an id in the range [0, capacity)
+     * @return true if the id is currently in the heap
+     */
+    public boolean contains( int id ) {
+        return getPosition( id ) != 0;
+    }
+
+    /**
+     * @param id an id that is currently in the heap
+     * @return the key currently associated with id
+     */
+    public double getKey( int id ) {
+        return keys[ getPosition( id ) - 1 ];
+    }
+
+    /**
+     * Adds id to the heap with the given key. If id is already in the heap,
+     * its key is lowered to the given key; if the existing key is already
+     * lower than or equal to the given key, the heap is left unchanged.
+     *
+     * @param id  an id in the range [0, capacity)
+     * @param key the key
+     *
+     * @return true if the heap was changed
+     */
+    public boolean push( int id, double key ) {
+        int position = getPosition( id );
+        if( position == 0 ) {
+            if( size == ids.length ) {
+                grow();
+            }
+            ids[size] = id;
+            keys[size] = key;
+            setPosition( id, size + 1 );
+            size++;
+            siftUp( size - 1 );
+            return true;
+        }
+        else if( key < keys[position - 1] ) {
+            keys[position - 1] = key;
+            siftUp( position - 1 );
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Changes the key associated with an id that is already in the heap,
+     * whether the new key is higher or lower than the old one.
+     *
+     * @param id  an id that is currently in the heap
+     * @param key the new key
+     */
+    public void update( int id, double key ) {
+        int position = getPosition( id ) - 1;
+        double old = keys[position];
+        keys[position] = key;
+        if( key < old ) {
+            siftUp( position );
+        }
+        else {
+            siftDown( position );
+        }
+    }
+
+    /**
+     * Removes id from the heap, if present.
+     *
+     * @param id an id in the range [0, capacity)
+     */
+    public void remove( int id ) {
+        int position = getPosition( id ) - 1;
+        if( position < 0 ) {
+            return;
+        }
+        setPosition( id, 0 );
+        size--;
+        if( position != size ) {
+            double removedKey = keys[position];
+            move( size, position );
+            if( keys[position] < removedKey ) {
+                siftUp( position );
+            }
+            else {
+                siftDown( position );
+            }
+        }
+    }
+
+    /**
+     * @return the id with the lowest key, without removing it
+     */
+    public int peek() {
+        return ids[0];
+    }
+
+    /**
+     * @param position a position in the heap, from 0 to size() - 1
+     * @return the id at that position; ids are in no particular order,
+     *         except that the id at position 0 has the lowest key
+     */
+    int getId( int position ) {
+        return ids[position];
+    }
+
+    /**
+     * @return the lowest key in the heap
+     */
+    public double peekKey() {
+        return keys[0];
+    }
+
+    /**
+     * Removes and returns the id with the lowest key.
+     *
+     * @return the id with the lowest key
+     */
+    public int poll() {
+        int result = ids[0];
+        setPosition( result, 0 );
+        size--;
+        if( size > 0 ) {
+            move( size, 0 );
+            siftDown( 0 );
+        }
+        return result;
+    }
+
+    /**
+     * Removes all ids from the heap. This only touches the ids currently in
+     * the heap, not the full id range.
+     */
+    public void clear() {
+        for( int i = 0; i < size; i++ ) {
+            setPosition( ids[i], 0 );
+        }
+        size = 0;
+    }
+
+    /// internal utilities ///
+
+    private void siftUp( int position ) {
+        int id = ids[position];
+        double key = keys[position];
+        while( position > 0 ) {
+            int parent = ( position - 1 ) >>> 1;
+            if( keys[parent] <= key ) {
+                break;
+            }
+            move( parent, position );
+            position = parent;
+        }
+        ids[position] = id;
+        keys[position] = key;
+        setPosition( id, position + 1 );
+    }
+
+    private void siftDown( int position ) {
+        int id = ids[position];
+        double key = keys[position];
+        int half = size >>> 1;
+        while( position < half ) {
+            int child = ( position << 1 ) + 1;
+            int right = child + 1;
+            if( right < size && keys[right] < keys[child] ) {
+                child = right;
+            }
+            if( key <= keys[child] ) {
+                break;
+            }
+            move( child, position );
+            position = child;
+        }
+        ids[position] = id;
+        keys[position] = key;
+        setPosition( id, position + 1 );
+    }
+
+    private void move( int from, int to ) {
+        int id = ids[from];
+        ids[to] = id;
+        keys[to] = keys[from];
+        setPosition( id, to + 1 );
+    }
+
+    /**
+     * @return the heap position of id plus one, or 0 if id is not in the
+     *         heap
+     */
+    int getPosition( int id ) {
+        return positions[id];
+    }
+
+    void setPosition( int id, int position ) {
+        positions[id] = position;
+    }
+
+    private void grow() {
+        int newSize = Math.min( capacity(), Math.max( ids.length * 2, 1 ) );
+        ids = Arrays.copyOf( ids, newSize );
+        keys = Arrays.copyOf( keys, newSize );
+    }
+}
@@ -0,0 +1,365 @@
+package pathfinding;
+
+/**
+ * An implementation of Jump Point Search, used by Pathfinder.jps().
+ *
+ * Jump Point Search is A* with two additions that are only valid on an
+ * evenly-spaced grid. Instead of adding every adjacent cell to the open set,
+ * it first prunes those that can be reached at least as cheaply without
+ * passing through the current cell; then, instead of stepping one cell at a
+ * time, it "jumps" in a straight line until it reaches a cell with a neighbour
+ * that cannot be reached any other way. Only those jump points are added to
+ * the open set, so on large open areas far fewer cells are expanded.
+ *
+ * When diagonal movement is allowed, the pruning and jumping rules are those
+ * of Harabor and Grastien's original paper, in which (as elsewhere in
+ * Pathfinder) a diagonal move is allowed whenever the destination cell is
+ * traversable. When it is not, a vertical jump also stops at any cell from
+ * which a horizontal jump would find a jump point.
+ *
+ * If a JumpTable is given, jumps are looked up in the table rather than
+ * found by scanning ("JPS+"). Otherwise, on a GridGraph, horizontal jumps
+ * scan the grid's BitGrid up to 64 cells at a time.
+ *
+ * For more information on Jump Point Search, see:
+ * https://en.wikipedia.org/wiki/Jump_point_search
+ */
+final class JumpPointSearch {
+
+    private JumpPointSearch() {
+    }
+
+    /**
+     * Searches for a path between origin and target, using the same open
+     * set, closed set and stopping rules as Pathfinder.astar().
+     *
+     * The context must have been reset before this is called. On return,
+     * each expanded cell's previous cell is the jump point it was reached
+     * from; use expandPath() to fill in the cells between jump points.
+     *
+     * @param table a jump table for the search space, or null to scan for
+     *              jump points; if given, allowDiagonal must be true
+     *
+     * @return true if a path from origin to target was found
+     */
+    public static boolean search( SearchSpace space,
+                                  JumpTable table,
+                                  int origin, int target,
+                                  boolean returnFast,
+                                  boolean allowDiagonal,
+                                  SearchContext context ) {
+        int width = space.getWidth();
+        Heuristic heuristic = allowDiagonal ? Heuristic.OCTILE : Heuristic.MANHATTAN;
+        int[] directions = Directions.get( allowDiagonal );
+        IndexedHeap open = context.getOpen();
+        BitGrid bits = space instanceof GridGraph ? ( (GridGraph)space ).getBits() : null;
+
+        context.setCost( origin, 0 );
+        open.push( origin, heuristic.estimate( space, origin, target ) );
+
+        while( !open.isEmpty() ) {
+            double targetCost = context.getCost( target );
+            if( targetCost != -1 && open.peekKey() >= targetCost ) {
+                break;
+            }
+
+            int current = open.poll();
+            context.setVisited( current, true );
+
+            if( returnFast && current == target ) {
+                break;
+            }
+
+            int x = current % width;
+            int y = current / width;
+            int previous = context.getPrevious( current );
+            double currentCost = context.getCost( current );
+
+            if( previous == -1 ) {
+                for( int direction : directions ) {
+                    jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y,
+                              Directions.X[direction], Directions.Y[direction], target, allowDiagonal );
+                }
+                continue;
+            }
+
+            int dx = Integer.signum( x - previous % width );
+            int dy = Integer.signum( y - previous / width );
+
+            if( allowDiagonal ) {
+                if( dx != 0 && dy != 0 ) {
+                    jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, 0, dy, target, true );
+                    jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, dx, 0, target, true );
+                    jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, dx, dy, target, true );
+                    if( !isTraversable( space, x - dx, y ) ) {
+                        jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, -dx, dy, target, true );
+                    }
+                    if( !isTraversable( space, x, y - dy ) ) {
+                        jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, dx, -dy, target, true );
+                    }
+                }
+                else if( dx != 0 ) {
+                    jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, dx, 0, target, true );
+                    if( !isTraversable( space, x, y + 1 ) ) {
+                        jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, dx, 1, target, true );
+                    }
+                    if( !isTraversable( space, x, y - 1 ) ) {
+                        jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, dx, -1, target, true );
+                    }
+                }
+                else {
+                    jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, 0, dy, target, true );
+                    if( !isTraversable( space, x + 1, y ) ) {
+                        jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, 1, dy, target, true );
+                    }
+                    if( !isTraversable( space, x - 1, y ) ) {
+                        jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, -1, dy, target, true );
+                    }
+                }
+            }
+            else {
+                if( dx != 0 ) {
+                    jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, 0, -1, target, false );
+                    jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, 0, 1, target, false );
+                    jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, dx, 0, target, false );
+                }
+                else {
+                    jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, -1, 0, target, false );
+                    jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, 1, 0, target, false );
+                    jumpFrom( space, bits, table, context, open, heuristic, current, currentCost, x, y, 0, dy, target, false );
+                }
+            }
+        }
+
+        return context.getCost( target ) != -1;
+    }
+
+    /**
+     * Fills in the cells between consecutive jump points. Consecutive jump
+     * points always lie on a single straight or diagonal line.
+     *
+     * @param width      the width of the search space
+     * @param jumpPoints the jump points, from origin to target
+     * @return every cell on the path, from origin to target
+     */
+    public static int[] expandPath( int width, int[] jumpPoints ) {
+        if( jumpPoints == null ) {
+            return null;
+        }
+
+        int length = 1;
+        for( int i = 1; i < jumpPoints.length; i++ ) {
+            length += steps( width, jumpPoints[i - 1], jumpPoints[i] );
+        }
+
+        int[] path = new int[ length ];
+        int next = 0;
+        path[next++] = jumpPoints[0];
+        for( int i = 1; i < jumpPoints.length; i++ ) {
+            int from = jumpPoints[i - 1];
+            int to = jumpPoints[i];
+            int dx = Integer.signum( to % width - from % width );
+            int dy = Integer.signum( to / width - from / width );
+            int offset = dy * width + dx;
+            for( int index = from + offset; index != to; index += offset ) {
+                path[next++] = index;
+            }
+            path[next++] = to;
+        }
+        return path;
+    }
+
+    /// internal utilities ///
+
+    /**
+     * Jumps from the current cell in direction (dx,dy), and if a jump point
+     * is found, adds it to the open set.
+     */
+    private static void jumpFrom( SearchSpace space, BitGrid bits, JumpTable table, SearchContext context, IndexedHeap open, Heuristic heuristic,
+                                  int current, double currentCost, int x, int y, int dx, int dy,
+                                  int target, boolean allowDiagonal ) {
+        int jumpPoint;
+        if( table != null ) {
+            jumpPoint = table.jump( current, Directions.of( dx, dy ), target );
+        }
+        else if( allowDiagonal ) {
+            jumpPoint = jump( space, bits, x, y, dx, dy, target );
+        }
+        else {
+            jumpPoint = jumpStraight( space, bits, x, y, dx, dy, target );
+        }
+        if( jumpPoint == -1 ) {
+            return;
+        }
+
+        double newCost = currentCost + distance( space, current, jumpPoint );
+        double cost = context.getCost( jumpPoint );
+        if( cost == -1 || cost > newCost ) {
+            context.setCost( jumpPoint, newCost );
+            context.setPrevious( jumpPoint, current );
+            context.setVisited( jumpPoint, false );
+            open.push( jumpPoint, newCost + heuristic.estimate( space, jumpPoint, target ) );
+        }
+    }
+
+    /**
+     * Jumps from (x,y) in direction (dx,dy), allowing diagonal movement.
+     *
+     * @return the index of the jump point, or -1 if there is none
+     */
+    private static int jump( SearchSpace space, BitGrid bits, int x, int y, int dx, int dy, int target ) {
+        if( bits != null && dy == 0 ) {
+            return jumpRow( bits, x, y, dx, target, true );
+        }
+
+        int width = space.getWidth();
+        while( true ) {
+            x += dx;
+            y += dy;
+            if( !isTraversable( space, x, y ) ) {
+                return -1;
+            }
+
+            int index = y * width + x;
+            if( index == target ) {
+                return index;
+            }
+
+            if( dx != 0 && dy != 0 ) {
+                if( ( isTraversable( space, x - dx, y + dy ) && !isTraversable( space, x - dx, y ) )
+                    || ( isTraversable( space, x + dx, y - dy ) && !isTraversable( space, x, y - dy ) ) ) {
+                    return index;
+                }
+                if( jump( space, bits, x, y, dx, 0, target ) != -1 || jump( space, bits, x, y, 0, dy, target ) != -1 ) {
+                    return index;
+                }
+            }
+            else if( dx != 0 ) {
+                if( ( isTraversable( space, x + dx, y + 1 ) && !isTraversable( space, x, y + 1 ) )
+                    || ( isTraversable( space, x + dx, y - 1 ) && !isTraversable( space, x, y - 1 ) ) ) {
+                    return index;
+                }
+            }
+            else {
+                if( ( isTraversable( space, x + 1, y + dy ) && !isTraversable( space, x + 1, y ) )
+                    || ( isTraversable( space, x - 1, y + dy ) && !isTraversable( space, x - 1, y ) ) ) {
+                    return index;
+                }
+            }
+        }
+    }
+
+    /**
+     * Jumps from (x,y) in direction (dx,dy), without diagonal movement.
+     *
+     * @return the index of the jump point, or -1 if there is none
+     */
+    private static int jumpStraight( SearchSpace space, BitGrid bits, int x, int y, int dx, int dy, int target ) {
+        if( bits != null && dy == 0 ) {
+            return jumpRow( bits, x, y, dx, target, false );
+        }
+
+        int width = space.getWidth();
+        while( true ) {
+            x += dx;
+            y += dy;
+            if( !isTraversable( space, x, y ) ) {
+                return -1;
+            }
+
+            int index = y * width + x;
+            if( index == target ) {
+                return index;
+            }
+
+            if( dx != 0 ) {
+                if( ( isTraversable( space, x, y - 1 ) && !isTraversable( space, x - dx, y - 1 ) )
+                    || ( isTraversable( space, x, y + 1 ) && !isTraversable( space, x - dx, y + 1 ) ) ) {
+                    return index;
+                }
+            }
+            else {
+                if( ( isTraversable( space, x - 1, y ) && !isTraversable( space, x - 1, y - dy ) )
+                    || ( isTraversable( space, x + 1, y ) && !isTraversable( space, x + 1, y - dy ) ) ) {
+                    return index;
+                }
+                if( jumpStraight( space, bits, x, y, 1, 0, target ) != -1 || jumpStraight( space, bits, x, y, -1, 0, target ) != -1 ) {
+                    return index;
+                }
+            }
+        }
+    }
+
+    /**
+     * Jumps from (x,y) in horizontal direction dx, as jump() or
+     * jumpStraight() would, but testing 64 cells of the row at a time: a
+     * cell is a jump point if one of the cells diagonally ahead of it
+     * (diagonal movement) or beside it (straight movement) is traversable,
+     * and the cell beside it (diagonal movement) or diagonally behind it
+     * (straight movement) is not.
+     *
+     * @return the index of the jump point, or -1 if there is none
+     */
+    private static int jumpRow( BitGrid bits, int x, int y, int dx, int target, boolean allowDiagonal ) {
+        int width = bits.getWidth();
+        int targetSteps = Integer.MAX_VALUE;
+        if( target / width == y && ( target % width - x ) * dx > 0 ) {
+            targetSteps = ( target % width - x ) * dx;
+        }
+
+        // the cells examined are those from steps to steps + 63 ahead of x
+        for( int steps = 1; ; steps += 64 ) {
+            int start = x + steps * dx;
+            long open = bits.getRow( start, y, dx );
+            long above = bits.getRow( start, y - 1, dx );
+            long below = bits.getRow( start, y + 1, dx );
+            long forced;
+            if( allowDiagonal ) {
+                // bit i of ahead is the cell one step further on than bit i
+                long aheadAbove = ( above >>> 1 ) | ( cell( bits, start + 64 * dx, y - 1 ) << 63 );
+                long aheadBelow = ( below >>> 1 ) | ( cell( bits, start + 64 * dx, y + 1 ) << 63 );
+                forced = ( aheadAbove & ~above ) | ( aheadBelow & ~below );
+            }
+            else {
+                // bit i of behind is the cell one step back from bit i
+                long behindAbove = ( above << 1 ) | cell( bits, start - dx, y - 1 );
+                long behindBelow = ( below << 1 ) | cell( bits, start - dx, y + 1 );
+                forced = ( above & ~behindAbove ) | ( below & ~behindBelow );
+            }
+
+            long stops = ~open | forced;
+            int stop = Long.numberOfTrailingZeros( stops );
+            if( targetSteps >= steps && targetSteps - steps < stop ) {
+                return target;
+            }
+            if( stops == 0 ) {
+                continue;
+            }
+            if( ( open & ( 1L << stop ) ) == 0 ) {
+                return -1;
+            }
+            return y * width + x + ( steps + stop ) * dx;
+        }
+    }
+
+    /**
+     * @return 1 if (x,y) is in the grid and traversable, otherwise 0
+     */
+    private static long cell( BitGrid bits, int x, int y ) {
+        return x >= 0 && y >= 0 && x < bits.getWidth() && y < bits.getHeight() && bits.get( x, y ) ? 1 : 0;
+    }
+
+    private static boolean isTraversable( SearchSpace space, int x, int y ) {
+        return x >= 0 && y >= 0 && x < space.getWidth() && y < space.getHeight()
+               && space.isTraversable( y * space.getWidth() + x );
+    }
+
+    static int steps( int width, int from, int to ) {
+        return Math.max( Math.abs( to % width - from % width ), Math.abs( to / width - from / width ) );
+    }
+
+    private static double distance( SearchSpace space, int one, int two ) {
+        return Vertex.distance( space.getLocationX( one ), space.getLocationY( one ),
+                                space.getLocationX( two ), space.getLocationY( two ) );
+    }
+}
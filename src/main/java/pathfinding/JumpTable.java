@@ -0,0 +1,324 @@
+package pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed jump distances for Jump Point Search ("JPS+"), used by
+ * Pathfinder.jpsPlus().
+ *
+ * For every cell and each of the eight directions, the table records how far
+ * Jump Point Search would travel before reaching a jump point, ignoring the
+ * target: a positive distance is the number of steps to the jump point, and
+ * zero or a negative distance means there is no jump point before a blocked
+ * cell (or the edge of the search space), which is that many steps away.
+ * Queries then replace the cell-by-cell scanning of Jump Point Search with a
+ * table lookup, plus a check for whether the target lies on the way.
+ *
+ * Jump tables are for searches that allow diagonal movement. A table uses
+ * 32 bytes per cell. It is not changed by searches, so it can be shared by
+ * any number of threads, but it must not be searched while being updated.
+ *
+ * When the traversability of a cell changes, call update() for that cell.
+ * Only the entries that depend on it are recomputed: those whose jump would
+ * pass through the cell or one of its neighbours, and, where that changes
+ * whether a straight jump finds a jump point, the diagonals leading there.
+ */
+public class JumpTable {
+    private final SearchSpace space;
+    private final int width;
+    private final int height;
+    private final int[][] distances;
+
+    // cells whose diagonal entries need to be recomputed during update()
+    private int[] pending = new int[ 16 ];
+    private int pendingSize;
+
+    /**
+     * Builds the jump table for a Node[][].
+     *
+     * @param nodes the search space, which must be evenly spaced
+     */
+    public JumpTable( Node[][] nodes ) {
+        this( NodeSearchSpace.of( nodes ) );
+    }
+
+    /**
+     * Builds the jump table for a GridGraph.
+     *
+     * @param grid the search space
+     */
+    public JumpTable( GridGraph grid ) {
+        this( (SearchSpace)grid );
+    }
+
+    private JumpTable( SearchSpace space ) {
+        this.space = space;
+        this.width = space.getWidth();
+        this.height = space.getHeight();
+        this.distances = new int[ Directions.X.length ][ width * height ];
+
+        for( int direction : Directions.STRAIGHT ) {
+            build( direction );
+        }
+        for( int direction : Directions.ALL ) {
+            if( Directions.isDiagonal( direction ) ) {
+                build( direction );
+            }
+        }
+    }
+
+    /**
+     * @return the search space this table was built for
+     */
+    public SearchSpace getSearchSpace() {
+        return space;
+    }
+
+    /**
+     * Repairs the table after the traversability of a cell has changed.
+     *
+     * @param x the search-space x coordinate of the cell
+     * @param y the search-space y coordinate of the cell
+     */
+    public void update( int x, int y ) {
+        pendingSize = 0;
+        for( int direction : Directions.STRAIGHT ) {
+            repairAround( x, y, direction );
+        }
+
+        // straight entries that changed from "no jump point" to "jump point"
+        // or back have queued the diagonal entries that depend on them
+        int straightChanges = pendingSize;
+        for( int i = 0; i < straightChanges; i += 2 ) {
+            repair( pending[i], pending[i + 1] );
+        }
+
+        for( int direction : Directions.ALL ) {
+            if( Directions.isDiagonal( direction ) ) {
+                repairAround( x, y, direction );
+            }
+        }
+    }
+
+    /**
+     * @param direction a direction (see Directions)
+     * @param index     the index of a cell
+     * @return the jump distance from the cell in the given direction
+     */
+    public int getDistance( int direction, int index ) {
+        return distances[direction][index];
+    }
+
+    /**
+     * Finds the first jump point from a cell in the given direction, taking
+     * the target into account. This gives the same result as the scanning
+     * jump in JumpPointSearch.
+     *
+     * @param index     the index of the cell to jump from
+     * @param direction the direction to jump in
+     * @param target    the index of the target of the search
+     * @return the index of the jump point, or -1 if there is none
+     */
+    public int jump( int index, int direction, int target ) {
+        int dx = Directions.X[direction];
+        int dy = Directions.Y[direction];
+        int x = index % width;
+        int y = index / width;
+        int targetX = target % width;
+        int targetY = target / width;
+        int distance = distances[direction][index];
+        int reach = Math.abs( distance );
+        int offset = dy * width + dx;
+
+        if( dx == 0 || dy == 0 ) {
+            int steps = stepsAlong( x, y, dx, dy, targetX, targetY );
+            if( steps > 0 && steps <= reach ) {
+                return target;
+            }
+            return distance > 0 ? index + distance * offset : -1;
+        }
+
+        // a diagonal jump also stops where a straight jump from it along
+        // either axis would reach the target
+        int best = distance > 0 ? distance : Integer.MAX_VALUE;
+
+        int row = ( targetY - y ) * dy;
+        if( row > 0 && row <= reach && row < best ) {
+            int crossing = index + row * offset;
+            int remaining = ( targetX - ( x + row * dx ) ) * dx;
+            if( remaining == 0 || ( remaining > 0 && remaining <= Math.abs( distances[ Directions.of( dx, 0 ) ][crossing] ) ) ) {
+                best = row;
+            }
+        }
+
+        int column = ( targetX - x ) * dx;
+        if( column > 0 && column <= reach && column < best ) {
+            int crossing = index + column * offset;
+            int remaining = ( targetY - ( y + column * dy ) ) * dy;
+            if( remaining == 0 || ( remaining > 0 && remaining <= Math.abs( distances[ Directions.of( 0, dy ) ][crossing] ) ) ) {
+                best = column;
+            }
+        }
+
+        return best == Integer.MAX_VALUE ? -1 : index + best * offset;
+    }
+
+    /// internal utilities ///
+
+    /**
+     * Fills in the entries for one direction, working backward from the
+     * edge of the search space so that each cell's successor is computed
+     * first.
+     */
+    private void build( int direction ) {
+        int dx = Directions.X[direction];
+        int dy = Directions.Y[direction];
+        int startY = dy > 0 ? height - 1 : 0;
+        int stepY = dy > 0 ? -1 : 1;
+        int startX = dx > 0 ? width - 1 : 0;
+        int stepX = dx > 0 ? -1 : 1;
+
+        for( int y = startY; y >= 0 && y < height; y += stepY ) {
+            for( int x = startX; x >= 0 && x < width; x += stepX ) {
+                distances[direction][ y * width + x ] = compute( x, y, direction );
+            }
+        }
+    }
+
+    /**
+     * Calculates the entry for (x,y) in the given direction, from its
+     * successor's entry.
+     */
+    private int compute( int x, int y, int direction ) {
+        int dx = Directions.X[direction];
+        int dy = Directions.Y[direction];
+        int nextX = x + dx;
+        int nextY = y + dy;
+        if( !isTraversable( nextX, nextY ) ) {
+            return 0;
+        }
+
+        int next = nextY * width + nextX;
+        boolean jumpPoint;
+        if( dx != 0 && dy != 0 ) {
+            jumpPoint = hasForcedNeighbour( nextX, nextY, dx, dy )
+                        || distances[ Directions.of( dx, 0 ) ][next] > 0
+                        || distances[ Directions.of( 0, dy ) ][next] > 0;
+        }
+        else {
+            jumpPoint = hasForcedNeighbour( nextX, nextY, dx, dy );
+        }
+
+        if( jumpPoint ) {
+            return 1;
+        }
+
+        int distance = distances[direction][next];
+        return distance > 0 ? distance + 1 : distance - 1;
+    }
+
+    /**
+     * The forced neighbour rules of Jump Point Search, with diagonal moves
+     * allowed whenever the destination is traversable.
+     */
+    private boolean hasForcedNeighbour( int x, int y, int dx, int dy ) {
+        if( dx != 0 && dy != 0 ) {
+            return ( isTraversable( x - dx, y + dy ) && !isTraversable( x - dx, y ) )
+                   || ( isTraversable( x + dx, y - dy ) && !isTraversable( x, y - dy ) );
+        }
+        else if( dx != 0 ) {
+            return ( isTraversable( x + dx, y + 1 ) && !isTraversable( x, y + 1 ) )
+                   || ( isTraversable( x + dx, y - 1 ) && !isTraversable( x, y - 1 ) );
+        }
+        else {
+            return ( isTraversable( x + 1, y + dy ) && !isTraversable( x + 1, y ) )
+                   || ( isTraversable( x - 1, y + dy ) && !isTraversable( x - 1, y ) );
+        }
+    }
+
+    /**
+     * Recomputes the entries in the given direction of every cell whose
+     * successor is within one cell of (x,y); these are the only entries whose
+     * own inputs depend on the traversability of (x,y).
+     */
+    private void repairAround( int x, int y, int direction ) {
+        int dx = Directions.X[direction];
+        int dy = Directions.Y[direction];
+        for( int nextY = y - 1; nextY <= y + 1; nextY++ ) {
+            for( int nextX = x - 1; nextX <= x + 1; nextX++ ) {
+                int cellX = nextX - dx;
+                int cellY = nextY - dy;
+                if( cellX >= 0 && cellY >= 0 && cellX < width && cellY < height ) {
+                    repair( direction, cellY * width + cellX );
+                }
+            }
+        }
+    }
+
+    /**
+     * Recomputes a cell's entry, and, for as long as entries keep changing,
+     * those of the cells before it in the same direction.
+     */
+    private void repair( int direction, int index ) {
+        int dx = Directions.X[direction];
+        int dy = Directions.Y[direction];
+        int x = index % width;
+        int y = index / width;
+        boolean straight = dx == 0 || dy == 0;
+
+        while( x >= 0 && y >= 0 && x < width && y < height ) {
+            int cell = y * width + x;
+            int old = distances[direction][cell];
+            int distance = compute( x, y, direction );
+            if( old == distance ) {
+                return;
+            }
+
+            distances[direction][cell] = distance;
+            if( straight && ( old > 0 ) != ( distance > 0 ) ) {
+                queueDiagonals( x, y, dx, dy );
+            }
+
+            x -= dx;
+            y -= dy;
+        }
+    }
+
+    /**
+     * Queues the diagonal entries that depend on whether a straight jump
+     * from (x,y) in direction (dx,dy) finds a jump point.
+     */
+    private void queueDiagonals( int x, int y, int dx, int dy ) {
+        for( int side = -1; side <= 1; side += 2 ) {
+            int diagonalX = dx != 0 ? dx : side;
+            int diagonalY = dy != 0 ? dy : side;
+            int cellX = x - diagonalX;
+            int cellY = y - diagonalY;
+            if( cellX >= 0 && cellY >= 0 && cellX < width && cellY < height ) {
+                if( pendingSize + 2 > pending.length ) {
+                    pending = Arrays.copyOf( pending, pending.length * 2 );
+                }
+                pending[pendingSize++] = Directions.of( diagonalX, diagonalY );
+                pending[pendingSize++] = cellY * width + cellX;
+            }
+        }
+    }
+
+    /**
+     * @return the number of steps from (x,y) in direction (dx,dy) to
+     *         (targetX,targetY), or -1 if the target is not in that direction
+     */
+    private static int stepsAlong( int x, int y, int dx, int dy, int targetX, int targetY ) {
+        if( dx == 0 ) {
+            return targetX == x ? ( targetY - y ) * dy : -1;
+        }
+        else {
+            return targetY == y ? ( targetX - x ) * dx : -1;
+        }
+    }
+
+    private boolean isTraversable( int x, int y ) {
+        return x >= 0 && y >= 0 && x < width && y < height
+               && space.isTraversable( y * width + x );
+    }
+}
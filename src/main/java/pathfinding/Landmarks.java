@@ -0,0 +1,368 @@
+package pathfinding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A heuristic based on precomputed distances from a few landmark cells
+ * ("ALT": A*, landmarks and the triangle inequality).
+ *
+ * If d(L,v) is the cost of the cheapest path between a landmark L and a cell
+ * v, then by the triangle inequality the cost of the cheapest path between v
+ * and the target t is at least |d(L,t) - d(L,v)|. Unlike a straight-line
+ * distance, this accounts for walls: on maze-like maps, where EUCLIDEAN lets
+ * A* expand nearly as many cells as Dijkstra's algorithm, landmarks can cut
+ * the number of expanded cells by an order of magnitude or more.
+ *
+ * The estimate is the largest bound given by any landmark, or the
+ * straight-line distance if that is larger. It never overestimates, so
+ * Pathfinder.astar() still returns a lowest-cost path.
+ *
+ * By default, landmarks are chosen by farthest-point selection: each one is
+ * the cell whose path cost to the nearest landmark already chosen is
+ * greatest, which tends to place them around the edges of the search space.
+ * Because each choice depends on the distances from the previous landmark,
+ * the tables are built one landmark at a time. If the landmarks are given
+ * instead, their tables can be built in parallel.
+ *
+ * Distances are stored as floats (4 bytes per cell per landmark), or if
+ * quantized, as 16-bit fractions of the greatest distance from each landmark
+ * (2 bytes per cell per landmark), rounded so that estimates are never too
+ * high. Landmarks only give estimates for cells in the same connected area as
+ * the landmark.
+ *
+ * A Landmarks heuristic only applies to the search space it was built for,
+ * and if the traversability of a cell changes it must be rebuilt. It is not
+ * changed by searches, so it can be shared by any number of threads.
+ */
+public class Landmarks implements Heuristic {
+    private static final char UNREACHABLE = Character.MAX_VALUE;
+    private static final int LEVELS = Character.MAX_VALUE - 1;
+
+    private final SearchSpace space;
+    private final boolean allowDiagonal;
+    private final int[] landmarks;
+
+    // distances are interleaved: the entries for cell v start at v * count
+    private final int count;
+    private final float[] distances;
+    private final char[] quantized;
+    private final double[] quanta;
+
+    /**
+     * Chooses landmarks for a Node[][] and builds their distance tables.
+     *
+     * @param nodes         the search space
+     * @param count         the number of landmarks
+     * @param allowDiagonal whether the searches using this heuristic allow
+     *                      diagonal movement
+     * @param quantized     true to store distances in 2 bytes rather than 4
+     */
+    public Landmarks( Node[][] nodes, int count, boolean allowDiagonal, boolean quantized ) {
+        this( NodeSearchSpace.of( nodes ), count, allowDiagonal, quantized );
+    }
+
+    /**
+     * Chooses landmarks for a GridGraph and builds their distance tables.
+     *
+     * @param grid          the search space
+     * @param count         the number of landmarks
+     * @param allowDiagonal whether the searches using this heuristic allow
+     *                      diagonal movement
+     * @param quantized     true to store distances in 2 bytes rather than 4
+     */
+    public Landmarks( GridGraph grid, int count, boolean allowDiagonal, boolean quantized ) {
+        this( (SearchSpace)grid, count, allowDiagonal, quantized );
+    }
+
+    /**
+     * Builds the distance tables for the given landmarks of a Node[][].
+     *
+     * @param nodes         the search space
+     * @param landmarks     the search-space locations of the landmarks
+     * @param allowDiagonal whether the searches using this heuristic allow
+     *                      diagonal movement
+     * @param quantized     true to store distances in 2 bytes rather than 4
+     * @param executor      builds one table per task, or null to build them
+     *                      all on the calling thread
+     */
+    public Landmarks( Node[][] nodes, Vertex[] landmarks, boolean allowDiagonal, boolean quantized, ExecutorService executor ) {
+        this( NodeSearchSpace.of( nodes ), landmarks, allowDiagonal, quantized, executor );
+    }
+
+    /**
+     * Builds the distance tables for the given landmarks of a GridGraph.
+     *
+     * @param grid          the search space
+     * @param landmarks     the search-space locations of the landmarks
+     * @param allowDiagonal whether the searches using this heuristic allow
+     *                      diagonal movement
+     * @param quantized     true to store distances in 2 bytes rather than 4
+     * @param executor      builds one table per task, or null to build them
+     *                      all on the calling thread
+     */
+    public Landmarks( GridGraph grid, Vertex[] landmarks, boolean allowDiagonal, boolean quantized, ExecutorService executor ) {
+        this( (SearchSpace)grid, landmarks, allowDiagonal, quantized, executor );
+    }
+
+    private Landmarks( SearchSpace space, int count, boolean allowDiagonal, boolean quantized ) {
+        if( count < 1 ) {
+            throw new IllegalArgumentException( "At least one landmark is required: " + count );
+        }
+
+        this.space = space;
+        this.allowDiagonal = allowDiagonal;
+        this.count = count;
+        this.landmarks = new int[ count ];
+        int size = space.getWidth() * space.getHeight();
+        this.distances = quantized ? null : new float[ size * count ];
+        this.quantized = quantized ? new char[ size * count ] : null;
+        this.quanta = new double[ count ];
+
+        SearchContext context = new SearchContext( size );
+        int first = 0;
+        while( first < size && !space.isTraversable( first ) ) {
+            first++;
+        }
+        if( first == size ) {
+            throw new IllegalArgumentException( "The search space has no traversable cells" );
+        }
+
+        // the first landmark is the cell farthest from an arbitrary one
+        Pathfinder.dijkstraFrom( space, first, allowDiagonal, context );
+        landmarks[0] = farthest( context );
+
+        for( int landmark = 0; landmark < count; landmark++ ) {
+            Pathfinder.dijkstraFrom( space, landmarks[landmark], allowDiagonal, context );
+            store( landmark, context );
+            if( landmark < count - 1 ) {
+                landmarks[landmark + 1] = farthestFromAll( landmark + 1 );
+            }
+        }
+    }
+
+    private Landmarks( SearchSpace space, Vertex[] locations, boolean allowDiagonal, boolean quantized, ExecutorService executor ) {
+        if( locations.length < 1 ) {
+            throw new IllegalArgumentException( "At least one landmark is required" );
+        }
+
+        this.space = space;
+        this.allowDiagonal = allowDiagonal;
+        this.count = locations.length;
+        this.landmarks = new int[ count ];
+        final int size = space.getWidth() * space.getHeight();
+        this.distances = quantized ? null : new float[ size * count ];
+        this.quantized = quantized ? new char[ size * count ] : null;
+        this.quanta = new double[ count ];
+
+        for( int landmark = 0; landmark < count; landmark++ ) {
+            landmarks[landmark] = locations[landmark].y * space.getWidth() + locations[landmark].x;
+        }
+
+        if( executor == null ) {
+            SearchContext context = new SearchContext( size );
+            for( int landmark = 0; landmark < count; landmark++ ) {
+                Pathfinder.dijkstraFrom( space, landmarks[landmark], allowDiagonal, context );
+                store( landmark, context );
+            }
+            return;
+        }
+
+        List<Future<Void>> tasks = new ArrayList( count );
+        for( int landmark = 0; landmark < count; landmark++ ) {
+            final int current = landmark;
+            tasks.add( executor.submit( new Callable<Void>() {
+                @Override
+                public Void call() {
+                    // not forCurrentThread(), which would keep a context the
+                    // size of the map alive on every pool thread
+                    SearchContext context = new SearchContext( size );
+                    Pathfinder.dijkstraFrom( Landmarks.this.space, landmarks[current], Landmarks.this.allowDiagonal, context );
+                    store( current, context );
+                    return null;
+                }
+            } ) );
+        }
+
+        try {
+            for( Future<Void> task : tasks ) {
+                task.get();
+            }
+        }
+        catch( InterruptedException ie ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while building landmark tables", ie );
+        }
+        catch( ExecutionException ee ) {
+            throw new IllegalStateException( "Could not build landmark tables", ee.getCause() );
+        }
+    }
+
+    /**
+     * @return the number of landmarks
+     */
+    public int getLandmarkCount() {
+        return count;
+    }
+
+    /**
+     * @param landmark the number of a landmark, from 0 to getLandmarkCount() - 1
+     * @return the index of the landmark's cell
+     */
+    public int getLandmark( int landmark ) {
+        return landmarks[landmark];
+    }
+
+    /**
+     * @return true if the distances were calculated for searches that allow
+     *         diagonal movement
+     */
+    public boolean isDiagonalAllowed() {
+        return allowDiagonal;
+    }
+
+    /**
+     * @param landmark the number of a landmark
+     * @param index    the index of a cell
+     * @return the stored cost of the cheapest path between the landmark and
+     *         the cell, or -1 if the cell cannot be reached from it; this
+     *         is rounded down, to the float below or, if quantized, by up to
+     *         one step of quantization
+     */
+    public double getDistance( int landmark, int index ) {
+        int entry = index * count + landmark;
+        if( distances != null ) {
+            float distance = distances[entry];
+            return Float.isNaN( distance ) ? -1 : distance;
+        }
+        char level = quantized[entry];
+        return level == UNREACHABLE ? -1 : level * quanta[landmark];
+    }
+
+    /**
+     * The search space must be the one these landmarks were built for.
+     */
+    @Override
+    public double estimate( SearchSpace space, int index, int target ) {
+        double best = Vertex.distance( space.getLocationX( index ), space.getLocationY( index ),
+                                       space.getLocationX( target ), space.getLocationY( target ) );
+        int cell = index * count;
+        int goal = target * count;
+
+        if( distances != null ) {
+            for( int landmark = 0; landmark < count; landmark++ ) {
+                // each distance was rounded down, by less than one float ulp,
+                // so the difference may be too high by the ulp of the
+                // smaller; NaN (unreachable) fails the comparison
+                float one = distances[cell + landmark];
+                float two = distances[goal + landmark];
+                double bound = Math.abs( (double)one - two ) - Math.ulp( Math.min( one, two ) );
+                if( bound > best ) {
+                    best = bound;
+                }
+            }
+        }
+        else {
+            for( int landmark = 0; landmark < count; landmark++ ) {
+                char one = quantized[cell + landmark];
+                char two = quantized[goal + landmark];
+                if( one == UNREACHABLE || two == UNREACHABLE ) {
+                    continue;
+                }
+                // each level was rounded down, so the difference may be one
+                // level too high
+                double bound = ( Math.abs( one - two ) - 1 ) * quanta[landmark];
+                if( bound > best ) {
+                    best = bound;
+                }
+            }
+        }
+        return best;
+    }
+
+    /// internal utilities ///
+
+    /**
+     * Copies the costs left in the context by a search from a landmark into
+     * that landmark's table.
+     */
+    private void store( int landmark, SearchContext context ) {
+        int size = context.size();
+        if( distances != null ) {
+            for( int index = 0; index < size; index++ ) {
+                double cost = context.getCost( index );
+                distances[ index * count + landmark ] = cost == -1 ? Float.NaN : roundDown( cost );
+            }
+            return;
+        }
+
+        double max = 0;
+        for( int index = 0; index < size; index++ ) {
+            max = Math.max( max, context.getCost( index ) );
+        }
+        double quantum = max > 0 ? max / LEVELS : 1;
+        quanta[landmark] = quantum;
+        for( int index = 0; index < size; index++ ) {
+            double cost = context.getCost( index );
+            quantized[ index * count + landmark ] = cost == -1
+                                                    ? UNREACHABLE
+                                                    : (char)Math.min( LEVELS, (int)( cost / quantum ) );
+        }
+    }
+
+    /**
+     * @return the greatest float no greater than the cost, so that estimates
+     *         made from it stay admissible
+     */
+    private static float roundDown( double cost ) {
+        float rounded = (float)cost;
+        return rounded > cost ? Math.nextAfter( rounded, Double.NEGATIVE_INFINITY ) : rounded;
+    }
+
+    /**
+     * @return the cell reached by the most recent search whose cost is
+     *         greatest
+     */
+    private static int farthest( SearchContext context ) {
+        int best = -1;
+        double bestCost = -1;
+        for( int index = 0; index < context.size(); index++ ) {
+            double cost = context.getCost( index );
+            if( cost > bestCost ) {
+                best = index;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the reachable cell whose cost to the nearest of the first
+     *         chosen landmarks is greatest
+     */
+    private int farthestFromAll( int chosen ) {
+        int size = space.getWidth() * space.getHeight();
+        int best = landmarks[0];
+        double bestCost = 0;
+        for( int index = 0; index < size; index++ ) {
+            double nearest = Double.POSITIVE_INFINITY;
+            for( int landmark = 0; landmark < chosen && nearest > bestCost; landmark++ ) {
+                double cost = getDistance( landmark, index );
+                if( cost == -1 ) {
+                    nearest = -1;
+                    break;
+                }
+                nearest = Math.min( nearest, cost );
+            }
+            if( nearest > bestCost ) {
+                best = index;
+                bestCost = nearest;
+            }
+        }
+        return best;
+    }
+}
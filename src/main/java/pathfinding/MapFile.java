@@ -0,0 +1,393 @@
+package pathfinding;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.imageio.ImageIO;
+
+/**
+ * Reads and writes GridGraphs in a compact binary format, and builds them in
+ * bulk from bitmaps.
+ *
+ * A map file holds a 64-byte header followed by one or two layers. All
+ * values are little-endian.
+ *
+ * - The header: the magic number "PFMP", the format version (1), width,
+ *   height, startX, startY, stepX, stepY and a flags word, as ints, padded
+ *   with zeros.
+ *
+ * - The traversability layer: one bit per cell, in the order of the cell
+ *   indices (y * width + x), packed into longs with cell 0 in the lowest
+ *   bit of the first long. This is the layout GridGraph uses in memory, so a
+ *   map is read by memory-mapping the file (or, if it is small, reading it
+ *   whole) and copying the layer in bulk, without looking at individual
+ *   cells.
+ *
+ * - If the COSTS flag is set, a cost layer: one unsigned byte per cell, in
+ *   the same order. Costs are stored for the caller's use; the Pathfinder's
+ *   searches do not read them.
+ */
+public final class MapFile {
+    /**
+     * Set in the header's flags if the file has a cost layer.
+     */
+    public static final int COSTS = 1;
+
+    private static final int MAGIC = 0x504D4650; // "PFMP", little-endian
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    // smaller files, such as the chunks of a ChunkDirectory, are read rather
+    // than mapped, as a mapping is only released when it is garbage collected
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    private MapFile() {
+    }
+
+    /// map files ///
+
+    /**
+     * Writes a grid to a file, without a cost layer.
+     *
+     * @param grid the grid to write
+     * @param file the file to create or replace
+     * @throws IOException if the file could not be written
+     */
+    public static void write( GridGraph grid, Path file ) throws IOException {
+        write( grid, null, file );
+    }
+
+    /**
+     * Writes a grid to a file.
+     *
+     * @param grid  the grid to write
+     * @param costs one cost per cell, in the order of the cell indices, or
+     *              null to write no cost layer
+     * @param file  the file to create or replace
+     * @throws IOException if the file could not be written
+     */
+    public static void write( GridGraph grid, byte[] costs, Path file ) throws IOException {
+        int size = grid.getWidth() * grid.getHeight();
+        if( costs != null && costs.length != size ) {
+            throw new IllegalArgumentException( "Expected " + size + " costs: " + costs.length );
+        }
+
+        long[] bits = grid.getBits().getWords();
+        ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+        header.putInt( MAGIC ).putInt( VERSION )
+              .putInt( grid.getWidth() ).putInt( grid.getHeight() )
+              .putInt( grid.getStartX() ).putInt( grid.getStartY() )
+              .putInt( grid.getStepX() ).putInt( grid.getStepY() )
+              .putInt( costs != null ? COSTS : 0 );
+        header.clear();
+
+        ByteBuffer layer = ByteBuffer.allocate( bits.length * 8 ).order( ByteOrder.LITTLE_ENDIAN );
+        layer.asLongBuffer().put( bits );
+
+        try( FileChannel channel = FileChannel.open( file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                     StandardOpenOption.TRUNCATE_EXISTING ) ) {
+            writeFully( channel, header );
+            writeFully( channel, layer );
+            if( costs != null ) {
+                writeFully( channel, ByteBuffer.wrap( costs ) );
+            }
+        }
+    }
+
+    /**
+     * Reads a grid from a file written by write().
+     *
+     * @param file the file
+     * @return the grid
+     * @throws IOException if the file could not be read, or is not a map
+     *                     file
+     */
+    public static GridGraph read( Path file ) throws IOException {
+        try( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) ) {
+            ByteBuffer buffer = open( channel );
+            int[] header = readHeader( buffer, file );
+
+            long[] bits = new long[ BitGrid.words( header[0], header[1] ) ];
+            buffer.position( HEADER_SIZE );
+            buffer.asLongBuffer().get( bits );
+            return new GridGraph( header[0], header[1], header[2], header[3], header[4], header[5], bits );
+        }
+    }
+
+    /**
+     * Reads the cost layer of a file written by write().
+     *
+     * @param file the file
+     * @return one cost per cell, in the order of the cell indices, or null
+     *         if the file has no cost layer
+     * @throws IOException if the file could not be read, or is not a map
+     *                     file
+     */
+    public static byte[] readCosts( Path file ) throws IOException {
+        try( FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ) ) {
+            ByteBuffer buffer = open( channel );
+            int[] header = readHeader( buffer, file );
+            if( ( header[6] & COSTS ) == 0 ) {
+                return null;
+            }
+
+            byte[] costs = new byte[ header[0] * header[1] ];
+            buffer.position( HEADER_SIZE + BitGrid.words( header[0], header[1] ) * 8 );
+            buffer.get( costs );
+            return costs;
+        }
+    }
+
+    /// bulk builders ///
+
+    /**
+     * Builds a grid from one byte per cell.
+     *
+     * @param values    one value per cell, in the order of the cell indices
+     *                  (y * width + x)
+     * @param width     the width of the grid, in cells
+     * @param height    the height of the grid, in cells
+     * @param threshold cells whose unsigned value is at least this are
+     *                  traversable
+     * @param startX    the "real-world" starting x coordinate
+     * @param startY    the "real-world" starting y coordinate
+     * @param stepX     the increment of each "real-world" x coordinate
+     *                  between cells
+     * @param stepY     the increment of each "real-world" y coordinate
+     *                  between cells
+     * @return the grid
+     */
+    public static GridGraph fromBytes( byte[] values, int width, int height, int threshold,
+                                       int startX, int startY, int stepX, int stepY ) {
+        if( values.length < width * height ) {
+            throw new IllegalArgumentException( "Expected " + width * height + " values: " + values.length );
+        }
+
+        int size = width * height;
+        long[] bits = new long[ BitGrid.words( width, height ) ];
+        for( int word = 0; word < bits.length; word++ ) {
+            int first = word << 6;
+            int last = Math.min( size, first + 64 );
+            long packed = 0;
+            for( int index = first; index < last; index++ ) {
+                // the sign bit of ~( value - threshold ) is clear if the
+                // value is below the threshold; this avoids a branch per cell
+                packed |= (long)( ~( ( values[index] & 0xFF ) - threshold ) >>> 31 ) << index;
+            }
+            bits[word] = packed;
+        }
+        return new GridGraph( width, height, startX, startY, stepX, stepY, bits );
+    }
+
+    /**
+     * Builds a grid from a binary ("P5") PGM image, in which each pixel is a
+     * cell.
+     *
+     * @param in        the image, which is read but not closed
+     * @param threshold pixels whose grey level is at least this are
+     *                  traversable; for 16-bit images, only the high byte of
+     *                  each level is compared
+     * @param startX    the "real-world" starting x coordinate
+     * @param startY    the "real-world" starting y coordinate
+     * @param stepX     the increment of each "real-world" x coordinate
+     *                  between cells
+     * @param stepY     the increment of each "real-world" y coordinate
+     *                  between cells
+     * @return the grid
+     * @throws IOException if the image could not be read, or is not a binary
+     *                     PGM image
+     */
+    public static GridGraph fromPgm( InputStream in, int threshold,
+                                     int startX, int startY, int stepX, int stepY ) throws IOException {
+        InputStream input = new BufferedInputStream( in );
+        if( input.read() != 'P' || input.read() != '5' ) {
+            throw new IOException( "Not a binary (P5) PGM image" );
+        }
+        int width = readPgmNumber( input );
+        int height = readPgmNumber( input );
+        int maximum = readPgmNumber( input );
+        int bytesPerPixel = maximum < 256 ? 1 : 2;
+
+        byte[] values = new byte[ width * height * bytesPerPixel ];
+        int read = 0;
+        while( read < values.length ) {
+            int count = input.read( values, read, values.length - read );
+            if( count < 0 ) {
+                throw new EOFException( "PGM image ends after " + read + " of " + values.length + " bytes" );
+            }
+            read += count;
+        }
+
+        if( bytesPerPixel == 2 ) {
+            // pixels are big-endian, so the high bytes are the even ones
+            byte[] high = new byte[ width * height ];
+            for( int i = 0; i < high.length; i++ ) {
+                high[i] = values[ i * 2 ];
+            }
+            values = high;
+        }
+        return fromBytes( values, width, height, threshold, startX, startY, stepX, stepY );
+    }
+
+    /**
+     * Builds a grid from an image (such as a PNG) in which each pixel is a
+     * cell.
+     *
+     * @param image     the image
+     * @param threshold pixels whose brightness, from 0 to 255, is at least
+     *                  this are traversable
+     * @param startX    the "real-world" starting x coordinate
+     * @param startY    the "real-world" starting y coordinate
+     * @param stepX     the increment of each "real-world" x coordinate
+     *                  between cells
+     * @param stepY     the increment of each "real-world" y coordinate
+     *                  between cells
+     * @return the grid
+     */
+    public static GridGraph fromImage( BufferedImage image, int threshold,
+                                       int startX, int startY, int stepX, int stepY ) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if( image.getType() == BufferedImage.TYPE_BYTE_GRAY
+            && image.getRaster().getDataBuffer() instanceof DataBufferByte
+            && image.getRaster().getParent() == null ) {
+            byte[] pixels = ( (DataBufferByte)image.getRaster().getDataBuffer() ).getData();
+            if( pixels.length == width * height ) {
+                return fromBytes( pixels, width, height, threshold, startX, startY, stepX, stepY );
+            }
+        }
+
+        byte[] values = new byte[ width * height ];
+        int[] row = new int[ width ];
+        for( int y = 0; y < height; y++ ) {
+            image.getRGB( 0, y, width, 1, row, 0, width );
+            for( int x = 0; x < width; x++ ) {
+                int rgb = row[x];
+                int brightness = ( ( ( rgb >> 16 ) & 0xFF ) * 299 + ( ( rgb >> 8 ) & 0xFF ) * 587 + ( rgb & 0xFF ) * 114 ) / 1000;
+                values[ y * width + x ] = (byte)brightness;
+            }
+        }
+        return fromBytes( values, width, height, threshold, startX, startY, stepX, stepY );
+    }
+
+    /**
+     * Builds a grid from an image file in any format supported by ImageIO,
+     * such as PNG.
+     *
+     * @param file      the image file
+     * @param threshold pixels whose brightness, from 0 to 255, is at least
+     *                  this are traversable
+     * @param startX    the "real-world" starting x coordinate
+     * @param startY    the "real-world" starting y coordinate
+     * @param stepX     the increment of each "real-world" x coordinate
+     *                  between cells
+     * @param stepY     the increment of each "real-world" y coordinate
+     *                  between cells
+     * @return the grid
+     * @throws IOException if the image could not be read
+     */
+    public static GridGraph fromImage( Path file, int threshold,
+                                       int startX, int startY, int stepX, int stepY ) throws IOException {
+        BufferedImage image;
+        try( InputStream in = Files.newInputStream( file ) ) {
+            image = ImageIO.read( in );
+        }
+        if( image == null ) {
+            throw new IOException( "Not a supported image: " + file );
+        }
+        return fromImage( image, threshold, startX, startY, stepX, stepY );
+    }
+
+    /// internal utilities ///
+
+    /**
+     * @return the whole of the file, in little-endian order
+     */
+    private static ByteBuffer open( FileChannel channel ) throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer;
+        if( size >= MAP_THRESHOLD ) {
+            buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, size );
+        }
+        else {
+            buffer = ByteBuffer.allocate( (int)size );
+            while( buffer.hasRemaining() ) {
+                if( channel.read( buffer ) == -1 ) {
+                    break;
+                }
+            }
+            buffer.flip();
+        }
+        return buffer.order( ByteOrder.LITTLE_ENDIAN );
+    }
+
+    /**
+     * @return the width, height, startX, startY, stepX, stepY and flags
+     */
+    private static int[] readHeader( ByteBuffer buffer, Path file ) throws IOException {
+        if( buffer.limit() < HEADER_SIZE || buffer.getInt( 0 ) != MAGIC ) {
+            throw new IOException( "Not a map file: " + file );
+        }
+        if( buffer.getInt( 4 ) != VERSION ) {
+            throw new IOException( "Unsupported map file version " + buffer.getInt( 4 ) + ": " + file );
+        }
+
+        int[] header = new int[ 7 ];
+        for( int i = 0; i < header.length; i++ ) {
+            header[i] = buffer.getInt( 8 + i * 4 );
+        }
+        if( header[0] <= 0 || header[1] <= 0 ) {
+            throw new IOException( "Invalid map size " + header[0] + "x" + header[1] + ": " + file );
+        }
+
+        long expected = HEADER_SIZE + BitGrid.words( header[0], header[1] ) * 8L;
+        if( ( header[6] & COSTS ) != 0 ) {
+            expected += (long)header[0] * header[1];
+        }
+        if( buffer.limit() < expected ) {
+            throw new IOException( "Map file is truncated: " + file );
+        }
+        return header;
+    }
+
+    private static void writeFully( FileChannel channel, ByteBuffer buffer ) throws IOException {
+        while( buffer.hasRemaining() ) {
+            channel.write( buffer );
+        }
+    }
+
+    /**
+     * Reads a decimal number from a PGM header, skipping whitespace and
+     * comments before it and one whitespace character after it.
+     */
+    private static int readPgmNumber( InputStream in ) throws IOException {
+        int c = in.read();
+        while( c == '#' || Character.isWhitespace( c ) ) {
+            if( c == '#' ) {
+                while( c != '\n' && c != -1 ) {
+                    c = in.read();
+                }
+            }
+            c = in.read();
+        }
+        if( c < '0' || c > '9' ) {
+            throw new IOException( "Malformed PGM header" );
+        }
+
+        int value = 0;
+        while( c >= '0' && c <= '9' ) {
+            value = value * 10 + ( c - '0' );
+            c = in.read();
+        }
+        return value;
+    }
+}
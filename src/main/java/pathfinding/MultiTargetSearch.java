@@ -0,0 +1,107 @@
+package pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Dijkstra's algorithm from one origin to a set of targets, used by
+ * Pathfinder.oneToMany(), Pathfinder.nearest() and Pathfinder.manyToMany().
+ *
+ * A single search tree answers every target: the search stops as soon as
+ * the last target (or, for a nearest-of-set query, the first target) has
+ * been visited, since the cost of a visited cell is final.
+ */
+final class MultiTargetSearch {
+
+    private MultiTargetSearch() {
+    }
+
+    /**
+     * Searches from origin until the targets have been visited. The context
+     * must have been reset before this is called.
+     *
+     * @param targets   the indices of the targets, sorted and without
+     *                  duplicates
+     * @param firstOnly if true, stop at the first target visited
+     *
+     * @return the first target visited, or -1 if none could be reached
+     */
+    public static int search( SearchSpace space,
+                              int origin,
+                              int[] targets,
+                              boolean firstOnly,
+                              boolean allowDiagonal,
+                              SearchContext context ) {
+        int width = space.getWidth();
+        int height = space.getHeight();
+        int[] directions = Directions.get( allowDiagonal );
+        int[] offsets = context.getOffsets( width );
+        double[] stepCosts = space.getStepCosts();
+        IndexedHeap open = context.getOpen();
+
+        int remaining = targets.length;
+        int first = -1;
+        context.setCost( origin, 0 );
+        open.push( origin, 0 );
+
+        while( !open.isEmpty() ) {
+            int current = open.poll();
+            context.setVisited( current, true );
+
+            if( Arrays.binarySearch( targets, current ) >= 0 ) {
+                if( first == -1 ) {
+                    first = current;
+                }
+                remaining--;
+                if( firstOnly || remaining == 0 ) {
+                    break;
+                }
+            }
+
+            double currentCost = context.getCost( current );
+            int x = current % width;
+            int y = current / width;
+            boolean interior = x > 0 && y > 0 && x < width - 1 && y < height - 1;
+            for( int direction : directions ) {
+                if( !interior && !Directions.inBounds( x, y, direction, width, height ) ) {
+                    continue;
+                }
+
+                int adjacent = current + offsets[direction];
+                if( !space.isTraversable( adjacent ) || context.isVisited( adjacent ) ) {
+                    continue;
+                }
+
+                double stepCost = stepCosts != null ? stepCosts[direction] : distance( space, current, adjacent );
+                double newCost = currentCost + stepCost;
+                double cost = context.getCost( adjacent );
+                if( cost == -1 || cost > newCost ) {
+                    context.setCost( adjacent, newCost );
+                    context.setPrevious( adjacent, current );
+                    open.push( adjacent, newCost );
+                }
+            }
+        }
+
+        return first;
+    }
+
+    /**
+     * @return the distinct values of cells, sorted
+     */
+    public static int[] distinct( int[] cells ) {
+        int[] sorted = cells.clone();
+        Arrays.sort( sorted );
+        int unique = 0;
+        for( int i = 0; i < sorted.length; i++ ) {
+            if( i == 0 || sorted[i] != sorted[i - 1] ) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf( sorted, unique );
+    }
+
+    private static double distance( SearchSpace space, int one, int two ) {
+        return Vertex.distance( space.getLocationX( one ), space.getLocationY( one ),
+                                space.getLocationX( two ), space.getLocationY( two ) );
+    }
+}
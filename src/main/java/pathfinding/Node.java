@@ -31,6 +31,9 @@ public class Node {
     public boolean target = false;
     public boolean traversable = true;
     
+    // The Pathfinder's searches keep their working data in a SearchContext and
+    // never write these fields, so that a Node[][] can be shared between 
+    // threads; they remain for use by walkBackwards() and print()
     public double cost = -1; // the total cost of reaching this node
     public boolean visited; //used during processing to prevent loopback
     public boolean clear = false; //used when printing the final path
@@ -0,0 +1,164 @@
+package pathfinding;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Presents a Node[][] as a SearchSpace, without copying it.
+ *
+ * The node at nodes[x][y] is the cell at index y * width + x.
+ *
+ * If the nodes are evenly spaced (as those made by Pathfinder.makeNodes()
+ * are), this is detected once, when the search space is created, and the
+ * cost of a step in each direction is precomputed. The most recently created
+ * search space is kept (see of()), so that repeated searches of the same
+ * Node[][] do not check the spacing again; the nodes' locations must
+ * therefore not be changed between searches, except by replacing the corner
+ * nodes' locations, which is detected.
+ */
+class NodeSearchSpace implements SearchSpace {
+    private static volatile WeakReference<NodeSearchSpace> last = new WeakReference<NodeSearchSpace>( null );
+
+    private final Node[][] nodes;
+    private final int width;
+    private final int height;
+    private final Vertex[] corners;
+    private final double[] stepCosts;
+
+    public NodeSearchSpace( Node[][] nodes ) {
+        this.nodes = nodes;
+        this.width = nodes.length;
+        this.height = nodes[0].length;
+        this.corners = corners( nodes );
+        this.stepCosts = stepCosts( nodes );
+    }
+
+    /**
+     * @return a search space for the nodes: the one most recently created,
+     *         if it was for the same Node[][] and its corners have not moved,
+     *         or otherwise a new one
+     */
+    public static NodeSearchSpace of( Node[][] nodes ) {
+        NodeSearchSpace space = last.get();
+        if( space == null || space.nodes != nodes || !space.isCurrent() ) {
+            space = new NodeSearchSpace( nodes );
+            last = new WeakReference<NodeSearchSpace>( space );
+        }
+        return space;
+    }
+
+    public Node getNode( int index ) {
+        return nodes[index % width][index / width];
+    }
+
+    public int indexOf( Vertex searchSpaceLocation ) {
+        return searchSpaceLocation.y * width + searchSpaceLocation.x;
+    }
+
+    public int indexOf( Node node ) {
+        return indexOf( node.searchSpaceLocation );
+    }
+
+    /**
+     * @param path a path of cell indices, or null
+     * @return the path as a list of nodes, or null if path is null
+     */
+    public List<Node> toNodes( int[] path ) {
+        if( path == null ) {
+            return null;
+        }
+
+        List<Node> result = new ArrayList( path.length );
+        for( int index : path ) {
+            result.add( getNode( index ) );
+        }
+        return result;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public boolean isTraversable( int index ) {
+        return getNode( index ).traversable;
+    }
+
+    @Override
+    public int getLocationX( int index ) {
+        return getNode( index ).location.x;
+    }
+
+    @Override
+    public int getLocationY( int index ) {
+        return getNode( index ).location.y;
+    }
+
+    /**
+     * @return the cost of a step in each direction, if the nodes are evenly
+     *         spaced; otherwise null, and the cost of each step is computed
+     *         from the nodes' locations
+     */
+    @Override
+    public double[] getStepCosts() {
+        return stepCosts;
+    }
+
+    /// internal utilities ///
+
+    /**
+     * @return true if the Node[][] has the same size and the same corner
+     *         locations as when this search space was created
+     */
+    private boolean isCurrent() {
+        if( nodes.length != width || nodes[0].length != height ) {
+            return false;
+        }
+        Vertex[] now = corners( nodes );
+        for( int i = 0; i < now.length; i++ ) {
+            if( now[i] != corners[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Vertex[] corners( Node[][] nodes ) {
+        int right = nodes.length - 1;
+        int bottom = nodes[0].length - 1;
+        return new Vertex[]{ nodes[0][0].location, nodes[right][0].location,
+                             nodes[0][bottom].location, nodes[right][bottom].location };
+    }
+
+    /**
+     * @return the cost of a step in each direction, or null if the nodes'
+     *         locations are not evenly spaced
+     */
+    private static double[] stepCosts( Node[][] nodes ) {
+        int width = nodes.length;
+        int height = nodes[0].length;
+        Vertex start = nodes[0][0].location;
+        if( start == null ) {
+            return null;
+        }
+        int stepX = width > 1 && nodes[1][0].location != null ? nodes[1][0].location.x - start.x : 0;
+        int stepY = height > 1 && nodes[0][1].location != null ? nodes[0][1].location.y - start.y : 0;
+
+        for( int x = 0; x < width; x++ ) {
+            for( int y = 0; y < height; y++ ) {
+                Vertex location = nodes[x][y].location;
+                if( location == null || location.x != start.x + x * stepX || location.y != start.y + y * stepY ) {
+                    return null;
+                }
+            }
+        }
+        return Directions.stepCosts( stepX, stepY );
+    }
+}
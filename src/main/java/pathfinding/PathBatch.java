@@ -0,0 +1,162 @@
+package pathfinding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The results of a batch of searches submitted to a PathfinderExecutor.
+ *
+ * As a Future, a batch completes when every search has completed, giving the
+ * paths in the same order as the queries. Cancelling a batch stops any
+ * search that has not yet started; searches already running are allowed to
+ * finish, but their results are not reported.
+ *
+ * @param <T> the type of path: int[] for a GridGraph, or List&lt;Node&gt; for
+ *            a Node[][]
+ */
+public class PathBatch<T> implements Future<List<T>> {
+    private final AtomicReferenceArray<T> results;
+    private final AtomicInteger remaining;
+    private final AtomicReference<Throwable> failure = new AtomicReference();
+    private final CountDownLatch done = new CountDownLatch( 1 );
+    private volatile boolean cancelled;
+
+    PathBatch( int size ) {
+        results = new AtomicReferenceArray( size );
+        remaining = new AtomicInteger( size );
+        if( size == 0 ) {
+            done.countDown();
+        }
+    }
+
+    /**
+     * @return the number of queries in the batch
+     */
+    public int size() {
+        return results.length();
+    }
+
+    /**
+     * @param query the position of a query in the batch
+     * @return the path found for the query, or null if there is none or the
+     *         search has not completed
+     */
+    public T getPath( int query ) {
+        return results.get( query );
+    }
+
+    /**
+     * @return the number of searches that have not yet completed
+     */
+    public int getRemaining() {
+        return remaining.get();
+    }
+
+    /**
+     * Stops any search in the batch that has not yet started.
+     *
+     * @param mayInterruptIfRunning ignored; running searches cannot be
+     *                              interrupted
+     * @return false if the batch had already completed
+     */
+    @Override
+    public boolean cancel( boolean mayInterruptIfRunning ) {
+        if( isDone() ) {
+            return false;
+        }
+        cancelled = true;
+        done.countDown();
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled && failure.get() == null;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public List<T> get() throws InterruptedException, ExecutionException {
+        done.await();
+        return results();
+    }
+
+    @Override
+    public List<T> get( long timeout, TimeUnit unit ) throws InterruptedException, ExecutionException, TimeoutException {
+        if( !done.await( timeout, unit ) ) {
+            throw new TimeoutException();
+        }
+        return results();
+    }
+
+    /// internal utilities ///
+
+    /**
+     * @return true if the remaining searches should be skipped
+     */
+    boolean isStopped() {
+        return cancelled;
+    }
+
+    /**
+     * Records the result of a search.
+     */
+    void complete( int query, T path ) {
+        if( !cancelled ) {
+            results.set( query, path );
+        }
+        finish();
+    }
+
+    /**
+     * Records that a search was skipped because the batch was stopped.
+     */
+    void skip() {
+        finish();
+    }
+
+    /**
+     * Records that a search failed, which stops the batch.
+     */
+    void fail( Throwable cause ) {
+        failure.compareAndSet( null, cause );
+        cancelled = true;
+        finish();
+        done.countDown();
+    }
+
+    private void finish() {
+        if( remaining.decrementAndGet() == 0 ) {
+            done.countDown();
+        }
+    }
+
+    private List<T> results() throws ExecutionException {
+        Throwable cause = failure.get();
+        if( cause != null ) {
+            throw new ExecutionException( cause );
+        }
+        if( cancelled ) {
+            throw new CancellationException();
+        }
+
+        List<T> list = new ArrayList( results.length() );
+        for( int i = 0; i < results.length(); i++ ) {
+            list.add( results.get( i ) );
+        }
+        return list;
+    }
+}
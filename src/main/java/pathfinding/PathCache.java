@@ -0,0 +1,274 @@
+package pathfinding;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the results of recent searches of one map, so that repeated
+ * queries (between the same origin and target, with the same algorithm and
+ * options) do not search again.
+ *
+ * The cache holds up to a fixed number of results, discarding the least
+ * recently used when full. Queries that find no path are cached too.
+ *
+ * When the traversability of a cell changes, call update() for that cell.
+ * Only the results it could affect are discarded:
+ *
+ * - If the cell was blocked, the paths that pass through it.
+ *
+ * - If the cell was opened, cached results of "no path", and lowest-cost
+ *   paths (from exhaustive searches) that could be made cheaper by passing
+ *   through it; that is, those that cost more than the straight-line
+ *   distance from origin to cell to target. Paths from return-fast searches
+ *   remain valid, and are kept.
+ *
+ * A PathCache is thread safe. Searches run outside of the cache's lock, so
+ * any number may run at once; a search that was running when update() was
+ * called is not cached.
+ */
+public class PathCache {
+    private final SearchSpace space;
+    private final int capacity;
+    private final LinkedHashMap<PathQuery, CachedPath> entries;
+    private long version;
+    private long hits;
+    private long misses;
+    private long invalidations;
+
+    /**
+     * Creates a cache of searches of a Node[][].
+     *
+     * @param nodes    the search space
+     * @param capacity the greatest number of results to keep
+     */
+    public PathCache( Node[][] nodes, int capacity ) {
+        this( NodeSearchSpace.of( nodes ), capacity );
+    }
+
+    /**
+     * Creates a cache of searches of a GridGraph.
+     *
+     * @param grid     the search space
+     * @param capacity the greatest number of results to keep
+     */
+    public PathCache( GridGraph grid, int capacity ) {
+        this( (SearchSpace)grid, capacity );
+    }
+
+    private PathCache( SearchSpace space, final int capacity ) {
+        if( capacity < 1 ) {
+            throw new IllegalArgumentException( "Capacity must be at least 1: " + capacity );
+        }
+
+        this.space = space;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<PathQuery, CachedPath>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<PathQuery, CachedPath> eldest ) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Finds a path, from the cache if possible.
+     *
+     * @param query the search to run
+     * @return the indices of the cells on a valid path between the query's
+     *         origin and target (in that order), or null if no such path
+     *         exists
+     */
+    public int[] getPath( PathQuery query ) {
+        return getPath( query, SearchContext.forCurrentThread() );
+    }
+
+    /**
+     * Calls getPath using the given SearchContext, rather than the one
+     * pooled for the calling thread.
+     *
+     * @param query   the search to run
+     * @param context holds the working data of the search, if one is needed
+     * @return the indices of the cells on a valid path, or null
+     */
+    public int[] getPath( PathQuery query, SearchContext context ) {
+        long searchVersion;
+        synchronized( this ) {
+            CachedPath entry = entries.get( query );
+            if( entry != null ) {
+                hits++;
+                return entry.path == null ? null : entry.path.clone();
+            }
+            misses++;
+            searchVersion = version;
+        }
+
+        int[] path = Pathfinder.search( space, query, context );
+        CachedPath entry = new CachedPath( query, path );
+
+        synchronized( this ) {
+            if( version == searchVersion ) {
+                entries.put( query, entry );
+            }
+        }
+        return path == null ? null : path.clone();
+    }
+
+    /**
+     * Finds a path, from the cache if possible. The cache must have been
+     * created for a Node[][].
+     *
+     * @param query the search to run
+     * @return a valid path between the query's origin and target, or null if
+     *         no such path exists
+     */
+    public List<Node> getNodes( PathQuery query ) {
+        return getNodes( query, SearchContext.forCurrentThread() );
+    }
+
+    /**
+     * Calls getNodes using the given SearchContext, rather than the one
+     * pooled for the calling thread.
+     *
+     * @param query   the search to run
+     * @param context holds the working data of the search, if one is needed
+     * @return a valid path, or null
+     */
+    public List<Node> getNodes( PathQuery query, SearchContext context ) {
+        if( !( space instanceof NodeSearchSpace ) ) {
+            throw new UnsupportedOperationException( "This cache was not created for a Node[][]" );
+        }
+        return ( (NodeSearchSpace)space ).toNodes( getPath( query, context ) );
+    }
+
+    /**
+     * Discards the results that may have been affected by a change in the
+     * traversability of a cell. Call this after the change has been made.
+     *
+     * @param x the search-space x coordinate of the cell
+     * @param y the search-space y coordinate of the cell
+     */
+    public synchronized void update( int x, int y ) {
+        version++;
+        int cell = y * space.getWidth() + x;
+        boolean opened = space.isTraversable( cell );
+
+        Iterator<CachedPath> iterator = entries.values().iterator();
+        while( iterator.hasNext() ) {
+            CachedPath entry = iterator.next();
+            if( opened ? entry.couldImprove( cell ) : entry.passesThrough( x, y, cell ) ) {
+                iterator.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Discards every cached result.
+     */
+    public synchronized void clear() {
+        version++;
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    /**
+     * @return the number of results in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the greatest number of results the cache will keep
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of queries answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of queries that had to be searched
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of results discarded by update() or clear()
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /// internal utilities ///
+
+    /**
+     * A cached result, with the bounds of its path so that most paths can be
+     * ruled out by update() without looking at every cell.
+     */
+    private class CachedPath {
+        final int[] path;
+        final boolean lowestCost;
+        final int origin;
+        final int target;
+        double cost;
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+
+        CachedPath( PathQuery query, int[] path ) {
+            int width = space.getWidth();
+            this.path = path;
+            this.lowestCost = !query.returnFast;
+            this.origin = query.origin.y * width + query.origin.x;
+            this.target = query.target.y * width + query.target.x;
+
+            if( path != null ) {
+                for( int i = 0; i < path.length; i++ ) {
+                    int x = path[i] % width;
+                    int y = path[i] / width;
+                    minX = Math.min( minX, x );
+                    minY = Math.min( minY, y );
+                    maxX = Math.max( maxX, x );
+                    maxY = Math.max( maxY, y );
+                    if( i > 0 ) {
+                        cost += distance( path[i - 1], path[i] );
+                    }
+                }
+            }
+        }
+
+        boolean passesThrough( int x, int y, int cell ) {
+            if( path == null || x < minX || x > maxX || y < minY || y > maxY ) {
+                return false;
+            }
+            for( int index : path ) {
+                if( index == cell ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean couldImprove( int cell ) {
+            if( path == null ) {
+                return true;
+            }
+            return lowestCost && cost > distance( origin, cell ) + distance( cell, target );
+        }
+    }
+
+    private double distance( int one, int two ) {
+        return Vertex.distance( space.getLocationX( one ), space.getLocationY( one ),
+                                space.getLocationX( two ), space.getLocationY( two ) );
+    }
+}
@@ -0,0 +1,22 @@
+package pathfinding;
+
+/**
+ * Receives the results of a batch of searches as each one completes (see
+ * PathfinderExecutor).
+ *
+ * Callbacks are made on the executor's worker threads, possibly several at
+ * once, and should return quickly.
+ *
+ * @param <T> the type of path: int[] for a GridGraph, or List&lt;Node&gt; for
+ *            a Node[][]
+ */
+public interface PathCallback<T> {
+
+    /**
+     * Called when the search for a query has completed.
+     *
+     * @param query the position of the query in the batch
+     * @param path  the path found, or null if there is none
+     */
+    public void completed( int query, T path );
+}
@@ -0,0 +1,287 @@
+package pathfinding;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Encodes paths compactly, for storage or sending over a network, as runs of
+ * steps in the same direction.
+ *
+ * An encoded path holds:
+ *
+ * - The search-space x and y coordinates of its first cell, and its number
+ *   of steps (one fewer than its number of cells), as unsigned varints
+ *   (seven bits per byte, least significant first, with the high bit set on
+ *   every byte but the last).
+ *
+ * - One byte per run of up to 32 steps in the same direction: the direction
+ *   (as numbered by Pathfinder.getAdjacentNodes()) in the top three bits,
+ *   and the number of steps less one in the bottom five.
+ *
+ * A path of int cell indices takes four bytes per cell; encoded, a typical
+ * path through open or randomly obstructed space takes a tenth of that or
+ * less, and a path that changes direction at every step takes a quarter.
+ * Consecutive cells of a path must be adjacent, as they are in every path
+ * returned by the Pathfinder.
+ *
+ * The encoding does not depend on the width of the search space, so a path
+ * can be decoded into coordinates without it (see decodeVertices()); it is
+ * only needed to convert to and from cell indices.
+ */
+public final class PathCodec {
+    private static final int RUN_BITS = 5;
+    private static final int MAX_RUN = 1 << RUN_BITS;
+
+    private PathCodec() {
+    }
+
+    /// encoding ///
+
+    /**
+     * @param width the width of the search space
+     * @param path  the indices of the cells on a path
+     * @return the encoded path
+     * @throws IllegalArgumentException if consecutive cells are not adjacent
+     */
+    public static byte[] encode( int width, int[] path ) {
+        byte[] encoded = new byte[ getEncodedSize( width, path, 0, path.length ) ];
+        encode( width, path, 0, path.length, ByteBuffer.wrap( encoded ) );
+        return encoded;
+    }
+
+    /**
+     * Encodes a path into a buffer, from its position onwards, advancing the
+     * position.
+     *
+     * @param width  the width of the search space
+     * @param path   holds the indices of the cells on a path
+     * @param offset the position in path of the first cell
+     * @param length the number of cells, at least 1
+     * @param out    receives the encoded path
+     * @return the number of bytes written
+     * @throws IllegalArgumentException if consecutive cells are not adjacent
+     * @throws BufferOverflowException  if the buffer has too little room, in
+     *                                  which case nothing is written
+     */
+    public static int encode( int width, int[] path, int offset, int length, ByteBuffer out ) {
+        int size = getEncodedSize( width, path, offset, length );
+        if( size > out.remaining() ) {
+            throw new BufferOverflowException();
+        }
+
+        int first = path[offset];
+        putVarint( out, first % width );
+        putVarint( out, first / width );
+        putVarint( out, length - 1 );
+
+        int end = offset + length;
+        int i = offset + 1;
+        while( i < end ) {
+            int direction = direction( width, path[i - 1], path[i] );
+            int run = 1;
+            while( run < MAX_RUN && i + run < end && direction( width, path[i + run - 1], path[i + run] ) == direction ) {
+                run++;
+            }
+            out.put( (byte)( ( direction << RUN_BITS ) | ( run - 1 ) ) );
+            i += run;
+        }
+        return size;
+    }
+
+    /**
+     * @param width  the width of the search space
+     * @param path   holds the indices of the cells on a path
+     * @param offset the position in path of the first cell
+     * @param length the number of cells, at least 1
+     * @return the number of bytes the encoded path takes
+     * @throws IllegalArgumentException if consecutive cells are not adjacent
+     */
+    public static int getEncodedSize( int width, int[] path, int offset, int length ) {
+        if( length < 1 ) {
+            throw new IllegalArgumentException( "A path has at least one cell: " + length );
+        }
+
+        int first = path[offset];
+        int size = varintSize( first % width ) + varintSize( first / width ) + varintSize( length - 1 );
+        int end = offset + length;
+        int previous = -1;
+        int run = 0;
+        for( int i = offset + 1; i < end; i++ ) {
+            int direction = direction( width, path[i - 1], path[i] );
+            if( direction != previous || run == MAX_RUN ) {
+                size++;
+                previous = direction;
+                run = 0;
+            }
+            run++;
+        }
+        return size;
+    }
+
+    /// decoding ///
+
+    /**
+     * @param width   the width of the search space
+     * @param encoded an encoded path
+     * @return the indices of the cells on the path
+     * @throws IllegalArgumentException if the path is malformed
+     */
+    public static int[] decode( int width, byte[] encoded ) {
+        ByteBuffer in = ByteBuffer.wrap( encoded );
+        int[] path = new int[ getLength( in.duplicate() ) ];
+        decode( width, in, IntBuffer.wrap( path ) );
+        return path;
+    }
+
+    /**
+     * Decodes a path from a buffer, from its position onwards, into the
+     * indices of its cells. Both buffers' positions are advanced.
+     *
+     * @param width the width of the search space
+     * @param in    holds an encoded path
+     * @param out   receives the indices of the cells on the path
+     * @return the number of cells written
+     * @throws IllegalArgumentException if the path is malformed
+     * @throws BufferOverflowException  if out has too little room, in which
+     *                                  case neither buffer is changed
+     */
+    public static int decode( int width, ByteBuffer in, IntBuffer out ) {
+        int start = in.position();
+        int x = getVarint( in );
+        int y = getVarint( in );
+        int steps = getSteps( in );
+        if( steps >= out.remaining() ) {
+            in.position( start );
+            throw new BufferOverflowException();
+        }
+
+        int cells = steps + 1;
+        out.put( y * width + x );
+        while( steps > 0 ) {
+            int code = getByte( in );
+            int direction = ( code & 0xFF ) >>> RUN_BITS;
+            int run = ( code & ( MAX_RUN - 1 ) ) + 1;
+            if( run > steps ) {
+                throw new IllegalArgumentException( "A run of " + run + " steps is longer than the rest of the path" );
+            }
+            int offset = Directions.Y[direction] * width + Directions.X[direction];
+            int index = y * width + x;
+            for( int i = 0; i < run; i++ ) {
+                index += offset;
+                out.put( index );
+            }
+            x += Directions.X[direction] * run;
+            y += Directions.Y[direction] * run;
+            steps -= run;
+        }
+        return cells;
+    }
+
+    /**
+     * @param encoded an encoded path
+     * @return the search-space locations of the cells on the path
+     * @throws IllegalArgumentException if the path is malformed
+     */
+    public static Vertex[] decodeVertices( byte[] encoded ) {
+        ByteBuffer in = ByteBuffer.wrap( encoded );
+        int x = getVarint( in );
+        int y = getVarint( in );
+        Vertex[] path = new Vertex[ getSteps( in ) + 1 ];
+        path[0] = new Vertex( x, y );
+        int next = 1;
+        while( next < path.length ) {
+            int code = getByte( in ) & 0xFF;
+            int direction = code >>> RUN_BITS;
+            int run = ( code & ( MAX_RUN - 1 ) ) + 1;
+            if( next + run > path.length ) {
+                throw new IllegalArgumentException( "A run of " + run + " steps is longer than the rest of the path" );
+            }
+            for( int i = 0; i < run; i++ ) {
+                x += Directions.X[direction];
+                y += Directions.Y[direction];
+                path[ next++ ] = new Vertex( x, y );
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Reads the number of cells on an encoded path, advancing the buffer's
+     * position past the path's first cell and number of steps.
+     *
+     * @param in holds an encoded path
+     * @return the number of cells on the path
+     */
+    public static int getLength( ByteBuffer in ) {
+        getVarint( in );
+        getVarint( in );
+        return getSteps( in ) + 1;
+    }
+
+    /// internal utilities ///
+
+    /**
+     * @return the direction of the step from one cell to the next
+     * @throws IllegalArgumentException if the cells are not adjacent
+     */
+    private static int direction( int width, int from, int to ) {
+        int dx = to % width - from % width;
+        int dy = to / width - from / width;
+        if( dx < -1 || dx > 1 || dy < -1 || dy > 1 || ( dx == 0 && dy == 0 ) ) {
+            throw new IllegalArgumentException( "Cells " + from + " and " + to + " are not adjacent" );
+        }
+        return Directions.of( dx, dy );
+    }
+
+    private static void putVarint( ByteBuffer out, int value ) {
+        while( ( value & ~0x7F ) != 0 ) {
+            out.put( (byte)( ( value & 0x7F ) | 0x80 ) );
+            value >>>= 7;
+        }
+        out.put( (byte)value );
+    }
+
+    private static int getVarint( ByteBuffer in ) {
+        int value = 0;
+        for( int shift = 0; shift < 32; shift += 7 ) {
+            int b = getByte( in );
+            value |= ( b & 0x7F ) << shift;
+            if( ( b & 0x80 ) == 0 ) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException( "Malformed varint" );
+    }
+
+    /**
+     * Reads a path's number of steps, checking that the rest of the buffer
+     * could hold them.
+     */
+    private static int getSteps( ByteBuffer in ) {
+        int steps = getVarint( in );
+        if( steps < 0 || steps > (long)MAX_RUN * in.remaining() ) {
+            throw new IllegalArgumentException( "The encoded path is truncated" );
+        }
+        return steps;
+    }
+
+    private static int varintSize( int value ) {
+        int size = 1;
+        while( ( value & ~0x7F ) != 0 ) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static byte getByte( ByteBuffer in ) {
+        try {
+            return in.get();
+        }
+        catch( BufferUnderflowException ex ) {
+            throw new IllegalArgumentException( "The encoded path is truncated", ex );
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package pathfinding;
+
+/**
+ * A request for a path between two search-space locations, for running
+ * searches in batches (see PathfinderExecutor) or caching their results (see
+ * PathCache).
+ */
+public class PathQuery {
+    public final Vertex origin;
+    public final Vertex target;
+    public final Algorithm algorithm;
+    public final boolean returnFast;
+    public final boolean allowDiagonal;
+
+    /**
+     * @param origin        the search-space location at which the path starts
+     * @param target        the search-space location at which the path ends
+     * @param algorithm     the algorithm to search with
+     * @param returnFast    see Pathfinder.dijkstra()
+     * @param allowDiagonal whether the path may contain diagonal movements
+     */
+    public PathQuery( Vertex origin, Vertex target, Algorithm algorithm, boolean returnFast, boolean allowDiagonal ) {
+        this.origin = origin;
+        this.target = target;
+        this.algorithm = algorithm;
+        this.returnFast = returnFast;
+        this.allowDiagonal = allowDiagonal;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 37 * hash + origin.hashCode();
+        hash = 37 * hash + target.hashCode();
+        hash = 37 * hash + algorithm.hashCode();
+        hash = 37 * hash + ( returnFast ? 1 : 0 );
+        hash = 37 * hash + ( allowDiagonal ? 1 : 0 );
+        return hash;
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+        if( this == obj ) {
+            return true;
+        }
+        if( obj == null || getClass() != obj.getClass() ) {
+            return false;
+        }
+        final PathQuery other = (PathQuery)obj;
+        return origin.equals( other.origin )
+               && target.equals( other.target )
+               && algorithm == other.algorithm
+               && returnFast == other.returnFast
+               && allowDiagonal == other.allowDiagonal;
+    }
+
+    @Override
+    public String toString() {
+        return "PathQuery[" + origin + " -> " + target + ", " + algorithm
+               + ( returnFast ? ", fast" : "" ) + ( allowDiagonal ? ", diagonal" : "" ) + "]";
+    }
+}
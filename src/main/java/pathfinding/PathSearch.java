@@ -0,0 +1,350 @@
+package pathfinding;
+
+import java.util.List;
+
+/**
+ * A search that runs a little at a time (see Pathfinder.begin()), so that a
+ * long search can be spread over several frames, or many searches can take
+ * turns on a few threads.
+ *
+ * Each call to step() expands at most the given number of cells and then
+ * returns the search's status. The search finds the same path as the
+ * equivalent call to Pathfinder.bestFirst(), dijkstra() or astar(); it can be
+ * cancelled between steps, after which its working data is released.
+ *
+ * Each search holds its own SearchContext until it finishes, so any number
+ * can be in progress at once on the same thread. A search must not be
+ * stepped by several threads at once, and the search space must not change
+ * while it is in progress.
+ */
+public class PathSearch {
+
+    public enum Status {
+        /**
+         * The search has not finished; call step() again.
+         */
+        IN_PROGRESS,
+
+        /**
+         * A path was found, and can be read with getPath().
+         */
+        FOUND,
+
+        /**
+         * There is no path from the origin to the target.
+         */
+        UNREACHABLE,
+
+        /**
+         * The search was cancelled before it finished.
+         */
+        CANCELLED
+    }
+
+    private final SearchSpace space;
+    private final Algorithm algorithm;
+    private final int origin;
+    private final int target;
+    private final Heuristic heuristic;
+    private final boolean returnFast;
+    private final int[] directions;
+    private final double[] stepCosts;
+    private final boolean recording;
+
+    // released once the search finishes
+    private SearchContext context;
+    private int[] offsets;
+    private IndexedHeap open;
+
+    // for best-first and Dijkstra's, the next cell to expand, or -1
+    private int current;
+
+    private Status status = Status.IN_PROGRESS;
+    private int[] path;
+    private double cost = -1;
+    private int expansions;
+    private int steps;
+    private long nanos;
+
+    /**
+     * Starts a search, resetting the context. The origin is not expanded
+     * until the first step.
+     *
+     * @param heuristic the heuristic for A*, or null for best-first and
+     *                  Dijkstra's
+     */
+    PathSearch( SearchSpace space, Algorithm algorithm,
+                int origin, int target,
+                Heuristic heuristic,
+                boolean returnFast,
+                boolean allowDiagonal,
+                SearchContext context ) {
+        this.space = space;
+        this.algorithm = algorithm;
+        this.origin = origin;
+        this.target = target;
+        this.heuristic = heuristic;
+        this.returnFast = returnFast;
+        this.directions = Directions.get( allowDiagonal );
+        this.stepCosts = space.getStepCosts();
+
+        // decided once, so that the open set counts from the start
+        this.recording = Pathfinder.isRecording( context );
+        context.reset( space.getWidth() * space.getHeight(), recording );
+        if( origin == target ) {
+            path = new int[]{ target };
+            cost = 0;
+            status = Status.FOUND;
+            return;
+        }
+
+        this.context = context;
+        this.offsets = context.getOffsets( space.getWidth() );
+        this.open = context.getOpen();
+        context.setCost( origin, 0 );
+        if( heuristic != null ) {
+            open.push( origin, heuristic.estimate( space, origin, target ) );
+        }
+        current = origin;
+    }
+
+    /**
+     * Advances the search.
+     *
+     * @param maxExpansions the greatest number of cells to expand before
+     *                      returning
+     * @return the status of the search; if it has already finished, it is
+     *         not changed
+     */
+    public Status step( int maxExpansions ) {
+        if( maxExpansions <= 0 ) {
+            throw new IllegalArgumentException( "Expected at least one expansion: " + maxExpansions );
+        }
+        if( status != Status.IN_PROGRESS ) {
+            return status;
+        }
+
+        long started = recording ? System.nanoTime() : 0;
+        int limit = expansions + maxExpansions;
+        boolean finished = heuristic == null ? stepGeneric( limit ) : stepAstar( limit );
+        steps++;
+        if( recording ) {
+            nanos += System.nanoTime() - started;
+        }
+
+        if( finished ) {
+            if( context.getCost( target ) != -1 ) {
+                path = Pathfinder.walkBackwards( context, target );
+                cost = 0;
+                for( int i = 1; i < path.length; i++ ) {
+                    cost += distance( space, path[i - 1], path[i] );
+                }
+                status = Status.FOUND;
+            }
+            else {
+                status = Status.UNREACHABLE;
+            }
+
+            if( recording ) {
+                // best-first and Dijkstra's expand the origin without
+                // passing it through the open set
+                Pathfinder.record( space, algorithm, origin, target, path, System.nanoTime() - nanos,
+                                   heuristic == null ? 1 : 0, context, null );
+            }
+            release();
+        }
+        return status;
+    }
+
+    /**
+     * Stops the search, if it has not finished, and releases its working
+     * data. Does nothing if it has already finished.
+     */
+    public void cancel() {
+        if( status == Status.IN_PROGRESS ) {
+            status = Status.CANCELLED;
+            release();
+        }
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return true if the search has found a path, found that there is
+     *         none, or been cancelled
+     */
+    public boolean isDone() {
+        return status != Status.IN_PROGRESS;
+    }
+
+    /**
+     * @return the indices of the cells on the path found (from origin to
+     *         target), or null if the status is not FOUND
+     */
+    public int[] getPath() {
+        return path;
+    }
+
+    /**
+     * @return the path found, or null if the status is not FOUND
+     *
+     * @throws UnsupportedOperationException if the search was not run on a
+     *                                       Node[][]
+     */
+    public List<Node> getNodes() {
+        if( !( space instanceof NodeSearchSpace ) ) {
+            throw new UnsupportedOperationException( "This search was not run on a Node[][]" );
+        }
+        return ( (NodeSearchSpace)space ).toNodes( path );
+    }
+
+    /**
+     * @return the cost of the path found, or -1 if the status is not FOUND
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    /**
+     * @return the number of cells expanded so far
+     */
+    public int getExpansions() {
+        return expansions;
+    }
+
+    /**
+     * @return the number of calls to step() that advanced the search
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /// internal utilities ///
+
+    /**
+     * Continues Pathfinder.genericSearch() until limit cells have been
+     * expanded in all.
+     *
+     * @return true if the search has finished
+     */
+    private boolean stepGeneric( int limit ) {
+        Pathfinder.CostCalculator calculator = algorithm == Algorithm.BEST_FIRST ? Pathfinder.bestFirstCC : Pathfinder.dijkstraCC;
+        int width = space.getWidth();
+        int height = space.getHeight();
+
+        while( current != -1 ) {
+            if( expansions == limit ) {
+                return false;
+            }
+
+            int x = current % width;
+            int y = current / width;
+            boolean interior = x > 0 && y > 0 && x < width - 1 && y < height - 1;
+            for( int direction : directions ) {
+                if( !interior && !Directions.inBounds( x, y, direction, width, height ) ) {
+                    continue;
+                }
+
+                int adjacent = current + offsets[direction];
+                if( !space.isTraversable( adjacent ) || context.isVisited( adjacent ) ) {
+                    continue;
+                }
+
+                double stepCost = stepCosts != null ? stepCosts[direction] : distance( space, current, adjacent );
+                double newCost = calculator.getCost( context, current, adjacent, target, stepCost );
+                double cost = context.getCost( adjacent );
+
+                if( cost == -1 || cost > newCost ) {
+                    context.setCost( adjacent, newCost );
+                    context.setPrevious( adjacent, current );
+                    open.push( adjacent, newCost );
+                }
+            }
+
+            context.setVisited( current, true );
+            expansions++;
+
+            if( returnFast && context.getCost( target ) != -1 ) {
+                return true;
+            }
+            current = open.isEmpty() ? -1 : open.poll();
+        }
+        return true;
+    }
+
+    /**
+     * Continues Pathfinder.astarSearch() until limit cells have been
+     * expanded in all.
+     *
+     * @return true if the search has finished
+     */
+    private boolean stepAstar( int limit ) {
+        int width = space.getWidth();
+        int height = space.getHeight();
+
+        while( !open.isEmpty() ) {
+            double targetCost = context.getCost( target );
+            if( targetCost != -1 && open.peekKey() >= targetCost ) {
+                return true;
+            }
+            if( expansions == limit ) {
+                return false;
+            }
+
+            int current = open.poll();
+            context.setVisited( current, true );
+            expansions++;
+
+            if( returnFast && current == target ) {
+                return true;
+            }
+
+            double currentCost = context.getCost( current );
+            int x = current % width;
+            int y = current / width;
+            boolean interior = x > 0 && y > 0 && x < width - 1 && y < height - 1;
+            for( int direction : directions ) {
+                if( !interior && !Directions.inBounds( x, y, direction, width, height ) ) {
+                    continue;
+                }
+
+                int adjacent = current + offsets[direction];
+                if( !space.isTraversable( adjacent ) ) {
+                    continue;
+                }
+
+                double stepCost = stepCosts != null ? stepCosts[direction] : distance( space, current, adjacent );
+                double newCost = currentCost + stepCost;
+                double cost = context.getCost( adjacent );
+
+                if( cost == -1 || cost > newCost ) {
+                    context.setCost( adjacent, newCost );
+                    context.setPrevious( adjacent, current );
+                    context.setVisited( adjacent, false );
+                    open.push( adjacent, newCost + heuristic.estimate( space, adjacent, target ) );
+                }
+            }
+        }
+        return true;
+    }
+
+    private void release() {
+        if( open != null ) {
+            open.clear();
+        }
+        context = null;
+        offsets = null;
+        open = null;
+    }
+
+    private static double distance( SearchSpace space, int one, int two ) {
+        return Vertex.distance( space.getLocationX( one ), space.getLocationY( one ),
+                                space.getLocationX( two ), space.getLocationY( two ) );
+    }
+}
@@ -0,0 +1,135 @@
+package pathfinding;
+
+import java.util.List;
+
+/**
+ * The result of a search from one origin to several targets: the cost of
+ * reaching each target, and the paths to them.
+ *
+ * Paths are not built until they are asked for. Until then, they are held
+ * in the SearchContext used by the search, so they can only be read until
+ * that context is used for another search (after which getPath() throws an
+ * IllegalStateException). Costs are copied, and remain available.
+ */
+public class PathTree {
+    private final SearchSpace space;
+    private final SearchContext context;
+    private final int generation;
+    private final int origin;
+    private final int[] targets;
+    private final double[] costs;
+    private final int nearest;
+
+    /**
+     * Reads the results of the most recent search in the context.
+     *
+     * @param targets the indices of the targets, in the order given by the
+     *                caller
+     * @param first   the first target visited, or -1
+     */
+    PathTree( SearchSpace space, SearchContext context, int origin, int[] targets, int first ) {
+        this.space = space;
+        this.context = context;
+        this.generation = context.getGeneration();
+        this.origin = origin;
+        this.targets = targets;
+        this.costs = new double[ targets.length ];
+
+        int nearestTarget = -1;
+        for( int i = 0; i < targets.length; i++ ) {
+            costs[i] = context.isVisited( targets[i] ) ? context.getCost( targets[i] ) : -1;
+            if( nearestTarget == -1 && targets[i] == first ) {
+                nearestTarget = i;
+            }
+        }
+        this.nearest = nearestTarget;
+    }
+
+    /**
+     * @return the index of the origin's cell
+     */
+    public int getOrigin() {
+        return origin;
+    }
+
+    /**
+     * @return the number of targets, including any duplicates
+     */
+    public int getTargetCount() {
+        return targets.length;
+    }
+
+    /**
+     * @param target the number of a target, in the order they were given
+     * @return the index of the target's cell
+     */
+    public int getTarget( int target ) {
+        return targets[target];
+    }
+
+    /**
+     * @param target the number of a target, in the order they were given
+     * @return the cost of the cheapest path to the target, or -1 if it could
+     *         not be reached (or, after a nearest-of-set search, if it is not
+     *         the nearest target)
+     */
+    public double getCost( int target ) {
+        return costs[target];
+    }
+
+    /**
+     * @param target the number of a target, in the order they were given
+     * @return true if a cost and a path are known for the target
+     */
+    public boolean isReachable( int target ) {
+        return costs[target] != -1;
+    }
+
+    /**
+     * @return the number of the target with the cheapest path, or -1 if
+     *         none could be reached
+     */
+    public int getNearest() {
+        return nearest;
+    }
+
+    /**
+     * @param target the number of a target, in the order they were given
+     * @return the indices of the cells on the cheapest path from the origin
+     *         to the target (in that order), or null if the target's cost is
+     *         not known
+     *
+     * @throws IllegalStateException if the search's context has since been
+     *                               used for another search
+     */
+    public int[] getPath( int target ) {
+        if( !isReachable( target ) ) {
+            return null;
+        }
+        if( context.getGeneration() != generation ) {
+            throw new IllegalStateException( "The SearchContext holding this path has been reused" );
+        }
+        if( targets[target] == origin ) {
+            return new int[]{ origin };
+        }
+        return Pathfinder.walkBackwards( context, targets[target] );
+    }
+
+    /**
+     * @param target the number of a target, in the order they were given
+     * @return the cheapest path from the origin to the target, or null if
+     *         the target's cost is not known
+     *
+     * @throws UnsupportedOperationException if the search was not run on a
+     *                                       Node[][]
+     * @throws IllegalStateException         if the search's context has
+     *                                       since been used for another
+     *                                       search
+     */
+    public List<Node> getNodes( int target ) {
+        if( !( space instanceof NodeSearchSpace ) ) {
+            throw new UnsupportedOperationException( "This search was not run on a Node[][]" );
+        }
+        return ( (NodeSearchSpace)space ).toNodes( getPath( target ) );
+    }
+}
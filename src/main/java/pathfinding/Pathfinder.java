@@ -1,9 +1,12 @@
 package pathfinding;
 
+import java.nio.BufferOverflowException;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,8 +31,8 @@ import org.slf4j.LoggerFactory;
  * In general, the performance of the algorithms is (from best to worst)
  * 
  * 1. Best-first
- * 2. Dijkstra's
- * 3. A*
+ * 2. A*
+ * 3. Dijkstra's
  * 
  * However, a return-fast algorithm will almost always be faster than an 
  * exhaustive search, especially over large search spaces. 
@@ -37,11 +40,58 @@ import org.slf4j.LoggerFactory;
  * Similarly, an algorithm that allows diagonal traversal will generally be
  * faster than one that does not.
  * 
+ * When exhaustive, A* will usually expand far fewer nodes than Dijkstra's
+ * while still returning a lowest-cost path. On maze-like search spaces, where
+ * the straight-line distance is a poor estimate, a Landmarks heuristic can
+ * reduce the number of expanded nodes much further. Either can also be run
+ * from both ends at once (bidirectionalDijkstra and bidirectionalAstar),
+ * which on long paths expands fewer nodes again.
+ * 
+ * On evenly-spaced search spaces (such as those created by makeNodes()), Jump
+ * Point Search returns paths of the same cost as A* while expanding far fewer
+ * nodes again, especially over large open areas.
+ * 
+ * On very large search spaces that change rarely, hierarchical pathfinding
+ * (hpa) answers queries far faster than any of the above, at the cost of
+ * paths that are usually slightly longer than the lowest-cost path.
+ * 
+ * To find the costs of paths from one origin to many targets, or to choose
+ * the nearest of several targets, use oneToMany, nearest or manyToMany
+ * rather than calling dijkstra once per target; these answer every target
+ * from a single search.
+ * 
+ * To move many agents to the same place, build a FlowField toward it once:
+ * each agent can then read its next step in constant time.
+ * 
+ * When no path exists, every search explores all the cells it can reach
+ * before returning null; ConnectedComponents.isConnected() answers whether a
+ * path exists in constant time, and can be checked first.
+ * 
+ * To see why a search was slow, enable recording of SearchStats on its
+ * SearchContext, or register a SearchListener (such as a SearchMetrics,
+ * which exposes totals per algorithm over JMX) with addSearchListener().
+ * 
+ * When a search must finish within a time limit, anytimeAstar finds a
+ * path whose cost is within a known factor of the cheapest, then improves it
+ * until the deadline, reporting how close to the cheapest it got.
+ * Alternatively, begin() starts a search that runs a given number of 
+ * expansions at a time, to be resumed (or cancelled) later.
+ * 
  * This class also contains a method for generating a search space of a given
  * width and height, and mapped to "real world" coordinates.
+ * 
+ * Each search method can also be run on a GridGraph, a compact representation
+ * of an evenly-spaced search space that is better suited to very large maps.
+ * bestFirst, dijkstra and astar can also be run on a ChunkedGrid, for worlds
+ * too large to hold in memory, whose chunks are loaded as searches reach
+ * them.
  */
 public class Pathfinder {
     private static final Logger logger = LoggerFactory.getLogger( Pathfinder.class );
+    private static final CopyOnWriteArrayList<SearchListener> listeners = new CopyOnWriteArrayList();
+    
+    // the bound of the path returned by a return-fast anytime query
+    private static final double QUERY_EPSILON = 2.5;
     
     /// Best-First Algorithm ///
     
@@ -82,7 +132,21 @@ public class Pathfinder {
      *                      no such path exists.
      */
     public static List<Node> bestFirst( Node[][] nodes, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal ) {
-        return genericSearch( nodes, origin, target, bestFirstCC, returnFast, allowDiagonal );
+        return bestFirst( nodes, origin, target, returnFast, allowDiagonal, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls bestFirst using the given SearchContext, rather than the one pooled
+     * for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #bestFirst(Node[][], Vertex, Vertex, boolean, boolean)
+     */
+    public static List<Node> bestFirst( Node[][] nodes, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal, SearchContext context ) {
+        NodeSearchSpace space = NodeSearchSpace.of( nodes );
+        return space.toNodes( genericSearch( space, origin, target, bestFirstCC, returnFast, allowDiagonal, context ) );
     }
     
     /**
@@ -118,14 +182,88 @@ public class Pathfinder {
         return bestFirst( nodes, origin, target, true, true );
     }
     
+    /**
+     * Calls bestFirst on a GridGraph rather than a Node[][]. 
+     * 
+     * @param grid          The search space
+     * 
+     * @param origin        The search-space location at which the path starts
+     * 
+     * @param target        The search-space location at which the path ends
+     * 
+     * @param returnFast    See bestFirst( Node[][], Vertex, Vertex, boolean, boolean )
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @return              The indices of the cells on a valid path between
+     *                      origin and target (in that order), or null if no 
+     *                      such path exists.
+     */
+    public static int[] bestFirst( GridGraph grid, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal ) {
+        return bestFirst( grid, origin, target, returnFast, allowDiagonal, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls bestFirst using the given SearchContext, rather than the one pooled
+     * for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #bestFirst(GridGraph, Vertex, Vertex, boolean, boolean)
+     */
+    public static int[] bestFirst( GridGraph grid, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal, SearchContext context ) {
+        return genericSearch( grid, origin, target, bestFirstCC, returnFast, allowDiagonal, context );
+    }
+    
+    /**
+     * Calls bestFirst on a ChunkedGrid rather than a Node[][]. Chunks are 
+     * loaded as the search reaches them.
+     * 
+     * @param world         The search space
+     * 
+     * @param origin        The search-space location at which the path starts
+     * 
+     * @param target        The search-space location at which the path ends
+     * 
+     * @param returnFast    See bestFirst( Node[][], Vertex, Vertex, boolean, boolean )
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @return              The indices of the cells on a valid path between
+     *                      origin and target (in that order), or null if no 
+     *                      such path exists.
+     */
+    public static int[] bestFirst( ChunkedGrid world, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal ) {
+        return bestFirst( world, origin, target, returnFast, allowDiagonal, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls bestFirst using the given SearchContext, rather than the one pooled
+     * for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins. Only the cells
+     *                      the search reaches are given working data.
+     * 
+     * @see #bestFirst(ChunkedGrid, Vertex, Vertex, boolean, boolean)
+     */
+    public static int[] bestFirst( ChunkedGrid world, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal, SearchContext context ) {
+        return genericSearch( world, origin, target, bestFirstCC, returnFast, allowDiagonal, context.getSparse() );
+    }
+    
     
     /// Dijkstra's Algorithm ///
     
     /**
      * An implementation of Dijkstra's shortest path algorithm.
      * 
-     * In general, this algorithm is less performant than best-first, but
-     * more performant than A*.
+     * In general, this algorithm is less performant than both best-first 
+     * and A*.
      * 
      * For more information on this algorithm, see: 
      * https://en.wikipedia.org/wiki/Dijkstra%27s_algorithm
@@ -157,7 +295,21 @@ public class Pathfinder {
      *                      no such path exists.
      */
     public static List<Node> dijkstra( Node[][] nodes, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal ) {
-        return genericSearch( nodes, origin, target, dijkstraCC, returnFast, allowDiagonal );
+        return dijkstra( nodes, origin, target, returnFast, allowDiagonal, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls dijkstra using the given SearchContext, rather than the one pooled
+     * for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #dijkstra(Node[][], Vertex, Vertex, boolean, boolean)
+     */
+    public static List<Node> dijkstra( Node[][] nodes, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal, SearchContext context ) {
+        NodeSearchSpace space = NodeSearchSpace.of( nodes );
+        return space.toNodes( genericSearch( space, origin, target, dijkstraCC, returnFast, allowDiagonal, context ) );
     }
     
     /**
@@ -193,12 +345,85 @@ public class Pathfinder {
         return dijkstra( nodes, origin, target, false, true );
     }
     
-    /// A* Algorithm ///
+    /**
+     * Calls dijkstra on a GridGraph rather than a Node[][]. 
+     * 
+     * @param grid          The search space
+     * 
+     * @param origin        The search-space location at which the path starts
+     * 
+     * @param target        The search-space location at which the path ends
+     * 
+     * @param returnFast    See dijkstra( Node[][], Vertex, Vertex, boolean, boolean )
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @return              The indices of the cells on a valid path between
+     *                      origin and target (in that order), or null if no 
+     *                      such path exists.
+     */
+    public static int[] dijkstra( GridGraph grid, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal ) {
+        return dijkstra( grid, origin, target, returnFast, allowDiagonal, SearchContext.forCurrentThread() );
+    }
     
     /**
-     * An implementation of the A* pathfinding algorithm. 
+     * Calls dijkstra using the given SearchContext, rather than the one pooled
+     * for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #dijkstra(GridGraph, Vertex, Vertex, boolean, boolean)
+     */
+    public static int[] dijkstra( GridGraph grid, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal, SearchContext context ) {
+        return genericSearch( grid, origin, target, dijkstraCC, returnFast, allowDiagonal, context );
+    }
+    
+    /**
+     * Calls dijkstra on a ChunkedGrid rather than a Node[][]. Chunks are 
+     * loaded as the search reaches them.
      * 
-     * In general, this is the least performant algorithm in Pathfinder.
+     * @param world         The search space
+     * 
+     * @param origin        The search-space location at which the path starts
+     * 
+     * @param target        The search-space location at which the path ends
+     * 
+     * @param returnFast    See dijkstra( Node[][], Vertex, Vertex, boolean, boolean )
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @return              The indices of the cells on a valid path between
+     *                      origin and target (in that order), or null if no 
+     *                      such path exists.
+     */
+    public static int[] dijkstra( ChunkedGrid world, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal ) {
+        return dijkstra( world, origin, target, returnFast, allowDiagonal, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls dijkstra using the given SearchContext, rather than the one pooled
+     * for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins. Only the cells
+     *                      the search reaches are given working data.
+     * 
+     * @see #dijkstra(ChunkedGrid, Vertex, Vertex, boolean, boolean)
+     */
+    public static int[] dijkstra( ChunkedGrid world, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal, SearchContext context ) {
+        return genericSearch( world, origin, target, dijkstraCC, returnFast, allowDiagonal, context.getSparse() );
+    }
+    
+    /// A* Algorithm ///
+    
+    /**
+     * An implementation of the A* pathfinding algorithm, using the straight-line
+     * distance to the target (Heuristic.EUCLIDEAN) as its heuristic.
      * 
      * For more information on A*, see:
      * https://en.wikipedia.org/wiki/A*_search_algorithm
@@ -216,11 +441,10 @@ public class Pathfinder {
      *                      may have a much faster execution time, but is not
      *                      guaranteed to return a lowest-cost path.
      * 
-     *                      If false, the algorithm will be exhaustive (all 
-     *                      reachable nodes will be visited and evaluated), 
-     *                      and the returned path is guaranteed to be equal to
-     *                      or lower in cost than any other valid path, but the
-     *                      execution time may be much higher.
+     *                      If false, the algorithm will continue until no 
+     *                      unexplored node could lead to a cheaper path, and 
+     *                      the returned path is guaranteed to be equal to or
+     *                      lower in cost than any other valid path.
      * 
      * @param allowDiagonal If true, the returned path may contain diagonal 
      *                      movements. If false, the returned path will not
@@ -233,84 +457,1073 @@ public class Pathfinder {
                                     Vertex origin, Vertex target, 
                                     boolean returnFast,
                                     boolean allowDiagonal ) {
-        Setup setup = setup( nodes, origin, target );
-        if( setup.result != null ){
-            return setup.result;
-        }
-        
-        List<Node> open = new ArrayList();
-        List<Node> closed = new ArrayList();
-        
-        open.add( setup.startNode );
-        Node targetNode = setup.targetNode;
-        
-        while( !open.isEmpty() ){
-            Collections.sort( open, astarComparator );
-            Node currentNode = open.remove(0);
-            closed.add( currentNode );
-            
-            List<Node> adjacent = getAdjacentNodes( nodes, currentNode, allowDiagonal );
-            adjacent.removeAll( closed );
-            
-            for( Node adjacentNode : adjacent ){
-                double graphCost = Vertex.distance( currentNode.location, adjacentNode.location );
-                double heurCost = Vertex.distance( currentNode.location, adjacentNode.location );
-                double newCost = currentNode.cost + graphCost + heurCost;
-                
-                if( adjacentNode.cost == -1 || adjacentNode.cost > newCost ) {
-                    adjacentNode.cost = newCost;
-                    adjacentNode.previous = currentNode;
-                }
-                
-                if( !open.contains( adjacentNode ) ){
-                    open.add( adjacentNode );
-                }
-            }
-            
-            if( returnFast && currentNode.target ){
-                return walkBackwards( currentNode );
-            }
-        }
-        
-        if( targetNode.cost != -1 ) {
-            return walkBackwards( targetNode );
-        }
-        else {
-            return null;
-        }
+        return astar( nodes, origin, target, returnFast, allowDiagonal, Heuristic.EUCLIDEAN );
+    }
+    
+    /**
+     * An implementation of the A* pathfinding algorithm. 
+     * 
+     * Nodes are expanded in order of the cost of reaching them plus the 
+     * heuristic's estimate of the cost of reaching the target from them, so
+     * the search is directed toward the target and will usually expand far
+     * fewer nodes than Dijkstra's algorithm.
+     * 
+     * @param nodes         The search space
+     * 
+     * @param origin        The location at which the path starts (e.g.
+     *                      nodes[origin.x][origin.y]
+     * 
+     * @param target        The location at which the path ends (e.g.
+     *                      nodes[target.x][target.y]
+     * 
+     * @param returnFast    If true, the algorithm will return as soon as the
+     *                      target is expanded. 
+     * 
+     *                      If false, the algorithm will continue until no 
+     *                      unexplored node could lead to a cheaper path. This
+     *                      guarantees a lowest-cost path for any admissible 
+     *                      heuristic, even one that is not consistent.
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @param heuristic     Estimates the cost of reaching the target; see
+     *                      Heuristic.EUCLIDEAN, Heuristic.OCTILE and 
+     *                      Heuristic.MANHATTAN.
+     * 
+     * @return              A valid path between origin and target, or null if
+     *                      no such path exists.
+     */
+    public static List<Node> astar( Node[][] nodes, 
+                                    Vertex origin, Vertex target, 
+                                    boolean returnFast,
+                                    boolean allowDiagonal,
+                                    Heuristic heuristic ) {
+        return astar( nodes, origin, target, returnFast, allowDiagonal, heuristic, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls astar using the given SearchContext, rather than the one pooled
+     * for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #astar(Node[][], Vertex, Vertex, boolean, boolean, Heuristic)
+     */
+    public static List<Node> astar( Node[][] nodes, 
+                                    Vertex origin, Vertex target, 
+                                    boolean returnFast,
+                                    boolean allowDiagonal,
+                                    Heuristic heuristic,
+                                    SearchContext context ) {
+        NodeSearchSpace space = NodeSearchSpace.of( nodes );
+        return space.toNodes( astarSearch( space, origin, target, heuristic, returnFast, allowDiagonal, context ) );
+    }
+    
+    /**
+     * Searches nodes to find origin and target, then calls astar with
+     * returnFast = true and allowDiagonal = true.
+     * 
+     * @param nodes The search space
+     * 
+     * @return              A valid path between origin and target, or null if
+     *                      no such path exists.
+     */
+    public static List<Node> astar( Node[][] nodes ){
+        Vertex origin = findOrigin( nodes );
+        Vertex target = findTarget( nodes );
+        return astar( nodes, origin, target, true, true );
+    }
+    
+    /**
+     * Calls astar with returnFast = true and allowDiagonal = true.
+     * 
+     * @param nodes The search space
+     * 
+     * @param origin        The location at which the path starts (e.g.
+     *                      nodes[origin.x][origin.y]
+     * 
+     * @param target        The location at which the path ends (e.g.
+     *                      nodes[target.x][target.y]
+     * 
+     * @return              A valid path between origin and target, or null if
+     *                      no such path exists.
+     */
+    public static List<Node> astar( Node[][] nodes, Vertex origin, Vertex target ){
+        return astar( nodes, origin, target, true, true );
+    }
+    
+    /**
+     * Calls astar on a GridGraph rather than a Node[][]. 
+     * 
+     * @param grid          The search space
+     * 
+     * @param origin        The search-space location at which the path starts
+     * 
+     * @param target        The search-space location at which the path ends
+     * 
+     * @param returnFast    See astar( Node[][], Vertex, Vertex, boolean, boolean )
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @return              The indices of the cells on a valid path between
+     *                      origin and target (in that order), or null if no 
+     *                      such path exists.
+     */
+    public static int[] astar( GridGraph grid, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal ) {
+        return astar( grid, origin, target, returnFast, allowDiagonal, Heuristic.EUCLIDEAN );
+    }
+    
+    /**
+     * Calls astar on a GridGraph rather than a Node[][]. 
+     * 
+     * @param grid          The search space
+     * 
+     * @param origin        The search-space location at which the path starts
+     * 
+     * @param target        The search-space location at which the path ends
+     * 
+     * @param returnFast    See astar( Node[][], Vertex, Vertex, boolean, boolean, Heuristic )
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @param heuristic     Estimates the cost of reaching the target
+     * 
+     * @return              The indices of the cells on a valid path between
+     *                      origin and target (in that order), or null if no 
+     *                      such path exists.
+     */
+    public static int[] astar( GridGraph grid, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal, Heuristic heuristic ) {
+        return astar( grid, origin, target, returnFast, allowDiagonal, heuristic, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls astar using the given SearchContext, rather than the one pooled
+     * for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #astar(GridGraph, Vertex, Vertex, boolean, boolean, Heuristic)
+     */
+    public static int[] astar( GridGraph grid, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal, Heuristic heuristic, SearchContext context ) {
+        return astarSearch( grid, origin, target, heuristic, returnFast, allowDiagonal, context );
+    }
+    
+    /**
+     * Calls astar on a ChunkedGrid rather than a Node[][]. Chunks are loaded
+     * as the search reaches them.
+     * 
+     * @param world         The search space
+     * 
+     * @param origin        The search-space location at which the path starts
+     * 
+     * @param target        The search-space location at which the path ends
+     * 
+     * @param returnFast    See astar( Node[][], Vertex, Vertex, boolean, boolean )
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @return              The indices of the cells on a valid path between
+     *                      origin and target (in that order), or null if no 
+     *                      such path exists.
+     */
+    public static int[] astar( ChunkedGrid world, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal ) {
+        return astar( world, origin, target, returnFast, allowDiagonal, Heuristic.EUCLIDEAN, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls astar using the given Heuristic and SearchContext.
+     * 
+     * @param heuristic     Estimates the cost of reaching the target
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins. Only the cells
+     *                      the search reaches are given working data.
+     * 
+     * @see #astar(ChunkedGrid, Vertex, Vertex, boolean, boolean)
+     */
+    public static int[] astar( ChunkedGrid world, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal, Heuristic heuristic, SearchContext context ) {
+        return astarSearch( world, origin, target, heuristic, returnFast, allowDiagonal, context.getSparse() );
+    }
+    
+    /// Jump Point Search ///
+    
+    /**
+     * An implementation of Jump Point Search, a variant of A* for 
+     * evenly-spaced search spaces (such as those created by makeNodes()).
+     * 
+     * Jump Point Search returns paths of the same cost as A*, but rather than
+     * expanding every cell it reaches, it skips along straight and diagonal
+     * lines and only expands cells where the path might need to turn. Over 
+     * large open areas, this expands far fewer nodes than astar or dijkstra.
+     * 
+     * For more information on Jump Point Search, see:
+     * https://en.wikipedia.org/wiki/Jump_point_search
+     * 
+     * @param nodes         The search space, which must be evenly spaced
+     * 
+     * @param origin        The location at which the path starts (e.g.
+     *                      nodes[origin.x][origin.y]
+     * 
+     * @param target        The location at which the path ends (e.g.
+     *                      nodes[target.x][target.y]
+     * 
+     * @param returnFast    If true, the algorithm will return as soon as the
+     *                      target is expanded. 
+     * 
+     *                      If false, the algorithm will continue until no 
+     *                      unexplored node could lead to a cheaper path, and 
+     *                      the returned path is guaranteed to be equal to or
+     *                      lower in cost than any other valid path.
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @return              A valid path between origin and target, or null if
+     *                      no such path exists.
+     */
+    public static List<Node> jps( Node[][] nodes, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal ) {
+        return jps( nodes, origin, target, returnFast, allowDiagonal, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls jps using the given SearchContext, rather than the one pooled
+     * for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #jps(Node[][], Vertex, Vertex, boolean, boolean)
+     */
+    public static List<Node> jps( Node[][] nodes, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal, SearchContext context ) {
+        NodeSearchSpace space = NodeSearchSpace.of( nodes );
+        return space.toNodes( jpsSearch( space, null, origin, target, returnFast, allowDiagonal, context ) );
+    }
+    
+    /**
+     * Calls jps on a GridGraph rather than a Node[][]. 
+     * 
+     * @param grid          The search space
+     * 
+     * @param origin        The search-space location at which the path starts
+     * 
+     * @param target        The search-space location at which the path ends
+     * 
+     * @param returnFast    See jps( Node[][], Vertex, Vertex, boolean, boolean )
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @return              The indices of the cells on a valid path between
+     *                      origin and target (in that order), or null if no 
+     *                      such path exists.
+     */
+    public static int[] jps( GridGraph grid, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal ) {
+        return jps( grid, origin, target, returnFast, allowDiagonal, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls jps using the given SearchContext, rather than the one pooled
+     * for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #jps(GridGraph, Vertex, Vertex, boolean, boolean)
+     */
+    public static int[] jps( GridGraph grid, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal, SearchContext context ) {
+        return jpsSearch( grid, null, origin, target, returnFast, allowDiagonal, context );
+    }
+    
+    /// Jump Point Search with precomputed jumps (JPS+) ///
+    
+    /**
+     * Jump Point Search using a precomputed JumpTable, for search spaces that
+     * are searched far more often than they change. Paths may contain 
+     * diagonal movements.
+     * 
+     * This returns paths of the same cost as jps(), but rather than scanning
+     * the search space for each jump, looks it up in the table. If the
+     * traversability of a node changes, the table must be updated (see
+     * JumpTable.update()) before it is searched again.
+     * 
+     * @param nodes         The search space, which must be evenly spaced
+     * 
+     * @param table         A jump table built for nodes
+     * 
+     * @param origin        The location at which the path starts (e.g.
+     *                      nodes[origin.x][origin.y]
+     * 
+     * @param target        The location at which the path ends (e.g.
+     *                      nodes[target.x][target.y]
+     * 
+     * @param returnFast    See jps( Node[][], Vertex, Vertex, boolean, boolean )
+     * 
+     * @return              A valid path between origin and target, or null if
+     *                      no such path exists.
+     */
+    public static List<Node> jpsPlus( Node[][] nodes, JumpTable table, Vertex origin, Vertex target, boolean returnFast ) {
+        return jpsPlus( nodes, table, origin, target, returnFast, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls jpsPlus using the given SearchContext, rather than the one pooled
+     * for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #jpsPlus(Node[][], JumpTable, Vertex, Vertex, boolean)
+     */
+    public static List<Node> jpsPlus( Node[][] nodes, JumpTable table, Vertex origin, Vertex target, boolean returnFast, SearchContext context ) {
+        NodeSearchSpace space = NodeSearchSpace.of( nodes );
+        return space.toNodes( jpsSearch( space, table, origin, target, returnFast, true, context ) );
+    }
+    
+    /**
+     * Calls jpsPlus on a GridGraph rather than a Node[][]. 
+     * 
+     * @param grid          The search space
+     * 
+     * @param table         A jump table built for grid
+     * 
+     * @param origin        The search-space location at which the path starts
+     * 
+     * @param target        The search-space location at which the path ends
+     * 
+     * @param returnFast    See jps( Node[][], Vertex, Vertex, boolean, boolean )
+     * 
+     * @return              The indices of the cells on a valid path between
+     *                      origin and target (in that order), or null if no 
+     *                      such path exists.
+     */
+    public static int[] jpsPlus( GridGraph grid, JumpTable table, Vertex origin, Vertex target, boolean returnFast ) {
+        return jpsPlus( grid, table, origin, target, returnFast, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls jpsPlus using the given SearchContext, rather than the one pooled
+     * for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #jpsPlus(GridGraph, JumpTable, Vertex, Vertex, boolean)
+     */
+    public static int[] jpsPlus( GridGraph grid, JumpTable table, Vertex origin, Vertex target, boolean returnFast, SearchContext context ) {
+        return jpsSearch( grid, table, origin, target, returnFast, true, context );
+    }
+    
+    /// Bidirectional Search ///
+    
+    /**
+     * Dijkstra's algorithm, run from both ends at once: one search expands
+     * outward from the origin while another expands outward from the target,
+     * until the two meet. When exhaustive, the returned path is as cheap as
+     * the one returned by dijkstra(), but on long paths roughly half as many
+     * nodes are expanded.
+     * 
+     * @param nodes         The search space
+     * 
+     * @param origin        The location at which the path starts (e.g.
+     *                      nodes[origin.x][origin.y]
+     * 
+     * @param target        The location at which the path ends (e.g.
+     *                      nodes[target.x][target.y]
+     * 
+     * @param returnFast    If true, the algorithm will return as soon as the
+     *                      two searches meet. 
+     * 
+     *                      If false, the algorithm will continue until no 
+     *                      unexplored node could lead to a cheaper path, and 
+     *                      the returned path is guaranteed to be equal to or
+     *                      lower in cost than any other valid path.
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @return              A valid path between origin and target, or null if
+     *                      no such path exists.
+     */
+    public static List<Node> bidirectionalDijkstra( Node[][] nodes, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal ) {
+        return bidirectionalDijkstra( nodes, origin, target, returnFast, allowDiagonal, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls bidirectionalDijkstra using the given SearchContext, rather than
+     * the one pooled for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #bidirectionalDijkstra(Node[][], Vertex, Vertex, boolean, boolean)
+     */
+    public static List<Node> bidirectionalDijkstra( Node[][] nodes, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal, SearchContext context ) {
+        NodeSearchSpace space = NodeSearchSpace.of( nodes );
+        return space.toNodes( bidirectionalSearch( space, origin, target, null, returnFast, allowDiagonal, context ) );
+    }
+    
+    /**
+     * Calls bidirectionalDijkstra on a GridGraph rather than a Node[][]. 
+     * 
+     * @param grid          The search space
+     * 
+     * @param origin        The search-space location at which the path starts
+     * 
+     * @param target        The search-space location at which the path ends
+     * 
+     * @param returnFast    See bidirectionalDijkstra( Node[][], Vertex, Vertex, boolean, boolean )
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @return              The indices of the cells on a valid path between
+     *                      origin and target (in that order), or null if no 
+     *                      such path exists.
+     */
+    public static int[] bidirectionalDijkstra( GridGraph grid, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal ) {
+        return bidirectionalDijkstra( grid, origin, target, returnFast, allowDiagonal, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls bidirectionalDijkstra using the given SearchContext, rather than
+     * the one pooled for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #bidirectionalDijkstra(GridGraph, Vertex, Vertex, boolean, boolean)
+     */
+    public static int[] bidirectionalDijkstra( GridGraph grid, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal, SearchContext context ) {
+        return bidirectionalSearch( grid, origin, target, null, returnFast, allowDiagonal, context );
+    }
+    
+    /**
+     * A*, run from both ends at once, using Heuristic.EUCLIDEAN.
+     * 
+     * Each search is guided by the average of the heuristic toward the target
+     * and the heuristic toward the origin, so that both agree on which paths
+     * are cheapest. When exhaustive, the returned path is as cheap as the one
+     * returned by astar().
+     * 
+     * @param nodes         The search space
+     * 
+     * @param origin        The location at which the path starts (e.g.
+     *                      nodes[origin.x][origin.y]
+     * 
+     * @param target        The location at which the path ends (e.g.
+     *                      nodes[target.x][target.y]
+     * 
+     * @param returnFast    See bidirectionalDijkstra( Node[][], Vertex, Vertex, boolean, boolean )
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @return              A valid path between origin and target, or null if
+     *                      no such path exists.
+     */
+    public static List<Node> bidirectionalAstar( Node[][] nodes, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal ) {
+        return bidirectionalAstar( nodes, origin, target, returnFast, allowDiagonal, Heuristic.EUCLIDEAN, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls bidirectionalAstar using the given heuristic and SearchContext.
+     * 
+     * @param heuristic     Estimates the cost between two cells. It must be
+     *                      consistent (never decrease by more than the cost 
+     *                      of a single step), or the returned path may not be 
+     *                      the cheapest.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #bidirectionalAstar(Node[][], Vertex, Vertex, boolean, boolean)
+     */
+    public static List<Node> bidirectionalAstar( Node[][] nodes, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal, Heuristic heuristic, SearchContext context ) {
+        NodeSearchSpace space = NodeSearchSpace.of( nodes );
+        return space.toNodes( bidirectionalSearch( space, origin, target, heuristic, returnFast, allowDiagonal, context ) );
+    }
+    
+    /**
+     * Calls bidirectionalAstar on a GridGraph rather than a Node[][]. 
+     * 
+     * @param grid          The search space
+     * 
+     * @param origin        The search-space location at which the path starts
+     * 
+     * @param target        The search-space location at which the path ends
+     * 
+     * @param returnFast    See bidirectionalDijkstra( Node[][], Vertex, Vertex, boolean, boolean )
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @return              The indices of the cells on a valid path between
+     *                      origin and target (in that order), or null if no 
+     *                      such path exists.
+     */
+    public static int[] bidirectionalAstar( GridGraph grid, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal ) {
+        return bidirectionalAstar( grid, origin, target, returnFast, allowDiagonal, Heuristic.EUCLIDEAN, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls bidirectionalAstar using the given heuristic and SearchContext.
+     * 
+     * @param heuristic     See bidirectionalAstar( Node[][], Vertex, Vertex, boolean, boolean, Heuristic, SearchContext )
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #bidirectionalAstar(GridGraph, Vertex, Vertex, boolean, boolean)
+     */
+    public static int[] bidirectionalAstar( GridGraph grid, Vertex origin, Vertex target, boolean returnFast, boolean allowDiagonal, Heuristic heuristic, SearchContext context ) {
+        return bidirectionalSearch( grid, origin, target, heuristic, returnFast, allowDiagonal, context );
+    }
+    
+    /// Anytime A* (ARA*) ///
+    
+    /**
+     * A*, bounded by a deadline: quickly finds a path whose cost is at most
+     * epsilon times that of the cheapest, then keeps improving it, lowering
+     * the bound, until it is optimal or the deadline passes. The result
+     * reports the bound achieved (see AnytimePath.getEpsilon()). This uses 
+     * Heuristic.EUCLIDEAN.
+     * 
+     * Unlike returnFast, which gives up any guarantee of a path's quality,
+     * this returns the best path that could be found in the time allowed, 
+     * along with how good it is. Each improvement reuses the work of the
+     * last, so the total work is little more than that of a single search
+     * with the final bound.
+     * 
+     * @param nodes         The search space
+     * 
+     * @param origin        The location at which the path starts (e.g.
+     *                      nodes[origin.x][origin.y]
+     * 
+     * @param target        The location at which the path ends (e.g.
+     *                      nodes[target.x][target.y]
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @param epsilon       The bound of the first path found, at least 1. 
+     *                      Higher values find a first path sooner (typically
+     *                      2.5 to 5); 1 makes this an ordinary A*.
+     * 
+     * @param deadline      The value of System.nanoTime() by which to return.
+     *                      The search overruns it by at most the time taken
+     *                      to expand a few hundred nodes and copy a path.
+     * 
+     * @return              The best path found and its bound. If the 
+     *                      deadline passed before any path was found, the 
+     *                      path is null and isComplete() is false.
+     */
+    public static AnytimePath<List<Node>> anytimeAstar( Node[][] nodes, Vertex origin, Vertex target, boolean allowDiagonal, double epsilon, long deadline ) {
+        return anytimeAstar( nodes, origin, target, allowDiagonal, epsilon, deadline, Heuristic.EUCLIDEAN, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls anytimeAstar using the given heuristic and SearchContext.
+     * 
+     * @param heuristic     Estimates the cost between two cells. It must be
+     *                      consistent (never decrease by more than the cost 
+     *                      of a single step), or the reported bound may not
+     *                      hold.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #anytimeAstar(Node[][], Vertex, Vertex, boolean, double, long)
+     */
+    public static AnytimePath<List<Node>> anytimeAstar( Node[][] nodes, Vertex origin, Vertex target, boolean allowDiagonal, double epsilon, long deadline, Heuristic heuristic, SearchContext context ) {
+        NodeSearchSpace space = NodeSearchSpace.of( nodes );
+        AnytimePath<int[]> result = anytimeSearch( space, origin, target, heuristic, false, allowDiagonal, epsilon, deadline, context );
+        return result.withPath( space.toNodes( result.getPath() ) );
+    }
+    
+    /**
+     * Calls anytimeAstar on a GridGraph rather than a Node[][]. 
+     * 
+     * @param grid          The search space
+     * 
+     * @param origin        The search-space location at which the path starts
+     * 
+     * @param target        The search-space location at which the path ends
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @param epsilon       See anytimeAstar( Node[][], Vertex, Vertex, boolean, double, long )
+     * 
+     * @param deadline      See anytimeAstar( Node[][], Vertex, Vertex, boolean, double, long )
+     * 
+     * @return              The indices of the cells on the best path found 
+     *                      (from origin to target), and its bound.
+     */
+    public static AnytimePath<int[]> anytimeAstar( GridGraph grid, Vertex origin, Vertex target, boolean allowDiagonal, double epsilon, long deadline ) {
+        return anytimeAstar( grid, origin, target, allowDiagonal, epsilon, deadline, Heuristic.EUCLIDEAN, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls anytimeAstar using the given heuristic and SearchContext.
+     * 
+     * @param heuristic     See anytimeAstar( Node[][], Vertex, Vertex, boolean, double, long, Heuristic, SearchContext )
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #anytimeAstar(GridGraph, Vertex, Vertex, boolean, double, long)
+     */
+    public static AnytimePath<int[]> anytimeAstar( GridGraph grid, Vertex origin, Vertex target, boolean allowDiagonal, double epsilon, long deadline, Heuristic heuristic, SearchContext context ) {
+        return anytimeSearch( grid, origin, target, heuristic, false, allowDiagonal, epsilon, deadline, context );
+    }
+    
+    /// Suspendable Searches ///
+    
+    /**
+     * Starts a search that runs a little at a time: each call to 
+     * PathSearch.step() expands at most a given number of nodes, so that a
+     * long search can be spread across frames, or many searches can take
+     * turns on one thread. The search finds the same path as the equivalent
+     * call to bestFirst(), dijkstra() or astar() (using Heuristic.EUCLIDEAN).
+     * 
+     * The search holds its own working data until it finishes or is 
+     * cancelled. That data is only allocated for the nodes the search 
+     * reaches, so thousands of searches can be in progress at once.
+     * 
+     * @param nodes         The search space
+     * 
+     * @param query         The origin, target and options of the search. Its
+     *                      algorithm must be BEST_FIRST, DIJKSTRA or ASTAR.
+     * 
+     * @return              The search, which has not yet expanded any nodes
+     *                      (unless the origin is the target, in which case
+     *                      it has found its path).
+     */
+    public static PathSearch begin( Node[][] nodes, PathQuery query ) {
+        return begin( NodeSearchSpace.of( nodes ), query, new SearchContext().getSparse() );
+    }
+    
+    /**
+     * Calls begin on a GridGraph rather than a Node[][]. 
+     * 
+     * @see #begin(Node[][], PathQuery)
+     */
+    public static PathSearch begin( GridGraph grid, PathQuery query ) {
+        return begin( grid, query, new SearchContext().getSparse() );
+    }
+    
+    /**
+     * Calls begin using the given SearchContext, which allocates working
+     * data for every cell up front but is quicker to search with.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins, and must not be
+     *                      used for anything else until the search is done.
+     * 
+     * @see #begin(Node[][], PathQuery)
+     */
+    public static PathSearch begin( GridGraph grid, PathQuery query, SearchContext context ) {
+        return begin( (SearchSpace)grid, query, context );
+    }
+    
+    /**
+     * Calls begin on a ChunkedGrid rather than a Node[][]. Searches of a
+     * ChunkedGrid must all be stepped on the same thread.
+     * 
+     * @see #begin(Node[][], PathQuery)
+     */
+    public static PathSearch begin( ChunkedGrid world, PathQuery query ) {
+        return begin( world, query, new SearchContext().getSparse() );
+    }
+    
+    /// Hierarchical Pathfinding (HPA*) ///
+    
+    /**
+     * Hierarchical pathfinding, for very large search spaces. Paths may
+     * contain diagonal movements if the map was built to allow them.
+     * 
+     * Rather than searching every node between origin and target, this 
+     * searches the map's much smaller graph of cluster entrances, then fills
+     * in the path one cluster at a time. This is far faster than astar() on
+     * large maps, but the returned path is usually a little more expensive
+     * than the lowest-cost path. If the traversability of a node changes, the
+     * map must be updated (see HierarchicalMap.update()) before it is searched
+     * again.
+     * 
+     * @param nodes         The search space
+     * 
+     * @param map           A hierarchical map built for nodes
+     * 
+     * @param origin        The location at which the path starts (e.g.
+     *                      nodes[origin.x][origin.y]
+     * 
+     * @param target        The location at which the path ends (e.g.
+     *                      nodes[target.x][target.y]
+     * 
+     * @return              A valid path between origin and target, or null if
+     *                      no such path exists.
+     */
+    public static List<Node> hpa( Node[][] nodes, HierarchicalMap map, Vertex origin, Vertex target ) {
+        return hpa( nodes, map, origin, target, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls hpa using the given SearchContext, rather than the one pooled
+     * for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #hpa(Node[][], HierarchicalMap, Vertex, Vertex)
+     */
+    public static List<Node> hpa( Node[][] nodes, HierarchicalMap map, Vertex origin, Vertex target, SearchContext context ) {
+        NodeSearchSpace space = NodeSearchSpace.of( nodes );
+        return space.toNodes( hpaSearch( map, origin, target, context ) );
+    }
+    
+    /**
+     * Calls hpa on a GridGraph rather than a Node[][]. 
+     * 
+     * @param grid          The search space
+     * 
+     * @param map           A hierarchical map built for grid
+     * 
+     * @param origin        The search-space location at which the path starts
+     * 
+     * @param target        The search-space location at which the path ends
+     * 
+     * @return              The indices of the cells on a valid path between
+     *                      origin and target (in that order), or null if no 
+     *                      such path exists.
+     */
+    public static int[] hpa( GridGraph grid, HierarchicalMap map, Vertex origin, Vertex target ) {
+        return hpa( grid, map, origin, target, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls hpa using the given SearchContext, rather than the one pooled
+     * for the calling thread.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #hpa(GridGraph, HierarchicalMap, Vertex, Vertex)
+     */
+    public static int[] hpa( GridGraph grid, HierarchicalMap map, Vertex origin, Vertex target, SearchContext context ) {
+        return hpaSearch( map, origin, target, context );
+    }
+    
+    /// Batch Queries ///
+    
+    /**
+     * Finds the cheapest path from one origin to each of several targets,
+     * using a single run of Dijkstra's algorithm. The search stops as soon as
+     * every target has been reached, so this is far cheaper than calling 
+     * dijkstra() once per target.
+     * 
+     * Paths are built on demand by PathTree.getNodes(); this must happen 
+     * before the calling thread's SearchContext is used for another search.
+     * 
+     * @param nodes         The search space
+     * 
+     * @param origin        The location at which the paths start (e.g.
+     *                      nodes[origin.x][origin.y]
+     * 
+     * @param targets       The locations at which the paths end
+     * 
+     * @param allowDiagonal If true, the returned paths may contain diagonal 
+     *                      movements. If false, the returned paths will not
+     *                      contain diagonal movements.
+     * 
+     * @return              The cost of, and path to, each target
+     */
+    public static PathTree oneToMany( Node[][] nodes, Vertex origin, Vertex[] targets, boolean allowDiagonal ) {
+        return oneToMany( nodes, origin, targets, allowDiagonal, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls oneToMany using the given SearchContext, rather than the one 
+     * pooled for the calling thread. The returned paths can be read until 
+     * the context is used for another search.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #oneToMany(Node[][], Vertex, Vertex[], boolean)
+     */
+    public static PathTree oneToMany( Node[][] nodes, Vertex origin, Vertex[] targets, boolean allowDiagonal, SearchContext context ) {
+        return multiTargetSearch( NodeSearchSpace.of( nodes ), origin, targets, false, allowDiagonal, context );
+    }
+    
+    /**
+     * Calls oneToMany on a GridGraph rather than a Node[][]. Paths are built
+     * on demand by PathTree.getPath().
+     * 
+     * @param grid          The search space
+     * 
+     * @param origin        The search-space location at which the paths start
+     * 
+     * @param targets       The search-space locations at which the paths end
+     * 
+     * @param allowDiagonal If true, the returned paths may contain diagonal 
+     *                      movements. If false, the returned paths will not
+     *                      contain diagonal movements.
+     * 
+     * @return              The cost of, and path to, each target
+     */
+    public static PathTree oneToMany( GridGraph grid, Vertex origin, Vertex[] targets, boolean allowDiagonal ) {
+        return oneToMany( grid, origin, targets, allowDiagonal, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls oneToMany using the given SearchContext, rather than the one 
+     * pooled for the calling thread. The returned paths can be read until 
+     * the context is used for another search.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #oneToMany(GridGraph, Vertex, Vertex[], boolean)
+     */
+    public static PathTree oneToMany( GridGraph grid, Vertex origin, Vertex[] targets, boolean allowDiagonal, SearchContext context ) {
+        return multiTargetSearch( grid, origin, targets, false, allowDiagonal, context );
+    }
+    
+    /**
+     * Finds whichever of several targets is cheapest to reach from the 
+     * origin, using a single run of Dijkstra's algorithm that stops as soon
+     * as any target is reached. 
+     * 
+     * The nearest target is given by PathTree.getNearest(); the costs of the
+     * other targets are not known.
+     * 
+     * @param nodes         The search space
+     * 
+     * @param origin        The location at which the path starts (e.g.
+     *                      nodes[origin.x][origin.y]
+     * 
+     * @param targets       The locations to choose between
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @return              The nearest target, and its cost and path
+     */
+    public static PathTree nearest( Node[][] nodes, Vertex origin, Vertex[] targets, boolean allowDiagonal ) {
+        return nearest( nodes, origin, targets, allowDiagonal, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls nearest using the given SearchContext, rather than the one 
+     * pooled for the calling thread. The returned path can be read until 
+     * the context is used for another search.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #nearest(Node[][], Vertex, Vertex[], boolean)
+     */
+    public static PathTree nearest( Node[][] nodes, Vertex origin, Vertex[] targets, boolean allowDiagonal, SearchContext context ) {
+        return multiTargetSearch( NodeSearchSpace.of( nodes ), origin, targets, true, allowDiagonal, context );
+    }
+    
+    /**
+     * Calls nearest on a GridGraph rather than a Node[][]. 
+     * 
+     * @param grid          The search space
+     * 
+     * @param origin        The search-space location at which the path starts
+     * 
+     * @param targets       The search-space locations to choose between
+     * 
+     * @param allowDiagonal If true, the returned path may contain diagonal 
+     *                      movements. If false, the returned path will not
+     *                      contain diagonal movements.
+     * 
+     * @return              The nearest target, and its cost and path
+     */
+    public static PathTree nearest( GridGraph grid, Vertex origin, Vertex[] targets, boolean allowDiagonal ) {
+        return nearest( grid, origin, targets, allowDiagonal, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls nearest using the given SearchContext, rather than the one 
+     * pooled for the calling thread. The returned path can be read until 
+     * the context is used for another search.
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @see #nearest(GridGraph, Vertex, Vertex[], boolean)
+     */
+    public static PathTree nearest( GridGraph grid, Vertex origin, Vertex[] targets, boolean allowDiagonal, SearchContext context ) {
+        return multiTargetSearch( grid, origin, targets, true, allowDiagonal, context );
+    }
+    
+    /**
+     * Finds the cost of the cheapest path from each of several origins to 
+     * each of several targets.
+     * 
+     * Paths cost the same in both directions, so one search is run from each
+     * distinct origin, or from each distinct target if there are fewer of
+     * them; each search stops as soon as every location on the other side
+     * has been reached.
+     * 
+     * @param nodes         The search space
+     * 
+     * @param origins       The locations at which the paths start
+     * 
+     * @param targets       The locations at which the paths end
+     * 
+     * @param allowDiagonal If true, paths may contain diagonal movements. 
+     * 
+     * @return              The cost of the cheapest path from each origin 
+     *                      (first index) to each target (second index), or 
+     *                      -1 where there is no path (including wherever the
+     *                      origin or target is not traversable).
+     */
+    public static double[][] manyToMany( Node[][] nodes, Vertex[] origins, Vertex[] targets, boolean allowDiagonal ) {
+        return manyToMany( nodes, origins, targets, allowDiagonal, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls manyToMany using the given SearchContext, rather than the one 
+     * pooled for the calling thread.
+     * 
+     * @param context       Holds the working data of the searches.
+     * 
+     * @see #manyToMany(Node[][], Vertex[], Vertex[], boolean)
+     */
+    public static double[][] manyToMany( Node[][] nodes, Vertex[] origins, Vertex[] targets, boolean allowDiagonal, SearchContext context ) {
+        return manyToManySearch( NodeSearchSpace.of( nodes ), origins, targets, allowDiagonal, context );
+    }
+    
+    /**
+     * Calls manyToMany on a GridGraph rather than a Node[][]. 
+     * 
+     * @param grid          The search space
+     * 
+     * @param origins       The search-space locations at which the paths start
+     * 
+     * @param targets       The search-space locations at which the paths end
+     * 
+     * @param allowDiagonal If true, paths may contain diagonal movements. 
+     * 
+     * @return              The cost of the cheapest path from each origin 
+     *                      (first index) to each target (second index), or 
+     *                      -1 where there is no path (including wherever the
+     *                      origin or target is not traversable).
+     */
+    public static double[][] manyToMany( GridGraph grid, Vertex[] origins, Vertex[] targets, boolean allowDiagonal ) {
+        return manyToMany( grid, origins, targets, allowDiagonal, SearchContext.forCurrentThread() );
+    }
+    
+    /**
+     * Calls manyToMany using the given SearchContext, rather than the one 
+     * pooled for the calling thread.
+     * 
+     * @param context       Holds the working data of the searches.
+     * 
+     * @see #manyToMany(GridGraph, Vertex[], Vertex[], boolean)
+     */
+    public static double[][] manyToMany( GridGraph grid, Vertex[] origins, Vertex[] targets, boolean allowDiagonal, SearchContext context ) {
+        return manyToManySearch( grid, origins, targets, allowDiagonal, context );
     }
     
+    /// Path Output ///
+    
     /**
-     * Searches nodes to find origin and target, then calls astar with
-     * returnFast = true and allowDiagonal = true.
+     * Runs the search described by a query, writing the indices of the cells
+     * on the path into the buffer (from its position onwards, advancing the
+     * position), rather than allocating a new array. The path can then be
+     * read, or encoded with PathCodec, before the buffer is reused.
      * 
-     * @param nodes The search space
+     * Best-first, Dijkstra's, A* and JPS write the path straight from the
+     * search's working data, so that (with a reused SearchContext) a search
+     * allocates nothing. Other algorithms, and searches whose statistics are
+     * being recorded, copy the path from an array.
      * 
-     * @return              A valid path between origin and target, or null if
-     *                      no such path exists.
+     * @param grid          The search space
+     * 
+     * @param query         The origin, target, algorithm and options of the
+     *                      search
+     * 
+     * @param context       Holds the working data of the search; it is 
+     *                      reset before the search begins.
+     * 
+     * @param out           Receives the path
+     * 
+     * @return              The number of cells written, or -1 if no path
+     *                      exists.
+     * 
+     * @throws BufferOverflowException if the path has more cells than the 
+     *                                 buffer has remaining, in which case
+     *                                 nothing is written
      */
-    public static List<Node> astar( Node[][] nodes ){
-        Vertex origin = findOrigin( nodes );
-        Vertex target = findTarget( nodes );
-        return astar( nodes, origin, target, true, true );
+    public static int search( GridGraph grid, PathQuery query, SearchContext context, IntBuffer out ) {
+        int position = out.position();
+        int length = search( grid, query, context, null, out, position, out.remaining() );
+        if( length > 0 ) {
+            out.position( position + length );
+        }
+        return length;
     }
     
     /**
-     * Calls astar with returnFast = true and allowDiagonal = true.
+     * Calls search with an array, rather than an IntBuffer, to receive the
+     * path.
      * 
-     * @param nodes The search space
+     * @param out           Receives the path
      * 
-     * @param origin        The location at which the path starts (e.g.
-     *                      nodes[origin.x][origin.y]
+     * @param offset        The position in out of the path's first cell
      * 
-     * @param target        The location at which the path ends (e.g.
-     *                      nodes[target.x][target.y]
+     * @see #search(GridGraph, PathQuery, SearchContext, IntBuffer)
+     */
+    public static int search( GridGraph grid, PathQuery query, SearchContext context, int[] out, int offset ) {
+        return search( grid, query, context, out, null, offset, out.length - offset );
+    }
+    
+    /// Search Statistics ///
+    
+    /**
+     * Registers a listener to receive the statistics of every search run
+     * from now on, on any thread, by bestFirst, dijkstra, astar, jps, jpsPlus,
+     * bidirectionalDijkstra and bidirectionalAstar (and by PathCache and
+     * PathfinderExecutor, which use them).
      * 
-     * @return              A valid path between origin and target, or null if
-     *                      no such path exists.
+     * While no listener is registered, and unless a search's SearchContext
+     * is recording statistics, searches do not measure anything.
+     * 
+     * @param listener the listener to add
      */
-    public static List<Node> astar( Node[][] nodes, Vertex origin, Vertex target ){
-        return astar( nodes, origin, target, true, true );
+    public static void addSearchListener( SearchListener listener ) {
+        listeners.addIfAbsent( listener );
+    }
+    
+    /**
+     * @param listener a listener added by addSearchListener()
+     */
+    public static void removeSearchListener( SearchListener listener ) {
+        listeners.remove( listener );
     }
     
     /// utilities ///
@@ -329,36 +1542,16 @@ public class Pathfinder {
      * @return A list of traversable nodes touching the current node.
      */
     public static List<Node> getAdjacentNodes( Node[][] nodes, Node current, boolean allowDiagonal ) {
-        Vertex[] candidates;
-
-        if( allowDiagonal ) {
-            candidates = new Vertex[]{
-                new Vertex( current.searchSpaceLocation.x + 1, current.searchSpaceLocation.y ),
-                new Vertex( current.searchSpaceLocation.x + 1, current.searchSpaceLocation.y + 1 ),
-                new Vertex( current.searchSpaceLocation.x + 1, current.searchSpaceLocation.y - 1 ),
-                new Vertex( current.searchSpaceLocation.x, current.searchSpaceLocation.y + 1 ),
-                new Vertex( current.searchSpaceLocation.x, current.searchSpaceLocation.y - 1 ),
-                new Vertex( current.searchSpaceLocation.x - 1, current.searchSpaceLocation.y ),
-                new Vertex( current.searchSpaceLocation.x - 1, current.searchSpaceLocation.y + 1 ),
-                new Vertex( current.searchSpaceLocation.x - 1, current.searchSpaceLocation.y - 1 ), };
-        }
-        else {
-            candidates = new Vertex[]{
-                new Vertex( current.searchSpaceLocation.x + 1, current.searchSpaceLocation.y ),
-                new Vertex( current.searchSpaceLocation.x, current.searchSpaceLocation.y + 1 ),
-                new Vertex( current.searchSpaceLocation.x, current.searchSpaceLocation.y - 1 ),
-                new Vertex( current.searchSpaceLocation.x - 1, current.searchSpaceLocation.y ), };
-        }
-
-        List<Node> result = new ArrayList( candidates.length );
-        for( int i = 0; i < candidates.length; i++ ) {
-            Vertex candidate = candidates[i];
-            if( candidate.x >= 0 && candidate.x < nodes.length ) {
-                if( candidate.y >= 0 && candidate.y < nodes[0].length ) {
-                    Node node = nodes[candidate.x][candidate.y];
-                    if( node.traversable ) {
-                        result.add( node );
-                    }
+        int[] directions = Directions.get( allowDiagonal );
+        int x = current.searchSpaceLocation.x;
+        int y = current.searchSpaceLocation.y;
+
+        List<Node> result = new ArrayList( directions.length );
+        for( int direction : directions ) {
+            if( Directions.inBounds( x, y, direction, nodes.length, nodes[0].length ) ) {
+                Node node = nodes[ x + Directions.X[direction] ][ y + Directions.Y[direction] ];
+                if( node.traversable ) {
+                    result.add( node );
                 }
             }
         }
@@ -410,6 +1603,33 @@ public class Pathfinder {
         return path;
     }
 
+    /**
+     * Creates a path of cell indices, using a search's working data to walk
+     * the chain.
+     *
+     * @param context the working data of the search
+     * @param target  the index of the last cell in the chain
+     * 
+     * @return the indices of the cells from origin to target (in that order),
+     *         based upon each cell's previous cell.
+     */
+    public static int[] walkBackwards( SearchContext context, int target ) {
+        if( context.getPrevious( target ) == -1 ) {
+            return null;
+        }
+
+        int length = 0;
+        for( int index = target; index != -1; index = context.getPrevious( index ) ) {
+            length++;
+        }
+
+        int[] path = new int[ length ];
+        for( int index = target; index != -1; index = context.getPrevious( index ) ) {
+            path[--length] = index;
+        }
+        return path;
+    }
+
     /**
      * Prints out a field of nodes to the console.
      * The ouTput uses the following symbols:
@@ -559,73 +1779,88 @@ public class Pathfinder {
     
     /// internal utilities ///
     
-    private interface CostCalculator {
-        public double getCost( Node currentNode, Node adjacentNode, Node targetNode );
-
-    }
-    
-    private static class Setup{
-        public Node startNode;
-        public Node targetNode;
-        public List<Node> result;
+    interface CostCalculator {
+        public double getCost( SearchContext context, int current, int adjacent, int target, double stepCost );
 
-        public Setup( Node startNode, Node targetNode, List<Node> result ) {
-            this.startNode = startNode;
-            this.targetNode = targetNode;
-            this.result = result;
-        }
     }
     
-    private static CostCalculator bestFirstCC = new CostCalculator() {
+    static final CostCalculator bestFirstCC = new CostCalculator() {
         @Override
-        public double getCost( Node currentNode, Node adjacentNode, Node targetNode ) {
-            double currentCost = currentNode.cost;
-            double graphCost = Vertex.distance( currentNode.location, adjacentNode.location );
-            double heurCost = Vertex.distance( currentNode.location, adjacentNode.location );
+        public double getCost( SearchContext context, int current, int adjacent, int target, double stepCost ) {
+            double currentCost = context.getCost( current );
+            double graphCost = stepCost;
+            double heurCost = stepCost;
             double newCost = currentCost + graphCost + heurCost;
             return newCost;
         }
     };
     
-    private static CostCalculator dijkstraCC = new CostCalculator() {
+    static final CostCalculator dijkstraCC = new CostCalculator() {
         @Override
-        public double getCost( Node currentNode, Node adjacentNode, Node targetNode ) {
-            double currentCost = currentNode.cost;
-            double graphCost = Vertex.distance( currentNode.location, adjacentNode.location );
+        public double getCost( SearchContext context, int current, int adjacent, int target, double stepCost ) {
+            double currentCost = context.getCost( current );
+            double graphCost = stepCost;
             double newCost = currentCost + graphCost;
             return newCost;
         }
     };
     
-    private static Comparator astarComparator = new Comparator(){
-        @Override
-        public int compare( Object o1, Object o2 ) {
-            Node node1 = (Node)o1;
-            Node node2 = (Node)o2;
-            
-            if( node2.cost < node1.cost ){
-                return 1;
-            }
-            else if( node2.cost > node1.cost ){
-                return -1;
-            }
-            else{
-                return 0;
-            }
+    /**
+     * Calls genericSearch with search-space locations, returning a path of 
+     * cell indices.
+     */
+    private static int[] genericSearch( SearchSpace space,
+                                        Vertex origin, Vertex target,
+                                        CostCalculator calculator,
+                                        boolean returnFast,
+                                        boolean allowDiagonal,
+                                        SearchContext context ) {
+        int width = space.getWidth();
+        int originIndex = origin.y * width + origin.x;
+        int targetIndex = target.y * width + target.x;
+        
+        boolean recording = isRecording( context );
+        long started = recording ? System.nanoTime() : 0;
+        context.reset( width * space.getHeight(), recording );
+        int[] path;
+        if( originIndex == targetIndex ) {
+            path = new int[]{ targetIndex };
         }
-    };
+        else if( genericSearch( space, originIndex, targetIndex, calculator, returnFast, allowDiagonal, context ) ) {
+            path = walkBackwards( context, targetIndex );
+        }
+        else {
+            path = null;
+        }
+        
+        if( recording ) {
+            // the origin is expanded without passing through the open set
+            Algorithm algorithm = calculator == bestFirstCC ? Algorithm.BEST_FIRST : Algorithm.DIJKSTRA;
+            record( space, algorithm, originIndex, targetIndex, path, started, originIndex == targetIndex ? 0 : 1, context, null );
+        }
+        return path;
+    }
+    
+    /**
+     * Runs Dijkstra's algorithm from origin until every reachable cell has
+     * been visited, leaving the cost of reaching each cell in the context.
+     */
+    static void dijkstraFrom( SearchSpace space, int origin, boolean allowDiagonal, SearchContext context ) {
+        context.reset( space.getWidth() * space.getHeight() );
+        genericSearch( space, origin, origin, dijkstraCC, false, allowDiagonal, context );
+    }
     
     /**
      * Implements functionality common to several pathfinding algorithms, such
      * as Dijkstra's and the Greedy Best First Heuristic algorithm.
+     * 
+     * The context must have been reset before this is called.
      *
-     * @param nodes         The search space
+     * @param space         The search space
      * 
-     * @param origin        the location at which the path starts (e.g.
-     *                      nodes[origin.x][origin.y]
+     * @param origin        the index of the cell at which the path starts
      * 
-     * @param target        the location at which the path ends (e.g.
-     *                      nodes[target.x][target.y]
+     * @param target        the index of the cell at which the path ends
      * 
      * @param calculator    calculates the distance between two nodes
      * 
@@ -640,100 +1875,575 @@ public class Pathfinder {
      *                      movements. If false, the path will contain no 
      *                      diagonal movements.
      * 
-     * @return A path from origin to target, or null if no such path exists.
+     * @param context       holds the working data of the search
+     * 
+     * @return true if a path from origin to target was found, in which case
+     *         it can be read with walkBackwards().
      */
-    private static List<Node> genericSearch( Node[][] nodes,
-                                             Vertex origin, Vertex target,
-                                             CostCalculator calculator,
-                                             boolean returnFast,
-                                             boolean allowDiagonal ) {
-        //logger.info( "Search from: " + origin + " to " + target );
+    private static boolean genericSearch( SearchSpace space,
+                                          int origin, int target,
+                                          CostCalculator calculator,
+                                          boolean returnFast,
+                                          boolean allowDiagonal,
+                                          SearchContext context ) {
+        int width = space.getWidth();
+        int height = space.getHeight();
+        int[] directions = Directions.get( allowDiagonal );
+        int[] offsets = context.getOffsets( width );
+        double[] stepCosts = space.getStepCosts();
+        IndexedHeap open = context.getOpen();
 
-        Setup setup = setup( nodes, origin, target );
-        if( setup.result != null ){
-            return setup.result;
-        }
+        context.setCost( origin, 0 );
+        int current = origin;
 
-        //print(nodes);
-        Node currentNode = setup.startNode;
-        Node targetNode = setup.targetNode;
+        while( current != -1 ) {
+            int x = current % width;
+            int y = current / width;
+            boolean interior = x > 0 && y > 0 && x < width - 1 && y < height - 1;
+            for( int direction : directions ) {
+                if( !interior && !Directions.inBounds( x, y, direction, width, height ) ) {
+                    continue;
+                }
 
-        while( currentNode != null ) {
-            //logger.info( "currentNode: row: " + currentNode.matrixLocation.y + " col: " + currentNode.matrixLocation.x );
+                int adjacent = current + offsets[direction];
+                if( !space.isTraversable( adjacent ) || context.isVisited( adjacent ) ) {
+                    continue;
+                }
 
-            List<Node> adjacent = getAdjacentNodes( nodes, currentNode, allowDiagonal );
-            for( Node adjacentNode : adjacent ) {
-                double newCost = calculator.getCost( currentNode, adjacentNode, targetNode );
+                double stepCost = stepCosts != null ? stepCosts[direction] : distance( space, current, adjacent );
+                double newCost = calculator.getCost( context, current, adjacent, target, stepCost );
+                double cost = context.getCost( adjacent );
 
-                if( adjacentNode.cost == -1 || adjacentNode.cost > newCost ) {
-                    adjacentNode.cost = newCost;
-                    adjacentNode.previous = currentNode;
+                if( cost == -1 || cost > newCost ) {
+                    context.setCost( adjacent, newCost );
+                    context.setPrevious( adjacent, current );
+                    open.push( adjacent, newCost );
                 }
             }
 
-            currentNode.visited = true;
+            context.setVisited( current, true );
 
-            if( returnFast && targetNode.cost != -1 ) {
+            if( returnFast && context.getCost( target ) != -1 ) {
                 break;
             }
             else {
-                currentNode = getNextNode( nodes );
+                current = open.isEmpty() ? -1 : open.poll();
             }
-
-            //print(nodes);
         }
 
-        //print(nodes);
-        if( targetNode.cost != -1 ) {
-            return walkBackwards( targetNode );
+        return context.getCost( target ) != -1;
+    }
+    
+    /**
+     * Calls astarSearch with search-space locations, returning a path of 
+     * cell indices.
+     */
+    private static int[] astarSearch( SearchSpace space,
+                                      Vertex origin, Vertex target,
+                                      Heuristic heuristic,
+                                      boolean returnFast,
+                                      boolean allowDiagonal,
+                                      SearchContext context ) {
+        int width = space.getWidth();
+        int originIndex = origin.y * width + origin.x;
+        int targetIndex = target.y * width + target.x;
+        
+        boolean recording = isRecording( context );
+        long started = recording ? System.nanoTime() : 0;
+        context.reset( width * space.getHeight(), recording );
+        int[] path;
+        if( originIndex == targetIndex ) {
+            path = new int[]{ targetIndex };
+        }
+        else if( astarSearch( space, originIndex, targetIndex, heuristic, returnFast, allowDiagonal, context ) ) {
+            path = walkBackwards( context, targetIndex );
         }
         else {
-            return null;
+            path = null;
         }
+        
+        if( recording ) {
+            record( space, Algorithm.ASTAR, originIndex, targetIndex, path, started, 0, context, null );
+        }
+        return path;
     }
     
-    private static Setup setup( Node[][] nodes, Vertex origin, Vertex target ){
-        clear( nodes );
-
-        Node startNode = nodes[origin.x][origin.y];
-        startNode.origin = true;
-        startNode.visited = true;
-        startNode.cost = 0;
+    /**
+     * Implements A* over a search space. The open set is keyed by cost plus 
+     * heuristic; a cell's visited flag marks the closed set.
+     * 
+     * The context must have been reset before this is called.
+     * 
+     * @return true if a path from origin to target was found, in which case
+     *         it can be read with walkBackwards().
+     */
+    private static boolean astarSearch( SearchSpace space,
+                                        int origin, int target,
+                                        Heuristic heuristic,
+                                        boolean returnFast,
+                                        boolean allowDiagonal,
+                                        SearchContext context ) {
+        int width = space.getWidth();
+        int height = space.getHeight();
+        int[] directions = Directions.get( allowDiagonal );
+        int[] offsets = context.getOffsets( width );
+        double[] stepCosts = space.getStepCosts();
+        IndexedHeap open = context.getOpen();
 
-        Node targetNode = nodes[target.x][target.y];
-        targetNode.target = true;
+        context.setCost( origin, 0 );
+        open.push( origin, heuristic.estimate( space, origin, target ) );
+        
+        while( !open.isEmpty() ){
+            double targetCost = context.getCost( target );
+            if( targetCost != -1 && open.peekKey() >= targetCost ){
+                break;
+            }
+            
+            int current = open.poll();
+            context.setVisited( current, true );
+            
+            if( returnFast && current == target ){
+                break;
+            }
+            
+            double currentCost = context.getCost( current );
+            int x = current % width;
+            int y = current / width;
+            boolean interior = x > 0 && y > 0 && x < width - 1 && y < height - 1;
+            for( int direction : directions ) {
+                if( !interior && !Directions.inBounds( x, y, direction, width, height ) ) {
+                    continue;
+                }
 
-        List<Node> result = null;
-        if( origin.equals( target ) ) {
-            result = new ArrayList();
-            result.add( targetNode );
+                int adjacent = current + offsets[direction];
+                if( !space.isTraversable( adjacent ) ) {
+                    continue;
+                }
+                
+                double stepCost = stepCosts != null ? stepCosts[direction] : distance( space, current, adjacent );
+                double newCost = currentCost + stepCost;
+                double cost = context.getCost( adjacent );
+                
+                // closed cells are only re-opened if a cheaper route to them
+                // is found, which can only happen with an inconsistent heuristic
+                if( cost == -1 || cost > newCost ) {
+                    context.setCost( adjacent, newCost );
+                    context.setPrevious( adjacent, current );
+                    context.setVisited( adjacent, false );
+                    open.push( adjacent, newCost + heuristic.estimate( space, adjacent, target ) );
+                }
+            }
         }
         
-        return new Setup( startNode, targetNode, result );
+        return context.getCost( target ) != -1;
     }
     
     /**
-     * Finds the lowest-cost, traversable, unvisited node in the list. This is
-     * used to determine which branch to expand first.
-     *
-     * @param nodes the list of nodes
-     * @return the next node that should be expanded.
+     * Calls JumpPointSearch with search-space locations, returning a path of 
+     * cell indices that includes the cells between jump points.
      */
-    private static Node getNextNode( Node[][] nodes ) {
-        Node next = null;
-
-        for( int col = 0; col < nodes.length; col++ ) {
-            for( int row = 0; row < nodes[col].length; row++ ) {
-                Node node = nodes[col][row];
-
-                if( !node.visited && node.traversable && node.cost != -1 ) {
-                    if( next == null || next.cost > node.cost ) {
-                        next = node;
-                    }
+    private static int[] jpsSearch( SearchSpace space,
+                                    JumpTable table,
+                                    Vertex origin, Vertex target,
+                                    boolean returnFast,
+                                    boolean allowDiagonal,
+                                    SearchContext context ) {
+        int width = space.getWidth();
+        int originIndex = origin.y * width + origin.x;
+        int targetIndex = target.y * width + target.x;
+        
+        boolean recording = isRecording( context );
+        long started = recording ? System.nanoTime() : 0;
+        context.reset( width * space.getHeight(), recording );
+        int[] path;
+        if( originIndex == targetIndex ) {
+            path = new int[]{ targetIndex };
+        }
+        else if( JumpPointSearch.search( space, table, originIndex, targetIndex, returnFast, allowDiagonal, context ) ) {
+            path = JumpPointSearch.expandPath( width, walkBackwards( context, targetIndex ) );
+        }
+        else {
+            path = null;
+        }
+        
+        if( recording ) {
+            record( space, Algorithm.JPS, originIndex, targetIndex, path, started, 0, context, null );
+        }
+        return path;
+    }
+    
+    /**
+     * Calls BidirectionalSearch with search-space locations. The backward
+     * search uses the context's reverse context.
+     */
+    private static int[] bidirectionalSearch( SearchSpace space,
+                                              Vertex origin, Vertex target,
+                                              Heuristic heuristic,
+                                              boolean returnFast,
+                                              boolean allowDiagonal,
+                                              SearchContext context ) {
+        int width = space.getWidth();
+        int originIndex = origin.y * width + origin.x;
+        int targetIndex = target.y * width + target.x;
+        
+        boolean recording = isRecording( context );
+        long started = recording ? System.nanoTime() : 0;
+        SearchContext reverse = context.getReverse();
+        context.reset( width * space.getHeight(), recording );
+        reverse.reset( width * space.getHeight(), recording );
+        if( recording ) {
+            ( (CountingIndexedHeap)context.getOpen() ).pair( (CountingIndexedHeap)reverse.getOpen() );
+        }
+        int[] path;
+        if( originIndex == targetIndex ) {
+            path = new int[]{ targetIndex };
+        }
+        else {
+            path = BidirectionalSearch.search( space, originIndex, targetIndex, heuristic, returnFast, allowDiagonal, context, reverse );
+        }
+        
+        if( recording ) {
+            Algorithm algorithm = heuristic == null ? Algorithm.BIDIRECTIONAL_DIJKSTRA : Algorithm.BIDIRECTIONAL_ASTAR;
+            record( space, algorithm, originIndex, targetIndex, path, started, 0, context, reverse );
+        }
+        return path;
+    }
+    
+    /**
+     * Calls AnytimeSearch with search-space locations.
+     * 
+     * @param returnFast if true, return the first path found
+     */
+    private static AnytimePath<int[]> anytimeSearch( SearchSpace space,
+                                                     Vertex origin, Vertex target,
+                                                     Heuristic heuristic,
+                                                     boolean returnFast,
+                                                     boolean allowDiagonal,
+                                                     double epsilon,
+                                                     long deadline,
+                                                     SearchContext context ) {
+        if( !( epsilon >= 1 ) ) {
+            throw new IllegalArgumentException( "Epsilon must be at least 1: " + epsilon );
+        }
+        int width = space.getWidth();
+        int originIndex = origin.y * width + origin.x;
+        int targetIndex = target.y * width + target.x;
+        
+        boolean recording = isRecording( context );
+        long started = recording ? System.nanoTime() : 0;
+        context.reset( width * space.getHeight(), recording );
+        AnytimePath<int[]> result;
+        if( originIndex == targetIndex ) {
+            result = new AnytimePath<int[]>( new int[]{ targetIndex }, 0, 1, 0, true );
+        }
+        else {
+            result = AnytimeSearch.search( space, originIndex, targetIndex, heuristic, returnFast, allowDiagonal, epsilon, deadline, context );
+        }
+        
+        if( recording ) {
+            record( space, Algorithm.ANYTIME_ASTAR, originIndex, targetIndex, result.getPath(), started, 0, context, null );
+        }
+        return result;
+    }
+    
+    /**
+     * Starts a PathSearch with search-space locations.
+     */
+    private static PathSearch begin( SearchSpace space, PathQuery query, SearchContext context ) {
+        Heuristic heuristic;
+        switch( query.algorithm ) {
+            case BEST_FIRST:
+            case DIJKSTRA:
+                heuristic = null;
+                break;
+            case ASTAR:
+                heuristic = Heuristic.EUCLIDEAN;
+                break;
+            default:
+                throw new IllegalArgumentException( "Cannot run " + query.algorithm + " a step at a time" );
+        }
+        int width = space.getWidth();
+        return new PathSearch( space, query.algorithm,
+                               query.origin.y * width + query.origin.x, query.target.y * width + query.target.x,
+                               heuristic, query.returnFast, query.allowDiagonal, context );
+    }
+    
+    /**
+     * Calls HierarchicalMap.search() with search-space locations. Searches
+     * within clusters use the context's reverse context.
+     */
+    private static int[] hpaSearch( HierarchicalMap map, Vertex origin, Vertex target, SearchContext context ) {
+        int width = map.getSearchSpace().getWidth();
+        return map.search( origin.y * width + origin.x, target.y * width + target.x, context, context.getReverse() );
+    }
+    
+    /**
+     * Calls MultiTargetSearch with search-space locations.
+     */
+    private static PathTree multiTargetSearch( SearchSpace space,
+                                               Vertex origin, Vertex[] targets,
+                                               boolean firstOnly,
+                                               boolean allowDiagonal,
+                                               SearchContext context ) {
+        int width = space.getWidth();
+        int originIndex = origin.y * width + origin.x;
+        int[] targetIndices = indices( width, targets );
+        
+        context.reset( width * space.getHeight() );
+        int first = MultiTargetSearch.search( space, originIndex, MultiTargetSearch.distinct( targetIndices ), firstOnly, allowDiagonal, context );
+        return new PathTree( space, context, originIndex, targetIndices, first );
+    }
+    
+    /**
+     * Runs one MultiTargetSearch from each distinct location on whichever
+     * side of the query has fewer of them.
+     */
+    private static double[][] manyToManySearch( SearchSpace space,
+                                                Vertex[] origins, Vertex[] targets,
+                                                boolean allowDiagonal,
+                                                SearchContext context ) {
+        int width = space.getWidth();
+        int[] originIndices = indices( width, origins );
+        int[] targetIndices = indices( width, targets );
+        int[] distinctOrigins = MultiTargetSearch.distinct( originIndices );
+        int[] distinctTargets = MultiTargetSearch.distinct( targetIndices );
+        
+        boolean reverse = distinctTargets.length < distinctOrigins.length;
+        int[] sources = reverse ? distinctTargets : distinctOrigins;
+        int[] sinks = reverse ? distinctOrigins : distinctTargets;
+        
+        // costs[i][j] is the cost between sources[i] and sinks[j]
+        double[][] costs = new double[ sources.length ][ sinks.length ];
+        for( int i = 0; i < sources.length; i++ ) {
+            if( !space.isTraversable( sources[i] ) ) {
+                Arrays.fill( costs[i], -1 );
+                continue;
+            }
+            context.reset( width * space.getHeight() );
+            MultiTargetSearch.search( space, sources[i], sinks, false, allowDiagonal, context );
+            for( int j = 0; j < sinks.length; j++ ) {
+                costs[i][j] = context.isVisited( sinks[j] ) ? context.getCost( sinks[j] ) : -1;
+            }
+        }
+        
+        double[][] result = new double[ origins.length ][ targets.length ];
+        for( int o = 0; o < origins.length; o++ ) {
+            int origin = Arrays.binarySearch( distinctOrigins, originIndices[o] );
+            for( int t = 0; t < targets.length; t++ ) {
+                int target = Arrays.binarySearch( distinctTargets, targetIndices[t] );
+                result[o][t] = reverse ? costs[target][origin] : costs[origin][target];
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * @return the index of each search-space location
+     */
+    private static int[] indices( int width, Vertex[] locations ) {
+        int[] indices = new int[ locations.length ];
+        for( int i = 0; i < locations.length; i++ ) {
+            indices[i] = locations[i].y * width + locations[i].x;
+        }
+        return indices;
+    }
+    
+    /**
+     * Runs the search described by a query.
+     * 
+     * @return the indices of the cells on a valid path between the query's
+     *         origin and target, or null if no such path exists
+     */
+    static int[] search( SearchSpace space, PathQuery query, SearchContext context ) {
+        switch( query.algorithm ) {
+            case BEST_FIRST:
+                return genericSearch( space, query.origin, query.target, bestFirstCC, query.returnFast, query.allowDiagonal, context );
+            case DIJKSTRA:
+                return genericSearch( space, query.origin, query.target, dijkstraCC, query.returnFast, query.allowDiagonal, context );
+            case ASTAR:
+                return astarSearch( space, query.origin, query.target, Heuristic.EUCLIDEAN, query.returnFast, query.allowDiagonal, context );
+            case JPS:
+                return jpsSearch( space, null, query.origin, query.target, query.returnFast, query.allowDiagonal, context );
+            case BIDIRECTIONAL_DIJKSTRA:
+                return bidirectionalSearch( space, query.origin, query.target, null, query.returnFast, query.allowDiagonal, context );
+            case BIDIRECTIONAL_ASTAR:
+                return bidirectionalSearch( space, query.origin, query.target, Heuristic.EUCLIDEAN, query.returnFast, query.allowDiagonal, context );
+            case ANYTIME_ASTAR:
+                return anytimeSearch( space, query.origin, query.target, Heuristic.EUCLIDEAN, query.returnFast, query.allowDiagonal,
+                                      query.returnFast ? QUERY_EPSILON : 1, AnytimeSearch.NO_DEADLINE, context ).getPath();
+            default:
+                throw new IllegalArgumentException( "Unknown algorithm: " + query.algorithm );
+        }
+    }
+    
+    /**
+     * Runs the search described by a query, writing the path into either
+     * array or buffer from the given offset.
+     * 
+     * @param room the number of cells that can be written
+     * @return the number of cells written, or -1 if there is no path
+     */
+    private static int search( SearchSpace space, PathQuery query, SearchContext context,
+                               int[] array, IntBuffer buffer, int offset, int room ) {
+        Algorithm algorithm = query.algorithm;
+        boolean direct = algorithm == Algorithm.BEST_FIRST || algorithm == Algorithm.DIJKSTRA
+                         || algorithm == Algorithm.ASTAR || algorithm == Algorithm.JPS;
+        if( !direct || isRecording( context ) ) {
+            int[] path = search( space, query, context );
+            if( path == null ) {
+                return -1;
+            }
+            if( path.length > room ) {
+                throw new BufferOverflowException();
+            }
+            for( int i = 0; i < path.length; i++ ) {
+                put( array, buffer, offset + i, path[i] );
+            }
+            return path.length;
+        }
+        
+        int width = space.getWidth();
+        int origin = query.origin.y * width + query.origin.x;
+        int target = query.target.y * width + query.target.x;
+        context.reset( width * space.getHeight() );
+        if( origin == target ) {
+            if( room < 1 ) {
+                throw new BufferOverflowException();
+            }
+            put( array, buffer, offset, target );
+            return 1;
+        }
+        
+        boolean found;
+        switch( algorithm ) {
+            case BEST_FIRST:
+                found = genericSearch( space, origin, target, bestFirstCC, query.returnFast, query.allowDiagonal, context );
+                break;
+            case DIJKSTRA:
+                found = genericSearch( space, origin, target, dijkstraCC, query.returnFast, query.allowDiagonal, context );
+                break;
+            case ASTAR:
+                found = astarSearch( space, origin, target, Heuristic.EUCLIDEAN, query.returnFast, query.allowDiagonal, context );
+                break;
+            default:
+                found = JumpPointSearch.search( space, null, origin, target, query.returnFast, query.allowDiagonal, context );
+                break;
+        }
+        if( !found ) {
+            return -1;
+        }
+        return writePath( context, target, width, algorithm == Algorithm.JPS, array, buffer, offset, room );
+    }
+    
+    /**
+     * Writes the path to target held in a search's working data into either
+     * array or buffer, as walkBackwards() would return it.
+     * 
+     * @param jumps if true, consecutive cells in the working data are jump
+     *              points, and the cells between them are written too
+     * @return the number of cells written
+     */
+    private static int writePath( SearchContext context, int target, int width, boolean jumps,
+                                  int[] array, IntBuffer buffer, int offset, int room ) {
+        int length = 1;
+        for( int index = target; context.getPrevious( index ) != -1; index = context.getPrevious( index ) ) {
+            length += jumps ? JumpPointSearch.steps( width, context.getPrevious( index ), index ) : 1;
+        }
+        if( length > room ) {
+            throw new BufferOverflowException();
+        }
+        
+        int next = offset + length;
+        put( array, buffer, --next, target );
+        for( int index = target; context.getPrevious( index ) != -1; index = context.getPrevious( index ) ) {
+            int previous = context.getPrevious( index );
+            if( jumps ) {
+                int dx = Integer.signum( index % width - previous % width );
+                int dy = Integer.signum( index / width - previous / width );
+                int step = dy * width + dx;
+                for( int cell = index - step; cell != previous; cell -= step ) {
+                    put( array, buffer, --next, cell );
                 }
             }
+            put( array, buffer, --next, previous );
         }
-
-        return next;
+        return length;
+    }
+    
+    private static void put( int[] array, IntBuffer buffer, int position, int value ) {
+        if( array != null ) {
+            array[position] = value;
+        }
+        else {
+            buffer.put( position, value );
+        }
+    }
+    
+    /**
+     * @return true if the statistics of a search using the context should be
+     *         recorded
+     */
+    static boolean isRecording( SearchContext context ) {
+        return context.isRecordingStats() || !listeners.isEmpty();
+    }
+    
+    /**
+     * Builds the statistics of the search that just completed from the
+     * counts kept by the open sets of its contexts, which must have been
+     * reset for counting, stores them in the context and passes them to the
+     * listeners.
+     * 
+     * @param unqueued the number of cells expanded without being taken from
+     *                 the open set
+     * @param reverse  the context of the backward half of a bidirectional
+     *                 search, or null
+     */
+    static void record( SearchSpace space, Algorithm algorithm,
+                        int origin, int target, int[] path, long started, int unqueued,
+                        SearchContext context, SearchContext reverse ) {
+        long nanos = System.nanoTime() - started;
+        CountingIndexedHeap open = (CountingIndexedHeap)context.getOpen();
+        int expanded = open.getPolls() + unqueued;
+        int generated = open.getInserts() + unqueued;
+        int peak = open.getPeakSize();
+        int decreased = open.getDecreases();
+        if( reverse != null ) {
+            // the two open sets are paired, so each peak counts both
+            CountingIndexedHeap backward = (CountingIndexedHeap)reverse.getOpen();
+            expanded += backward.getPolls();
+            generated += backward.getInserts();
+            peak = Math.max( peak, backward.getPeakSize() );
+            decreased += backward.getDecreases();
+        }
+        
+        double cost = -1;
+        if( path != null ) {
+            cost = 0;
+            for( int i = 1; i < path.length; i++ ) {
+                cost += distance( space, path[i - 1], path[i] );
+            }
+        }
+        
+        SearchStats stats = new SearchStats( algorithm, origin, target, expanded, generated, peak, decreased,
+                                             path == null ? 0 : path.length, cost, nanos );
+        if( context.isRecordingStats() ) {
+            context.setStats( stats );
+        }
+        for( SearchListener listener : listeners ) {
+            try {
+                listener.searchCompleted( stats );
+            }
+            catch( RuntimeException ex ) {
+                logger.error( "Search listener failed", ex );
+            }
+        }
+    }
+    
+    /**
+     * @return the "real-world" distance between two cells
+     */
+    private static double distance( SearchSpace space, int one, int two ) {
+        return Vertex.distance( space.getLocationX( one ), space.getLocationY( one ),
+                                space.getLocationX( two ), space.getLocationY( two ) );
     }
 }
@@ -0,0 +1,235 @@
+package pathfinding;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs batches of searches across several threads.
+ *
+ * Each query in a batch is an independent search of the same map. Searches
+ * never modify the map, and each worker searches with a SearchContext of its
+ * own, taken from a pool kept by the executor, so once the pool has warmed up
+ * a batch allocates nothing but its results.
+ *
+ * An executor runs in one of two modes:
+ *
+ * - Fork-join (the default): batches are split recursively into chunks that
+ *   run on a ForkJoinPool, which balances the work between its threads.
+ *
+ * - Thread factory: each batch is run by a fixed number of new threads made
+ *   by the given factory, each taking the next unstarted query until none
+ *   remain. On Java 21 and later, passing Thread.ofVirtual().factory() runs
+ *   batches on virtual threads.
+ *
+ * In either mode, results are reported through the returned PathBatch, and
+ * optionally through a PathCallback as each search completes.
+ */
+public class PathfinderExecutor {
+    private final ForkJoinPool pool;
+    private final ThreadFactory threadFactory;
+    private final int parallelism;
+    private final ConcurrentLinkedQueue<SearchContext> contexts = new ConcurrentLinkedQueue<SearchContext>();
+
+    /**
+     * Creates a fork-join executor with one thread per available processor.
+     */
+    public PathfinderExecutor() {
+        this( Runtime.getRuntime().availableProcessors() );
+    }
+
+    /**
+     * Creates a fork-join executor.
+     *
+     * @param parallelism the number of threads
+     */
+    public PathfinderExecutor( int parallelism ) {
+        this.pool = new ForkJoinPool( parallelism );
+        this.threadFactory = null;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Creates an executor that runs each batch on new threads.
+     *
+     * @param threadFactory makes the threads that run each batch
+     * @param parallelism   the number of threads per batch
+     */
+    public PathfinderExecutor( ThreadFactory threadFactory, int parallelism ) {
+        if( parallelism < 1 ) {
+            throw new IllegalArgumentException( "Parallelism must be at least 1: " + parallelism );
+        }
+        this.pool = null;
+        this.threadFactory = threadFactory;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the number of threads searching at once
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Starts searching a GridGraph for each query.
+     *
+     * @param grid     the search space, which must not be changed until the
+     *                 batch has completed
+     * @param queries  the searches to run
+     * @param callback notified as each search completes, or null
+     *
+     * @return the batch, whose paths are the indices of the cells on each
+     *         path (see Pathfinder.dijkstra( GridGraph, ... ))
+     */
+    public PathBatch<int[]> submit( GridGraph grid, List<PathQuery> queries, PathCallback<int[]> callback ) {
+        return start( grid, false, queries, callback );
+    }
+
+    /**
+     * Starts searching a Node[][] for each query.
+     *
+     * @param nodes    the search space, which must not be changed until the
+     *                 batch has completed
+     * @param queries  the searches to run
+     * @param callback notified as each search completes, or null
+     *
+     * @return the batch
+     */
+    public PathBatch<List<Node>> submit( Node[][] nodes, List<PathQuery> queries, PathCallback<List<Node>> callback ) {
+        return start( NodeSearchSpace.of( nodes ), true, queries, callback );
+    }
+
+    /**
+     * Stops the executor's threads once all submitted batches have
+     * completed. No more batches may be submitted.
+     */
+    public void shutdown() {
+        if( pool != null ) {
+            pool.shutdown();
+        }
+    }
+
+    /// internal utilities ///
+
+    private <T> PathBatch<T> start( SearchSpace space, boolean asNodes, List<PathQuery> queries, PathCallback<T> callback ) {
+        final Run<T> run = new Run<T>( space, asNodes, queries, callback );
+        if( queries.isEmpty() ) {
+            return run.batch;
+        }
+
+        if( pool != null ) {
+            int threshold = Math.max( 1, queries.size() / ( parallelism * 8 ) );
+            pool.execute( new Chunk( run, 0, queries.size(), threshold ) );
+        }
+        else {
+            final AtomicInteger next = new AtomicInteger();
+            for( int i = 0; i < Math.min( parallelism, queries.size() ); i++ ) {
+                threadFactory.newThread( new Runnable() {
+                    @Override
+                    public void run() {
+                        SearchContext context = borrow();
+                        try {
+                            for( int query = next.getAndIncrement(); query < run.queries.size(); query = next.getAndIncrement() ) {
+                                run.search( query, context );
+                            }
+                        }
+                        finally {
+                            contexts.offer( context );
+                        }
+                    }
+                } ).start();
+            }
+        }
+        return run.batch;
+    }
+
+    private SearchContext borrow() {
+        SearchContext context = contexts.poll();
+        return context != null ? context : new SearchContext();
+    }
+
+    /**
+     * A batch in progress.
+     */
+    private static class Run<T> {
+        final SearchSpace space;
+        final boolean asNodes;
+        final List<PathQuery> queries;
+        final PathCallback<T> callback;
+        final PathBatch<T> batch;
+
+        Run( SearchSpace space, boolean asNodes, List<PathQuery> queries, PathCallback<T> callback ) {
+            this.space = space;
+            this.asNodes = asNodes;
+            this.queries = queries;
+            this.callback = callback;
+            this.batch = new PathBatch<T>( queries.size() );
+        }
+
+        @SuppressWarnings( "unchecked" )
+        void search( int query, SearchContext context ) {
+            if( batch.isStopped() ) {
+                batch.skip();
+                return;
+            }
+
+            try {
+                int[] path = Pathfinder.search( space, queries.get( query ), context );
+                T result = asNodes ? (T)( (NodeSearchSpace)space ).toNodes( path ) : (T)path;
+                // the batch may have been cancelled during the search
+                if( callback != null && !batch.isStopped() ) {
+                    callback.completed( query, result );
+                }
+                batch.complete( query, result );
+            }
+            catch( Throwable t ) {
+                // as with a FutureTask, errors are reported through the
+                // batch, which would otherwise never complete
+                batch.fail( t );
+            }
+        }
+    }
+
+    /**
+     * A range of a batch's queries, split in half until small enough to run
+     * on one thread.
+     */
+    private class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Run<?> run;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        Chunk( Run<?> run, int from, int to, int threshold ) {
+            this.run = run;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if( to - from > threshold ) {
+                int middle = ( from + to ) >>> 1;
+                invokeAll( new Chunk( run, from, middle, threshold ), new Chunk( run, middle, to, threshold ) );
+                return;
+            }
+
+            SearchContext context = borrow();
+            try {
+                for( int query = from; query < to; query++ ) {
+                    run.search( query, context );
+                }
+            }
+            finally {
+                contexts.offer( context );
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * The "working" data of a single search: the cost of reaching each cell, the
+ * cell it was reached from, whether it has been visited, and the open set.
+ *
+ * Keeping this data out of the search space means that a search never
+ * modifies the map it is searching, so any number of threads may search the
+ * same Node[][] or GridGraph at the same time, as long as each uses its own
+ * SearchContext.
+ *
+ * A SearchContext grows to fit the largest search space it has been used
+ * with, and is reused from one search to the next, so once it has warmed up
+ * a search allocates nothing but its result. SearchContexts are not thread
+ * safe; use forCurrentThread() to get one that is pooled per thread.
+ * 
+ * Resetting a context does not touch its cells. Instead, each search is given
+ * a new generation number, and a cell's working data only counts if it was
+ * written during the current generation. The cost of a search therefore
+ * depends on the number of cells it reaches, not on the size of the search
+ * space.
+ */
+public class SearchContext {
+    private static final ThreadLocal<SearchContext> pool = new ThreadLocal<SearchContext>() {
+        @Override
+        protected SearchContext initialValue() {
+            return new SearchContext();
+        }
+    };
+
+    private double[] cost = new double[ 0 ];
+    private int[] previous = new int[ 0 ];
+    private boolean[] visited = new boolean[ 0 ];
+    private int[] generations = new int[ 0 ];
+    private IndexedHeap plain = new IndexedHeap( 0 );
+    private CountingIndexedHeap counting;
+    private IndexedHeap open = plain;
+    private int[] offsets = new int[ Directions.X.length ];
+    private int offsetsWidth = -1;
+    private int generation;
+    private int size;
+    private SearchContext reverse;
+    private SearchContext sparse;
+    private boolean recordingStats;
+    private SearchStats stats;
+
+    public SearchContext() {
+    }
+
+    /**
+     * Creates a context that can search spaces of up to capacity cells
+     * without growing.
+     *
+     * @param capacity the number of cells
+     */
+    public SearchContext( int capacity ) {
+        reset( capacity );
+    }
+
+    /**
+     * @return the SearchContext pooled for the calling thread
+     */
+    public static SearchContext forCurrentThread() {
+        return pool.get();
+    }
+
+    /**
+     * Prepares this context for a search over a search space of the given
+     * number of cells, growing it if needed and clearing its working data.
+     * 
+     * Unless the context has to grow, this takes constant time (plus the 
+     * time to empty the open set), no matter how large the search space is.
+     *
+     * @param size the number of cells in the search space
+     */
+    public void reset( int size ) {
+        reset( size, false );
+    }
+
+    /**
+     * Prepares this context for a search, as reset( int ) does.
+     *
+     * @param counting if true, the open set counts its operations, for a
+     *                 search whose statistics are being recorded
+     */
+    void reset( int size, boolean counting ) {
+        if( cost.length < size ) {
+            cost = new double[ size ];
+            previous = new int[ size ];
+            visited = new boolean[ size ];
+            generations = new int[ size ];
+            plain = new IndexedHeap( size );
+            this.counting = null;
+        }
+        open.clear();
+        if( counting && this.counting == null ) {
+            this.counting = new CountingIndexedHeap( cost.length );
+        }
+        open = counting ? this.counting : plain;
+
+        this.size = size;
+        generation++;
+        if( generation == Integer.MAX_VALUE ) {
+            Arrays.fill( generations, 0 );
+            generation = 1;
+        }
+    }
+
+    /**
+     * @return the number of cells in the search space most recently searched
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the index of a cell
+     * @return the total cost of reaching the cell, or -1 if it has not been
+     *         reached
+     */
+    public double getCost( int index ) {
+        return generations[index] == generation ? cost[index] : -1;
+    }
+
+    public void setCost( int index, double cost ) {
+        touch( index );
+        this.cost[index] = cost;
+    }
+
+    /**
+     * @param index the index of a cell
+     * @return the index of the cell from which this cell was reached, or -1
+     *         if there is no such cell
+     */
+    public int getPrevious( int index ) {
+        return generations[index] == generation ? previous[index] : -1;
+    }
+
+    public void setPrevious( int index, int previous ) {
+        touch( index );
+        this.previous[index] = previous;
+    }
+
+    /**
+     * @param index the index of a cell
+     * @return true if the cell has been visited (expanded) during the search
+     */
+    public boolean isVisited( int index ) {
+        return generations[index] == generation && visited[index];
+    }
+
+    public void setVisited( int index, boolean visited ) {
+        touch( index );
+        this.visited[index] = visited;
+    }
+
+    /**
+     * Sets whether searches using this context record their statistics, to
+     * be read with getStats(). Recording is off by default, in which case
+     * searches do no extra work.
+     *
+     * @param recordingStats true to record statistics
+     */
+    public void setRecordingStats( boolean recordingStats ) {
+        this.recordingStats = recordingStats;
+        if( !recordingStats ) {
+            stats = null;
+        }
+    }
+
+    /**
+     * @return true if searches using this context record their statistics
+     */
+    public boolean isRecordingStats() {
+        return recordingStats;
+    }
+
+    /**
+     * @return the statistics of the most recent search using this context,
+     *         or null if none has been recorded. Statistics are recorded if
+     *         setRecordingStats( true ) was called, or while a SearchListener
+     *         is registered with the Pathfinder.
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    void setStats( SearchStats stats ) {
+        this.stats = stats;
+    }
+
+    /**
+     * @return a second context, owned by this one, for the backward half of a
+     *         bidirectional search
+     */
+    SearchContext getReverse() {
+        if( reverse == null ) {
+            reverse = new SearchContext();
+        }
+        return reverse;
+    }
+
+    /**
+     * @return a second context, owned by this one, that only allocates
+     *         working data for the cells a search reaches; used to search
+     *         a ChunkedGrid
+     */
+    SearchContext getSparse() {
+        if( sparse == null ) {
+            sparse = new SparseSearchContext( this );
+        }
+        return sparse;
+    }
+
+    /**
+     * @return the generation of the current search; it changes every time
+     *         the context is reset
+     */
+    int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return the open set, keyed by cell index; a CountingIndexedHeap if
+     *         the context was last reset for counting
+     */
+    IndexedHeap getOpen() {
+        return open;
+    }
+
+    /**
+     * @param width the width of the search space
+     * @return the index offset of each direction (see Directions)
+     */
+    int[] getOffsets( int width ) {
+        if( width != offsetsWidth ) {
+            Directions.fillOffsets( offsets, width );
+            offsetsWidth = width;
+        }
+        return offsets;
+    }
+
+    /**
+     * Brings a cell's working data into the current generation, clearing 
+     * whatever was left there by a previous search.
+     */
+    private void touch( int index ) {
+        if( generations[index] != generation ) {
+            generations[index] = generation;
+            cost[index] = -1;
+            previous[index] = -1;
+            visited[index] = false;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package pathfinding;
+
+/**
+ * Receives the statistics of every search run by the Pathfinder while the
+ * listener is registered (see Pathfinder.addSearchListener()).
+ *
+ * Listeners are called on the thread that ran the search, as soon as it
+ * completes, so they should return quickly and must be thread safe.
+ */
+public interface SearchListener {
+    /**
+     * Called when a search has completed.
+     *
+     * @param stats the measurements of the search
+     */
+    public void searchCompleted( SearchStats stats );
+}
@@ -0,0 +1,118 @@
+package pathfinding;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A SearchListener that keeps running totals of search statistics for each
+ * algorithm, and can expose them over JMX.
+ *
+ * Once registered, each algorithm's totals appear as an MBean named
+ * pathfinding:type=SearchMetrics,algorithm=NAME (for example, in JConsole or
+ * VisualVM), with attributes for search counts, expansions and percentiles
+ * of the search time.
+ */
+public class SearchMetrics implements SearchListener {
+    private static final String DOMAIN = "pathfinding";
+
+    private final AlgorithmMetrics[] metrics;
+    private MBeanServer server;
+
+    /**
+     * Creates a set of totals, all zero. They only change once this has been
+     * added as a listener, by register() or Pathfinder.addSearchListener().
+     */
+    public SearchMetrics() {
+        Algorithm[] algorithms = Algorithm.values();
+        metrics = new AlgorithmMetrics[ algorithms.length ];
+        for( int i = 0; i < algorithms.length; i++ ) {
+            metrics[i] = new AlgorithmMetrics( algorithms[i] );
+        }
+    }
+
+    /**
+     * @param algorithm an algorithm
+     * @return the totals for searches using the algorithm
+     */
+    public AlgorithmMetrics getMetrics( Algorithm algorithm ) {
+        return metrics[ algorithm.ordinal() ];
+    }
+
+    @Override
+    public void searchCompleted( SearchStats stats ) {
+        metrics[ stats.algorithm.ordinal() ].add( stats );
+    }
+
+    /**
+     * Registers each algorithm's totals with the platform MBean server, and
+     * starts listening to searches.
+     *
+     * @throws IllegalStateException if the MBeans could not be registered,
+     *                               for example because another
+     *                               SearchMetrics is already registered
+     */
+    public synchronized void register() {
+        if( server != null ) {
+            return;
+        }
+
+        MBeanServer platform = ManagementFactory.getPlatformMBeanServer();
+        int registered = 0;
+        try {
+            for( ; registered < metrics.length; registered++ ) {
+                platform.registerMBean( metrics[registered], getObjectName( Algorithm.values()[registered] ) );
+            }
+        }
+        catch( JMException ex ) {
+            for( int i = 0; i < registered; i++ ) {
+                unregister( platform, Algorithm.values()[i] );
+            }
+            throw new IllegalStateException( "Could not register search metrics", ex );
+        }
+
+        server = platform;
+        Pathfinder.addSearchListener( this );
+    }
+
+    /**
+     * Stops listening to searches, and removes the MBeans added by
+     * register().
+     */
+    public synchronized void unregister() {
+        if( server == null ) {
+            return;
+        }
+
+        Pathfinder.removeSearchListener( this );
+        for( Algorithm algorithm : Algorithm.values() ) {
+            unregister( server, algorithm );
+        }
+        server = null;
+    }
+
+    /**
+     * @param algorithm an algorithm
+     * @return the name under which register() exposes its totals
+     */
+    public static ObjectName getObjectName( Algorithm algorithm ) {
+        try {
+            return new ObjectName( DOMAIN + ":type=SearchMetrics,algorithm=" + algorithm.name() );
+        }
+        catch( JMException ex ) {
+            throw new IllegalStateException( ex );
+        }
+    }
+
+    /// internal utilities ///
+
+    private static void unregister( MBeanServer server, Algorithm algorithm ) {
+        try {
+            server.unregisterMBean( getObjectName( algorithm ) );
+        }
+        catch( JMException ex ) {
+            // already removed
+        }
+    }
+}
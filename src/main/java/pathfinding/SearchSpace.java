@@ -0,0 +1,56 @@
+package pathfinding;
+
+/**
+ * A rectangular search space, as seen by the Pathfinder's algorithms.
+ *
+ * Each cell in the search space is identified by its index, which is
+ * y * width + x, where (x,y) is the cell's search-space location. Each cell
+ * also has a "real-world" location, which is used to calculate the cost of
+ * moving between cells.
+ *
+ * The Pathfinder's algorithms never modify a search space; the "working" data
+ * of a search is kept in a SearchContext.
+ */
+public interface SearchSpace {
+
+    /**
+     * @return the width of the search space, in cells
+     */
+    public int getWidth();
+
+    /**
+     * @return the height of the search space, in cells
+     */
+    public int getHeight();
+
+    /**
+     * @param index the index of a cell
+     * @return true if the cell may appear in a path
+     */
+    public boolean isTraversable( int index );
+
+    /**
+     * @param index the index of a cell
+     * @return the "real-world" x coordinate of the cell
+     */
+    public int getLocationX( int index );
+
+    /**
+     * @param index the index of a cell
+     * @return the "real-world" y coordinate of the cell
+     */
+    public int getLocationY( int index );
+
+    /**
+     * Returns the cost of a single step in each direction (see Directions),
+     * if that cost is the same from every cell, so that the Pathfinder's
+     * algorithms do not need to calculate the distance between every pair of
+     * adjacent cells.
+     *
+     * The returned array must not be modified.
+     *
+     * @return the cost of a step in each direction, or null if the cost
+     *         depends on the cells' locations
+     */
+    public double[] getStepCosts();
+}
@@ -0,0 +1,98 @@
+package pathfinding;
+
+/**
+ * Measurements of one search, recorded if the search's SearchContext has
+ * recording enabled or a SearchListener is registered with the Pathfinder.
+ *
+ * Cells are "generated" when first added to the open set, and "expanded"
+ * when their neighbours are examined. A search that expands far more cells
+ * than are on its path was poorly guided: its heuristic underestimates
+ * badly, or the target is walled off.
+ */
+public final class SearchStats {
+    /**
+     * The algorithm used.
+     */
+    public final Algorithm algorithm;
+
+    /**
+     * The index of the origin's cell.
+     */
+    public final int origin;
+
+    /**
+     * The index of the target's cell.
+     */
+    public final int target;
+
+    /**
+     * The number of cells expanded, including any expanded more than once.
+     */
+    public final int expanded;
+
+    /**
+     * The number of cells added to the open set.
+     */
+    public final int generated;
+
+    /**
+     * The greatest number of cells in the open set at once (for a
+     * bidirectional search, in the open sets of both directions together).
+     */
+    public final int peakOpenSize;
+
+    /**
+     * The number of times a cheaper path was found to a cell already in the
+     * open set.
+     */
+    public final int decreasedKeys;
+
+    /**
+     * The number of cells on the path returned, or 0 if none was found.
+     */
+    public final int pathLength;
+
+    /**
+     * The cost of the path returned, or -1 if none was found.
+     */
+    public final double pathCost;
+
+    /**
+     * The time taken by the search, in nanoseconds.
+     */
+    public final long nanos;
+
+    SearchStats( Algorithm algorithm, int origin, int target,
+                 int expanded, int generated, int peakOpenSize, int decreasedKeys,
+                 int pathLength, double pathCost, long nanos ) {
+        this.algorithm = algorithm;
+        this.origin = origin;
+        this.target = target;
+        this.expanded = expanded;
+        this.generated = generated;
+        this.peakOpenSize = peakOpenSize;
+        this.decreasedKeys = decreasedKeys;
+        this.pathLength = pathLength;
+        this.pathCost = pathCost;
+        this.nanos = nanos;
+    }
+
+    /**
+     * @return true if a path was found
+     */
+    public boolean isFound() {
+        return pathLength > 0;
+    }
+
+    @Override
+    public String toString() {
+        return algorithm + " " + origin + " -> " + target
+               + ": expanded=" + expanded
+               + " generated=" + generated
+               + " peakOpen=" + peakOpenSize
+               + " decreasedKeys=" + decreasedKeys
+               + " length=" + pathLength
+               + " cost=" + pathCost
+               + " time=" + ( nanos / 1000 ) + "us";
+    }
+}
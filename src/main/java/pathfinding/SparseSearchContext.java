@@ -0,0 +1,285 @@
+package pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * A SearchContext that only holds working data for the parts of the search
+ * space a search reaches, for search spaces (such as a ChunkedGrid) too
+ * large to hold a value for every cell.
+ *
+ * Cells are grouped into blocks of 64 consecutive indices, and a block's
+ * working data is allocated the first time one of its cells is written.
+ * Blocks are kept from one search to the next, so that repeated searches of
+ * the same area allocate nothing; but if far more are held than the last
+ * search used, they are all released when the context is next reset.
+ *
+ * A SparseSearchContext is owned by an ordinary SearchContext (see
+ * SearchContext.getSparse()), and records statistics into its owner.
+ */
+final class SparseSearchContext extends SearchContext {
+    private static final int BLOCK_BITS = 6;
+    private static final int TABLE_BITS = 10;
+    private static final int INITIAL_BLOCKS = 64;
+    private static final int RETAINED_BLOCKS = 4096;
+
+    private final SearchContext owner;
+    private final Heap plain = new Heap();
+    private CountingHeap counting;
+    private IndexedHeap open = plain;
+
+    // tables[index >>> 16][(index >>> 6) & 1023] is the block holding the
+    // cell's working data plus one, or 0 if it has none
+    private int[][] tables = new int[ 0 ][];
+    private int blocks;
+    private int[] blockGenerations;
+    private int touchedBlocks;
+
+    // indexed by ( block << 6 ) | ( index & 63 )
+    private double[] cost;
+    private int[] previous;
+    private boolean[] visited;
+    private int[] generations;
+    private int[] positions;
+
+    private int generation;
+    private int size;
+
+    SparseSearchContext( SearchContext owner ) {
+        this.owner = owner;
+        release();
+    }
+
+    @Override
+    void reset( int size, boolean counting ) {
+        open.clear();
+        if( counting && this.counting == null ) {
+            this.counting = new CountingHeap();
+        }
+        open = counting ? this.counting : plain;
+        if( blocks > RETAINED_BLOCKS && blocks > 4 * touchedBlocks ) {
+            release();
+        }
+
+        int tableCount = (int)( ( size + ( 1L << ( BLOCK_BITS + TABLE_BITS ) ) - 1 ) >>> ( BLOCK_BITS + TABLE_BITS ) );
+        if( tables.length < tableCount ) {
+            tables = Arrays.copyOf( tables, tableCount );
+        }
+
+        this.size = size;
+        touchedBlocks = 0;
+        generation++;
+        if( generation == Integer.MAX_VALUE ) {
+            Arrays.fill( generations, 0 );
+            Arrays.fill( blockGenerations, 0 );
+            generation = 1;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public double getCost( int index ) {
+        int cell = find( index );
+        return cell != -1 && generations[cell] == generation ? cost[cell] : -1;
+    }
+
+    @Override
+    public void setCost( int index, double cost ) {
+        int cell = touch( index );
+        this.cost[cell] = cost;
+    }
+
+    @Override
+    public int getPrevious( int index ) {
+        int cell = find( index );
+        return cell != -1 && generations[cell] == generation ? previous[cell] : -1;
+    }
+
+    @Override
+    public void setPrevious( int index, int previous ) {
+        int cell = touch( index );
+        this.previous[cell] = previous;
+    }
+
+    @Override
+    public boolean isVisited( int index ) {
+        int cell = find( index );
+        return cell != -1 && generations[cell] == generation && visited[cell];
+    }
+
+    @Override
+    public void setVisited( int index, boolean visited ) {
+        int cell = touch( index );
+        this.visited[cell] = visited;
+    }
+
+    @Override
+    public boolean isRecordingStats() {
+        return owner.isRecordingStats();
+    }
+
+    @Override
+    public SearchStats getStats() {
+        return owner.getStats();
+    }
+
+    @Override
+    void setStats( SearchStats stats ) {
+        owner.setStats( stats );
+    }
+
+    @Override
+    SearchContext getSparse() {
+        return this;
+    }
+
+    @Override
+    int getGeneration() {
+        return generation;
+    }
+
+    @Override
+    IndexedHeap getOpen() {
+        return open;
+    }
+
+    /// internal utilities ///
+
+    /**
+     * @return the position of the cell's working data, or -1 if its block
+     *         has none
+     */
+    private int find( int index ) {
+        int[] table = tables[ index >>> ( BLOCK_BITS + TABLE_BITS ) ];
+        if( table == null ) {
+            return -1;
+        }
+        int block = table[ ( index >>> BLOCK_BITS ) & ( ( 1 << TABLE_BITS ) - 1 ) ] - 1;
+        return block == -1 ? -1 : ( block << BLOCK_BITS ) | ( index & ( ( 1 << BLOCK_BITS ) - 1 ) );
+    }
+
+    /**
+     * @return the position of the cell's working data, allocating a block
+     *         for it if it has none
+     */
+    private int allocate( int index ) {
+        int[] table = tables[ index >>> ( BLOCK_BITS + TABLE_BITS ) ];
+        if( table == null ) {
+            table = new int[ 1 << TABLE_BITS ];
+            tables[ index >>> ( BLOCK_BITS + TABLE_BITS ) ] = table;
+        }
+
+        int slot = ( index >>> BLOCK_BITS ) & ( ( 1 << TABLE_BITS ) - 1 );
+        int block = table[slot] - 1;
+        if( block == -1 ) {
+            if( blocks == blockGenerations.length ) {
+                grow();
+            }
+            block = blocks++;
+            table[slot] = block + 1;
+        }
+        if( blockGenerations[block] != generation ) {
+            blockGenerations[block] = generation;
+            touchedBlocks++;
+        }
+        return ( block << BLOCK_BITS ) | ( index & ( ( 1 << BLOCK_BITS ) - 1 ) );
+    }
+
+    /**
+     * Brings a cell's working data into the current generation, as
+     * SearchContext does, allocating it if needed.
+     *
+     * @return the position of the cell's working data
+     */
+    private int touch( int index ) {
+        int cell = allocate( index );
+        if( generations[cell] != generation ) {
+            generations[cell] = generation;
+            cost[cell] = -1;
+            previous[cell] = -1;
+            visited[cell] = false;
+        }
+        return cell;
+    }
+
+    private void grow() {
+        int count = blockGenerations.length * 2;
+        blockGenerations = Arrays.copyOf( blockGenerations, count );
+        cost = Arrays.copyOf( cost, count << BLOCK_BITS );
+        previous = Arrays.copyOf( previous, count << BLOCK_BITS );
+        visited = Arrays.copyOf( visited, count << BLOCK_BITS );
+        generations = Arrays.copyOf( generations, count << BLOCK_BITS );
+        positions = Arrays.copyOf( positions, count << BLOCK_BITS );
+    }
+
+    /**
+     * Releases every block. The open set must be empty.
+     */
+    private void release() {
+        Arrays.fill( tables, null );
+        blocks = 0;
+        blockGenerations = new int[ INITIAL_BLOCKS ];
+        cost = new double[ INITIAL_BLOCKS << BLOCK_BITS ];
+        previous = new int[ INITIAL_BLOCKS << BLOCK_BITS ];
+        visited = new boolean[ INITIAL_BLOCKS << BLOCK_BITS ];
+        generations = new int[ INITIAL_BLOCKS << BLOCK_BITS ];
+        positions = new int[ INITIAL_BLOCKS << BLOCK_BITS ];
+    }
+
+    /**
+     * An open set whose positions are held in the same blocks as the rest of
+     * the working data.
+     */
+    private final class Heap extends IndexedHeap {
+        Heap() {
+            super( 0 );
+        }
+
+        @Override
+        public int capacity() {
+            return size;
+        }
+
+        @Override
+        int getPosition( int id ) {
+            int cell = find( id );
+            return cell == -1 ? 0 : positions[cell];
+        }
+
+        @Override
+        void setPosition( int id, int position ) {
+            int cell = allocate( id );
+            positions[cell] = position;
+        }
+    }
+
+    /**
+     * A Heap that counts its operations, for searches whose statistics are
+     * being recorded.
+     */
+    private final class CountingHeap extends CountingIndexedHeap {
+        CountingHeap() {
+            super( 0 );
+        }
+
+        @Override
+        public int capacity() {
+            return size;
+        }
+
+        @Override
+        int getPosition( int id ) {
+            int cell = find( id );
+            return cell == -1 ? 0 : positions[cell];
+        }
+
+        @Override
+        void setPosition( int id, int position ) {
+            int cell = allocate( id );
+            positions[cell] = position;
+        }
+    }
+}
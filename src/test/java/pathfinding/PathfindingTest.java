@@ -1,6 +1,25 @@
 package pathfinding;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -294,4 +313,1641 @@ public class PathfindingTest {
         Vertex end = new Vertex(5,5);
         runTest( nodes, start, end );
     }
+    
+    @Test
+    public void testIndexedHeap() throws Exception {
+        IndexedHeap heap = new IndexedHeap( 10 );
+        heap.push( 3, 30 );
+        heap.push( 1, 10 );
+        heap.push( 7, 70 );
+        heap.push( 5, 50 );
+        
+        Assert.assertFalse( heap.push( 5, 60 ) );
+        Assert.assertTrue( heap.push( 7, 5 ) );
+        heap.remove( 3 );
+        
+        Assert.assertEquals( 3, heap.size() );
+        Assert.assertEquals( 7, heap.poll() );
+        Assert.assertEquals( 1, heap.poll() );
+        Assert.assertEquals( 5, heap.poll() );
+        Assert.assertTrue( heap.isEmpty() );
+        Assert.assertFalse( heap.contains( 3 ) );
+    }
+    
+    @Test
+    public void testDijkstraLargeGrid() throws Exception {
+        Node[][] nodes = Pathfinder.makeNodes( 200, 200, 0, 0, 10, 10 );
+        for( int y = 0; y < 190; y++ ){
+            nodes[100][y].traversable = false;
+        }
+        
+        Vertex start = new Vertex( 0, 0 );
+        Vertex end = new Vertex( 199, 0 );
+        List<Node> path = Pathfinder.dijkstra( nodes, start, end, false, false );
+        Assert.assertNotNull( path );
+        Assert.assertEquals( 199 * 10 + 2 * 190 * 10, pathCost( path ), 0.001 );
+    }
+    
+    @Test
+    public void testAstarOptimal() throws Exception {
+        Node[][] nodes = Pathfinder.makeNodes( 100, 100, 0, 0, 10, 10 );
+        for( int y = 10; y < 100; y++ ){
+            nodes[50][y].traversable = false;
+        }
+        for( int x = 20; x < 80; x++ ){
+            nodes[x][30].traversable = false;
+        }
+        
+        Vertex start = new Vertex( 10, 90 );
+        Vertex end = new Vertex( 90, 90 );
+        
+        SearchContext context = new SearchContext();
+        List<Node> dijkstra = Pathfinder.dijkstra( nodes, start, end, false, true, context );
+        int dijkstraVisited = countVisited( context );
+        double expected = pathCost( dijkstra );
+        
+        Heuristic[] heuristics = { Heuristic.EUCLIDEAN, Heuristic.OCTILE };
+        for( Heuristic heuristic : heuristics ){
+            List<Node> astar = Pathfinder.astar( nodes, start, end, false, true, heuristic, context );
+            Assert.assertEquals( expected, pathCost( astar ), 0.001 );
+            Assert.assertTrue( countVisited( context ) < dijkstraVisited );
+        }
+        
+        double expectedNoDiag = pathCost( Pathfinder.dijkstra( nodes, start, end, false, false ) );
+        List<Node> manhattan = Pathfinder.astar( nodes, start, end, false, false, Heuristic.MANHATTAN );
+        Assert.assertEquals( expectedNoDiag, pathCost( manhattan ), 0.001 );
+        
+        nodes[50][0].traversable = false;
+        nodes[50][1].traversable = false;
+        nodes[50][2].traversable = false;
+        nodes[50][3].traversable = false;
+        nodes[50][4].traversable = false;
+        nodes[50][5].traversable = false;
+        nodes[50][6].traversable = false;
+        nodes[50][7].traversable = false;
+        nodes[50][8].traversable = false;
+        nodes[50][9].traversable = false;
+        Assert.assertNull( Pathfinder.astar( nodes, start, end, false, true ) );
+    }
+    
+    @Test
+    public void testGridGraph() throws Exception {
+        Node[][] nodes = Pathfinder.makeNodes( 40, 30, 100, 200, 5, 10 );
+        for( int y = 0; y < 25; y++ ){
+            nodes[20][y].traversable = false;
+        }
+        
+        GridGraph grid = GridGraph.fromNodes( nodes );
+        Assert.assertEquals( 40, grid.getWidth() );
+        Assert.assertEquals( 30, grid.getHeight() );
+        Assert.assertFalse( grid.isTraversable( 20, 3 ) );
+        Assert.assertEquals( nodes[7][9].location, grid.getLocation( grid.index( 7, 9 ) ) );
+        
+        Node[][] copy = grid.toNodes();
+        Assert.assertEquals( nodes[39][29].location, copy[39][29].location );
+        Assert.assertFalse( copy[20][24].traversable );
+        Assert.assertTrue( copy[20][25].traversable );
+        
+        Vertex start = new Vertex( 0, 0 );
+        Vertex end = new Vertex( 39, 0 );
+        for( boolean allowDiagonal : new boolean[]{ true, false } ){
+            double expected = pathCost( Pathfinder.dijkstra( nodes, start, end, false, allowDiagonal ) );
+            
+            int[] dijkstra = Pathfinder.dijkstra( grid, start, end, false, allowDiagonal );
+            Assert.assertEquals( expected, pathCost( grid.toNodes( nodes, dijkstra ) ), 0.001 );
+            
+            int[] astar = Pathfinder.astar( grid, start, end, false, allowDiagonal );
+            Assert.assertEquals( expected, pathCost( grid.toNodes( nodes, astar ) ), 0.001 );
+            
+            int[] bestFirst = Pathfinder.bestFirst( grid, start, end, true, allowDiagonal );
+            Assert.assertEquals( grid.index( start ), bestFirst[0] );
+            Assert.assertEquals( grid.index( end ), bestFirst[ bestFirst.length - 1 ] );
+        }
+        
+        Assert.assertArrayEquals( new int[]{ grid.index( end ) }, Pathfinder.astar( grid, end, end, true, true ) );
+    }
+    
+    @Test
+    public void testConcurrentSearches() throws Exception {
+        final Node[][] nodes = Pathfinder.makeNodes( 60, 60, 0, 0, 10, 10 );
+        for( int y = 0; y < 50; y++ ){
+            nodes[30][y].traversable = false;
+        }
+        
+        final Vertex[] starts = { new Vertex( 0, 0 ), new Vertex( 59, 0 ), new Vertex( 10, 40 ), new Vertex( 45, 5 ) };
+        final Vertex end = new Vertex( 29, 0 );
+        final double[] expected = new double[ starts.length ];
+        for( int i = 0; i < starts.length; i++ ){
+            expected[i] = pathCost( Pathfinder.dijkstra( nodes, starts[i], end, false, true ) );
+        }
+        
+        final List<Throwable> failures = Collections.synchronizedList( new ArrayList<Throwable>() );
+        Thread[] threads = new Thread[ 8 ];
+        for( int t = 0; t < threads.length; t++ ){
+            final int offset = t;
+            threads[t] = new Thread(){
+                @Override
+                public void run() {
+                    try{
+                        for( int i = 0; i < 50; i++ ){
+                            int which = ( i + offset ) % starts.length;
+                            List<Node> path = i % 2 == 0 
+                                              ? Pathfinder.dijkstra( nodes, starts[which], end, false, true )
+                                              : Pathfinder.astar( nodes, starts[which], end, false, true );
+                            Assert.assertEquals( expected[which], pathCost( path ), 0.001 );
+                        }
+                    }
+                    catch( Throwable failure ){
+                        failures.add( failure );
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for( Thread thread : threads ){
+            thread.join();
+        }
+        
+        Assert.assertTrue( failures.toString(), failures.isEmpty() );
+        Assert.assertEquals( -1, nodes[29][0].cost, 0 );
+        Assert.assertNull( nodes[29][0].previous );
+    }
+    
+    @Test
+    public void testSearchContextReuse() throws Exception {
+        GridGraph grid = new GridGraph( 1000, 1000, 0, 0, 1, 1 );
+        for( int y = 1; y < 1000; y++ ){
+            grid.setTraversable( 500, y, false );
+        }
+        
+        SearchContext context = new SearchContext();
+        Vertex end = new Vertex( 600, 10 );
+        int[] longPath = Pathfinder.dijkstra( grid, new Vertex( 400, 10 ), end, false, true, context );
+        Assert.assertNotNull( longPath );
+        
+        // a short search should only see the cells it reaches itself
+        int[] shortPath = Pathfinder.dijkstra( grid, new Vertex( 600, 12 ), end, true, true, context );
+        Assert.assertEquals( 3, shortPath.length );
+        Assert.assertTrue( countVisited( context ) < 50 );
+        Assert.assertEquals( -1, context.getCost( grid.index( 400, 10 ) ), 0 );
+        Assert.assertEquals( -1, context.getPrevious( grid.index( 500, 0 ) ) );
+        
+        grid.setTraversable( 500, 0, false );
+        Assert.assertNull( Pathfinder.astar( grid, new Vertex( 400, 10 ), end, false, true, Heuristic.OCTILE, context ) );
+    }
+    
+    @Test
+    public void testAdjacentNodes() throws Exception {
+        int width = 5;
+        int height = 4;
+        Node[][] nodes = Pathfinder.makeNodes( width, height, 0, 0, 10, 20 );
+        nodes[1][1].traversable = false;
+        nodes[4][0].traversable = false;
+        nodes[3][3].traversable = false;
+        GridGraph grid = GridGraph.fromNodes( nodes );
+        double[] stepCosts = grid.getStepCosts();
+        int[] offsets = new SearchContext().getOffsets( width );
+        
+        // every cell, so that each edge and corner is covered
+        for( int x = 0; x < width; x++ ){
+            for( int y = 0; y < height; y++ ){
+                for( boolean allowDiagonal : new boolean[]{ true, false } ){
+                    List<Node> expected = new ArrayList();
+                    for( int dx = -1; dx <= 1; dx++ ){
+                        for( int dy = -1; dy <= 1; dy++ ){
+                            boolean diagonal = dx != 0 && dy != 0;
+                            int ax = x + dx;
+                            int ay = y + dy;
+                            if( ( dx == 0 && dy == 0 ) || ( diagonal && !allowDiagonal ) ){
+                                continue;
+                            }
+                            if( ax >= 0 && ay >= 0 && ax < width && ay < height && nodes[ax][ay].traversable ){
+                                expected.add( nodes[ax][ay] );
+                            }
+                        }
+                    }
+                    List<Node> adjacent = Pathfinder.getAdjacentNodes( nodes, nodes[x][y], allowDiagonal );
+                    Assert.assertEquals( expected.size(), adjacent.size() );
+                    Assert.assertTrue( adjacent.containsAll( expected ) );
+                }
+                
+                int index = y * width + x;
+                for( int direction : Directions.ALL ){
+                    int ax = x + Directions.X[direction];
+                    int ay = y + Directions.Y[direction];
+                    boolean inBounds = ax >= 0 && ay >= 0 && ax < width && ay < height;
+                    Assert.assertEquals( inBounds, Directions.inBounds( x, y, direction, width, height ) );
+                    if( inBounds ){
+                        Assert.assertEquals( ay * width + ax, index + offsets[direction] );
+                        Assert.assertEquals( Vertex.distance( grid.getLocation( index ), grid.getLocation( ay * width + ax ) ),
+                                             stepCosts[direction], 0 );
+                    }
+                }
+            }
+        }
+        
+        for( int direction : Directions.ALL ){
+            Assert.assertEquals( direction, Directions.of( Directions.X[direction], Directions.Y[direction] ) );
+        }
+        Assert.assertEquals( -1, Directions.of( 0, 0 ) );
+        for( int direction : Directions.STRAIGHT ){
+            Assert.assertFalse( Directions.isDiagonal( direction ) );
+        }
+        
+        // evenly-spaced nodes get the same step costs as a GridGraph, and
+        // the search space is only rebuilt when the nodes change
+        NodeSearchSpace space = NodeSearchSpace.of( nodes );
+        Assert.assertArrayEquals( stepCosts, space.getStepCosts(), 0 );
+        Assert.assertSame( space, NodeSearchSpace.of( nodes ) );
+        nodes[width - 1][height - 1].location = new Vertex( 1000, 1000 );
+        NodeSearchSpace moved = NodeSearchSpace.of( nodes );
+        Assert.assertNotSame( space, moved );
+        Assert.assertNull( moved.getStepCosts() );
+        Assert.assertEquals( Pathfinder.dijkstra( nodes, new Vertex( 0, 0 ), new Vertex( 2, 3 ), false, true ).size(),
+                             Pathfinder.dijkstra( grid, new Vertex( 0, 0 ), new Vertex( 2, 3 ), false, true ).length );
+    }
+    
+    @Test
+    public void testJumpPointSearch() throws Exception {
+        Random random = new Random( 7 );
+        SearchContext context = new SearchContext();
+        for( int trial = 0; trial < 200; trial++ ){
+            int width = 5 + random.nextInt( 40 );
+            int height = 5 + random.nextInt( 40 );
+            GridGraph grid = randomGrid( random, width, height, random.nextInt( 40 ) / 100.0 );
+            Vertex start = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+            Vertex end = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+            grid.setTraversable( start.x, start.y, true );
+            grid.setTraversable( end.x, end.y, true );
+            
+            for( boolean allowDiagonal : new boolean[]{ true, false } ){
+                int[] dijkstra = Pathfinder.dijkstra( grid, start, end, false, allowDiagonal, context );
+                int[] jps = Pathfinder.jps( grid, start, end, false, allowDiagonal, context );
+                if( dijkstra == null ){
+                    Assert.assertNull( jps );
+                }
+                else {
+                    assertValidPath( grid, jps, start, end, allowDiagonal );
+                    Assert.assertEquals( pathCost( grid, dijkstra ), pathCost( grid, jps ), 0.001 );
+                }
+            }
+        }
+        
+        GridGraph open = randomGrid( random, 300, 300, 0.02 );
+        open.setTraversable( 0, 0, true );
+        open.setTraversable( 299, 299, true );
+        Vertex start = new Vertex( 0, 0 );
+        Vertex end = new Vertex( 299, 299 );
+        int[] dijkstra = Pathfinder.dijkstra( open, start, end, false, true, context );
+        int dijkstraVisited = countVisited( context );
+        int[] jps = Pathfinder.jps( open, start, end, false, true, context );
+        Assert.assertEquals( pathCost( open, dijkstra ), pathCost( open, jps ), 0.001 );
+        Assert.assertTrue( countVisited( context ) * 10 < dijkstraVisited );
+        
+        Node[][] nodes = open.toNodes();
+        Assert.assertEquals( pathCost( open, jps ), pathCost( Pathfinder.jps( nodes, start, end, true, true ) ), 0.001 );
+    }
+    
+    @Test
+    public void testJumpTable() throws Exception {
+        Random random = new Random( 11 );
+        SearchContext context = new SearchContext();
+        for( int trial = 0; trial < 100; trial++ ){
+            int width = 5 + random.nextInt( 40 );
+            int height = 5 + random.nextInt( 40 );
+            GridGraph grid = randomGrid( random, width, height, random.nextInt( 40 ) / 100.0 );
+            JumpTable table = new JumpTable( grid );
+            
+            for( int edit = 0; edit < 5; edit++ ){
+                int x = random.nextInt( width );
+                int y = random.nextInt( height );
+                grid.setTraversable( x, y, !grid.isTraversable( x, y ) );
+                table.update( x, y );
+                assertSameTable( new JumpTable( grid ), table, width * height );
+                
+                Vertex start = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+                Vertex end = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+                grid.setTraversable( start.x, start.y, true );
+                table.update( start.x, start.y );
+                grid.setTraversable( end.x, end.y, true );
+                table.update( end.x, end.y );
+                
+                int[] jps = Pathfinder.jps( grid, start, end, false, true, context );
+                int[] jpsPlus = Pathfinder.jpsPlus( grid, table, start, end, false, context );
+                if( jps == null ){
+                    Assert.assertNull( jpsPlus );
+                }
+                else {
+                    assertValidPath( grid, jpsPlus, start, end, true );
+                    Assert.assertEquals( pathCost( grid, jps ), pathCost( grid, jpsPlus ), 0.001 );
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testBidirectionalSearch() throws Exception {
+        Random random = new Random( 13 );
+        SearchContext context = new SearchContext();
+        for( int trial = 0; trial < 200; trial++ ){
+            int width = 5 + random.nextInt( 40 );
+            int height = 5 + random.nextInt( 40 );
+            GridGraph grid = randomGrid( random, width, height, random.nextInt( 40 ) / 100.0 );
+            Vertex start = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+            Vertex end = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+            grid.setTraversable( start.x, start.y, true );
+            grid.setTraversable( end.x, end.y, true );
+            
+            for( boolean allowDiagonal : new boolean[]{ true, false } ){
+                int[] dijkstra = Pathfinder.dijkstra( grid, start, end, false, allowDiagonal, context );
+                int[] biDijkstra = Pathfinder.bidirectionalDijkstra( grid, start, end, false, allowDiagonal, context );
+                int[] biAstar = Pathfinder.bidirectionalAstar( grid, start, end, false, allowDiagonal, Heuristic.OCTILE, context );
+                int[] biFast = Pathfinder.bidirectionalAstar( grid, start, end, true, allowDiagonal, Heuristic.EUCLIDEAN, context );
+                if( dijkstra == null ){
+                    Assert.assertNull( biDijkstra );
+                    Assert.assertNull( biAstar );
+                    Assert.assertNull( biFast );
+                }
+                else {
+                    assertValidPath( grid, biDijkstra, start, end, allowDiagonal );
+                    assertValidPath( grid, biAstar, start, end, allowDiagonal );
+                    assertValidPath( grid, biFast, start, end, allowDiagonal );
+                    Assert.assertEquals( pathCost( grid, dijkstra ), pathCost( grid, biDijkstra ), 0.001 );
+                    Assert.assertEquals( pathCost( grid, dijkstra ), pathCost( grid, biAstar ), 0.001 );
+                }
+            }
+            
+            if( start.x != end.x || start.y != end.y ){
+                grid.setTraversable( end.x, end.y, false );
+                Assert.assertNull( Pathfinder.dijkstra( grid, start, end, false, true, context ) );
+                Assert.assertNull( Pathfinder.bidirectionalDijkstra( grid, start, end, false, true, context ) );
+                Assert.assertNull( Pathfinder.bidirectionalAstar( grid, start, end, false, true, Heuristic.OCTILE, context ) );
+                grid.setTraversable( end.x, end.y, true );
+            }
+        }
+        
+        GridGraph open = randomGrid( random, 200, 200, 0.1 );
+        open.setTraversable( 0, 100, true );
+        open.setTraversable( 199, 100, true );
+        Vertex start = new Vertex( 0, 100 );
+        Vertex end = new Vertex( 199, 100 );
+        int[] dijkstra = Pathfinder.dijkstra( open, start, end, false, true, context );
+        int dijkstraVisited = countVisited( context );
+        int[] bidirectional = Pathfinder.bidirectionalDijkstra( open, start, end, false, true, context );
+        Assert.assertEquals( pathCost( open, dijkstra ), pathCost( open, bidirectional ), 0.001 );
+        Assert.assertTrue( countVisited( context ) + countVisited( context.getReverse() ) < dijkstraVisited );
+        
+        Node[][] nodes = open.toNodes();
+        Assert.assertEquals( pathCost( open, dijkstra ), pathCost( Pathfinder.bidirectionalAstar( nodes, start, end, false, true ) ), 0.001 );
+    }
+    
+    @Test
+    public void testHierarchicalMap() throws Exception {
+        Random random = new Random( 17 );
+        SearchContext context = new SearchContext();
+        for( int trial = 0; trial < 100; trial++ ){
+            int width = 5 + random.nextInt( 50 );
+            int height = 5 + random.nextInt( 50 );
+            boolean allowDiagonal = random.nextBoolean();
+            int clusterSize = 2 + random.nextInt( 10 );
+            GridGraph grid = randomGrid( random, width, height, random.nextInt( 40 ) / 100.0 );
+            HierarchicalMap map = new HierarchicalMap( grid, clusterSize, allowDiagonal );
+            
+            for( int edit = 0; edit < 5; edit++ ){
+                int x = random.nextInt( width );
+                int y = random.nextInt( height );
+                grid.setTraversable( x, y, !grid.isTraversable( x, y ) );
+                map.update( x, y );
+                
+                Vertex start = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+                Vertex end = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+                grid.setTraversable( start.x, start.y, true );
+                map.update( start.x, start.y );
+                grid.setTraversable( end.x, end.y, true );
+                map.update( end.x, end.y );
+                
+                int[] dijkstra = Pathfinder.dijkstra( grid, start, end, false, allowDiagonal, context );
+                int[] hpa = Pathfinder.hpa( grid, map, start, end, context );
+                if( dijkstra == null ){
+                    Assert.assertNull( hpa );
+                }
+                else {
+                    assertValidPath( grid, hpa, start, end, allowDiagonal );
+                    Assert.assertTrue( pathCost( grid, hpa ) >= pathCost( grid, dijkstra ) - 0.001 );
+                    
+                    int[] rebuilt = Pathfinder.hpa( grid, new HierarchicalMap( grid, clusterSize, allowDiagonal ), start, end, context );
+                    Assert.assertEquals( pathCost( grid, rebuilt ), pathCost( grid, hpa ), 0.001 );
+                }
+                
+                if( start.x != end.x || start.y != end.y ){
+                    grid.setTraversable( end.x, end.y, false );
+                    map.update( end.x, end.y );
+                    Assert.assertNull( Pathfinder.dijkstra( grid, start, end, false, allowDiagonal, context ) );
+                    Assert.assertNull( Pathfinder.hpa( grid, map, start, end, context ) );
+                    Assert.assertNull( Pathfinder.hpa( grid, map, end, start, context ) );
+                    grid.setTraversable( end.x, end.y, true );
+                    map.update( end.x, end.y );
+                }
+            }
+        }
+        
+        GridGraph open = randomGrid( random, 256, 256, 0.1 );
+        open.setTraversable( 0, 0, true );
+        open.setTraversable( 255, 255, true );
+        Vertex start = new Vertex( 0, 0 );
+        Vertex end = new Vertex( 255, 255 );
+        HierarchicalMap map = new HierarchicalMap( open, 16, true );
+        int[] astar = Pathfinder.astar( open, start, end, false, true );
+        int[] hpa = Pathfinder.hpa( open, map, start, end );
+        assertValidPath( open, hpa, start, end, true );
+        Assert.assertTrue( pathCost( open, hpa ) < pathCost( open, astar ) * 1.2 );
+        
+        Node[][] nodes = open.toNodes();
+        HierarchicalMap nodeMap = new HierarchicalMap( nodes, 16, true );
+        Assert.assertEquals( pathCost( open, hpa ), pathCost( Pathfinder.hpa( nodes, nodeMap, start, end ) ), 0.001 );
+    }
+    
+    @Test
+    public void testLandmarks() throws Exception {
+        Random random = new Random( 19 );
+        SearchContext context = new SearchContext();
+        for( int trial = 0; trial < 50; trial++ ){
+            int width = 5 + random.nextInt( 40 );
+            int height = 5 + random.nextInt( 40 );
+            boolean allowDiagonal = random.nextBoolean();
+            GridGraph grid = randomGrid( random, width, height, random.nextInt( 40 ) / 100.0 );
+            grid.setTraversable( 0, 0, true );
+            Landmarks landmarks = new Landmarks( grid, 1 + random.nextInt( 6 ), allowDiagonal, false );
+            Landmarks quantized = new Landmarks( grid, 1 + random.nextInt( 6 ), allowDiagonal, true );
+            
+            for( int query = 0; query < 5; query++ ){
+                Vertex start = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+                Vertex end = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+                if( !grid.isTraversable( start.x, start.y ) || !grid.isTraversable( end.x, end.y ) ){
+                    continue;
+                }
+                
+                int[] dijkstra = Pathfinder.dijkstra( grid, start, end, false, allowDiagonal, context );
+                int[] alt = Pathfinder.astar( grid, start, end, false, allowDiagonal, landmarks, context );
+                int[] altQuantized = Pathfinder.astar( grid, start, end, false, allowDiagonal, quantized, context );
+                if( dijkstra == null ){
+                    Assert.assertNull( alt );
+                    Assert.assertNull( altQuantized );
+                }
+                else {
+                    assertValidPath( grid, alt, start, end, allowDiagonal );
+                    assertValidPath( grid, altQuantized, start, end, allowDiagonal );
+                    Assert.assertEquals( pathCost( grid, dijkstra ), pathCost( grid, alt ), 0.001 );
+                    Assert.assertEquals( pathCost( grid, dijkstra ), pathCost( grid, altQuantized ), 0.001 );
+                }
+            }
+        }
+        
+        // no estimate may exceed the true cost, however the stored
+        // distances were rounded (beyond the rounding of costs summed in a
+        // different order, which the straight-line distance shares)
+        for( int trial = 0; trial < 40; trial++ ){
+            int width = 10 + random.nextInt( 11 );
+            int height = 10 + random.nextInt( 11 );
+            boolean allowDiagonal = random.nextBoolean();
+            GridGraph grid = new GridGraph( width, height, 0, 0, 1 + random.nextInt( 20 ), 1 + random.nextInt( 20 ) );
+            for( int index = 0; index < width * height; index++ ){
+                grid.setTraversable( index, random.nextDouble() >= 0.2 );
+            }
+            grid.setTraversable( 0, 0, true );
+            Landmarks landmarks = new Landmarks( grid, 1 + random.nextInt( 6 ), allowDiagonal, false );
+            Landmarks quantized = new Landmarks( grid, 1 + random.nextInt( 6 ), allowDiagonal, true );
+            for( int target = 0; target < width * height; target++ ){
+                Pathfinder.dijkstraFrom( grid, target, allowDiagonal, context );
+                for( int index = 0; index < width * height; index++ ){
+                    double cost = context.getCost( index );
+                    if( cost != -1 ){
+                        Assert.assertTrue( landmarks.estimate( grid, index, target ) <= cost * ( 1 + 1e-12 ) );
+                        Assert.assertTrue( quantized.estimate( grid, index, target ) <= cost * ( 1 + 1e-12 ) );
+                    }
+                }
+            }
+        }
+        
+        // a long wall between origin and target, open only at the far end
+        GridGraph maze = new GridGraph( 200, 200, 0, 0, 10, 10 );
+        for( int y = 0; y < 190; y++ ){
+            maze.setTraversable( 100, y, false );
+        }
+        Vertex start = new Vertex( 0, 0 );
+        Vertex end = new Vertex( 199, 0 );
+        Landmarks landmarks = new Landmarks( maze, 4, true, false );
+        int[] astar = Pathfinder.astar( maze, start, end, false, true, Heuristic.EUCLIDEAN, context );
+        int astarVisited = countVisited( context );
+        int[] alt = Pathfinder.astar( maze, start, end, false, true, landmarks, context );
+        Assert.assertEquals( pathCost( maze, astar ), pathCost( maze, alt ), 0.001 );
+        logger.info( "ALT visited " + countVisited( context ) + ", A* visited " + astarVisited );
+        Assert.assertTrue( countVisited( context ) * 3 < astarVisited * 2 );
+        
+        Vertex[] chosen = new Vertex[ landmarks.getLandmarkCount() ];
+        for( int i = 0; i < chosen.length; i++ ){
+            chosen[i] = maze.getSearchSpaceLocation( landmarks.getLandmark( i ) );
+        }
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try {
+            Landmarks parallel = new Landmarks( maze, chosen, true, false, executor );
+            for( int i = 0; i < chosen.length; i++ ){
+                for( int index = 0; index < 200 * 200; index++ ){
+                    Assert.assertEquals( landmarks.getDistance( i, index ), parallel.getDistance( i, index ), 0 );
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testBatchQueries() throws Exception {
+        Random random = new Random( 23 );
+        SearchContext context = new SearchContext();
+        SearchContext other = new SearchContext();
+        for( int trial = 0; trial < 100; trial++ ){
+            int width = 5 + random.nextInt( 40 );
+            int height = 5 + random.nextInt( 40 );
+            boolean allowDiagonal = random.nextBoolean();
+            GridGraph grid = randomGrid( random, width, height, random.nextInt( 40 ) / 100.0 );
+            Vertex origin = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+            grid.setTraversable( origin.x, origin.y, true );
+            Vertex[] targets = new Vertex[ 1 + random.nextInt( 8 ) ];
+            for( int i = 0; i < targets.length; i++ ){
+                targets[i] = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+            }
+            targets[0] = random.nextBoolean() ? origin : targets[0];
+            
+            PathTree tree = Pathfinder.oneToMany( grid, origin, targets, allowDiagonal, context );
+            double nearestCost = -1;
+            for( int i = 0; i < targets.length; i++ ){
+                int[] dijkstra = Pathfinder.dijkstra( grid, origin, targets[i], false, allowDiagonal, other );
+                if( dijkstra == null || !grid.isTraversable( targets[i].x, targets[i].y ) ){
+                    Assert.assertFalse( tree.isReachable( i ) );
+                    Assert.assertNull( tree.getPath( i ) );
+                }
+                else {
+                    double cost = pathCost( grid, dijkstra );
+                    Assert.assertEquals( cost, tree.getCost( i ), 0.001 );
+                    assertValidPath( grid, tree.getPath( i ), origin, targets[i], allowDiagonal );
+                    Assert.assertEquals( cost, pathCost( grid, tree.getPath( i ) ), 0.001 );
+                    nearestCost = nearestCost == -1 ? cost : Math.min( nearestCost, cost );
+                }
+            }
+            
+            PathTree nearest = Pathfinder.nearest( grid, origin, targets, allowDiagonal, other );
+            if( nearestCost == -1 ){
+                Assert.assertEquals( -1, nearest.getNearest() );
+            }
+            else {
+                Assert.assertEquals( nearestCost, nearest.getCost( nearest.getNearest() ), 0.001 );
+                assertValidPath( grid, nearest.getPath( nearest.getNearest() ), origin, targets[ nearest.getNearest() ], allowDiagonal );
+            }
+            
+            Vertex[] origins = new Vertex[]{ origin, targets[ targets.length - 1 ], origin };
+            double[][] matrix = Pathfinder.manyToMany( grid, origins, targets, allowDiagonal, other );
+            for( int o = 0; o < origins.length; o++ ){
+                for( int t = 0; t < targets.length; t++ ){
+                    int[] dijkstra = Pathfinder.dijkstra( grid, origins[o], targets[t], false, allowDiagonal, other );
+                    boolean reachable = dijkstra != null 
+                                        && grid.isTraversable( origins[o].x, origins[o].y ) 
+                                        && grid.isTraversable( targets[t].x, targets[t].y );
+                    Assert.assertEquals( reachable ? pathCost( grid, dijkstra ) : -1, matrix[o][t], 0.001 );
+                }
+            }
+        }
+        
+        GridGraph grid = randomGrid( random, 50, 50, 0 );
+        Node[][] nodes = grid.toNodes();
+        Vertex[] targets = new Vertex[]{ new Vertex( 49, 49 ), new Vertex( 10, 0 ) };
+        PathTree tree = Pathfinder.oneToMany( nodes, new Vertex( 0, 0 ), targets, true, context );
+        Assert.assertEquals( 1, Pathfinder.nearest( nodes, new Vertex( 0, 0 ), targets, true, other ).getNearest() );
+        Assert.assertEquals( 50, tree.getNodes( 0 ).size() );
+        Pathfinder.dijkstra( grid, new Vertex( 0, 0 ), new Vertex( 1, 1 ), false, true, context );
+        try {
+            tree.getPath( 0 );
+            Assert.fail( "Paths should not be readable once the context is reused" );
+        }
+        catch( IllegalStateException expected ){
+        }
+        Assert.assertEquals( 10 * 49 * Math.sqrt( 2 ), tree.getCost( 0 ), 0.001 );
+    }
+    
+    @Test
+    public void testPathfinderExecutor() throws Exception {
+        Random random = new Random( 29 );
+        GridGraph grid = randomGrid( random, 60, 60, 0.2 );
+        Algorithm[] algorithms = Algorithm.values();
+        List<PathQuery> queries = new ArrayList();
+        for( int i = 0; i < 500; i++ ){
+            Vertex origin = new Vertex( random.nextInt( 60 ), random.nextInt( 60 ) );
+            Vertex target = new Vertex( random.nextInt( 60 ), random.nextInt( 60 ) );
+            grid.setTraversable( origin.x, origin.y, true );
+            grid.setTraversable( target.x, target.y, true );
+            queries.add( new PathQuery( origin, target, algorithms[ random.nextInt( algorithms.length ) ],
+                                        random.nextBoolean(), random.nextBoolean() ) );
+        }
+        
+        PathfinderExecutor forkJoin = new PathfinderExecutor( 4 );
+        PathfinderExecutor threads = new PathfinderExecutor( Executors.defaultThreadFactory(), 4 );
+        try {
+            for( PathfinderExecutor executor : new PathfinderExecutor[]{ forkJoin, threads } ){
+                final int[] callbacks = new int[ queries.size() ];
+                PathBatch<int[]> batch = executor.submit( grid, queries, new PathCallback<int[]>() {
+                    @Override
+                    public void completed( int query, int[] path ) {
+                        synchronized( callbacks ){
+                            callbacks[query]++;
+                        }
+                    }
+                } );
+                List<int[]> paths = batch.get();
+                Assert.assertEquals( queries.size(), paths.size() );
+                for( int i = 0; i < queries.size(); i++ ){
+                    PathQuery query = queries.get( i );
+                    int[] expected = Pathfinder.search( grid, query, new SearchContext() );
+                    if( expected == null ){
+                        Assert.assertNull( paths.get( i ) );
+                    }
+                    else {
+                        assertValidPath( grid, paths.get( i ), query.origin, query.target, query.allowDiagonal );
+                        Assert.assertEquals( pathCost( grid, expected ), pathCost( grid, paths.get( i ) ), 0.001 );
+                    }
+                    synchronized( callbacks ){
+                        Assert.assertEquals( 1, callbacks[i] );
+                    }
+                }
+                
+                Node[][] nodes = grid.toNodes();
+                List<List<Node>> nodePaths = executor.submit( nodes, queries.subList( 0, 10 ), null ).get();
+                for( int i = 0; i < 10; i++ ){
+                    List<Node> expected = grid.toNodes( nodes, paths.get( i ) );
+                    Assert.assertEquals( expected == null ? -1 : pathCost( expected ), 
+                                         nodePaths.get( i ) == null ? -1 : pathCost( nodePaths.get( i ) ), 0.001 );
+                }
+                
+                PathBatch<int[]> cancelled = executor.submit( grid, queries, null );
+                cancelled.cancel( false );
+                Assert.assertTrue( cancelled.isCancelled() );
+                Assert.assertTrue( cancelled.isDone() );
+                try {
+                    cancelled.get();
+                    Assert.fail( "A cancelled batch should not return results" );
+                }
+                catch( CancellationException expected ){
+                }
+                
+                // an error in a callback fails the batch rather than leaving
+                // it incomplete
+                final Error error = new Error( "callback failed" );
+                PathBatch<int[]> failed = executor.submit( grid, queries, new PathCallback<int[]>() {
+                    @Override
+                    public void completed( int query, int[] path ) {
+                        throw error;
+                    }
+                } );
+                try {
+                    failed.get( 10, TimeUnit.SECONDS );
+                    Assert.fail( "A failed batch should not return results" );
+                }
+                catch( ExecutionException expected ){
+                    Assert.assertSame( error, expected.getCause() );
+                }
+            }
+        }
+        finally {
+            forkJoin.shutdown();
+            threads.shutdown();
+        }
+    }
+    
+    @Test
+    public void testPathCache() throws Exception {
+        Random random = new Random( 31 );
+        SearchContext context = new SearchContext();
+        GridGraph grid = randomGrid( random, 30, 30, 0.25 );
+        PathCache cache = new PathCache( grid, 40 );
+        Algorithm[] algorithms = Algorithm.values();
+        List<PathQuery> queries = new ArrayList();
+        for( int i = 0; i < 60; i++ ){
+            Vertex origin = new Vertex( random.nextInt( 30 ), random.nextInt( 30 ) );
+            Vertex target = new Vertex( random.nextInt( 30 ), random.nextInt( 30 ) );
+            grid.setTraversable( origin.x, origin.y, true );
+            grid.setTraversable( target.x, target.y, true );
+            queries.add( new PathQuery( origin, target, algorithms[ random.nextInt( algorithms.length ) ],
+                                        random.nextBoolean(), random.nextBoolean() ) );
+        }
+        
+        PathQuery first = queries.get( 0 );
+        cache.getPath( first, context );
+        cache.getPath( new PathQuery( first.origin, first.target, first.algorithm, first.returnFast, first.allowDiagonal ), context );
+        Assert.assertEquals( 1, cache.getHits() );
+        Assert.assertEquals( 1, cache.getMisses() );
+        
+        for( int round = 0; round < 300; round++ ){
+            PathQuery query = queries.get( random.nextInt( queries.size() ) );
+            int[] cached = cache.getPath( query, context );
+            int[] fresh = Pathfinder.search( grid, query, context );
+            if( fresh == null ){
+                Assert.assertNull( cached );
+            }
+            else {
+                assertValidPath( grid, cached, query.origin, query.target, query.allowDiagonal );
+                if( !query.returnFast ){
+                    Assert.assertEquals( pathCost( grid, fresh ), pathCost( grid, cached ), 0.001 );
+                }
+            }
+            Assert.assertTrue( cache.size() <= 40 );
+            
+            if( round % 5 == 0 ){
+                int x = random.nextInt( 30 );
+                int y = random.nextInt( 30 );
+                boolean endpoint = false;
+                for( PathQuery q : queries ){
+                    endpoint |= ( q.origin.x == x && q.origin.y == y ) || ( q.target.x == x && q.target.y == y );
+                }
+                if( !endpoint ){
+                    grid.setTraversable( x, y, !grid.isTraversable( x, y ) );
+                    cache.update( x, y );
+                }
+            }
+        }
+        Assert.assertTrue( cache.getHits() > 0 );
+        Assert.assertTrue( cache.getInvalidations() > 0 );
+        
+        Node[][] nodes = grid.toNodes();
+        PathCache nodeCache = new PathCache( nodes, 10 );
+        List<Node> path = nodeCache.getNodes( first, context );
+        Assert.assertSame( path.get( 0 ), nodeCache.getNodes( first, context ).get( 0 ) );
+        Assert.assertEquals( 1, nodeCache.getHits() );
+        nodeCache.clear();
+        Assert.assertEquals( 0, nodeCache.size() );
+    }
+
+    @Test
+    public void testDStarLite() throws Exception {
+        Random random = new Random( 37 );
+        SearchContext context = new SearchContext();
+        for( boolean allowDiagonal : new boolean[]{ true, false } ){
+            GridGraph grid = randomGrid( random, 40, 40, 0.25 );
+            Vertex origin = new Vertex( 0, 0 );
+            Vertex target = new Vertex( 39, 39 );
+            grid.setTraversable( origin.x, origin.y, true );
+            grid.setTraversable( target.x, target.y, true );
+            DStarLite planner = new DStarLite( grid, origin, target, allowDiagonal );
+
+            for( int round = 0; round < 60; round++ ){
+                int[] path = planner.getPath();
+                int[] fresh = Pathfinder.dijkstra( grid, origin, target, false, allowDiagonal, context );
+                if( fresh == null ){
+                    Assert.assertNull( path );
+                    Assert.assertEquals( -1, planner.getCost(), 0 );
+                }
+                else {
+                    assertValidPath( grid, path, origin, target, allowDiagonal );
+                    Assert.assertEquals( pathCost( grid, fresh ), pathCost( grid, path ), 0.001 );
+                    Assert.assertEquals( pathCost( grid, fresh ), planner.getCost(), 0.001 );
+                    if( path.length > 2 && random.nextBoolean() ){
+                        origin = grid.getSearchSpaceLocation( path[1] );
+                        planner.moveTo( origin );
+                    }
+                }
+
+                for( int change = 0; change < 5; change++ ){
+                    int x = random.nextInt( 40 );
+                    int y = random.nextInt( 40 );
+                    if( ( x != origin.x || y != origin.y ) && ( x != target.x || y != target.y ) ){
+                        grid.setTraversable( x, y, !grid.isTraversable( x, y ) );
+                        planner.update( x, y );
+                    }
+                }
+            }
+        }
+
+        // small maps, where costs that are equal but summed in different
+        // orders are common
+        for( int scenario = 0; scenario < 300; scenario++ ){
+            int width = 3 + random.nextInt( 10 );
+            int height = 3 + random.nextInt( 10 );
+            boolean allowDiagonal = random.nextBoolean();
+            GridGraph grid = random.nextBoolean()
+                             ? new GridGraph( width, height, 0, 0, 1, 1 )
+                             : new GridGraph( width, height, 0, 0, 1 + random.nextInt( 20 ), 1 + random.nextInt( 20 ) );
+            for( int index = 0; index < width * height; index++ ){
+                grid.setTraversable( index, random.nextDouble() >= 0.3 );
+            }
+            Vertex origin = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+            Vertex target = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+            grid.setTraversable( origin.x, origin.y, true );
+            DStarLite planner = new DStarLite( grid, origin, target, allowDiagonal );
+
+            for( int round = 0; round < 10; round++ ){
+                int[] fresh = Pathfinder.dijkstra( grid, origin, target, false, allowDiagonal, context );
+                if( fresh == null ){
+                    Assert.assertEquals( -1, planner.getCost(), 0 );
+                    Assert.assertNull( planner.getPath() );
+                }
+                else {
+                    Assert.assertEquals( pathCost( grid, fresh ), planner.getCost(), 1e-9 );
+                    int[] path = planner.getPath();
+                    assertValidPath( grid, path, origin, target, allowDiagonal );
+                    Assert.assertEquals( pathCost( grid, fresh ), pathCost( grid, path ), 1e-9 );
+                    if( path.length > 2 && random.nextBoolean() ){
+                        origin = grid.getSearchSpaceLocation( path[1] );
+                        planner.moveTo( origin );
+                    }
+                }
+
+                for( int change = 0; change < 3; change++ ){
+                    int x = random.nextInt( width );
+                    int y = random.nextInt( height );
+                    if( x != origin.x || y != origin.y ){
+                        grid.setTraversable( x, y, !grid.isTraversable( x, y ) );
+                        planner.update( x, y );
+                    }
+                }
+            }
+        }
+
+        // blocking a cell next to the agent only re-expands a small region
+        Vertex origin = new Vertex( 100, 190 );
+        Vertex target = new Vertex( 100, 10 );
+        GridGraph grid = randomGrid( new Random( 2 ), 200, 200, 0.3 );
+        grid.setTraversable( origin.x, origin.y, true );
+        grid.setTraversable( target.x, target.y, true );
+        DStarLite planner = new DStarLite( grid, origin, target, true );
+        int[] path = planner.getPath();
+        int initial = planner.getExpansions();
+        grid.setTraversable( path[3], false );
+        planner.update( grid.getX( path[3] ), grid.getY( path[3] ) );
+        path = planner.getPath();
+        assertValidPath( grid, path, origin, target, true );
+        Assert.assertEquals( pathCost( grid, Pathfinder.dijkstra( grid, origin, target, false, true, context ) ), pathCost( grid, path ), 0.001 );
+        Assert.assertTrue( planner.getExpansions() * 5 < initial );
+
+        Node[][] nodes = new GridGraph( 10, 10, 0, 0, 10, 10 ).toNodes();
+        DStarLite nodePlanner = new DStarLite( nodes, new Vertex( 0, 0 ), new Vertex( 5, 3 ), true );
+        Assert.assertEquals( 6, nodePlanner.getNodes().size() );
+    }
+
+    @Test
+    public void testConnectedComponents() throws Exception {
+        Random random = new Random( 41 );
+        SearchContext context = new SearchContext();
+        for( boolean allowDiagonal : new boolean[]{ true, false } ){
+            GridGraph grid = randomGrid( random, 40, 40, 0.4 );
+            ConnectedComponents components = new ConnectedComponents( grid, allowDiagonal );
+            for( int round = 0; round < 400; round++ ){
+                int x = random.nextInt( 40 );
+                int y = random.nextInt( 40 );
+                grid.setTraversable( x, y, !grid.isTraversable( x, y ) );
+                components.update( x, y );
+
+                if( round % 20 == 0 ){
+                    Assert.assertEquals( new ConnectedComponents( grid, allowDiagonal ).getComponentCount(), components.getComponentCount() );
+                    for( int query = 0; query < 10; query++ ){
+                        Vertex origin = new Vertex( random.nextInt( 40 ), random.nextInt( 40 ) );
+                        Vertex target = new Vertex( random.nextInt( 40 ), random.nextInt( 40 ) );
+                        boolean reachable = grid.isTraversable( origin.x, origin.y )
+                                            && Pathfinder.dijkstra( grid, origin, target, true, allowDiagonal, context ) != null;
+                        Assert.assertEquals( reachable, components.isConnected( origin, target ) );
+                    }
+                }
+            }
+        }
+
+        // splitting a large component, then joining it again
+        GridGraph grid = new GridGraph( 100, 100, 0, 0, 10, 10 );
+        ConnectedComponents components = new ConnectedComponents( grid, false );
+        for( int y = 0; y < 100; y++ ){
+            grid.setTraversable( 50, y, false );
+            components.update( 50, y );
+        }
+        Assert.assertEquals( 2, components.getComponentCount() );
+        Assert.assertFalse( components.isConnected( new Vertex( 0, 0 ), new Vertex( 99, 99 ) ) );
+        Assert.assertEquals( -1, components.getComponent( grid.index( 50, 50 ) ) );
+        grid.setTraversable( 50, 70, true );
+        components.update( 50, 70 );
+        Assert.assertEquals( 1, components.getComponentCount() );
+        Assert.assertTrue( components.isConnected( new Vertex( 0, 0 ), new Vertex( 99, 99 ) ) );
+    }
+
+    @Test
+    public void testSearchStats() throws Exception {
+        GridGraph grid = randomGrid( new Random( 43 ), 60, 60, 0.2 );
+        Vertex origin = new Vertex( 0, 0 );
+        Vertex target = new Vertex( 59, 59 );
+        grid.setTraversable( origin.x, origin.y, true );
+        grid.setTraversable( target.x, target.y, true );
+
+        SearchContext context = new SearchContext();
+        Pathfinder.astar( grid, origin, target, false, true, Heuristic.OCTILE, context );
+        Assert.assertNull( context.getStats() );
+        // searches that are not recorded do no counting
+        Assert.assertFalse( context.getOpen() instanceof CountingIndexedHeap );
+
+        context.setRecordingStats( true );
+        int[] path = Pathfinder.astar( grid, origin, target, false, true, Heuristic.OCTILE, context );
+        SearchStats stats = context.getStats();
+        Assert.assertEquals( Algorithm.ASTAR, stats.algorithm );
+        Assert.assertEquals( grid.index( origin ), stats.origin );
+        Assert.assertEquals( path.length, stats.pathLength );
+        Assert.assertEquals( pathCost( grid, path ), stats.pathCost, 0.001 );
+        Assert.assertTrue( stats.expanded >= path.length - 1 );
+        Assert.assertTrue( stats.generated >= stats.expanded );
+        Assert.assertTrue( stats.peakOpenSize > 0 && stats.peakOpenSize <= stats.generated );
+
+        Pathfinder.dijkstra( grid, origin, target, false, true, context );
+        SearchStats dijkstra = context.getStats();
+        Assert.assertEquals( Algorithm.DIJKSTRA, dijkstra.algorithm );
+        Assert.assertTrue( dijkstra.expanded > stats.expanded );
+        Assert.assertTrue( dijkstra.decreasedKeys > 0 );
+
+        // the peak counts both open sets at the same moment
+        Pathfinder.bidirectionalDijkstra( grid, origin, target, false, true, context );
+        SearchStats bidirectional = context.getStats();
+        CountingIndexedHeap forward = (CountingIndexedHeap)context.getOpen();
+        CountingIndexedHeap backward = (CountingIndexedHeap)context.getReverse().getOpen();
+        Assert.assertTrue( bidirectional.peakOpenSize <= bidirectional.generated );
+        Assert.assertTrue( bidirectional.peakOpenSize >= forward.size() + backward.size() );
+
+        grid.setTraversable( 58, 58, false );
+        grid.setTraversable( 58, 59, false );
+        grid.setTraversable( 59, 58, false );
+        Assert.assertNull( Pathfinder.bidirectionalDijkstra( grid, origin, target, false, true, context ) );
+        Assert.assertFalse( context.getStats().isFound() );
+        Assert.assertEquals( -1, context.getStats().pathCost, 0 );
+        context.setRecordingStats( false );
+        Assert.assertNull( context.getStats() );
+
+        final List<SearchStats> heard = Collections.synchronizedList( new ArrayList<SearchStats>() );
+        SearchListener listener = new SearchListener() {
+            @Override
+            public void searchCompleted( SearchStats stats ) {
+                heard.add( stats );
+            }
+        };
+        SearchMetrics metrics = new SearchMetrics();
+        Pathfinder.addSearchListener( listener );
+        metrics.register();
+        try {
+            for( int i = 0; i < 5; i++ ){
+                Pathfinder.astar( grid, origin, new Vertex( 30, i ), false, true, Heuristic.OCTILE, context );
+            }
+            Pathfinder.jps( grid, origin, target, false, true, context );
+        }
+        finally {
+            Pathfinder.removeSearchListener( listener );
+            Object count = ManagementFactory.getPlatformMBeanServer().getAttribute( SearchMetrics.getObjectName( Algorithm.ASTAR ), "SearchCount" );
+            metrics.unregister();
+            Assert.assertEquals( 5L, count );
+        }
+        Assert.assertEquals( 6, heard.size() );
+        Assert.assertNull( context.getStats() );
+        AlgorithmMetrics astar = metrics.getMetrics( Algorithm.ASTAR );
+        Assert.assertEquals( 5, astar.getSearchCount() );
+        Assert.assertEquals( 1, metrics.getMetrics( Algorithm.JPS ).getFailedCount() );
+        Assert.assertTrue( astar.getMedianMicros() <= astar.getPercentile99Micros() );
+        Assert.assertTrue( astar.getMaxMicros() <= astar.getPercentile99Micros() );
+
+        Pathfinder.astar( grid, origin, target, false, true, Heuristic.OCTILE, context );
+        Assert.assertEquals( 5, astar.getSearchCount() );
+        Assert.assertFalse( context.getOpen() instanceof CountingIndexedHeap );
+    }
+
+    @Test
+    public void testMapFile() throws Exception {
+        Random random = new Random( 47 );
+        GridGraph grid = randomGrid( random, 70, 50, 0.3 );
+        byte[] costs = new byte[ 70 * 50 ];
+        random.nextBytes( costs );
+        Path file = Files.createTempFile( "pathfinding", ".map" );
+        try {
+            MapFile.write( grid, costs, file );
+            GridGraph read = MapFile.read( file );
+            Assert.assertEquals( 70, read.getWidth() );
+            Assert.assertEquals( 50, read.getHeight() );
+            Assert.assertEquals( grid.getStepX(), read.getStepX() );
+            for( int index = 0; index < 70 * 50; index++ ){
+                Assert.assertEquals( grid.isTraversable( index ), read.isTraversable( index ) );
+            }
+            Assert.assertArrayEquals( costs, MapFile.readCosts( file ) );
+
+            MapFile.write( grid, file );
+            Assert.assertNull( MapFile.readCosts( file ) );
+            Assert.assertEquals( grid.isTraversable( 69, 49 ), MapFile.read( file ).isTraversable( 69, 49 ) );
+
+            Files.write( file, new byte[ 100 ] );
+            try {
+                MapFile.read( file );
+                Assert.fail( "Read a file that is not a map" );
+            }
+            catch( IOException expected ){
+            }
+        }
+        finally {
+            Files.delete( file );
+        }
+
+        byte[] values = { 0, (byte)200, 127, (byte)128, (byte)255, 1 };
+        GridGraph bytes = MapFile.fromBytes( values, 3, 2, 128, 0, 0, 10, 10 );
+        Assert.assertFalse( bytes.isTraversable( 0, 0 ) );
+        Assert.assertTrue( bytes.isTraversable( 1, 0 ) );
+        Assert.assertFalse( bytes.isTraversable( 2, 0 ) );
+        Assert.assertTrue( bytes.isTraversable( 0, 1 ) );
+        Assert.assertTrue( bytes.isTraversable( 1, 1 ) );
+        Assert.assertFalse( bytes.isTraversable( 2, 1 ) );
+
+        byte[] header = "P5\n# a comment\n3 2\n255\n".getBytes( "US-ASCII" );
+        byte[] pgm = Arrays.copyOf( header, header.length + values.length );
+        System.arraycopy( values, 0, pgm, header.length, values.length );
+        GridGraph image = MapFile.fromPgm( new ByteArrayInputStream( pgm ), 128, 0, 0, 10, 10 );
+        for( int index = 0; index < 6; index++ ){
+            Assert.assertEquals( bytes.isTraversable( index ), image.isTraversable( index ) );
+        }
+
+        BufferedImage gray = new BufferedImage( 3, 2, BufferedImage.TYPE_BYTE_GRAY );
+        gray.getRaster().setDataElements( 0, 0, 3, 2, values );
+        BufferedImage rgb = new BufferedImage( 3, 2, BufferedImage.TYPE_INT_RGB );
+        for( int index = 0; index < 6; index++ ){
+            int level = values[index] & 0xFF;
+            rgb.setRGB( index % 3, index / 3, ( level << 16 ) | ( level << 8 ) | level );
+        }
+        for( BufferedImage bitmap : new BufferedImage[]{ gray, rgb } ){
+            image = MapFile.fromImage( bitmap, 128, 0, 0, 10, 10 );
+            for( int index = 0; index < 6; index++ ){
+                Assert.assertEquals( bytes.isTraversable( index ), image.isTraversable( index ) );
+            }
+        }
+    }
+
+    @Test
+    public void testBitGrid() throws Exception {
+        Random random = new Random( 43 );
+        GridGraph grid = randomGrid( random, 150, 90, 0.2 );
+        BitGrid bits = grid.getBits();
+
+        // runs and row ranges, against cell-by-cell scans
+        int traversable = 0;
+        for( int y = 0; y < 90; y++ ){
+            for( int x = 0; x < 150; x++ ){
+                if( grid.isTraversable( x, y ) ){
+                    traversable++;
+                }
+                for( int dx = -1; dx <= 1; dx += 2 ){
+                    int run = 0;
+                    while( x + run * dx >= 0 && x + run * dx < 150 && grid.isTraversable( x + run * dx, y ) ){
+                        run++;
+                    }
+                    Assert.assertEquals( run, bits.openRun( x, y, dx ) );
+                    if( run > 0 ){
+                        Assert.assertTrue( bits.isRowTraversable( y, x, x + ( run - 1 ) * dx ) );
+                    }
+                    Assert.assertFalse( bits.isRowTraversable( y, x, x + run * dx ) );
+                }
+            }
+        }
+        Assert.assertEquals( traversable, bits.countTraversable() );
+        Assert.assertEquals( 0, bits.openRun( -1, 0, 1 ) );
+        Assert.assertEquals( 150, new BitGrid( 150, 2 ).openRun( 0, 1, 1 ) );
+
+        // lines of sight, against the cells of a Bresenham line
+        for( int query = 0; query < 5000; query++ ){
+            int x0 = random.nextInt( 150 );
+            int y0 = random.nextInt( 90 );
+            int x1 = random.nextInt( 150 );
+            int y1 = random.nextInt( 90 );
+            if( query % 2 == 0 ){
+                y1 = Math.max( 0, Math.min( 89, y0 + random.nextInt( 5 ) - 2 ) );
+            }
+            boolean expected = lineOfSight( grid, x0, y0, x1, y1 );
+            Assert.assertEquals( expected, bits.hasLineOfSight( x0, y0, x1, y1 ) );
+            Assert.assertEquals( expected, bits.hasLineOfSight( x1, y1, x0, y0 ) );
+        }
+
+        // importing from and exporting to a Node[][]
+        Node[][] nodes = grid.toNodes();
+        BitGrid copy = BitGrid.fromNodes( nodes );
+        nodes[3][4].traversable = !nodes[3][4].traversable;
+        copy.set( 3, 4, nodes[3][4].traversable );
+        Node[][] imported = Pathfinder.makeNodes( 150, 90, 0, 0, 10, 10 );
+        copy.copyTo( imported );
+        for( int x = 0; x < 150; x++ ){
+            for( int y = 0; y < 90; y++ ){
+                Assert.assertEquals( nodes[x][y].traversable, copy.get( x, y ) );
+                Assert.assertEquals( nodes[x][y].traversable, imported[x][y].traversable );
+            }
+        }
+
+        // a GridGraph shares its bits
+        GridGraph shared = new GridGraph( copy, 0, 0, 10, 10 );
+        shared.setTraversable( 5, 5, false );
+        Assert.assertFalse( copy.get( 5, 5 ) );
+
+        // jump point search scanning the bits finds the same paths as
+        // scanning the nodes a cell at a time
+        SearchContext context = new SearchContext();
+        for( double density : new double[]{ 0.05, 0.3 } ){
+            grid = randomGrid( random, 150, 90, density );
+            nodes = grid.toNodes();
+            for( boolean allowDiagonal : new boolean[]{ true, false } ){
+                for( int query = 0; query < 50; query++ ){
+                    Vertex origin = new Vertex( random.nextInt( 150 ), random.nextInt( 90 ) );
+                    Vertex target = new Vertex( random.nextInt( 150 ), random.nextInt( 90 ) );
+                    grid.setTraversable( origin.x, origin.y, true );
+                    grid.setTraversable( target.x, target.y, true );
+                    nodes[origin.x][origin.y].traversable = true;
+                    nodes[target.x][target.y].traversable = true;
+
+                    int[] path = Pathfinder.jps( grid, origin, target, false, allowDiagonal, context );
+                    List<Node> expected = Pathfinder.jps( nodes, origin, target, false, allowDiagonal, context );
+                    if( expected == null ){
+                        Assert.assertNull( path );
+                        continue;
+                    }
+                    Assert.assertEquals( expected, grid.toNodes( nodes, path ) );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testChunkedGrid() throws Exception {
+        Random random = new Random( 53 );
+        GridGraph grid = randomGrid( random, 128, 96, 0.3 );
+        for( int x = 0; x < 32; x++ ){
+            for( int y = 0; y < 16; y++ ){
+                grid.setTraversable( x, y, true );
+                grid.setTraversable( x + 32, y + 80, false );
+            }
+        }
+
+        Path directory = Files.createTempDirectory( "pathfinding" );
+        try {
+            ChunkDirectory store = ChunkDirectory.split( grid.getBits(), 16, directory );
+            Assert.assertFalse( Files.exists( store.getFile( 2, 5 ) ) );
+
+            // a budget of four chunks
+            ChunkedGrid world = new ChunkedGrid( store, 128, 96, 16, 4 * 32, 0, 0, 10, 10 );
+            Assert.assertEquals( 0, world.getLoadCount() );
+            for( int chunk = 0; chunk < 48; chunk++ ){
+                for( int cell = 0; cell < 16 * 16; cell++ ){
+                    int index = world.index( chunk % 8 * 16 + cell % 16, chunk / 8 * 16 + cell / 16 );
+                    Assert.assertEquals( grid.isTraversable( index ), world.isTraversable( index ) );
+                }
+            }
+            Assert.assertEquals( 48, world.getLoadCount() );
+            Assert.assertEquals( 4, world.getUniformChunkCount() );
+            Assert.assertEquals( 4, world.getResidentChunkCount() );
+            Assert.assertEquals( 4 * 32, world.getMemoryUsed() );
+            Assert.assertTrue( world.getEvictionCount() > 0 );
+
+            // the same paths as on the whole grid
+            world = new ChunkedGrid( store, 128, 96, 16, 24 * 32, 0, 0, 10, 10 );
+            SearchContext context = new SearchContext();
+            context.setRecordingStats( true );
+            for( boolean allowDiagonal : new boolean[]{ true, false } ){
+                for( int query = 0; query < 10; query++ ){
+                    Vertex origin = new Vertex( random.nextInt( 128 ), random.nextInt( 96 ) );
+                    Vertex target = new Vertex( random.nextInt( 128 ), random.nextInt( 96 ) );
+                    Assert.assertArrayEquals( Pathfinder.dijkstra( grid, origin, target, true, allowDiagonal ),
+                                              Pathfinder.dijkstra( world, origin, target, true, allowDiagonal, context ) );
+                    Assert.assertArrayEquals( Pathfinder.astar( grid, origin, target, false, allowDiagonal ),
+                                              Pathfinder.astar( world, origin, target, false, allowDiagonal ) );
+                    Assert.assertArrayEquals( Pathfinder.bestFirst( grid, origin, target, true, allowDiagonal ),
+                                              Pathfinder.bestFirst( world, origin, target, true, allowDiagonal ) );
+                }
+            }
+            Assert.assertEquals( Algorithm.DIJKSTRA, context.getStats().algorithm );
+
+            // changing a chunk in the store
+            Assert.assertFalse( world.isTraversable( world.index( 40, 85 ) ) );
+            store.write( 2, 5, new BitGrid( 16, 16 ) );
+            world.invalidate( 2, 5 );
+            Assert.assertTrue( world.isTraversable( world.index( 40, 85 ) ) );
+        }
+        finally {
+            for( Path file : Files.newDirectoryStream( directory ) ){
+                Files.delete( file );
+            }
+            Files.delete( directory );
+        }
+
+        // a search across a world of two billion cells only loads the
+        // chunks it reaches
+        final int[] loads = new int[ 1 ];
+        ChunkStore generated = new ChunkStore() {
+            @Override
+            public BitGrid load( int chunkX, int chunkY ) {
+                loads[0]++;
+                BitGrid chunk = new BitGrid( 64, 64 );
+                chunk.set( ( chunkX * 7 ) % 64, ( chunkY * 13 ) % 50, false );
+                return chunk;
+            }
+        };
+        ChunkedGrid world = new ChunkedGrid( generated, 46336, 46336, 64, 64 * 1024, 0, 0, 10, 10 );
+        SearchContext context = new SearchContext();
+        int[] path = Pathfinder.astar( world, new Vertex( 100, 500 ), new Vertex( 20000, 500 ), false, true, Heuristic.EUCLIDEAN, context );
+        Assert.assertNotNull( path );
+        Assert.assertEquals( 19901, path.length );
+        Assert.assertEquals( loads[0], world.getLoadCount() );
+        Assert.assertTrue( world.getLoadCount() < 2000 );
+        Assert.assertTrue( world.getMemoryUsed() <= world.getMemoryBudget() );
+    }
+
+    @Test
+    public void testAnytimeSearch() throws Exception {
+        Random random = new Random( 29 );
+        SearchContext context = new SearchContext();
+        long later = System.nanoTime() + TimeUnit.MINUTES.toNanos( 1 );
+        for( int trial = 0; trial < 200; trial++ ){
+            int width = 5 + random.nextInt( 40 );
+            int height = 5 + random.nextInt( 40 );
+            GridGraph grid = randomGrid( random, width, height, random.nextInt( 40 ) / 100.0 );
+            Vertex start = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+            Vertex end = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+            grid.setTraversable( start.x, start.y, true );
+            grid.setTraversable( end.x, end.y, true );
+            boolean allowDiagonal = random.nextBoolean();
+            
+            // given time, the path is improved until it is optimal
+            int[] astar = Pathfinder.astar( grid, start, end, false, allowDiagonal, Heuristic.OCTILE, context );
+            AnytimePath<int[]> anytime = Pathfinder.anytimeAstar( grid, start, end, allowDiagonal, 1 + random.nextInt( 5 ), later, Heuristic.OCTILE, context );
+            Assert.assertTrue( anytime.isComplete() );
+            Assert.assertEquals( 1, anytime.getEpsilon(), 0 );
+            if( astar == null ){
+                Assert.assertNull( anytime.getPath() );
+                Assert.assertEquals( -1, anytime.getCost(), 0 );
+            }
+            else {
+                assertValidPath( grid, anytime.getPath(), start, end, allowDiagonal );
+                Assert.assertEquals( pathCost( grid, astar ), pathCost( grid, anytime.getPath() ), 0.001 );
+                Assert.assertEquals( pathCost( grid, astar ), anytime.getCost(), 0.001 );
+            }
+        }
+        
+        GridGraph grid = randomGrid( random, 300, 300, 0.3 );
+        Vertex start = new Vertex( 0, 0 );
+        Vertex end = new Vertex( 299, 299 );
+        grid.setTraversable( start.x, start.y, true );
+        grid.setTraversable( end.x, end.y, true );
+        double optimal = pathCost( grid, Pathfinder.astar( grid, start, end, false, true, Heuristic.OCTILE, context ) );
+        
+        // a deadline that has passed returns no path, as the first path needs
+        // more expansions than are made between checks of the deadline
+        AnytimePath<int[]> expired = Pathfinder.anytimeAstar( grid, start, end, true, 3, System.nanoTime(), Heuristic.OCTILE, context );
+        Assert.assertNull( expired.getPath() );
+        Assert.assertFalse( expired.isComplete() );
+        Assert.assertEquals( Double.POSITIVE_INFINITY, expired.getEpsilon(), 0 );
+        
+        // whenever the search is cut short, the reported bound holds
+        for( int micros = 50; micros <= 12800; micros *= 2 ){
+            AnytimePath<int[]> result = Pathfinder.anytimeAstar( grid, start, end, true, 5, System.nanoTime() + TimeUnit.MICROSECONDS.toNanos( micros ), Heuristic.OCTILE, context );
+            if( result.getPath() != null ){
+                assertValidPath( grid, result.getPath(), start, end, true );
+                Assert.assertTrue( result.getIterations() > 0 );
+                Assert.assertTrue( result.getEpsilon() >= 1 && result.getEpsilon() <= 5 );
+                Assert.assertTrue( pathCost( grid, result.getPath() ) <= result.getEpsilon() * optimal + 0.001 );
+            }
+        }
+        
+        AnytimePath<List<Node>> nodes = Pathfinder.anytimeAstar( grid.toNodes(), start, end, true, 2, later );
+        Assert.assertEquals( optimal, pathCost( nodes.getPath() ), 0.001 );
+        
+        try {
+            Pathfinder.anytimeAstar( grid, start, end, true, 0.5, later );
+            Assert.fail( "Expected an IllegalArgumentException" );
+        }
+        catch( IllegalArgumentException expected ){
+        }
+    }
+
+    @Test
+    public void testPathSearch() throws Exception {
+        Random random = new Random( 31 );
+        SearchContext context = new SearchContext();
+        Algorithm[] algorithms = { Algorithm.BEST_FIRST, Algorithm.DIJKSTRA, Algorithm.ASTAR };
+        for( int trial = 0; trial < 30; trial++ ){
+            int width = 5 + random.nextInt( 40 );
+            int height = 5 + random.nextInt( 40 );
+            GridGraph grid = randomGrid( random, width, height, random.nextInt( 40 ) / 100.0 );
+            
+            // searches taking turns on one thread find the same paths as
+            // searches run all at once
+            List<PathQuery> queries = new ArrayList();
+            List<PathSearch> searches = new ArrayList();
+            for( int i = 0; i < 20; i++ ){
+                Vertex origin = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+                Vertex target = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+                grid.setTraversable( origin.x, origin.y, true );
+                grid.setTraversable( target.x, target.y, true );
+                PathQuery query = new PathQuery( origin, target, algorithms[ random.nextInt( algorithms.length ) ],
+                                                 random.nextBoolean(), random.nextBoolean() );
+                queries.add( query );
+                searches.add( random.nextBoolean() ? Pathfinder.begin( grid, query ) : Pathfinder.begin( grid, query, new SearchContext() ) );
+            }
+            
+            boolean done = false;
+            while( !done ){
+                done = true;
+                for( PathSearch search : searches ){
+                    int before = search.getExpansions();
+                    int budget = 1 + random.nextInt( 20 );
+                    if( search.step( budget ) == PathSearch.Status.IN_PROGRESS ){
+                        Assert.assertEquals( before + budget, search.getExpansions() );
+                        done = false;
+                    }
+                    Assert.assertTrue( search.getExpansions() <= before + budget );
+                }
+            }
+            
+            for( int i = 0; i < queries.size(); i++ ){
+                int[] expected = Pathfinder.search( grid, queries.get( i ), context );
+                PathSearch search = searches.get( i );
+                Assert.assertArrayEquals( expected, search.getPath() );
+                if( expected == null ){
+                    Assert.assertEquals( PathSearch.Status.UNREACHABLE, search.getStatus() );
+                    Assert.assertEquals( -1, search.getCost(), 0 );
+                }
+                else {
+                    Assert.assertEquals( PathSearch.Status.FOUND, search.getStatus() );
+                    Assert.assertEquals( pathCost( grid, expected ), search.getCost(), 0.001 );
+                }
+            }
+        }
+        
+        GridGraph grid = randomGrid( random, 100, 100, 0.2 );
+        grid.setTraversable( 0, 0, true );
+        grid.setTraversable( 99, 99, true );
+        PathQuery query = new PathQuery( new Vertex( 0, 0 ), new Vertex( 99, 99 ), Algorithm.DIJKSTRA, false, true );
+        PathSearch cancelled = Pathfinder.begin( grid, query );
+        Assert.assertEquals( PathSearch.Status.IN_PROGRESS, cancelled.step( 100 ) );
+        cancelled.cancel();
+        Assert.assertEquals( PathSearch.Status.CANCELLED, cancelled.step( 100 ) );
+        Assert.assertTrue( cancelled.isDone() );
+        Assert.assertNull( cancelled.getPath() );
+        Assert.assertEquals( 100, cancelled.getExpansions() );
+        
+        Node[][] nodes = grid.toNodes();
+        PathSearch search = Pathfinder.begin( nodes, query );
+        while( search.step( 1000 ) == PathSearch.Status.IN_PROGRESS ){
+        }
+        Assert.assertEquals( pathCost( Pathfinder.dijkstra( nodes, query.origin, query.target, false, true ) ), pathCost( search.getNodes() ), 0.001 );
+        Assert.assertTrue( search.getSteps() > 1 );
+        
+        try {
+            Pathfinder.begin( grid, new PathQuery( query.origin, query.target, Algorithm.JPS, false, true ) );
+            Assert.fail( "Expected an IllegalArgumentException" );
+        }
+        catch( IllegalArgumentException expected ){
+        }
+    }
+
+    @Test
+    public void testPathOutput() throws Exception {
+        Random random = new Random( 37 );
+        SearchContext context = new SearchContext();
+        Algorithm[] algorithms = Algorithm.values();
+        IntBuffer buffer = IntBuffer.allocate( 4096 );
+        int[] array = new int[ 4096 ];
+        ByteBuffer encoded = ByteBuffer.allocateDirect( 4096 );
+        for( int trial = 0; trial < 300; trial++ ){
+            int width = 5 + random.nextInt( 40 );
+            int height = 5 + random.nextInt( 40 );
+            GridGraph grid = randomGrid( random, width, height, random.nextInt( 40 ) / 100.0 );
+            Vertex origin = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+            Vertex target = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+            grid.setTraversable( origin.x, origin.y, true );
+            grid.setTraversable( target.x, target.y, true );
+            PathQuery query = new PathQuery( origin, target, algorithms[ random.nextInt( algorithms.length ) ],
+                                             random.nextBoolean(), random.nextBoolean() );
+            
+            // paths written into buffers match the paths returned
+            int[] expected = Pathfinder.search( grid, query, context );
+            buffer.clear();
+            buffer.position( 7 );
+            int length = Pathfinder.search( grid, query, context, buffer );
+            int offset = random.nextInt( 10 );
+            Assert.assertEquals( length, Pathfinder.search( grid, query, context, array, offset ) );
+            if( expected == null ){
+                Assert.assertEquals( -1, length );
+                Assert.assertEquals( 7, buffer.position() );
+                continue;
+            }
+            Assert.assertEquals( expected.length, length );
+            Assert.assertEquals( 7 + length, buffer.position() );
+            Assert.assertArrayEquals( expected, Arrays.copyOfRange( buffer.array(), 7, 7 + length ) );
+            Assert.assertArrayEquals( expected, Arrays.copyOfRange( array, offset, offset + length ) );
+            
+            // and survive encoding
+            byte[] bytes = PathCodec.encode( width, expected );
+            Assert.assertEquals( bytes.length, PathCodec.getEncodedSize( width, expected, 0, expected.length ) );
+            Assert.assertArrayEquals( expected, PathCodec.decode( width, bytes ) );
+            Vertex[] vertices = PathCodec.decodeVertices( bytes );
+            Assert.assertEquals( expected.length, vertices.length );
+            for( int i = 0; i < expected.length; i++ ){
+                Assert.assertEquals( new Vertex( expected[i] % width, expected[i] / width ), vertices[i] );
+            }
+            
+            encoded.clear();
+            Assert.assertEquals( bytes.length, PathCodec.encode( width, expected, 0, expected.length, encoded ) );
+            Assert.assertEquals( bytes.length, PathCodec.encode( width, expected, 0, expected.length, encoded ) );
+            encoded.flip();
+            for( int copy = 0; copy < 2; copy++ ){
+                buffer.clear();
+                Assert.assertEquals( expected.length, PathCodec.decode( width, encoded, buffer ) );
+                Assert.assertArrayEquals( expected, Arrays.copyOf( buffer.array(), expected.length ) );
+            }
+            Assert.assertFalse( encoded.hasRemaining() );
+        }
+        
+        // an obstructed path encodes to a small fraction of its cell indices
+        GridGraph grid = randomGrid( random, 1000, 1000, 0.2 );
+        grid.setTraversable( 0, 0, true );
+        grid.setTraversable( 999, 700, true );
+        int[] path = Pathfinder.astar( grid, new Vertex( 0, 0 ), new Vertex( 999, 700 ), false, true, Heuristic.OCTILE, context );
+        Assert.assertTrue( PathCodec.encode( 1000, path ).length * 10 < path.length * 4 );
+        
+        PathQuery query = new PathQuery( new Vertex( 0, 0 ), new Vertex( 999, 700 ), Algorithm.JPS, false, true );
+        IntBuffer small = IntBuffer.allocate( 100 );
+        try {
+            Pathfinder.search( grid, query, context, small );
+            Assert.fail( "Expected a BufferOverflowException" );
+        }
+        catch( BufferOverflowException expected ){
+        }
+        Assert.assertEquals( 0, small.position() );
+        
+        try {
+            PathCodec.encode( 1000, new int[]{ 0, 1, 3 } );
+            Assert.fail( "Encoded cells that are not adjacent" );
+        }
+        catch( IllegalArgumentException expected ){
+        }
+        try {
+            byte[] bytes = PathCodec.encode( 1000, path );
+            PathCodec.decode( 1000, Arrays.copyOf( bytes, bytes.length - 1 ) );
+            Assert.fail( "Decoded a truncated path" );
+        }
+        catch( IllegalArgumentException expected ){
+        }
+    }
+
+    @Test
+    public void testFlowField() throws Exception {
+        Random random = new Random( 41 );
+        SearchContext context = new SearchContext();
+        ForkJoinPool pool = new ForkJoinPool( 4 );
+        try {
+            for( int trial = 0; trial < 20; trial++ ){
+                int width = 5 + random.nextInt( 150 );
+                int height = 5 + random.nextInt( 150 );
+                boolean allowDiagonal = random.nextBoolean();
+                GridGraph grid = randomGrid( random, width, height, random.nextInt( 40 ) / 100.0 );
+                Vertex[] targets = new Vertex[ 1 + random.nextInt( 3 ) ];
+                for( int i = 0; i < targets.length; i++ ){
+                    targets[i] = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+                    grid.setTraversable( targets[i].x, targets[i].y, true );
+                }
+                
+                FlowField field = new FlowField( grid, targets, allowDiagonal, random.nextBoolean() ? pool : null );
+                assertFlowField( grid, field, targets, allowDiagonal, context );
+                
+                // after updates, the field matches the map
+                for( int edit = 0; edit < 10; edit++ ){
+                    int x = random.nextInt( width );
+                    int y = random.nextInt( height );
+                    grid.setTraversable( x, y, !grid.isTraversable( y * width + x ) );
+                    field.update( x, y );
+                }
+                assertFlowField( grid, field, targets, allowDiagonal, context );
+                
+                Vertex[] cells = new Vertex[ 20 ];
+                for( int i = 0; i < cells.length; i++ ){
+                    cells[i] = new Vertex( random.nextInt( width ), random.nextInt( height ) );
+                    grid.setTraversable( cells[i].x, cells[i].y, random.nextInt( 3 ) == 0 );
+                }
+                field.update( cells );
+                assertFlowField( grid, field, targets, allowDiagonal, context );
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        
+        // closing a cell far from the target only reruns the tiles around it
+        GridGraph grid = randomGrid( random, 512, 512, 0.1 );
+        grid.setTraversable( 0, 0, true );
+        FlowField field = new FlowField( grid, new Vertex( 0, 0 ), true );
+        long built = field.getTileRuns();
+        Assert.assertTrue( built >= 64 );
+        grid.setTraversable( 500, 500, !grid.isTraversable( 500 * 512 + 500 ) );
+        field.update( 500, 500 );
+        Assert.assertTrue( field.getTileRuns() - built <= 9 );
+    }
+
+    private static void assertFlowField( GridGraph grid, FlowField field, Vertex[] targets, boolean allowDiagonal, SearchContext context ){
+        int width = grid.getWidth();
+        Vertex[] cells = new Vertex[ width * grid.getHeight() ];
+        for( int i = 0; i < cells.length; i++ ){
+            cells[i] = new Vertex( i % width, i / width );
+        }
+        double[][] costs = Pathfinder.manyToMany( grid, targets, cells, allowDiagonal, context );
+        for( int i = 0; i < cells.length; i++ ){
+            double expected = -1;
+            for( int t = 0; t < targets.length; t++ ){
+                if( costs[t][i] != -1 && ( expected == -1 || costs[t][i] < expected ) ){
+                    expected = costs[t][i];
+                }
+            }
+            Assert.assertEquals( expected, field.getDistance( i ), 0.001 + expected * 1e-6 );
+            
+            int next = field.getNext( i );
+            if( expected > 0 ){
+                Assert.assertEquals( expected, field.getDistance( next ) + pathCost( grid, new int[]{ i, next } ), 0.001 + expected * 1e-6 );
+                Assert.assertEquals( expected, pathCost( grid, field.getPath( cells[i] ) ), 0.001 + expected * 1e-6 );
+            }
+            else {
+                Assert.assertEquals( -1, next );
+                Assert.assertEquals( -1, field.getDirection( i ) );
+            }
+        }
+    }
+
+    private static boolean lineOfSight( GridGraph grid, int x0, int y0, int x1, int y1 ){
+        if( x1 < x0 || ( x1 == x0 && y1 < y0 ) ){
+            return lineOfSight( grid, x1, y1, x0, y0 );
+        }
+        int dx = x1 - x0;
+        int dy = Math.abs( y1 - y0 );
+        int sy = y1 < y0 ? -1 : 1;
+        int steps = Math.max( Math.max( dx, dy ), 1 );
+        for( int i = 0; i <= Math.max( dx, dy ); i++ ){
+            int x = dx >= dy ? x0 + i : x0 + ( 2 * i * dx + steps ) / ( 2 * steps );
+            int y = dx >= dy ? y0 + sy * ( ( 2 * i * dy + steps ) / ( 2 * steps ) ) : y0 + sy * i;
+            if( !grid.isTraversable( x, y ) ){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void assertSameTable( JumpTable expected, JumpTable actual, int size ){
+        for( int direction = 0; direction < 8; direction++ ){
+            for( int index = 0; index < size; index++ ){
+                Assert.assertEquals( expected.getDistance( direction, index ), actual.getDistance( direction, index ) );
+            }
+        }
+    }
+    
+    public static GridGraph randomGrid( Random random, int width, int height, double density ){
+        GridGraph grid = new GridGraph( width, height, 0, 0, 10, 10 );
+        for( int index = 0; index < width * height; index++ ){
+            grid.setTraversable( index, random.nextDouble() >= density );
+        }
+        return grid;
+    }
+    
+    public static void assertValidPath( GridGraph grid, int[] path, Vertex start, Vertex end, boolean allowDiagonal ){
+        Assert.assertNotNull( path );
+        Assert.assertEquals( grid.index( start ), path[0] );
+        Assert.assertEquals( grid.index( end ), path[ path.length - 1 ] );
+        for( int i = 0; i < path.length; i++ ){
+            Assert.assertTrue( grid.isTraversable( path[i] ) );
+            if( i > 0 ){
+                int dx = Math.abs( grid.getX( path[i] ) - grid.getX( path[i - 1] ) );
+                int dy = Math.abs( grid.getY( path[i] ) - grid.getY( path[i - 1] ) );
+                Assert.assertTrue( dx <= 1 && dy <= 1 && dx + dy > 0 );
+                Assert.assertTrue( allowDiagonal || dx + dy == 1 );
+            }
+        }
+    }
+    
+    public static double pathCost( GridGraph grid, int[] path ){
+        double cost = 0;
+        for( int i = 1; i < path.length; i++ ){
+            cost += Vertex.distance( grid.getLocation( path[i - 1] ), grid.getLocation( path[i] ) );
+        }
+        return cost;
+    }
+    
+    public static int countVisited( SearchContext context ){
+        int count = 0;
+        for( int index = 0; index < context.size(); index++ ){
+            if( context.isVisited( index ) ){
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    public static double pathCost( List<Node> path ){
+        double cost = 0;
+        for( int i = 1; i < path.size(); i++ ){
+            cost += Vertex.distance( path.get( i - 1 ).location, path.get( i ).location );
+        }
+        return cost;
+    }
 }